@@ -1,18 +1,56 @@
 package com.activeviam.experiments.loom.numa;
 
+import com.activeviam.experiments.loom.numa.data.ChunkPool;
+import com.activeviam.experiments.loom.numa.data.ChunkRebalancer;
 import com.activeviam.experiments.loom.numa.data.ColumnDouble;
+import com.activeviam.experiments.loom.numa.data.ColumnFile;
+import com.activeviam.experiments.loom.numa.data.ConcurrentColumnDouble;
 import com.activeviam.experiments.loom.numa.data.DirectChunkDouble;
+import com.activeviam.experiments.loom.numa.data.EPageMode;
+import com.activeviam.experiments.loom.numa.data.GroupByDouble;
 import com.activeviam.experiments.loom.numa.data.IChunkDouble;
+import com.activeviam.experiments.loom.numa.data.MigratingColumnDouble;
+import com.activeviam.experiments.loom.numa.data.NullableColumnDouble;
+import com.activeviam.experiments.loom.numa.data.PartitionedColumnDouble;
+import com.activeviam.experiments.loom.numa.data.PredicateDouble;
+import com.activeviam.experiments.loom.numa.data.ReplicatedColumnDouble;
+import com.activeviam.experiments.loom.numa.data.SelectionBitmap;
+import com.activeviam.experiments.loom.numa.data.TableDouble;
+import com.activeviam.experiments.loom.numa.data.ZoneMap;
 import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import com.activeviam.experiments.loom.numa.thread.virtual.CarrierStartStatistics;
+import com.activeviam.experiments.loom.numa.thread.virtual.NumaExecutorService;
+import com.activeviam.experiments.loom.numa.thread.virtual.NumaTaskScope;
 import com.activeviam.experiments.loom.numa.thread.virtual.NumaVirtualThreadRunner;
 import com.activeviam.experiments.loom.numa.util.MathUtil;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
 import com.activeviam.experiments.loom.numa.util.PlatformUtil;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.IntUnaryOperator;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.Logger;
@@ -32,6 +70,42 @@ public class NumaDemo {
 
 	public static final int NBR_TESTS = 30;
 
+	/** Number of tests per cell of the allocation node x read node matrix. */
+	public static final int NBR_MATRIX_TESTS = 10;
+
+	/** Number of columns of the table benchmark. */
+	public static final int TABLE_COLUMN_COUNT = 4;
+
+	/** The number of values transferred by a call to the bulk methods in the bulk benchmark. */
+	public static final int BULK_BATCH_SIZE = 4096;
+
+	/** The number of distinct values of the column of the filter benchmark, 1 out of 10 being selected. */
+	public static final int FILTER_CARDINALITY = 100;
+
+	/** The number of groups of the group-by benchmark. */
+	public static final int GROUP_COUNT = 1000;
+
+	/** One row out of this number is null in the nullable column benchmark. */
+	public static final int NULL_PERIOD = 100;
+
+	/** One row out of this number is within the range of the zone map benchmark. */
+	public static final int ZONE_MAP_SELECTIVITY = 100;
+
+	/** The size of the replicated column benchmark's column, as a fraction of {@link #DATA_SIZE}. */
+	public static final int REPLICATED_SIZE_DIVISOR = 8;
+
+	/** The capacity of the chunks of the large column benchmark, whose values take 2GB. */
+	public static final int LARGE_CHUNK_CAPACITY = 1 << 28;
+
+	/** The number of scans of its chunk by each task of the fail-fast benchmark. */
+	public static final int FAIL_FAST_SCAN_COUNT = 20;
+
+	/** The capacity of the chunk scanned by each task of the CPU pinning benchmark, whose values fit in a L2 cache. */
+	public static final int PINNING_CHUNK_CAPACITY = 1 << 15;
+
+	/** The number of scans of its chunk by each task of the CPU pinning benchmark. */
+	public static final int PINNING_SCAN_COUNT = 4096;
+
 	protected static final HashMap<Integer, Integer> PROCESSOR_COUNT = PlatformUtil.countProcessorsOnNumaNodes();
 
 	protected enum ETestType {
@@ -59,6 +133,68 @@ public class NumaDemo {
 		READ_NODE = readNode;
 	}
 
+	/**
+	 * The benchmarks that can be run by this demo, selected by the first argument of {@link #main}. Each mode holds
+	 * the banner logged before its benchmark and the method running it on a new demo.
+	 */
+	protected enum EDemoMode {
+		/** The {@link ETestType} read tests (default). */
+		SIMPLE("SIMPLE BENCHMARK", NumaDemo::printSimpleBenchmarks),
+		/** The full allocation node x read node matrix. */
+		MATRIX("MATRIX BENCHMARK USING numa_node_alloc()", NumaDemo::printMatrixBenchmark),
+		/** A column allocated on one node against a column partitioned across all nodes. */
+		PARTITIONED("PARTITIONED COLUMN BENCHMARK", NumaDemo::printPartitionedBenchmark),
+		/** Chunks backed by default pages against chunks backed by huge pages. */
+		HUGEPAGES("HUGE PAGES BENCHMARK", NumaDemo::printHugePagesBenchmark),
+		/** Ingest into chunks placed on first write against ingest into prefaulted chunks. */
+		PREFAULT("PREFAULT BENCHMARK", NumaDemo::printPrefaultBenchmark),
+		/** Creation and release of columns with and without a chunk pool. */
+		POOL("CHUNK POOL BENCHMARK", NumaDemo::printPoolBenchmark),
+		/** Uncompressed columns against sealed columns, for several kinds of data. */
+		COMPRESSED("COMPRESSED COLUMN BENCHMARK", NumaDemo::printCompressedBenchmark),
+		/** Columns read by one thread each against a table read by row group on the home node of each group. */
+		TABLE("TABLE BENCHMARK", NumaDemo::printTableBenchmark),
+		/** Rebuild of a column against the reload of a column persisted in a file. */
+		PERSISTENT("PERSISTENT COLUMN BENCHMARK", NumaDemo::printPersistentBenchmark),
+		/** Remote reads of a column before and after its chunks are migrated to the reading node. */
+		MIGRATION("CHUNK MIGRATION BENCHMARK", NumaDemo::printMigrationBenchmark),
+		/** Copies between a column and an array value by value against copies in bulk. */
+		BULK("BULK TRANSFER BENCHMARK", NumaDemo::printBulkBenchmark),
+		/** Filtered sums materializing the matching values in a list against selection bitmaps. */
+		FILTER("FILTER BENCHMARK", NumaDemo::printFilterBenchmark),
+		/** A group-by into a {@link HashMap} read by one thread against node-local off-heap partial tables. */
+		GROUPBY("GROUP BY BENCHMARK", NumaDemo::printGroupByBenchmark),
+		/** Ingest by a single thread against concurrent appends by virtual threads of all the nodes. */
+		APPEND("CONCURRENT APPEND BENCHMARK", NumaDemo::printAppendBenchmark),
+		/** Aggregations skipping NaN sentinels row by row against aggregations masked by validity bitmaps. */
+		NULLS("NULLABLE COLUMN BENCHMARK", NumaDemo::printNullsBenchmark),
+		/** Range counts of a remote column scanning every chunk against the same counts pruned by zone maps. */
+		ZONEMAP("ZONE MAP BENCHMARK", NumaDemo::printZoneMapBenchmark),
+		/** Reads of a small column from every node, against the same reads of a column replicated on each node. */
+		REPLICATED("REPLICATED COLUMN BENCHMARK", NumaDemo::printReplicatedBenchmark),
+		/** Reads by {@code int} against {@code long} positions, then a column of 2GB chunks beyond 2^31 rows. */
+		LARGE("LARGE COLUMN BENCHMARK", NumaDemo::printLargeBenchmark),
+		/** Sums of chunks spread over the nodes by tasks on the default scheduler against tasks routed to them. */
+		ROUTED("DATA-LOCALITY ROUTING BENCHMARK", NumaDemo::printRoutedBenchmark),
+		/** A failing query fanned out over the nodes waiting for all its tasks against cancelling them on failure. */
+		FAILFAST("FAIL-FAST FAN-OUT BENCHMARK", NumaDemo::printFailFastBenchmark),
+		/** Cache-resident scans on carriers bound to their node against carriers pinned to a CPU each. */
+		PINNING("CPU PINNING BENCHMARK", NumaDemo::printPinningBenchmark),
+		/** The latency of the first task on cold NUMA pools, of the start of their carriers and of their pre-start. */
+		STARTUP("CARRIER STARTUP BENCHMARK", NumaDemo::printStartupBenchmark);
+
+		/** The banner logged before the benchmark. */
+		protected final String banner;
+
+		/** Runs the benchmark on a demo. */
+		protected final Consumer<NumaDemo> benchmark;
+
+		EDemoMode(final String banner, final Consumer<NumaDemo> benchmark) {
+			this.banner = banner;
+			this.benchmark = benchmark;
+		}
+	}
+
 	public static void main(String[] args) {
 		System.out.println("Platform support: " + IPlatform.CURRENT_PLATFORM.toString());
 		boolean numaAvailable = IPlatform.CURRENT_PLATFORM.isNumaAvailable();
@@ -69,12 +205,34 @@ public class NumaDemo {
 
 		System.out.println("NUMA node count: " + IPlatform.CURRENT_PLATFORM.getNUMANodeCount());
 
-		LOGGER.info("=== SIMPLE BENCHMARK USING mmap() ===");
-		new NumaDemo().printSimpleBenchmark(DirectChunkDouble::ofMmap);
+		final EDemoMode mode = args.length > 0 ? EDemoMode.valueOf(args[0].toUpperCase()) : EDemoMode.SIMPLE;
+		LOGGER.info("=== " + mode.banner + " ===");
+		mode.benchmark.accept(new NumaDemo());
+	}
 
-		LOGGER.info("=== SIMPLE BENCHMARK USING numa_node_alloc() ===");
-		new NumaDemo().printSimpleBenchmark((Integer capacity) ->
-				DirectChunkDouble.ofNumaAlloc(capacity, IPlatform.CURRENT_PLATFORM.getCurrentNumaNode()));
+	/**
+	 * Runs the simple benchmark on chunks allocated with {@code mmap()}, then with {@code numa_node_alloc()}.
+	 */
+	public void printSimpleBenchmarks() {
+		LOGGER.info("Chunks allocated with mmap()");
+		printSimpleBenchmark(DirectChunkDouble::ofMmap);
+
+		LOGGER.info("Chunks allocated with numa_node_alloc()");
+		printSimpleBenchmark(NumaDemo::allocateOnCurrentNode);
+	}
+
+	/**
+	 * Runs the matrix benchmark on chunks allocated with {@code numa_node_alloc()}.
+	 */
+	public void printMatrixBenchmark() {
+		printMatrixBenchmark(NumaDemo::allocateOnCurrentNode);
+	}
+
+	/**
+	 * Allocates a chunk with {@code numa_node_alloc()} on the node of the calling thread.
+	 */
+	protected static IChunkDouble allocateOnCurrentNode(final Integer capacity) {
+		return DirectChunkDouble.ofNumaAlloc(capacity, IPlatform.CURRENT_PLATFORM.getCurrentNumaNode());
 	}
 
 	public void printSimpleBenchmark(Function<Integer, IChunkDouble> chunkFactory) {
@@ -91,6 +249,991 @@ public class NumaDemo {
 						+ (double) remoteNodeExecTime / (double) homeNodeExecTime);
 	}
 
+	/**
+	 * Allocates columns on every NUMA node and reads each of them from every node, then prints the measured
+	 * bandwidth matrix and the remote/local factor matrix. The factors are scaled so that a local access is 10,
+	 * which makes them directly comparable with the node distances reported by {@code numactl --hardware}.
+	 *
+	 * @param chunkFactory The factory used to create the chunks of the columns
+	 */
+	public void printMatrixBenchmark(Function<Integer, IChunkDouble> chunkFactory) {
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final long numRows = fromGigaToRows(DATA_SIZE);
+
+		final long[][] execTimeNs = new long[nodeCount][nodeCount];
+		final double[][] bandwidth = new double[nodeCount][nodeCount];
+		for (int allocationNode = 0; allocationNode < nodeCount; ++allocationNode) {
+			collectAll();
+			ColumnDouble[] memory = allocateMemoryOnNode(allocationNode, numRows, chunkFactory);
+			final long bytes = getSizeInBytes(memory);
+			for (int readNode = 0; readNode < nodeCount; ++readNode) {
+				LOGGER.info("Reading memory of node " + allocationNode + " from node " + readNode);
+				final long execTime = readNTimesFromOneNode(readNode, memory, NBR_MATRIX_TESTS);
+				execTimeNs[allocationNode][readNode] = execTime;
+				bandwidth[allocationNode][readNode] = (double) bytes / execTime; // bytes per ns = GB/s
+			}
+			memory = null;
+		}
+
+		final double[][] factor = new double[nodeCount][nodeCount];
+		for (int allocationNode = 0; allocationNode < nodeCount; ++allocationNode) {
+			for (int readNode = 0; readNode < nodeCount; ++readNode) {
+				factor[allocationNode][readNode] = 10 * (double) execTimeNs[allocationNode][readNode]
+						/ (double) execTimeNs[allocationNode][allocationNode];
+			}
+		}
+
+		System.out.println("Bandwidth (GB/s), rows = allocation node, columns = read node:");
+		System.out.println(formatMatrix(bandwidth));
+		System.out.println("Remote/local factor x 10, rows = allocation node, columns = read node:");
+		System.out.println(formatMatrix(factor));
+		if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform) {
+			final double[][] distances = new double[nodeCount][nodeCount];
+			for (int from = 0; from < nodeCount; ++from) {
+				for (int to = 0; to < nodeCount; ++to) {
+					distances[from][to] = platform.getNumaDistance(from, to);
+				}
+			}
+			System.out.println("Node distances reported by libnuma:");
+			System.out.println(formatMatrix(distances));
+		}
+	}
+
+	/**
+	 * Compares the sum of a column allocated on node 0 and read from node 0 with the sum of a
+	 * {@link PartitionedColumnDouble partitioned column}, whose chunks are read on their own node.
+	 */
+	public void printPartitionedBenchmark() {
+		final long numRows = fromGigaToRows(DATA_SIZE);
+
+		collectAll();
+		final ColumnDouble column = new ColumnDouble(
+				ColumnDouble.CHUNK_SIZE,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+		fill(column, numRows);
+		final long singleNodeExecTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> column.sum()));
+
+		final PartitionedColumnDouble partitionedColumn =
+				PartitionedColumnDouble.ofNumaAlloc(ColumnDouble.CHUNK_SIZE);
+		fill(partitionedColumn, numRows);
+		assert partitionedColumn.verifyNodeAffinity();
+		final long partitionedExecTime = sumNTimes(partitionedColumn::sum);
+
+		System.out.println(
+				"Single node: " + singleNodeExecTime * 1e-6 + "ms | Partitioned: " + partitionedExecTime * 1e-6
+						+ "ms - speedup=" + (double) singleNodeExecTime / (double) partitionedExecTime);
+	}
+
+	/**
+	 * Compares the home node reads of columns whose chunks are backed by default pages with the ones of columns
+	 * whose chunks are backed by huge pages, and prints which kinds of huge pages were requested and how much of the
+	 * chunks they actually back.
+	 */
+	public void printHugePagesBenchmark() {
+		final long numRows = fromGigaToRows(DATA_SIZE);
+
+		final long defaultPagesExecTime = runReadTest(ETestType.HOME_NODE, numRows, DirectChunkDouble::ofMmap);
+
+		final Map<EPageMode, LongAdder> pageModes = new ConcurrentHashMap<>();
+		final Queue<DirectChunkDouble> hugePagesChunks = new ConcurrentLinkedQueue<>();
+		final long hugePagesExecTime = runReadTest(ETestType.HOME_NODE, numRows, (Integer capacity) -> {
+			final DirectChunkDouble chunk = DirectChunkDouble.ofHugePages(capacity);
+			pageModes.computeIfAbsent(chunk.getPageMode(), mode -> new LongAdder()).increment();
+			hugePagesChunks.add(chunk);
+			return chunk;
+		});
+		// The chunks have been written by the test, so their transparent huge pages are allocated
+		long hugePageBytes = 0;
+		long totalBytes = 0;
+		for (DirectChunkDouble chunk : hugePagesChunks) {
+			hugePageBytes += chunk.getHugePageBytes();
+			totalBytes += (long) chunk.capacity() * DirectChunkDouble.ELEMENT_SIZE;
+		}
+		hugePagesChunks.clear();
+
+		System.out.println(
+				"Default pages: " + defaultPagesExecTime + "ms | Huge pages: " + hugePagesExecTime + "ms - factor="
+						+ (double) hugePagesExecTime / (double) defaultPagesExecTime + " | Chunks per page mode: "
+						+ pageModes + " | Bytes backed by huge pages: " + hugePageBytes + " / " + totalBytes);
+	}
+
+	/**
+	 * Compares the ingest of a column whose chunks are placed on first write ({@link DirectChunkDouble#ofMmap})
+	 * with the ingest of a column whose chunks are prefaulted on node 0 when they are created
+	 * ({@link DirectChunkDouble#ofPrefaultedMmap}). Both the allocation time and the write time are reported.
+	 */
+	public void printPrefaultBenchmark() {
+		final long numRows = fromGigaToRows(DATA_SIZE);
+
+		collectAll();
+		final long[] firstTouch = ingestOnNode(0, numRows, DirectChunkDouble::ofMmap);
+		collectAll();
+		final long[] prefaulted = ingestOnNode(
+				0,
+				numRows,
+				(Integer capacity) -> DirectChunkDouble.ofPrefaultedMmap(capacity, 0));
+
+		System.out.println(
+				"First touch: allocation " + firstTouch[0] * 1e-6 + "ms, writes " + firstTouch[1] * 1e-6
+						+ "ms | Prefaulted: allocation " + prefaulted[0] * 1e-6 + "ms, writes "
+						+ prefaulted[1] * 1e-6 + "ms");
+	}
+
+	/**
+	 * Repeatedly creates, writes and closes columns on node 0, first with chunks allocated by
+	 * {@code numa_alloc_onnode()} and freed on close, then with chunks recycled by a {@link ChunkPool}.
+	 */
+	public void printPoolBenchmark() {
+		final long numRows = fromGigaToRows(DATA_SIZE / 4);
+
+		collectAll();
+		final long numaAllocExecTime = churnOnNode(
+				0,
+				numRows,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+
+		final ChunkPool pool = new ChunkPool(ChunkPool.DEFAULT_MAX_RETAINED_BYTES_PER_NODE, true);
+		final long poolExecTime = churnOnNode(0, numRows, (Integer capacity) -> pool.acquire(capacity, 0));
+		final long trimmedBytes = pool.trim(0);
+		final ChunkPool.Statistics statistics = pool.getStatistics();
+		pool.clear();
+
+		System.out.println(
+				"numa_alloc_onnode(): " + numaAllocExecTime * 1e-6 + "ms | Pool: " + poolExecTime * 1e-6
+						+ "ms - factor=" + (double) poolExecTime / (double) numaAllocExecTime + " | Pool hit ratio: "
+						+ statistics.hitRatio() + ", trimmed " + trimmedBytes + " bytes, " + statistics);
+	}
+
+	/**
+	 * Writes columns with several kinds of data on node 0, then compares the sums of these columns read from node 0
+	 * before and after they are {@link ColumnDouble#seal() sealed}, along with their sizes.
+	 */
+	public void printCompressedBenchmark() {
+		final long numRows = fromGigaToRows(DATA_SIZE / 8);
+		final Map<String, IntToDoubleFunction> datasets = new LinkedHashMap<>();
+		datasets.put("constant", r -> 1);
+		datasets.put("steps", r -> r >> 12);
+		datasets.put("categories", r -> 1.5 * ((r * 31) % 7));
+		datasets.put("time series", r -> Math.round(1000 * Math.sin(r * 1e-4)) / 100.0);
+
+		for (Map.Entry<String, IntToDoubleFunction> dataset : datasets.entrySet()) {
+			collectAll();
+			final IntToDoubleFunction generator = dataset.getValue();
+			final ColumnDouble column = new ColumnDouble(
+					ColumnDouble.CHUNK_SIZE,
+					(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+			ParallelUtil.forEach(1, i -> 0, i -> {
+				column.ensureCapacity((int) numRows);
+				for (int r = 0; r < numRows; ++r) {
+					column.writeDouble(r, generator.applyAsDouble(r));
+				}
+			});
+
+			final double rawSum = column.sum();
+			final long rawSize = column.getSizeInBytes();
+			final long rawExecTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> column.sum()));
+
+			ParallelUtil.forEach(1, i -> 0, i -> column.seal());
+			final double sealedSum = column.sum();
+			final long sealedSize = column.getSizeInBytes();
+			final long sealedExecTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> column.sum()));
+			for (int r = 0; r < numRows; r += 4099) {
+				assert column.readDouble(r) == generator.applyAsDouble(r) : "Wrong value at row " + r;
+			}
+
+			System.out.println(
+					dataset.getKey() + " | Uncompressed: " + rawExecTime * 1e-6 + "ms, " + rawSize + " bytes | Sealed: "
+							+ sealedExecTime * 1e-6 + "ms, " + sealedSize + " bytes - speedup="
+							+ (double) rawExecTime / (double) sealedExecTime + ", compression ratio="
+							+ (double) rawSize / (double) sealedSize + " | Sums: " + rawSum + " / " + sealedSum);
+			column.close();
+		}
+	}
+
+	/**
+	 * Compares the sums of {@link #TABLE_COLUMN_COUNT} columns, each one allocated on a node and summed by a virtual
+	 * thread of the default scheduler, with the sums of the same columns stored in a {@link TableDouble}, whose row
+	 * groups are summed on their own node.
+	 */
+	public void printTableBenchmark() {
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final long numRows = fromGigaToRows(DATA_SIZE / TABLE_COLUMN_COUNT);
+
+		collectAll();
+		final ColumnDouble[] columns = new ColumnDouble[TABLE_COLUMN_COUNT];
+		ParallelUtil.forEach(TABLE_COLUMN_COUNT, c -> c % nodeCount, c -> {
+			columns[c] = new ColumnDouble(
+					ColumnDouble.CHUNK_SIZE,
+					(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, c % nodeCount));
+			fill(columns[c], numRows);
+		});
+		final double[] columnSums = new double[TABLE_COLUMN_COUNT];
+		final long columnsExecTime = sumNTimes(
+				() -> ParallelUtil.forEach(TABLE_COLUMN_COUNT, c -> -1, c -> columnSums[c] = columns[c].sum()));
+
+		final TableDouble table = TableDouble.ofNumaAlloc(TABLE_COLUMN_COUNT, ColumnDouble.CHUNK_SIZE);
+		table.ensureCapacity((int) numRows);
+		ParallelUtil.forEach(table.getRowGroupCount(), table::getRowGroupNode, g -> {
+			final int end = (int) Math.min(numRows, (long) (g + 1) * ColumnDouble.CHUNK_SIZE);
+			for (int r = g * ColumnDouble.CHUNK_SIZE; r < end; ++r) {
+				for (int c = 0; c < TABLE_COLUMN_COUNT; ++c) {
+					table.writeDouble(r, c, 1);
+				}
+			}
+		});
+		assert table.verifyNodeAffinity();
+		final int[] allColumns = new int[TABLE_COLUMN_COUNT];
+		for (int c = 0; c < TABLE_COLUMN_COUNT; ++c) {
+			allColumns[c] = c;
+		}
+		final long tableExecTime = sumNTimes(() -> table.sum(allColumns));
+
+		System.out.println(
+				"Columns: " + columnsExecTime * 1e-6 + "ms | Table: " + tableExecTime * 1e-6 + "ms - speedup="
+						+ (double) columnsExecTime / (double) tableExecTime + " | Sums: "
+						+ Arrays.toString(columnSums) + " / " + Arrays.toString(table.sum(allColumns)));
+		table.close();
+	}
+
+	/**
+	 * Compares the rebuild of a column on node 0 with the reload of the same column from a {@link ColumnFile}, whose
+	 * chunks are mapped and warmed up on all the nodes, then checks that both columns have the same sum.
+	 * <p>
+	 * The file is still in the page cache when it is reloaded, so this measures a warm restart: flush the page cache
+	 * ({@code echo 1 > /proc/sys/vm/drop_caches}) between both steps to measure a cold one.
+	 */
+	public void printPersistentBenchmark() {
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final long numRows = fromGigaToRows(DATA_SIZE);
+
+		collectAll();
+		final long[] rebuild = ingestOnNode(0, numRows, DirectChunkDouble::ofMmap);
+		final ColumnDouble column = new ColumnDouble(ColumnDouble.CHUNK_SIZE, DirectChunkDouble::ofMmap);
+		ParallelUtil.forEach(1, i -> 0, i -> fill(column, numRows));
+
+		try {
+			final Path path = Files.createTempFile("column", ".bin");
+			try {
+				long startTimeNs = System.nanoTime();
+				ColumnFile.write(column, path);
+				final long writeExecTime = System.nanoTime() - startTimeNs;
+
+				collectAll();
+				startTimeNs = System.nanoTime();
+				final ColumnDouble loaded = ColumnFile.load(path, c -> c % nodeCount, true);
+				final long loadExecTime = System.nanoTime() - startTimeNs;
+
+				System.out.println(
+						"Rebuild: " + (rebuild[0] + rebuild[1]) * 1e-6 + "ms | Write: " + writeExecTime * 1e-6
+								+ "ms | Load: " + loadExecTime * 1e-6 + "ms - speedup="
+								+ (double) (rebuild[0] + rebuild[1]) / (double) loadExecTime + " | Sums: "
+								+ column.sum() + " / " + loaded.sum());
+				loaded.close();
+				column.close();
+			} finally {
+				Files.delete(path);
+			}
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Allocates a column on node 0 and sums it from the last node, then lets a {@link ChunkRebalancer} migrate its
+	 * chunks to the last node, which reads them most, and sums it again from that node.
+	 */
+	public void printMigrationBenchmark() {
+		final int readNode = IPlatform.CURRENT_PLATFORM.getNUMANodeCount() - 1;
+		final long numRows = fromGigaToRows(DATA_SIZE);
+
+		collectAll();
+		final ChunkRebalancer rebalancer = new ChunkRebalancer();
+		final MigratingColumnDouble column = new MigratingColumnDouble(
+				ColumnDouble.CHUNK_SIZE,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0),
+				rebalancer);
+		ParallelUtil.forEach(1, i -> 0, i -> fill(column, numRows));
+
+		final long remoteExecTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> readNode, i -> column.sum()));
+		final long startTimeNs = System.nanoTime();
+		rebalancer.rebalance();
+		final long migrationTime = System.nanoTime() - startTimeNs;
+		assert column.verifyNodeAffinity(readNode);
+		final long migratedExecTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> readNode, i -> column.sum()));
+
+		System.out.println(
+				"Before migration: " + remoteExecTime * 1e-6 + "ms | After migration: " + migratedExecTime * 1e-6
+						+ "ms - speedup=" + (double) remoteExecTime / (double) migratedExecTime + " | Migration: "
+						+ migrationTime * 1e-6 + "ms, " + rebalancer.getStatistics());
+		column.close();
+	}
+
+	/**
+	 * Copies a column allocated on node 0 into an array and back from node 0, value by value with
+	 * {@link ColumnDouble#readDouble(int)} and {@link ColumnDouble#writeDouble(int, double)}, then in batches of
+	 * {@link #BULK_BATCH_SIZE} values with the bulk methods.
+	 */
+	public void printBulkBenchmark() {
+		final int numRows = (int) fromGigaToRows(DATA_SIZE);
+
+		collectAll();
+		final ColumnDouble column = new ColumnDouble(
+				ColumnDouble.CHUNK_SIZE,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+		ParallelUtil.forEach(1, i -> 0, i -> fill(column, numRows));
+		final double[] values = new double[numRows];
+
+		final long singleReadTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> {
+			for (int r = 0; r < numRows; ++r) {
+				values[r] = column.readDouble(r);
+			}
+		}));
+		final long singleWriteTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> {
+			for (int r = 0; r < numRows; ++r) {
+				column.writeDouble(r, values[r]);
+			}
+		}));
+		final long bulkReadTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> {
+			for (int r = 0; r < numRows; r += BULK_BATCH_SIZE) {
+				column.readDoubles(r, values, r, Math.min(BULK_BATCH_SIZE, numRows - r));
+			}
+		}));
+		final long bulkWriteTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> {
+			for (int r = 0; r < numRows; r += BULK_BATCH_SIZE) {
+				column.writeDoubles(r, values, r, Math.min(BULK_BATCH_SIZE, numRows - r));
+			}
+		}));
+
+		System.out.println(
+				"Read value by value: " + singleReadTime * 1e-6 + "ms | Read in bulk: " + bulkReadTime * 1e-6
+						+ "ms - speedup=" + (double) singleReadTime / (double) bulkReadTime + " | Write value by value: "
+						+ singleWriteTime * 1e-6 + "ms | Write in bulk: " + bulkWriteTime * 1e-6 + "ms - speedup="
+						+ (double) singleWriteTime / (double) bulkWriteTime);
+		column.close();
+	}
+
+	/**
+	 * Compares the filtered sum of a partitioned column computed by materializing the matching values in a list
+	 * with the same sum computed from a {@link SelectionBitmap} whose chunks are evaluated and summed on their node.
+	 */
+	public void printFilterBenchmark() {
+		final int numRows = (int) fromGigaToRows(DATA_SIZE);
+		final PredicateDouble predicate = PredicateDouble.lessThan(FILTER_CARDINALITY / 10);
+
+		collectAll();
+		final PartitionedColumnDouble column = PartitionedColumnDouble.ofNumaAlloc(ColumnDouble.CHUNK_SIZE);
+		column.ensureCapacity(numRows);
+		for (int r = 0; r < numRows; ++r) {
+			column.writeDouble(r, r % FILTER_CARDINALITY);
+		}
+
+		final double[] results = new double[2];
+		final long listExecTime = sumNTimes(() -> {
+			final List<Double> matches = new ArrayList<>();
+			for (int r = 0; r < numRows; ++r) {
+				final double value = column.readDouble(r);
+				if (predicate.test(value)) {
+					matches.add(value);
+				}
+			}
+			double sum = 0;
+			for (double value : matches) {
+				sum += value;
+			}
+			results[0] = sum;
+		});
+		final long bitmapExecTime = sumNTimes(() -> {
+			try (SelectionBitmap selection = column.select(predicate)) {
+				results[1] = column.sum(selection);
+			}
+		});
+		assert results[0] == results[1] : results[0] + " != " + results[1];
+
+		System.out.println(
+				"List: " + listExecTime * 1e-6 + "ms | Selection bitmap: " + bitmapExecTime * 1e-6 + "ms - speedup="
+						+ (double) listExecTime / (double) bitmapExecTime);
+		column.close();
+	}
+
+	/**
+	 * Compares a group-by of partitioned columns into a {@link HashMap} of boxed keys filled by a single thread with
+	 * the same group-by computed by {@link GroupByDouble}, whose partial tables are built on the node of the chunks.
+	 */
+	public void printGroupByBenchmark() {
+		final int numRows = (int) fromGigaToRows(DATA_SIZE / 2);
+
+		collectAll();
+		final PartitionedColumnDouble keys = PartitionedColumnDouble.ofNumaAlloc(ColumnDouble.CHUNK_SIZE);
+		final PartitionedColumnDouble measures = PartitionedColumnDouble.ofNumaAlloc(ColumnDouble.CHUNK_SIZE);
+		keys.ensureCapacity(numRows);
+		measures.ensureCapacity(numRows);
+		for (int r = 0; r < numRows; ++r) {
+			keys.writeDouble(r, r % GROUP_COUNT);
+			measures.writeDouble(r, r & 0xFF);
+		}
+
+		final double[] results = new double[2];
+		final long hashMapExecTime = sumNTimes(() -> {
+			final Map<Integer, double[]> groups = new HashMap<>();
+			for (int r = 0; r < keys.getCapacity(); ++r) {
+				final double value = measures.readDouble(r);
+				final double[] aggregates = groups.computeIfAbsent(
+						(int) keys.readDouble(r),
+						key -> new double[] {0, 0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY});
+				aggregates[0] += 1;
+				aggregates[1] += value;
+				aggregates[2] = Math.min(aggregates[2], value);
+				aggregates[3] = Math.max(aggregates[3], value);
+			}
+			results[0] = groups.get(GROUP_COUNT - 1)[1];
+		});
+		final long groupByExecTime = sumNTimes(() -> {
+			final GroupByDouble.Result result = GroupByDouble.groupBy(keys, measures);
+			results[1] = result.sums()[result.indexOf(GROUP_COUNT - 1)];
+		});
+		assert results[0] == results[1] : results[0] + " != " + results[1];
+
+		System.out.println(
+				"HashMap: " + hashMapExecTime * 1e-6 + "ms | Node-local tables: " + groupByExecTime * 1e-6
+						+ "ms - speedup=" + (double) hashMapExecTime / (double) groupByExecTime);
+		keys.close();
+		measures.close();
+	}
+
+	/**
+	 * Compares the ingest of a column by a single thread with the ingest of a {@link ConcurrentColumnDouble} by one
+	 * virtual thread per processor, each one appending batches of {@link #BULK_BATCH_SIZE} values.
+	 */
+	public void printAppendBenchmark() {
+		final int numRows = (int) fromGigaToRows(DATA_SIZE);
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final int writerCount = IPlatform.CURRENT_PLATFORM.getProcessorCount();
+		final double[] batch = new double[BULK_BATCH_SIZE];
+		Arrays.fill(batch, 1);
+
+		final long singleExecTime = sumNTimes(() -> {
+			try (ColumnDouble column = new ColumnDouble(ColumnDouble.CHUNK_SIZE, DirectChunkDouble::ofMmap)) {
+				column.ensureCapacity(numRows);
+				for (int r = 0; r < numRows; r += BULK_BATCH_SIZE) {
+					column.writeDoubles(r, batch, 0, Math.min(BULK_BATCH_SIZE, numRows - r));
+				}
+			}
+		});
+		final long concurrentExecTime = sumNTimes(() -> {
+			try (ConcurrentColumnDouble column =
+					new ConcurrentColumnDouble(ColumnDouble.CHUNK_SIZE, DirectChunkDouble::ofMmap)) {
+				ParallelUtil.forEach(writerCount, i -> i % nodeCount, i -> {
+					for (int r = i * BULK_BATCH_SIZE; r < numRows; r += writerCount * BULK_BATCH_SIZE) {
+						column.append(batch, 0, Math.min(BULK_BATCH_SIZE, numRows - r));
+					}
+				});
+				assert column.size() == numRows && column.sum() == numRows;
+			}
+		});
+
+		System.out.println(
+				"Single thread: " + singleExecTime * 1e-6 + "ms | " + writerCount + " concurrent appenders: "
+						+ concurrentExecTime * 1e-6 + "ms - speedup="
+						+ (double) singleExecTime / (double) concurrentExecTime);
+	}
+
+	/**
+	 * Compares the sum and the maximum of a column encoding its nulls as NaN, computed by a loop skipping the NaN
+	 * values, with the same aggregations of a {@link NullableColumnDouble}. One row out of {@link #NULL_PERIOD} is
+	 * null, in the first half of the columns only, so that the second half takes the fast path of the chunks
+	 * without nulls.
+	 */
+	public void printNullsBenchmark() {
+		final int numRows = (int) fromGigaToRows(DATA_SIZE);
+
+		collectAll();
+		final ColumnDouble sentinelColumn = new ColumnDouble(
+				ColumnDouble.CHUNK_SIZE,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+		final NullableColumnDouble nullableColumn = new NullableColumnDouble(
+				ColumnDouble.CHUNK_SIZE,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+		ParallelUtil.forEach(1, i -> 0, i -> {
+			fill(sentinelColumn, numRows);
+			fill(nullableColumn, numRows);
+			for (int r = 0; r < numRows / 2; r += NULL_PERIOD) {
+				sentinelColumn.writeDouble(r, Double.NaN);
+				nullableColumn.writeNull(r);
+			}
+		});
+
+		final double[] results = new double[4];
+		final long sentinelExecTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> {
+			double sum = 0;
+			double max = Double.NEGATIVE_INFINITY;
+			for (int r = 0, capacity = sentinelColumn.getCapacity(); r < capacity; ++r) {
+				final double value = sentinelColumn.readDouble(r);
+				if (!Double.isNaN(value)) {
+					sum += value;
+					max = Math.max(max, value);
+				}
+			}
+			results[0] = sum;
+			results[1] = max;
+		}));
+		final long validityExecTime = sumNTimes(() -> ParallelUtil.forEach(1, i -> 0, i -> {
+			results[2] = nullableColumn.sum();
+			results[3] = nullableColumn.max();
+		}));
+		assert results[0] == results[2] && results[1] == results[3] : Arrays.toString(results);
+
+		System.out.println(
+				"NaN sentinels: " + sentinelExecTime * 1e-6 + "ms | Validity bitmaps: " + validityExecTime * 1e-6
+						+ "ms - speedup=" + (double) sentinelExecTime / (double) validityExecTime);
+		sentinelColumn.close();
+		nullableColumn.close();
+	}
+
+	/**
+	 * Allocates a column of ascending values on node 0, and counts the values within a range matching one row out of
+	 * {@link #ZONE_MAP_SELECTIVITY} from the last node, scanning all the remote chunks, then again once the
+	 * {@link ZoneMap zone maps} of the chunks are computed: only the chunks overlapping the range are read.
+	 */
+	public void printZoneMapBenchmark() {
+		final int readNode = IPlatform.CURRENT_PLATFORM.getNUMANodeCount() - 1;
+		final int numRows = (int) fromGigaToRows(DATA_SIZE);
+		final double lower = numRows / 2;
+		final double upper = lower + numRows / ZONE_MAP_SELECTIVITY - 1;
+
+		collectAll();
+		final ColumnDouble column = new ColumnDouble(
+				ColumnDouble.CHUNK_SIZE,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+		ParallelUtil.forEach(1, i -> 0, i -> {
+			column.ensureCapacity(numRows);
+			for (int r = 0; r < numRows; ++r) {
+				column.writeDouble(r, r);
+			}
+		});
+
+		final long[] results = new long[2];
+		final long scanExecTime = sumNTimes(() -> ParallelUtil.forEach(
+				1,
+				i -> readNode,
+				i -> results[0] = column.count(lower, upper)));
+		column.computeZoneMaps();
+		final long zoneMapExecTime = sumNTimes(() -> ParallelUtil.forEach(
+				1,
+				i -> readNode,
+				i -> results[1] = column.count(lower, upper)));
+		assert results[0] == results[1] : results[0] + " != " + results[1];
+
+		System.out.println(
+				"Full scan: " + scanExecTime * 1e-6 + "ms | Zone maps: " + zoneMapExecTime * 1e-6 + "ms - speedup="
+						+ (double) scanExecTime / (double) zoneMapExecTime);
+		column.close();
+	}
+
+	/**
+	 * Sums a column allocated on node 0 from a virtual thread of each node at the same time, then a
+	 * {@link ReplicatedColumnDouble} holding the same values, whose readers all go through their local replica.
+	 */
+	public void printReplicatedBenchmark() {
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final int numRows = (int) fromGigaToRows(DATA_SIZE / REPLICATED_SIZE_DIVISOR);
+
+		collectAll();
+		final ColumnDouble column = new ColumnDouble(
+				ColumnDouble.CHUNK_SIZE,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0));
+		final ReplicatedColumnDouble replicatedColumn = ReplicatedColumnDouble.ofNumaAlloc(ColumnDouble.CHUNK_SIZE);
+		ParallelUtil.forEach(1, i -> 0, i -> {
+			fill(column, numRows);
+			fill(replicatedColumn, numRows);
+		});
+		assert replicatedColumn.verifyNodeAffinity();
+
+		final double[] results = new double[2 * nodeCount];
+		final long singleExecTime = sumNTimes(() -> ParallelUtil.forEach(
+				nodeCount,
+				n -> n,
+				n -> results[n] = column.sum()));
+		final long replicatedExecTime = sumNTimes(() -> ParallelUtil.forEach(
+				nodeCount,
+				n -> n,
+				n -> results[nodeCount + n] = replicatedColumn.sum()));
+		assert Arrays.stream(results).allMatch(result -> result == numRows) : Arrays.toString(results);
+
+		System.out.println(
+				"Single copy: " + singleExecTime * 1e-6 + "ms | " + replicatedColumn.getReplicaCount() + " replicas: "
+						+ replicatedExecTime * 1e-6 + "ms - speedup=" + (double) singleExecTime
+						/ (double) replicatedExecTime + " | Memory: " + (replicatedColumn.getSizeInBytes() >> 20)
+						+ "MB instead of " + (replicatedColumn.getReplicaSizeInBytes() >> 20) + "MB");
+		column.close();
+		replicatedColumn.close();
+	}
+
+	/**
+	 * Reads a column row by row through {@code int} positions, then through {@code long} positions, and checks that
+	 * the latter are as fast. Then writes and reads back the first and last rows of each chunk of a column of
+	 * {@link #LARGE_CHUNK_CAPACITY 2GB chunks} holding more than {@link Integer#MAX_VALUE} rows. Only the pages of
+	 * these rows are touched, so the column takes little physical memory.
+	 */
+	public void printLargeBenchmark() {
+		final int numRows = (int) fromGigaToRows(DATA_SIZE);
+
+		collectAll();
+		final double[] results = new double[2];
+		final long[] execTimes = new long[2];
+		ParallelUtil.forEach(1, i -> 0, i -> {
+			try (ColumnDouble column = new ColumnDouble(
+					ColumnDouble.CHUNK_SIZE,
+					(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0))) {
+				fill(column, numRows);
+				execTimes[0] = sumNTimes(() -> {
+					double sum = 0;
+					for (int r = 0; r < numRows; ++r) {
+						sum += column.readDouble(r);
+					}
+					results[0] = sum;
+				});
+				execTimes[1] = sumNTimes(() -> {
+					double sum = 0;
+					for (long r = 0; r < numRows; ++r) {
+						sum += column.readDouble(r);
+					}
+					results[1] = sum;
+				});
+			}
+		});
+		assert results[0] == numRows && results[1] == numRows : Arrays.toString(results);
+		System.out.println(
+				"Reads by int position: " + execTimes[0] * 1e-6 + "ms | by long position: " + execTimes[1] * 1e-6
+						+ "ms - ratio=" + (double) execTimes[1] / (double) execTimes[0]);
+
+		final long largeRows = (long) Integer.MAX_VALUE + 1 + LARGE_CHUNK_CAPACITY;
+		try (ColumnDouble column = new ColumnDouble(
+				LARGE_CHUNK_CAPACITY,
+				(Integer capacity) -> DirectChunkDouble.ofNumaAlloc(capacity, 0))) {
+			final long startTimeNs = System.nanoTime();
+			column.ensureCapacity(largeRows);
+			for (long r = 0; r < column.getLongCapacity(); r += LARGE_CHUNK_CAPACITY) {
+				column.writeDouble(r, r);
+				column.writeDouble(r + LARGE_CHUNK_CAPACITY - 1, r + LARGE_CHUNK_CAPACITY - 1);
+			}
+			for (long r = 0; r < column.getLongCapacity(); r += LARGE_CHUNK_CAPACITY) {
+				if (column.readDouble(r) != r || column.readDouble(r + LARGE_CHUNK_CAPACITY - 1) != r
+						+ LARGE_CHUNK_CAPACITY - 1) {
+					throw new IllegalStateException("Wrong value read around row " + r);
+				}
+			}
+			final long chunkCount = column.getLongCapacity() / LARGE_CHUNK_CAPACITY;
+			System.out.println(
+					"Column of " + column.getLongCapacity() + " rows in " + chunkCount + " chunks of "
+							+ (column.getSizeInBytes() / chunkCount >> 20) + "MB: "
+							+ (System.nanoTime() - startTimeNs) * 1e-6 + "ms to allocate, write and read back "
+							+ 2 * chunkCount + " rows");
+		}
+	}
+
+	/**
+	 * Sums chunks allocated round-robin on the NUMA nodes with one task per chunk, first run on the default virtual
+	 * thread scheduler, then routed by a {@link NumaExecutorService} to the node of each chunk.
+	 */
+	public void printRoutedBenchmark() {
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final int chunkCount = (int) (fromGigaToRows(DATA_SIZE) / ColumnDouble.CHUNK_SIZE);
+
+		collectAll();
+		final DirectChunkDouble[] chunks = new DirectChunkDouble[chunkCount];
+		ParallelUtil.forEach(chunkCount, c -> c % nodeCount, c -> {
+			chunks[c] = DirectChunkDouble.ofNumaAlloc(ColumnDouble.CHUNK_SIZE, c % nodeCount);
+			chunks[c].fill(0, ColumnDouble.CHUNK_SIZE, 1);
+		});
+
+		final double[] results = new double[2];
+		try (NumaExecutorService executor = new NumaExecutorService()) {
+			final long defaultExecTime = sumNTimes(() -> results[0] = sumChunks(executor, chunks, c -> -1));
+			final long routedExecTime = sumNTimes(() -> results[1] = sumChunks(
+					executor,
+					chunks,
+					c -> NumaExecutorService.getNode(chunks[c])));
+			assert results[0] == (double) chunkCount * ColumnDouble.CHUNK_SIZE && results[1] == results[0]
+					: Arrays.toString(results);
+
+			System.out.println(
+					"Default scheduler: " + defaultExecTime * 1e-6 + "ms | Routed to the node of the chunks: "
+							+ routedExecTime * 1e-6 + "ms - speedup=" + (double) defaultExecTime
+							/ (double) routedExecTime);
+		}
+		for (DirectChunkDouble chunk : chunks) {
+			chunk.close();
+		}
+	}
+
+	/**
+	 * Sums chunks allocated round-robin on the NUMA nodes with a {@link NumaTaskScope#reduce hierarchical reduction},
+	 * then runs a query scanning each chunk {@link #FAIL_FAST_SCAN_COUNT} times whose first task fails after one
+	 * scan: {@link ParallelUtil#forEach} waits for all the other tasks before reporting the failure, while
+	 * {@link NumaTaskScope} cancels them at once.
+	 */
+	public void printFailFastBenchmark() {
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final int chunkCount = (int) (fromGigaToRows(DATA_SIZE) / ColumnDouble.CHUNK_SIZE);
+
+		collectAll();
+		final DirectChunkDouble[] chunks = new DirectChunkDouble[chunkCount];
+		ParallelUtil.forEach(chunkCount, c -> c % nodeCount, c -> {
+			chunks[c] = DirectChunkDouble.ofNumaAlloc(ColumnDouble.CHUNK_SIZE, c % nodeCount);
+			chunks[c].fill(0, ColumnDouble.CHUNK_SIZE, 1);
+		});
+		final IntUnaryOperator nodeOfChunk = c -> chunks[c].getNumaNodeId();
+
+		final long reduceStartTimeNs = System.nanoTime();
+		final double sum = reduceChunks(chunkCount, nodeOfChunk, c -> chunks[c].sum(0, chunks[c].capacity()));
+		final long reduceExecTime = System.nanoTime() - reduceStartTimeNs;
+		assert sum == (double) chunkCount * ColumnDouble.CHUNK_SIZE : sum;
+
+		final IntFunction<Double> failingScan = c -> {
+			double result = 0;
+			for (int scan = 0; scan < FAIL_FAST_SCAN_COUNT && !Thread.currentThread().isInterrupted(); ++scan) {
+				result += chunks[c].sum(0, chunks[c].capacity());
+				if (c == 0) {
+					throw new IllegalStateException("Doomed query");
+				}
+			}
+			return result;
+		};
+		final long waitAllStartTimeNs = System.nanoTime();
+		try {
+			ParallelUtil.forEach(chunkCount, nodeOfChunk, failingScan::apply);
+			throw new IllegalStateException("The query should have failed");
+		} catch (IllegalStateException e) {
+			assert e.getMessage().equals("Doomed query") : e;
+		}
+		final long waitAllExecTime = System.nanoTime() - waitAllStartTimeNs;
+		final long failFastStartTimeNs = System.nanoTime();
+		try {
+			reduceChunks(chunkCount, nodeOfChunk, failingScan);
+			throw new IllegalStateException("The query should have failed");
+		} catch (IllegalStateException e) {
+			assert e.getMessage().equals("Doomed query") : e;
+		}
+		final long failFastExecTime = System.nanoTime() - failFastStartTimeNs;
+
+		System.out.println(
+				"Hierarchical sum: " + reduceExecTime * 1e-6 + "ms | Failing query waiting for all its tasks: "
+						+ waitAllExecTime * 1e-6 + "ms | cancelling them on failure: " + failFastExecTime * 1e-6
+						+ "ms - speedup=" + (double) waitAllExecTime / (double) failFastExecTime);
+		for (DirectChunkDouble chunk : chunks) {
+			chunk.close();
+		}
+	}
+
+	/**
+	 * Runs as many tasks as processors on each node, each one scanning {@link #PINNING_SCAN_COUNT} times a chunk of
+	 * its node small enough to stay in the L2 cache, first with the carriers bound to their whole node, then with the
+	 * carriers pinned to a CPU each by {@link NumaVirtualThreadRunner#setCpuPinning(boolean)}.
+	 */
+	public void printPinningBenchmark() {
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		final int[] firstTaskOfNode = new int[nodeCount + 1];
+		for (int node = 0; node < nodeCount; ++node) {
+			firstTaskOfNode[node + 1] = firstTaskOfNode[node] + PROCESSOR_COUNT.get(node);
+		}
+		final int taskCount = firstTaskOfNode[nodeCount];
+		final IntUnaryOperator nodeOfTask = t -> {
+			int node = 0;
+			while (firstTaskOfNode[node + 1] <= t) {
+				++node;
+			}
+			return node;
+		};
+
+		collectAll();
+		final DirectChunkDouble[] chunks = new DirectChunkDouble[taskCount];
+		ParallelUtil.forEach(taskCount, nodeOfTask, t -> {
+			chunks[t] = DirectChunkDouble.ofNumaAlloc(PINNING_CHUNK_CAPACITY, nodeOfTask.applyAsInt(t));
+			chunks[t].fill(0, PINNING_CHUNK_CAPACITY, 1);
+		});
+		final double[] results = new double[taskCount];
+		final Runnable scans = () -> ParallelUtil.forEach(taskCount, nodeOfTask, t -> {
+			double result = 0;
+			for (int scan = 0; scan < PINNING_SCAN_COUNT; ++scan) {
+				result += chunks[t].sum(0, PINNING_CHUNK_CAPACITY);
+			}
+			results[t] = result;
+		});
+
+		final boolean initialPinning = NumaVirtualThreadRunner.isCpuPinning();
+		NumaVirtualThreadRunner.setCpuPinning(false);
+		final long nodeExecTime = sumNTimes(scans);
+		NumaVirtualThreadRunner.setCpuPinning(true);
+		final long pinnedExecTime = sumNTimes(scans);
+		final Map<Integer, Integer> cpuLoads = NumaVirtualThreadRunner.getCarrierCpuLoads(0);
+		NumaVirtualThreadRunner.setCpuPinning(initialPinning);
+		assert Arrays.stream(results).allMatch(result -> result == (double) PINNING_SCAN_COUNT * PINNING_CHUNK_CAPACITY)
+				: Arrays.toString(results);
+
+		System.out.println(
+				"Carriers bound to their node: " + nodeExecTime * 1e-6 + "ms | Carriers pinned to a CPU: "
+						+ pinnedExecTime * 1e-6 + "ms - speedup=" + (double) nodeExecTime / (double) pinnedExecTime
+						+ " | Carriers per CPU of node 0: " + cpuLoads);
+		for (DirectChunkDouble chunk : chunks) {
+			chunk.close();
+		}
+	}
+
+	/**
+	 * Runs a first task on each node while its pool has no carrier yet, then pre-starts all the carriers with
+	 * {@link NumaVirtualThreadRunner#prestartCarriers()}, and prints the start latencies of the carriers of each node.
+	 * Must run first, before the carriers of the pools are started.
+	 */
+	public void printStartupBenchmark() {
+		final int nodeCount = NumaVirtualThreadRunner.getNumaPoolCount();
+
+		final long[] firstTaskExecTime = new long[nodeCount];
+		for (int node = 0; node < nodeCount; ++node) {
+			final int taskNode = node;
+			final long startTimeNs = System.nanoTime();
+			ParallelUtil.forEach(1, i -> taskNode, i -> { });
+			firstTaskExecTime[node] = System.nanoTime() - startTimeNs;
+		}
+
+		final long startTimeNs = System.nanoTime();
+		final boolean started = NumaVirtualThreadRunner.prestartCarriers();
+		final long prestartExecTime = System.nanoTime() - startTimeNs;
+		assert started;
+
+		for (int node = 0; node < nodeCount; ++node) {
+			final CarrierStartStatistics statistics = NumaVirtualThreadRunner.getCarrierStartStatistics(node);
+			System.out.println(
+					"Node " + node + ": first task on a cold pool: " + firstTaskExecTime[node] * 1e-6 + "ms | "
+							+ statistics.count() + " carriers started in " + statistics.meanNanos() * 1e-3
+							+ "us on average, " + statistics.maxNanos() * 1e-3 + "us at most");
+		}
+		System.out.println("Pre-start of the carriers of all the nodes: " + prestartExecTime * 1e-6 + "ms");
+	}
+
+	/**
+	 * Sums the results of one task per chunk with {@link NumaTaskScope#reduce}, rethrowing the failure of a task.
+	 *
+	 * @return The sum of the results of the tasks
+	 */
+	protected static double reduceChunks(int chunkCount, IntUnaryOperator nodeOfChunk, IntFunction<Double> task) {
+		try {
+			return NumaTaskScope.reduce(chunkCount, nodeOfChunk, task, 0d, Double::sum);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException cause) {
+				throw cause;
+			}
+			throw new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Sums chunks with one task per chunk, each one submitted to the given node.
+	 *
+	 * @return The sum of all the chunks
+	 */
+	protected static double sumChunks(
+			NumaExecutorService executor,
+			IChunkDouble[] chunks,
+			IntUnaryOperator nodeOfChunk) {
+		final List<Callable<Double>> tasks = new ArrayList<>(chunks.length);
+		for (IChunkDouble chunk : chunks) {
+			tasks.add(() -> chunk.sum(0, chunk.capacity()));
+		}
+		try {
+			double sum = 0;
+			for (Future<Double> future : executor.invokeAll(tasks, nodeOfChunk)) {
+				sum += future.get();
+			}
+			return sum;
+		} catch (InterruptedException | ExecutionException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Creates, writes and closes a column {@link #NBR_TESTS} times from a virtual thread of the given node.
+	 *
+	 * @return The average time of an iteration, in ns
+	 */
+	protected static long churnOnNode(int node, long numRows, Function<Integer, IChunkDouble> chunkFactory) {
+		final long[] execTime = new long[NBR_TESTS];
+		ParallelUtil.forEach(1, i -> node, i -> {
+			for (int test = 0; test < NBR_TESTS; ++test) {
+				final long startTimeNs = System.nanoTime();
+				try (ColumnDouble column = new ColumnDouble(ColumnDouble.CHUNK_SIZE, chunkFactory)) {
+					fill(column, numRows);
+				}
+				execTime[test] = System.nanoTime() - startTimeNs;
+			}
+		});
+		return MathUtil.calculateMean(MathUtil.removeBestsAndWorsts(execTime, 1, 1));
+	}
+
+	/**
+	 * Creates a column and writes it from a virtual thread of the given node.
+	 *
+	 * @return The allocation time and the write time, in ns
+	 */
+	protected static long[] ingestOnNode(int node, long numRows, Function<Integer, IChunkDouble> chunkFactory) {
+		final long[] execTime = new long[2];
+		ParallelUtil.forEach(1, i -> node, i -> {
+			final ColumnDouble column = new ColumnDouble(ColumnDouble.CHUNK_SIZE, chunkFactory);
+
+			long startTimeNs = System.nanoTime();
+			column.ensureCapacity((int) numRows);
+			execTime[0] = System.nanoTime() - startTimeNs;
+
+			startTimeNs = System.nanoTime();
+			for (int r = 0; r < numRows; ++r) {
+				column.writeDouble(r, 1);
+			}
+			execTime[1] = System.nanoTime() - startTimeNs;
+
+			assert column.verifyNodeAffinity(node);
+		});
+		return execTime;
+	}
+
+	protected static void fill(ColumnDouble column, long numRows) {
+		column.ensureCapacity((int) numRows);
+		column.fill(0, (int) numRows, 1);
+	}
+
+	protected static long sumNTimes(Runnable sum) {
+		long[] execTime = new long[NBR_TESTS];
+		for (int i = 0; i < NBR_TESTS; ++i) {
+			long startTimeNs = System.nanoTime();
+			sum.run();
+			execTime[i] = System.nanoTime() - startTimeNs;
+		}
+		return MathUtil.calculateMean(MathUtil.removeBestsAndWorsts(execTime, 1, 1));
+	}
+
+	protected static String formatMatrix(double[][] matrix) {
+		final StringBuilder sb = new StringBuilder("node");
+		for (int col = 0; col < matrix.length; ++col) {
+			sb.append(String.format("%9d", col));
+		}
+		for (int row = 0; row < matrix.length; ++row) {
+			sb.append(System.lineSeparator()).append(String.format("%4d", row));
+			for (int col = 0; col < matrix[row].length; ++col) {
+				sb.append(String.format("%9.2f", matrix[row][col]));
+			}
+		}
+		return sb.toString();
+	}
+
+	protected static long getSizeInBytes(ColumnDouble[] columns) {
+		long bytes = 0;
+		for (ColumnDouble column : columns) {
+			bytes += column.getSizeInBytes();
+		}
+		return bytes;
+	}
+
 	protected long runReadTest(ETestType testType, long numRows, Function<Integer, IChunkDouble> chunkFactory) {
 		collectAll();
 		LOGGER.info("Starting " + testType + " node read tests");
@@ -105,12 +1248,10 @@ public class NumaDemo {
 	protected long readNTimesFromOneNode(int node, ColumnDouble[] memory, int nbrTests) {
 		long[] execTime = new long[nbrTests];
 
-		ThreadFactory threadFactory = (node < 0)
-				? Thread.ofVirtual().factory()
-				: NumaVirtualThreadRunner.getDefaultThreadFactory(node);
-
-		for (int i = 0; i < nbrTests; ++i) {
-			execTime[i] = readFromNode(node, memory, threadFactory);
+		try (NumaExecutorService executor = new NumaExecutorService()) {
+			for (int i = 0; i < nbrTests; ++i) {
+				execTime[i] = readFromNode(node, memory, executor);
+			}
 		}
 
 		if (nbrTests > 2) {
@@ -120,17 +1261,16 @@ public class NumaDemo {
 		return MathUtil.calculateMean(execTime);
 	}
 
-	public long readFromNode(int node, ColumnDouble[] columns, ThreadFactory threadFactory) {
+	public long readFromNode(int node, ColumnDouble[] columns, NumaExecutorService executor) {
 		long startTimeNs = System.nanoTime();
 
-		final CountDownLatch latch = new CountDownLatch(columns.length);
-
-		for (int col = 0; col < columns.length; ++col) {
-			threadFactory.newThread(new ReadCommand(columns[col], latch)).start();
+		final List<Callable<Boolean>> tasks = new ArrayList<>(columns.length);
+		for (ColumnDouble column : columns) {
+			tasks.add(column::readAll);
 		}
 
 		try {
-			latch.await();
+			executor.invokeAll(tasks, col -> node);
 		} catch (InterruptedException e) {
 			LOGGER.log(Level.SEVERE, "Unexpected InteruptedException: ", e);
 			throw new RuntimeException(e);
@@ -224,9 +1364,7 @@ public class NumaDemo {
 				}
 
 				column.ensureCapacity((int) this.rows);
-				for (int r = 0; r < this.rows; ++r) {
-					column.writeDouble(r, 1);
-				}
+				column.fill(0, (int) this.rows, 1);
 
 				assert column.verifyNodeAffinity(node);
 			} finally {
@@ -234,24 +1372,4 @@ public class NumaDemo {
 			}
 		}
 	}
-
-	protected static class ReadCommand implements Runnable {
-
-		protected final ColumnDouble column;
-		protected final CountDownLatch latch;
-
-		public ReadCommand(ColumnDouble column, CountDownLatch latch) {
-			this.column = column;
-			this.latch = latch;
-		}
-
-		@Override
-		public void run() {
-			try {
-				this.column.readAll();
-			} finally {
-				latch.countDown();
-			}
-		}
-	}
 }
@@ -0,0 +1,107 @@
+package com.activeviam.experiments.loom.numa.benchmark;
+
+import com.activeviam.experiments.loom.numa.data.ChunkPool;
+import com.activeviam.experiments.loom.numa.data.ColumnDouble;
+import com.activeviam.experiments.loom.numa.data.DirectChunkDouble;
+import com.activeviam.experiments.loom.numa.data.IChunkDouble;
+import com.activeviam.experiments.loom.numa.data.SegmentColumnDouble;
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * Helper functions shared by the JMH benchmarks.
+ * <p>
+ * As in {@link com.activeviam.experiments.loom.numa.NumaDemo}, a negative NUMA node means "no binding": the work
+ * is then done by regular virtual threads and the platform thread is left free to run anywhere.
+ *
+ * @author ActiveViam
+ */
+class BenchmarkUtil {
+
+	/** Name of the chunk factory based on {@link DirectChunkDouble#ofMmap(int)}. */
+	static final String MMAP = "mmap";
+
+	/** Name of the chunk factory based on {@link DirectChunkDouble#ofNumaAlloc(int, int)}. */
+	static final String NUMA_ALLOC = "numa_alloc";
+
+	/** Name of the chunk factory based on the {@link ChunkPool#getDefault() default chunk pool}. */
+	static final String POOL = "pool";
+
+	/** Name of the chunk factory of {@link SegmentColumnDouble}, only available through {@link #newColumn}. */
+	static final String SEGMENT = "segment";
+
+	/**
+	 * Runs the given task in a virtual thread scheduled on the given NUMA node and waits for its completion.
+	 *
+	 * @param node The NUMA node, or a negative value for the default virtual thread scheduler
+	 * @param task The task to run
+	 */
+	static void runOnNode(int node, Runnable task) {
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+		final Thread thread = ParallelUtil.threadFactory(node).newThread(() -> {
+			try {
+				task.run();
+			} catch (Throwable t) {
+				failure.set(t);
+			}
+		});
+		thread.start();
+		try {
+			thread.join();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		if (failure.get() != null) {
+			throw new RuntimeException("Task failed on NUMA node " + node, failure.get());
+		}
+	}
+
+	/**
+	 * Returns the chunk factory with the given name.
+	 *
+	 * @param name Either {@link #MMAP}, {@link #NUMA_ALLOC} or {@link #POOL}
+	 * @param node The NUMA node for {@code numa_alloc_onnode()} and the pool, or a negative value for the current
+	 *        node
+	 * @return The chunk factory
+	 */
+	static Function<Integer, IChunkDouble> chunkFactory(String name, int node) {
+		return switch (name) {
+			case MMAP -> DirectChunkDouble::ofMmap;
+			case NUMA_ALLOC -> (Integer capacity) -> DirectChunkDouble.ofNumaAlloc(
+					capacity,
+					node < 0 ? IPlatform.CURRENT_PLATFORM.getCurrentNumaNode() : node);
+			case POOL -> (Integer capacity) -> ChunkPool.getDefault().acquire(capacity, node);
+			default -> throw new IllegalArgumentException("Unknown chunk factory: " + name);
+		};
+	}
+
+	/**
+	 * Creates an empty column whose chunks are created by the chunk factory with the given name.
+	 *
+	 * @param name Either {@link #SEGMENT} or a name accepted by {@link #chunkFactory(String, int)}
+	 * @param node The NUMA node of the chunks, or a negative value for the current node
+	 * @return The new column
+	 */
+	static ColumnDouble newColumn(String name, int node) {
+		return SEGMENT.equals(name)
+				? new SegmentColumnDouble(ColumnDouble.CHUNK_SIZE, node)
+				: new ColumnDouble(ColumnDouble.CHUNK_SIZE, chunkFactory(name, node));
+	}
+
+	/**
+	 * Binds the current (platform) thread to the given NUMA node. A negative node lets the kernel schedule the
+	 * thread on all nodes again.
+	 *
+	 * @param node The NUMA node
+	 */
+	static void bindCurrentThread(int node) {
+		IPlatform.CURRENT_PLATFORM.setNumaNode(node);
+	}
+
+	private BenchmarkUtil() {
+	}
+}
@@ -0,0 +1,82 @@
+package com.activeviam.experiments.loom.numa.benchmark;
+
+import com.activeviam.experiments.loom.numa.data.ChunkPool;
+import com.activeviam.experiments.loom.numa.data.DirectChunkDouble;
+import com.activeviam.experiments.loom.numa.data.IChunkDouble;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the cost of {@link DirectChunkDouble#ofMmap(int)}, {@link DirectChunkDouble#ofNumaAlloc(int, int)} and
+ * {@link ChunkPool#acquire(int, int)}.
+ * <p>
+ * Each invocation allocates a chunk from a thread bound to the {@link #allocationNode allocation node}, touches
+ * every page of it (which is when the memory is actually placed on a node) and releases it.
+ *
+ * @author ActiveViam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {
+		"--enable-preview",
+		"--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+		"--add-opens", "java.base/java.lang=ALL-UNNAMED"})
+public class ChunkFactoryBenchmark {
+
+	/** The number of doubles in a 4kB page. */
+	protected static final int DOUBLES_PER_PAGE = 4096 / DirectChunkDouble.ELEMENT_SIZE;
+
+	/** The NUMA node on which the chunks are allocated, or -1 for no binding. */
+	@Param({"0"})
+	public int allocationNode;
+
+	/** The chunk factory to measure. */
+	@Param({BenchmarkUtil.MMAP, BenchmarkUtil.NUMA_ALLOC, BenchmarkUtil.POOL})
+	public String chunkFactory;
+
+	/** The capacity of the allocated chunks. */
+	@Param({"1048576"})
+	public int chunkCapacity;
+
+	protected Function<Integer, IChunkDouble> factory;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkUtil.bindCurrentThread(allocationNode);
+		this.factory = BenchmarkUtil.chunkFactory(chunkFactory, allocationNode);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkUtil.bindCurrentThread(-1);
+	}
+
+	@Benchmark
+	public double allocateTouchAndFree() {
+		final DirectChunkDouble chunk = (DirectChunkDouble) factory.apply(chunkCapacity);
+		try {
+			for (int r = 0; r < chunkCapacity; r += DOUBLES_PER_PAGE) {
+				chunk.writeDouble(r, 1);
+			}
+			return chunk.readDouble(0);
+		} finally {
+			chunk.close();
+		}
+	}
+}
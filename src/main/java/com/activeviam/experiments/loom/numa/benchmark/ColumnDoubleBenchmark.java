@@ -0,0 +1,124 @@
+package com.activeviam.experiments.loom.numa.benchmark;
+
+import com.activeviam.experiments.loom.numa.data.ColumnDouble;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the scan operations of {@link ColumnDouble}.
+ * <p>
+ * The column is allocated and written by a virtual thread of the {@link #allocationNode allocation node}, then the
+ * benchmark thread is bound to the {@link #readNode read node} before the scans, so that only the scan itself is
+ * measured (and not the startup of the reading thread).
+ * <p>
+ * The aggregations use the bulk scans of the chunks; run with {@code -jvmArgsAppend
+ * -Dcom.activeviam.experiments.loom.numa.data.scalarScans=true} to measure the scalar fallback instead. The
+ * {@link BenchmarkUtil#SEGMENT segment} factory compares the {@link java.lang.foreign.MemorySegment} chunks with the
+ * {@link sun.misc.Unsafe} ones.
+ *
+ * @author ActiveViam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {
+		"--enable-preview",
+		"--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+		"--add-opens", "java.base/java.lang=ALL-UNNAMED",
+		"--enable-native-access=ALL-UNNAMED"})
+public class ColumnDoubleBenchmark {
+
+	/** The NUMA node on which the column is allocated, or -1 for no binding. */
+	@Param({"0"})
+	public int allocationNode;
+
+	/** The NUMA node from which the column is read, or -1 for no binding. */
+	@Param({"0"})
+	public int readNode;
+
+	/** The chunk factory used by the column. */
+	@Param({BenchmarkUtil.MMAP, BenchmarkUtil.NUMA_ALLOC, BenchmarkUtil.SEGMENT})
+	public String chunkFactory;
+
+	/** The number of rows in the column. */
+	@Param({"16777216"})
+	public int rows;
+
+	/**
+	 * Whether the column is {@link ColumnDouble#seal() sealed} before the scans. As all its values are 1, its
+	 * chunks then become constant, which gives an upper bound of the gain of the compressed chunks.
+	 */
+	@Param({"false"})
+	public boolean sealed;
+
+	protected ColumnDouble column;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		BenchmarkUtil.runOnNode(allocationNode, () -> {
+			final ColumnDouble column = BenchmarkUtil.newColumn(chunkFactory, allocationNode);
+			column.ensureCapacity(rows);
+			for (int r = 0; r < rows; ++r) {
+				column.writeDouble(r, 1);
+			}
+			if (sealed) {
+				column.seal();
+			}
+			assert column.verifyNodeAffinity(allocationNode);
+			this.column = column;
+		});
+
+		BenchmarkUtil.bindCurrentThread(readNode);
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		BenchmarkUtil.bindCurrentThread(-1);
+		this.column.close();
+		this.column = null;
+	}
+
+	@Benchmark
+	public double sum() {
+		return column.sum();
+	}
+
+	@Benchmark
+	public double min() {
+		return column.min();
+	}
+
+	@Benchmark
+	public long count() {
+		return column.count(0.5, 1.5);
+	}
+
+	@Benchmark
+	public double dot() {
+		return column.dot(column);
+	}
+
+	@Benchmark
+	public boolean readAll() {
+		return column.readAll();
+	}
+
+	@Benchmark
+	public boolean slowReadAll() {
+		return column.slowReadAll();
+	}
+}
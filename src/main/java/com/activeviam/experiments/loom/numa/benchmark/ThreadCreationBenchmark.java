@@ -0,0 +1,65 @@
+package com.activeviam.experiments.loom.numa.benchmark;
+
+import com.activeviam.experiments.loom.numa.thread.virtual.NumaVirtualThreadRunner;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the rate at which {@link NumaVirtualThreadRunner#getDefaultThreadFactory(int)} and
+ * {@link Thread#ofVirtual()} create virtual threads, without starting them, which measures the factories alone.
+ * Kept apart from {@link ThreadFactoryBenchmark} since it does not depend on its number of threads.
+ *
+ * @author ActiveViam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {
+		"--enable-preview",
+		"--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+		"--add-opens", "java.base/java.lang=ALL-UNNAMED"})
+public class ThreadCreationBenchmark {
+
+	/** The NUMA node whose pool runs the virtual threads. */
+	@Param({"0"})
+	public int node;
+
+	protected ThreadFactory numaFactory;
+	protected ThreadFactory defaultFactory;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.numaFactory = NumaVirtualThreadRunner.getDefaultThreadFactory(node);
+		this.defaultFactory = Thread.ofVirtual().factory();
+	}
+
+	/**
+	 * Creates a virtual thread of the NUMA pool without starting it.
+	 */
+	@Benchmark
+	public Thread numaNewThread() {
+		return numaFactory.newThread(ThreadFactoryBenchmark.NO_OP);
+	}
+
+	/**
+	 * Creates a default virtual thread without starting it.
+	 */
+	@Benchmark
+	public Thread defaultNewThread() {
+		return defaultFactory.newThread(ThreadFactoryBenchmark.NO_OP);
+	}
+}
@@ -0,0 +1,80 @@
+package com.activeviam.experiments.loom.numa.benchmark;
+
+import com.activeviam.experiments.loom.numa.thread.virtual.NumaVirtualThreadRunner;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the start-and-join latency of virtual threads created by
+ * {@link NumaVirtualThreadRunner#getDefaultThreadFactory(int)} with the ones created by
+ * {@link Thread#ofVirtual()}. The rate at which both factories create threads is measured by
+ * {@link ThreadCreationBenchmark}.
+ *
+ * @author ActiveViam
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {
+		"--enable-preview",
+		"--add-exports", "java.base/jdk.internal.misc=ALL-UNNAMED",
+		"--add-opens", "java.base/java.lang=ALL-UNNAMED"})
+public class ThreadFactoryBenchmark {
+
+	/** The task run by the virtual threads: only their scheduling is measured. */
+	protected static final Runnable NO_OP = () -> { };
+
+	/** The NUMA node whose pool runs the virtual threads. */
+	@Param({"0"})
+	public int node;
+
+	/** The number of threads started (and then joined) per invocation. */
+	@Param({"1", "64"})
+	public int threadCount;
+
+	protected ThreadFactory numaFactory;
+	protected ThreadFactory defaultFactory;
+	protected Thread[] threads;
+
+	@Setup(Level.Trial)
+	public void setUp() {
+		this.numaFactory = NumaVirtualThreadRunner.getDefaultThreadFactory(node);
+		this.defaultFactory = Thread.ofVirtual().factory();
+		this.threads = new Thread[threadCount];
+	}
+
+	@Benchmark
+	public void numaVirtualThread() throws InterruptedException {
+		startAndJoin(numaFactory);
+	}
+
+	@Benchmark
+	public void defaultVirtualThread() throws InterruptedException {
+		startAndJoin(defaultFactory);
+	}
+
+	protected void startAndJoin(ThreadFactory factory) throws InterruptedException {
+		final Thread[] threads = this.threads;
+		for (int i = 0; i < threads.length; ++i) {
+			threads[i] = factory.newThread(NO_OP);
+			threads[i].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+}
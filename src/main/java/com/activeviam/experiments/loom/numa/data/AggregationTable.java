@@ -0,0 +1,307 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import com.activeviam.experiments.loom.numa.util.PlatformUtil;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * An off-heap hash table aggregating {@code double} values by {@code double} key: for each key, it maintains the
+ * count, the sum, the minimum and the maximum of the values.
+ * <p>
+ * The table uses open addressing with linear probing, without any boxing: the slots are laid out as five arrays
+ * (keys, counts, sums, minimums, maximums) in a single memory segment allocated on a given NUMA node, and an empty
+ * slot is one whose count is 0. The table doubles its capacity when it is half full.
+ * <p>
+ * Keys are compared by their bits, after mapping {@code -0.0} to {@code 0.0} and all the {@code NaN} values to the
+ * canonical one. A table is not thread-safe: it is meant to be filled by a single thread of its node.
+ *
+ * @author ActiveViam
+ */
+public class AggregationTable implements AutoCloseable {
+
+	/** The default initial number of slots. */
+	public static final int DEFAULT_INITIAL_CAPACITY = 1 << 10;
+
+	/** The number of arrays of the slots. */
+	protected static final int FIELD_COUNT = 5;
+
+	/** The NUMA node of the memory of the table. */
+	protected final int numaNodeId;
+
+	/** The arena owning the current memory of the table. */
+	protected Arena arena;
+
+	/** The memory of the slots. */
+	protected MemorySegment slots;
+
+	/** The base-2 log of the number of slots. */
+	protected int order;
+
+	/** The number of keys. */
+	protected int size;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param initialCapacity The initial number of slots, rounded up to a power of 2
+	 * @param numaNodeId The NUMA node on which to allocate the table, or -1 to let the first touch place it
+	 */
+	public AggregationTable(final int initialCapacity, final int numaNodeId) {
+		this.numaNodeId = numaNodeId;
+		allocate(Math.max(1, 32 - Integer.numberOfLeadingZeros(initialCapacity - 1)));
+	}
+
+	/**
+	 * Aggregates a value.
+	 *
+	 * @param key The key of the group of the value
+	 * @param value The value
+	 */
+	public void aggregate(final double key, final double value) {
+		final int slot = findOrInsert(normalize(key));
+		final MemorySegment slots = this.slots;
+		final long capacity = capacity();
+		slots.setAtIndex(JAVA_LONG, capacity + slot, slots.getAtIndex(JAVA_LONG, capacity + slot) + 1);
+		slots.setAtIndex(JAVA_DOUBLE, 2 * capacity + slot, slots.getAtIndex(JAVA_DOUBLE, 2 * capacity + slot) + value);
+		slots.setAtIndex(
+				JAVA_DOUBLE,
+				3 * capacity + slot,
+				Math.min(slots.getAtIndex(JAVA_DOUBLE, 3 * capacity + slot), value));
+		slots.setAtIndex(
+				JAVA_DOUBLE,
+				4 * capacity + slot,
+				Math.max(slots.getAtIndex(JAVA_DOUBLE, 4 * capacity + slot), value));
+	}
+
+	/**
+	 * Merges the aggregates of another table into this one.
+	 *
+	 * @param other The other table, left unchanged
+	 */
+	public void merge(final AggregationTable other) {
+		final MemorySegment otherSlots = other.slots;
+		final long otherCapacity = other.capacity();
+		for (long s = 0; s < otherCapacity; ++s) {
+			final long count = otherSlots.getAtIndex(JAVA_LONG, otherCapacity + s);
+			if (count == 0) {
+				continue;
+			}
+			final int slot = findOrInsert(otherSlots.getAtIndex(JAVA_LONG, s));
+			final MemorySegment slots = this.slots;
+			final long capacity = capacity();
+			slots.setAtIndex(JAVA_LONG, capacity + slot, slots.getAtIndex(JAVA_LONG, capacity + slot) + count);
+			slots.setAtIndex(
+					JAVA_DOUBLE,
+					2 * capacity + slot,
+					slots.getAtIndex(JAVA_DOUBLE, 2 * capacity + slot)
+							+ otherSlots.getAtIndex(JAVA_DOUBLE, 2 * otherCapacity + s));
+			slots.setAtIndex(
+					JAVA_DOUBLE,
+					3 * capacity + slot,
+					Math.min(
+							slots.getAtIndex(JAVA_DOUBLE, 3 * capacity + slot),
+							otherSlots.getAtIndex(JAVA_DOUBLE, 3 * otherCapacity + s)));
+			slots.setAtIndex(
+					JAVA_DOUBLE,
+					4 * capacity + slot,
+					Math.max(
+							slots.getAtIndex(JAVA_DOUBLE, 4 * capacity + slot),
+							otherSlots.getAtIndex(JAVA_DOUBLE, 4 * otherCapacity + s)));
+		}
+	}
+
+	/**
+	 * Returns the number of keys of this table.
+	 *
+	 * @return The number of groups
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the NUMA node of the memory of this table.
+	 *
+	 * @return The NUMA node, or -1 if the table was placed on first touch
+	 */
+	public int getNumaNodeId() {
+		return this.numaNodeId;
+	}
+
+	/**
+	 * Returns the slot of the given key.
+	 *
+	 * @param key A key
+	 * @return The slot of the key, or -1 if the table does not contain it
+	 */
+	public int find(final double key) {
+		final long bits = normalize(key);
+		final MemorySegment slots = this.slots;
+		final long capacity = capacity();
+		final int mask = (int) capacity - 1;
+		for (int slot = hash(bits, this.order);; slot = (slot + 1) & mask) {
+			if (slots.getAtIndex(JAVA_LONG, capacity + slot) == 0) {
+				return -1;
+			} else if (slots.getAtIndex(JAVA_LONG, slot) == bits) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Returns the key of a slot.
+	 *
+	 * @param slot A slot
+	 * @return The key of the slot
+	 */
+	public double getKey(final int slot) {
+		return Double.longBitsToDouble(this.slots.getAtIndex(JAVA_LONG, slot));
+	}
+
+	/**
+	 * Returns the number of values aggregated in a slot.
+	 *
+	 * @param slot A slot
+	 * @return The number of values, 0 if the slot is empty
+	 */
+	public long getCount(final int slot) {
+		return this.slots.getAtIndex(JAVA_LONG, capacity() + slot);
+	}
+
+	/**
+	 * Returns the sum of the values aggregated in a slot.
+	 *
+	 * @param slot A non-empty slot
+	 * @return The sum of the values
+	 */
+	public double getSum(final int slot) {
+		return this.slots.getAtIndex(JAVA_DOUBLE, 2 * capacity() + slot);
+	}
+
+	/**
+	 * Returns the minimum of the values aggregated in a slot.
+	 *
+	 * @param slot A non-empty slot
+	 * @return The minimum of the values
+	 */
+	public double getMin(final int slot) {
+		return this.slots.getAtIndex(JAVA_DOUBLE, 3 * capacity() + slot);
+	}
+
+	/**
+	 * Returns the maximum of the values aggregated in a slot.
+	 *
+	 * @param slot A non-empty slot
+	 * @return The maximum of the values
+	 */
+	public double getMax(final int slot) {
+		return this.slots.getAtIndex(JAVA_DOUBLE, 4 * capacity() + slot);
+	}
+
+	/**
+	 * Returns the number of slots of this table, to iterate over them with the getters of the slots.
+	 *
+	 * @return The number of slots
+	 */
+	public int capacity() {
+		return 1 << this.order;
+	}
+
+	/**
+	 * Frees the memory of this table. The table must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		this.arena.close();
+	}
+
+	/**
+	 * Returns the slot of the given key, inserting the key in an empty slot if the table does not contain it yet.
+	 *
+	 * @param bits The normalized bits of the key
+	 * @return The slot of the key
+	 */
+	protected int findOrInsert(final long bits) {
+		if (2 * (this.size + 1) > capacity()) {
+			rehash(this.order + 1);
+		}
+		final MemorySegment slots = this.slots;
+		final long capacity = capacity();
+		final int mask = (int) capacity - 1;
+		for (int slot = hash(bits, this.order);; slot = (slot + 1) & mask) {
+			if (slots.getAtIndex(JAVA_LONG, capacity + slot) == 0) {
+				slots.setAtIndex(JAVA_LONG, slot, bits);
+				slots.setAtIndex(JAVA_DOUBLE, 3 * capacity + slot, Double.POSITIVE_INFINITY);
+				slots.setAtIndex(JAVA_DOUBLE, 4 * capacity + slot, Double.NEGATIVE_INFINITY);
+				++this.size;
+				return slot;
+			} else if (slots.getAtIndex(JAVA_LONG, slot) == bits) {
+				return slot;
+			}
+		}
+	}
+
+	/**
+	 * Moves the aggregates into a new memory segment with the given number of slots, and frees the previous one.
+	 *
+	 * @param order The base-2 log of the new number of slots
+	 */
+	protected void rehash(final int order) {
+		final Arena previousArena = this.arena;
+		final MemorySegment previousSlots = this.slots;
+		final long previousCapacity = capacity();
+		allocate(order);
+		final MemorySegment slots = this.slots;
+		final long capacity = capacity();
+		final int mask = (int) capacity - 1;
+		for (long s = 0; s < previousCapacity; ++s) {
+			final long count = previousSlots.getAtIndex(JAVA_LONG, previousCapacity + s);
+			if (count == 0) {
+				continue;
+			}
+			final long bits = previousSlots.getAtIndex(JAVA_LONG, s);
+			int slot = hash(bits, order);
+			while (slots.getAtIndex(JAVA_LONG, capacity + slot) != 0) {
+				slot = (slot + 1) & mask;
+			}
+			for (int field = 0; field < FIELD_COUNT; ++field) {
+				slots.setAtIndex(
+						JAVA_LONG,
+						field * capacity + slot,
+						previousSlots.getAtIndex(JAVA_LONG, field * previousCapacity + s));
+			}
+		}
+		previousArena.close();
+	}
+
+	/**
+	 * Allocates zeroed slots on the node of this table.
+	 *
+	 * @param order The base-2 log of the number of slots
+	 */
+	protected void allocate(final int order) {
+		final long size = (long) FIELD_COUNT * Long.BYTES << order;
+		final Arena arena = Arena.ofShared();
+		this.slots = PlatformUtil.allocateOnNode(arena, size, this.numaNodeId);
+		this.arena = arena;
+		this.order = order;
+	}
+
+	/**
+	 * Returns the bits of a key, with {@code -0.0} mapped to {@code 0.0} and the {@code NaN} values to the
+	 * canonical one.
+	 */
+	protected static long normalize(final double key) {
+		return key == 0 ? 0L : Double.doubleToLongBits(key);
+	}
+
+	/**
+	 * Returns the initial slot of a key, from the upper bits of the Fibonacci hash of its bits.
+	 */
+	protected static int hash(final long bits, final int order) {
+		return (int) ((bits * 0x9E3779B97F4A7C15L) >>> (Long.SIZE - order));
+	}
+}
@@ -0,0 +1,353 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import com.activeviam.experiments.loom.numa.util.UnsafeUtil;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A NUMA-aware pool of {@link DirectChunkDouble chunks}.
+ * <p>
+ * When a pooled chunk is closed (or cleaned after being garbage collected), its memory is not unmapped but kept
+ * in a free list of its NUMA node and size, so that the next chunk of the same size on the same node can reuse it
+ * without any system call, page fault or TLB shootdown.
+ * <p>
+ * The retention is bounded: when the memory retained for a node would exceed
+ * {@link #getMaxRetainedBytesPerNode()}, the least recently released block of that node is freed. Blocks that
+ * stay unused can be {@link #trim(long) trimmed}: their physical pages are returned to the system with
+ * {@code MADV_DONTNEED} while their mapping (and its NUMA policy) is kept for later reuse.
+ *
+ * @author ActiveViam
+ */
+public class ChunkPool {
+
+	/** Prefix of the system properties configuring the {@link #getDefault() default pool}. */
+	public static final String PROPERTY_PREFIX = "com.activeviam.experiments.loom.numa.data.pool";
+
+	/** Default value of {@link #getMaxRetainedBytesPerNode()} for the default pool. */
+	public static final long DEFAULT_MAX_RETAINED_BYTES_PER_NODE = 1L << 30; // 1GB
+
+	protected static final sun.misc.Unsafe UNSAFE = UnsafeUtil.getUnsafe();
+
+	/** The default pool, created lazily. */
+	protected static volatile ChunkPool DEFAULT;
+
+	/** The maximum number of bytes kept in the free lists of one node. */
+	protected final long maxRetainedBytesPerNode;
+
+	/** Whether reused memory is zeroed, as newly mapped memory is. */
+	protected final boolean zeroOnReuse;
+
+	/** The free lists of each node, by block size. The most recently released blocks are first. */
+	protected final List<ConcurrentHashMap<Long, Deque<Block>>> freeLists;
+
+	/** The number of bytes kept in the free lists of each node. */
+	protected final AtomicLong[] retainedBytes;
+
+	protected final LongAdder hits = new LongAdder();
+	protected final LongAdder misses = new LongAdder();
+	protected final LongAdder releases = new LongAdder();
+	protected final LongAdder evictions = new LongAdder();
+	protected final LongAdder trimmedBytes = new LongAdder();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param maxRetainedBytesPerNode The maximum number of bytes kept in the free lists of one node
+	 * @param zeroOnReuse Whether reused memory is zeroed before being handed to a new chunk
+	 */
+	public ChunkPool(final long maxRetainedBytesPerNode, final boolean zeroOnReuse) {
+		this.maxRetainedBytesPerNode = maxRetainedBytesPerNode;
+		this.zeroOnReuse = zeroOnReuse;
+
+		final int nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		this.freeLists = new ArrayList<>(nodeCount);
+		this.retainedBytes = new AtomicLong[nodeCount];
+		for (int node = 0; node < nodeCount; ++node) {
+			this.freeLists.add(new ConcurrentHashMap<>());
+			this.retainedBytes[node] = new AtomicLong();
+		}
+	}
+
+	/**
+	 * Returns the default pool, configured by the {@code maxRetainedBytesPerNode} and {@code zeroOnReuse} system
+	 * properties (prefixed by {@link #PROPERTY_PREFIX}).
+	 *
+	 * @return The default pool
+	 */
+	public static ChunkPool getDefault() {
+		if (DEFAULT == null) {
+			synchronized (ChunkPool.class) {
+				if (DEFAULT == null) {
+					final String maxRetainedValue = System.getProperty(PROPERTY_PREFIX + ".maxRetainedBytesPerNode");
+					final String zeroOnReuseValue = System.getProperty(PROPERTY_PREFIX + ".zeroOnReuse");
+					DEFAULT = new ChunkPool(
+							maxRetainedValue != null
+									? Long.parseLong(maxRetainedValue)
+									: DEFAULT_MAX_RETAINED_BYTES_PER_NODE,
+							zeroOnReuseValue == null || Boolean.parseBoolean(zeroOnReuseValue));
+				}
+			}
+		}
+		return DEFAULT;
+	}
+
+	/**
+	 * Returns a chunk of the given capacity on the given NUMA node, reusing pooled memory if possible.
+	 * <p>
+	 * {@link DirectChunkDouble#close() Closing} the chunk returns its memory to this pool.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node of the chunk, or a negative value for the node of the current thread
+	 * @return The chunk
+	 */
+	public DirectChunkDouble acquire(final int capacity, final int numaNodeId) {
+		final int node = numaNodeId < 0 ? IPlatform.CURRENT_PLATFORM.getCurrentNumaNode() : numaNodeId;
+		final long size = (long) capacity * DirectChunkDouble.ELEMENT_SIZE;
+
+		final Deque<Block> freeList = this.freeLists.get(node).get(size);
+		Block block = freeList == null ? null : freeList.pollFirst();
+		if (block != null) {
+			this.retainedBytes[node].addAndGet(-size);
+			this.hits.increment();
+			if (this.zeroOnReuse && !block.trimmed) {
+				UNSAFE.setMemory(block.address, size, (byte) 0);
+			}
+			block.trimmed = false;
+		} else {
+			this.misses.increment();
+			block = new Block(allocate(size, node), size, node);
+		}
+
+		final Block acquired = block;
+		final DirectChunkDouble.Destructor destructor = new DirectChunkDouble.Destructor(
+				acquired.address,
+				(Long addr) -> {
+					release(acquired);
+					return null;
+				}
+		);
+		return new PooledChunkDouble(capacity, acquired, destructor);
+	}
+
+	/**
+	 * Puts a block back into the free list of its node, evicting the least recently released blocks of that node
+	 * if the retention bound is exceeded.
+	 *
+	 * @param block The released block
+	 */
+	protected void release(final Block block) {
+		this.releases.increment();
+		block.releaseTimeNs = System.nanoTime();
+
+		final int node = block.numaNodeId;
+		if (block.size > this.maxRetainedBytesPerNode) {
+			this.evictions.increment();
+			free(block);
+			return;
+		}
+
+		this.freeLists.get(node).computeIfAbsent(block.size, size -> new ConcurrentLinkedDeque<>()).addFirst(block);
+		long retained = this.retainedBytes[node].addAndGet(block.size);
+		while (retained > this.maxRetainedBytesPerNode) {
+			final Block evicted = pollLeastRecentlyReleased(node);
+			if (evicted == null) {
+				break;
+			}
+			this.evictions.increment();
+			free(evicted);
+			retained = this.retainedBytes[node].addAndGet(-evicted.size);
+		}
+	}
+
+	/**
+	 * Returns the physical memory of the blocks released more than {@code minIdleNanos} ago to the system, using
+	 * {@code MADV_DONTNEED}. The blocks stay in the pool. On platforms without {@code madvise}, such blocks are
+	 * freed instead.
+	 *
+	 * @param minIdleNanos The minimum time since the release of a block for it to be trimmed
+	 * @return The number of trimmed bytes
+	 */
+	public long trim(final long minIdleNanos) {
+		final long now = System.nanoTime();
+		long trimmed = 0;
+		for (int node = 0; node < this.freeLists.size(); ++node) {
+			for (Deque<Block> freeList : this.freeLists.get(node).values()) {
+				for (Iterator<Block> it = freeList.iterator(); it.hasNext(); ) {
+					final Block block = it.next();
+					if (block.trimmed || now - block.releaseTimeNs < minIdleNanos) {
+						continue;
+					}
+					// Take the block out of the free list so that it cannot be acquired while being trimmed
+					if (!freeList.removeFirstOccurrence(block)) {
+						continue;
+					}
+					if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform
+							&& platform.adviseDontNeed(block.address, block.size)) {
+						block.trimmed = true;
+						freeList.addLast(block);
+					} else {
+						this.retainedBytes[node].addAndGet(-block.size);
+						this.evictions.increment();
+						free(block);
+					}
+					trimmed += block.size;
+				}
+			}
+		}
+		this.trimmedBytes.add(trimmed);
+		return trimmed;
+	}
+
+	/**
+	 * Frees all the blocks retained by this pool.
+	 */
+	public void clear() {
+		for (int node = 0; node < this.freeLists.size(); ++node) {
+			for (Deque<Block> freeList : this.freeLists.get(node).values()) {
+				Block block;
+				while ((block = freeList.pollFirst()) != null) {
+					this.retainedBytes[node].addAndGet(-block.size);
+					free(block);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the maximum number of bytes kept in the free lists of one node.
+	 *
+	 * @return The retention bound of a node
+	 */
+	public long getMaxRetainedBytesPerNode() {
+		return this.maxRetainedBytesPerNode;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of this pool.
+	 *
+	 * @return The statistics
+	 */
+	public Statistics getStatistics() {
+		long retained = 0;
+		for (AtomicLong nodeRetained : this.retainedBytes) {
+			retained += nodeRetained.get();
+		}
+		return new Statistics(
+				this.hits.sum(),
+				this.misses.sum(),
+				this.releases.sum(),
+				this.evictions.sum(),
+				this.trimmedBytes.sum(),
+				retained);
+	}
+
+	/**
+	 * The statistics of a pool.
+	 *
+	 * @param hits The number of chunks acquired with pooled memory
+	 * @param misses The number of chunks acquired with newly allocated memory
+	 * @param releases The number of chunks released to the pool
+	 * @param evictions The number of blocks freed to respect the retention bound, or because they were trimmed
+	 * @param trimmedBytes The number of bytes returned to the system with {@code MADV_DONTNEED}
+	 * @param retainedBytes The number of bytes currently kept by the pool
+	 */
+	public record Statistics(
+			long hits,
+			long misses,
+			long releases,
+			long evictions,
+			long trimmedBytes,
+			long retainedBytes) {
+
+		/**
+		 * Returns the ratio of acquisitions served by pooled memory.
+		 *
+		 * @return The hit ratio, between 0 and 1
+		 */
+		public double hitRatio() {
+			final long acquisitions = hits + misses;
+			return acquisitions == 0 ? 0 : (double) hits / acquisitions;
+		}
+	}
+
+	protected Block pollLeastRecentlyReleased(final int node) {
+		Block oldest = null;
+		Deque<Block> oldestList = null;
+		for (Deque<Block> freeList : this.freeLists.get(node).values()) {
+			final Block last = freeList.peekLast();
+			if (last != null && (oldest == null || last.releaseTimeNs < oldest.releaseTimeNs)) {
+				oldest = last;
+				oldestList = freeList;
+			}
+		}
+		return (oldest != null && oldestList.removeLastOccurrence(oldest)) ? oldest : null;
+	}
+
+	protected static long allocate(final long size, final int node) {
+		if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform && platform.isNumaAvailable()) {
+			return platform.numaAllocOnNode(size, node);
+		}
+		return IPlatform.CURRENT_PLATFORM.mmapAnon(size);
+	}
+
+	protected static void free(final Block block) {
+		if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform && platform.isNumaAvailable()) {
+			platform.numaFree(block.address, block.size);
+		} else {
+			IPlatform.CURRENT_PLATFORM.munmap(block.address, block.size);
+		}
+	}
+
+	/**
+	 * A chunk whose memory is a block of the pool. When the chunk is migrated, its block follows it, so that it is
+	 * released to the free list of its new node.
+	 */
+	protected static class PooledChunkDouble extends DirectChunkDouble {
+
+		/** The block of the chunk. It does not reference the chunk, which can therefore be cleaned. */
+		protected final Block block;
+
+		protected PooledChunkDouble(int capacity, Block block, Runnable destructor) {
+			super(capacity, block.numaNodeId, block.address, destructor);
+			this.block = block;
+		}
+
+		@Override
+		public long migrateTo(int node) {
+			final long movedBytes = super.migrateTo(node);
+			this.block.numaNodeId = this.numaNodeId;
+			return movedBytes;
+		}
+	}
+
+	/**
+	 * A block of native memory owned by the pool.
+	 */
+	protected static class Block {
+		protected final long address;
+		protected final long size;
+
+		/** The NUMA node of this block, which changes when the chunk using it is migrated. */
+		protected volatile int numaNodeId;
+
+		/** When this block was last released to the pool. */
+		protected volatile long releaseTimeNs;
+
+		/** Whether the physical pages of this block were returned to the system since its last release. */
+		protected volatile boolean trimmed;
+
+		protected Block(long address, long size, int numaNodeId) {
+			this.address = address;
+			this.size = size;
+			this.numaNodeId = numaNodeId;
+		}
+	}
+}
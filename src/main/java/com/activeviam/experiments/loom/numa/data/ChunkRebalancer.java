@@ -0,0 +1,210 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Migrates the chunks of {@link MigratingColumnDouble migrating columns} to the NUMA node that reads them most.
+ * <p>
+ * Each {@link #rebalance() rebalancing} goes through the chunks of the registered columns, elects the node that
+ * accounts for at least {@link #getMinShare()} of the recorded accesses of a chunk, and moves the pages of the chunk
+ * to that node with {@code move_pages()}. The migrations are rate-limited: at most {@link #getMaxBytesPerPass()}
+ * bytes are moved by a rebalancing, the other chunks waiting for the next one. The access counters are halved after
+ * each rebalancing.
+ * <p>
+ * The rebalancings can be run periodically by a background daemon thread, see {@link #start(long, TimeUnit)}.
+ *
+ * @author ActiveViam
+ */
+public class ChunkRebalancer implements AutoCloseable {
+
+	/** Default value of {@link #getMinShare()}. */
+	public static final double DEFAULT_MIN_SHARE = 0.5;
+
+	/** Default value of {@link #getMaxBytesPerPass()}. */
+	public static final long DEFAULT_MAX_BYTES_PER_PASS = 1L << 30; // 1GB
+
+	protected static final Logger LOGGER = Logger.getLogger(ChunkRebalancer.class.getName());
+
+	/** The minimum share of the accesses of a chunk from a node for the chunk to be moved to that node. */
+	protected final double minShare;
+
+	/** The minimum number of recorded rows of a chunk to consider moving it, in number of chunk scans. */
+	protected final double minScans;
+
+	/** The maximum number of bytes moved by a rebalancing. */
+	protected final long maxBytesPerPass;
+
+	/** The registered columns. */
+	protected final Set<MigratingColumnDouble> columns = ConcurrentHashMap.newKeySet();
+
+	/** The background thread running the rebalancings, if {@link #start started}. */
+	protected ScheduledExecutorService scheduler;
+
+	protected final LongAdder passes = new LongAdder();
+	protected final LongAdder migratedChunks = new LongAdder();
+	protected final LongAdder movedBytes = new LongAdder();
+	protected final LongAdder deferredChunks = new LongAdder();
+
+	/**
+	 * Constructor.
+	 *
+	 * @param minShare The minimum share of the accesses of a chunk from a node for the chunk to be moved to that
+	 *        node, between 0 and 1
+	 * @param minScans The minimum number of recorded rows of a chunk to consider moving it, in number of chunk
+	 *        scans
+	 * @param maxBytesPerPass The maximum number of bytes moved by a rebalancing
+	 */
+	public ChunkRebalancer(final double minShare, final double minScans, final long maxBytesPerPass) {
+		this.minShare = minShare;
+		this.minScans = minScans;
+		this.maxBytesPerPass = maxBytesPerPass;
+	}
+
+	/**
+	 * Constructor, with the default settings: a chunk is moved to a node after having been scanned at least once,
+	 * mostly from that node.
+	 */
+	public ChunkRebalancer() {
+		this(DEFAULT_MIN_SHARE, 1, DEFAULT_MAX_BYTES_PER_PASS);
+	}
+
+	/**
+	 * Registers a column whose chunks are rebalanced.
+	 *
+	 * @param column The column
+	 */
+	public void register(final MigratingColumnDouble column) {
+		this.columns.add(column);
+	}
+
+	/**
+	 * Unregisters a column.
+	 *
+	 * @param column The column
+	 */
+	public void unregister(final MigratingColumnDouble column) {
+		this.columns.remove(column);
+	}
+
+	/**
+	 * Starts rebalancing the registered columns periodically, in a background daemon thread.
+	 *
+	 * @param period The time between two rebalancings
+	 * @param unit The unit of the period
+	 */
+	public synchronized void start(final long period, final TimeUnit unit) {
+		if (this.scheduler != null) {
+			throw new IllegalStateException("The rebalancer is already started.");
+		}
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+			final Thread thread = new Thread(task, "ChunkRebalancer");
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.scheduler.scheduleWithFixedDelay(() -> {
+			try {
+				rebalance();
+			} catch (RuntimeException e) {
+				LOGGER.log(Level.WARNING, "Failed to rebalance the chunks", e);
+			}
+		}, period, period, unit);
+	}
+
+	/**
+	 * Moves the chunks of the registered columns to the node that reads them most, within the
+	 * {@link #getMaxBytesPerPass() byte budget} of a rebalancing.
+	 *
+	 * @return The number of bytes moved
+	 */
+	public long rebalance() {
+		long budget = this.maxBytesPerPass;
+		long moved = 0;
+		for (MigratingColumnDouble column : this.columns) {
+			final long chunkSize = (long) column.getChunkCapacity() * DirectChunkDouble.ELEMENT_SIZE;
+			final long minAccesses = (long) (this.minScans * column.getChunkCapacity());
+			final IChunkDouble[] chunks = column.acquireChunks();
+			for (int c = 0; c < chunks.length; ++c) {
+				final int node = column.getPreferredNode(c, minAccesses, this.minShare);
+				if (node < 0 || node == chunks[c].getNumaNodeId() || !(chunks[c] instanceof DirectChunkDouble)) {
+					continue;
+				}
+				if (budget < chunkSize) {
+					this.deferredChunks.increment();
+					continue;
+				}
+				final long chunkMoved = column.migrateChunk(c, node);
+				budget -= chunkSize;
+				moved += chunkMoved;
+				this.migratedChunks.increment();
+				if (LOGGER.isLoggable(Level.FINE)) {
+					LOGGER.fine("Moved " + chunkMoved + " bytes of chunk " + c + " of " + column + " to node " + node);
+				}
+			}
+			column.decayAccesses();
+		}
+		this.passes.increment();
+		this.movedBytes.add(moved);
+		return moved;
+	}
+
+	/**
+	 * Returns the minimum share of the accesses of a chunk from a node for the chunk to be moved to that node.
+	 *
+	 * @return The minimum share, between 0 and 1
+	 */
+	public double getMinShare() {
+		return this.minShare;
+	}
+
+	/**
+	 * Returns the maximum number of bytes moved by a rebalancing.
+	 *
+	 * @return The byte budget of a rebalancing
+	 */
+	public long getMaxBytesPerPass() {
+		return this.maxBytesPerPass;
+	}
+
+	/**
+	 * Returns a snapshot of the statistics of this rebalancer.
+	 *
+	 * @return The statistics
+	 */
+	public Statistics getStatistics() {
+		return new Statistics(
+				this.passes.sum(),
+				this.migratedChunks.sum(),
+				this.movedBytes.sum(),
+				this.deferredChunks.sum());
+	}
+
+	/**
+	 * Stops the periodic rebalancings, if they were started.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.scheduler != null) {
+			this.scheduler.shutdownNow();
+			this.scheduler = null;
+		}
+	}
+
+	/**
+	 * The statistics of a rebalancer.
+	 *
+	 * @param passes The number of rebalancings
+	 * @param migratedChunks The number of chunks moved to another node
+	 * @param movedBytes The number of bytes actually moved, which excludes the pages that were already on the
+	 *        target node or that have not been faulted
+	 * @param deferredChunks The number of times a chunk was not moved because of the byte budget of a rebalancing
+	 */
+	public record Statistics(long passes, long migratedChunks, long movedBytes, long deferredChunks) {
+	}
+}
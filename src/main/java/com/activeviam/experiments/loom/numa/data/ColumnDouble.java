@@ -1,50 +1,114 @@
 package com.activeviam.experiments.loom.numa.data;
 
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import com.activeviam.experiments.loom.numa.data.compressed.ACompressedChunkDouble;
+import com.activeviam.experiments.loom.numa.data.compressed.ChunkEncoder;
 import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import java.lang.foreign.MemorySegment;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.Objects;
 import java.util.function.Function;
 
 /**
  * A column of {@code double} values.
  * <p>
  * This column stores its data in {@link IChunkDouble chunks} and can be {@link #ensureCapacity(int)
- * expanded} as more data is stored in it.
+ * expanded} as more data is stored in it. Ranges of values can be transferred in bulk from or to arrays, memory
+ * segments and other columns, chunk by chunk. Filters {@link #select(PredicateDouble) select} rows into off-heap
+ * bitmaps that aggregations such as {@link #sum(SelectionBitmap)} consume. {@link #close() Closing} the column
+ * releases its chunks right away instead of waiting for them to be garbage collected.
+ * <p>
+ * Once fully written, a column can be {@link #seal() sealed}: its chunks are then replaced by compressed, read-only
+ * ones, which its scans decode in streaming blocks.
+ * <p>
+ * Each chunk can also have a {@link ZoneMap zone map}, computed when the column is sealed or by
+ * {@link #computeZoneMaps()}, and dropped when the chunk is written. The scans then skip the chunks whose values
+ * are all outside of their range, and answer from the zone map alone for the chunks whose values are all inside:
+ * these chunks are not read at all, which saves the most when they are on a remote node.
  *
  * @author ActiveViam
  */
-public class ColumnDouble {
+public class ColumnDouble implements AutoCloseable {
 
 	/** The size of a chunk. */
 	public static final int CHUNK_SIZE = 1 << 20; // ~1M rows
 
-	/** Data chunks. */
+	/** The largest capacity of a chunk, whose values take 8GB. */
+	public static final int MAX_CHUNK_CAPACITY = 1 << 30;
+
+	/**
+	 * Data chunks. Growing the column publishes a new array with a release store, and readers load it with
+	 * {@link #acquireChunks()}, so they always see the chunks it references fully created.
+	 */
 	protected IChunkDouble[] chunks;
 
+	/** Handle on {@link #chunks}, for its release stores and acquire loads. */
+	protected static final VarHandle CHUNKS;
+
+	static {
+		try {
+			CHUNKS = MethodHandles.lookup().findVarHandle(ColumnDouble.class, "chunks", IChunkDouble[].class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
 	/** Chunk order (the base-2 log of the chunk capacity). */
 	protected int chunkOrder;
 
 	/** Mask to extract positions within chunks. */
 	protected int chunkMask;
 
-	/** This columns's capacity. */
-	protected int capacity;
+	/** This columns's capacity, which can exceed {@link Integer#MAX_VALUE} rows. */
+	protected long capacity;
 
+	/**
+	 * The zone map of each chunk, {@code null} for the chunks without one, or {@code null} if no zone map was
+	 * computed.
+	 */
+	protected ZoneMap[] zoneMaps;
+
+	/** Creates the chunks, given their capacity, or {@code null} if the subclass creates them itself. */
 	protected final Function<Integer, IChunkDouble> chunkFactory;
 
 	/**
 	 * Constructor.
 	 *
-	 * @param chunkCapacity The target capacity of a chunk
+	 * @param chunkCapacity The target capacity of a chunk, at most {@link #MAX_CHUNK_CAPACITY}
+	 * @param chunkFactory Creates the chunks, given their capacity
 	 */
 	public ColumnDouble(final long chunkCapacity, final Function<Integer, IChunkDouble> chunkFactory) {
+		this.chunkFactory = Objects.requireNonNull(chunkFactory, "chunkFactory");
+		initialize(chunkCapacity);
+	}
+
+	/**
+	 * Constructor of the subclasses creating their chunks themselves, by overriding
+	 * {@link #createChunk(int, int)}.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk, at most {@link #MAX_CHUNK_CAPACITY}
+	 */
+	protected ColumnDouble(final long chunkCapacity) {
+		this.chunkFactory = null;
+		initialize(chunkCapacity);
+	}
+
+	private void initialize(final long chunkCapacity) {
+		if (chunkCapacity < 1 || chunkCapacity > MAX_CHUNK_CAPACITY) {
+			throw new IllegalArgumentException(
+					"The capacity of a chunk must be within [1, " + MAX_CHUNK_CAPACITY + "], was " + chunkCapacity);
+		}
 		// Compute the chunk order (i.e. the smallest integer k
 		// such as 2^k >= chunkCapacity)
-		final int chunkOrder = (int) (32 - Long.numberOfLeadingZeros(chunkCapacity - 1));
+		final int chunkOrder = 64 - Long.numberOfLeadingZeros(chunkCapacity - 1);
 		this.chunkOrder = chunkOrder;
 		this.chunkMask = (1 << chunkOrder) - 1;
 
-		this.chunkFactory = chunkFactory;
-
 		// Initialize the first chunk
 		setChunkCount(0);
 		recomputeCapacity();
@@ -57,7 +121,17 @@ public class ColumnDouble {
 	 * @return The value stored at this position
 	 */
 	public double readDouble(final int position) {
-		return this.chunks[chunkId(position)].readDouble(chunkPosition(position));
+		return readChunks()[chunkId(position)].readDouble(chunkPosition(position));
+	}
+
+	/**
+	 * Reads the value stored at the given position, which can exceed {@link Integer#MAX_VALUE}.
+	 *
+	 * @param position A row position in this column
+	 * @return The value stored at this position
+	 */
+	public double readDouble(final long position) {
+		return readChunks()[chunkId(position)].readDouble(chunkPosition(position));
 	}
 
 	/**
@@ -67,7 +141,190 @@ public class ColumnDouble {
 	 * @param value A value
 	 */
 	public void writeDouble(final int position, final double value) {
-		this.chunks[chunkId(position)].writeDouble(chunkPosition(position), value);
+		final int chunkId = chunkId(position);
+		acquireChunks()[chunkId].writeDouble(chunkPosition(position), value);
+		invalidateZoneMaps(chunkId, chunkId + 1);
+	}
+
+	/**
+	 * Writes the given value at the specified position, which can exceed {@link Integer#MAX_VALUE}. Subclasses
+	 * overriding {@link #writeDouble(int, double)} override this method too.
+	 *
+	 * @param position A row position in this column
+	 * @param value A value
+	 */
+	public void writeDouble(final long position, final double value) {
+		final int chunkId = chunkId(position);
+		acquireChunks()[chunkId].writeDouble(chunkPosition(position), value);
+		invalidateZoneMaps(chunkId, chunkId + 1);
+	}
+
+	/**
+	 * Reads consecutive values of this column into an array. The range can span several chunks, each one is read
+	 * with {@link IChunkDouble#readDoubles(int, double[], int, int)}.
+	 *
+	 * @param position The row position of the first value to read
+	 * @param destination The array receiving the values
+	 * @param offset The index in {@code destination} of the first value
+	 * @param length The number of values to read
+	 */
+	public void readDoubles(long position, final double[] destination, int offset, int length) {
+		final IChunkDouble[] chunks = readChunks();
+		while (length > 0) {
+			final int chunkPosition = chunkPosition(position);
+			final int chunkLength = Math.min(length, getChunkCapacity() - chunkPosition);
+			chunks[chunkId(position)].readDoubles(chunkPosition, destination, offset, chunkLength);
+			position += chunkLength;
+			offset += chunkLength;
+			length -= chunkLength;
+		}
+	}
+
+	/**
+	 * Writes consecutive values of an array into this column, which must be large enough to store them.
+	 *
+	 * @param position The row position of the first value to write
+	 * @param source The array holding the values
+	 * @param offset The index in {@code source} of the first value
+	 * @param length The number of values to write
+	 * @see #readDoubles(long, double[], int, int)
+	 */
+	public void writeDoubles(long position, final double[] source, int offset, int length) {
+		final long first = position;
+		final long last = position + length;
+		final IChunkDouble[] chunks = acquireChunks();
+		while (length > 0) {
+			final int chunkPosition = chunkPosition(position);
+			final int chunkLength = Math.min(length, getChunkCapacity() - chunkPosition);
+			chunks[chunkId(position)].writeDoubles(chunkPosition, source, offset, chunkLength);
+			position += chunkLength;
+			offset += chunkLength;
+			length -= chunkLength;
+		}
+		rowsWritten(first, last);
+	}
+
+	/**
+	 * Reads consecutive values of this column into a memory segment, in the native byte order.
+	 *
+	 * @param position The row position of the first value to read
+	 * @param destination The segment receiving the values
+	 * @param offset The offset in {@code destination} of the first value, in bytes
+	 * @param length The number of values to read
+	 * @see #readDoubles(long, double[], int, int)
+	 */
+	public void readDoubles(long position, final MemorySegment destination, long offset, int length) {
+		final IChunkDouble[] chunks = readChunks();
+		while (length > 0) {
+			final int chunkPosition = chunkPosition(position);
+			final int chunkLength = Math.min(length, getChunkCapacity() - chunkPosition);
+			chunks[chunkId(position)].readDoubles(chunkPosition, destination, offset, chunkLength);
+			position += chunkLength;
+			offset += (long) chunkLength * Double.BYTES;
+			length -= chunkLength;
+		}
+	}
+
+	/**
+	 * Writes consecutive values of a memory segment, in the native byte order, into this column.
+	 *
+	 * @param position The row position of the first value to write
+	 * @param source The segment holding the values
+	 * @param offset The offset in {@code source} of the first value, in bytes
+	 * @param length The number of values to write
+	 * @see #writeDoubles(long, double[], int, int)
+	 */
+	public void writeDoubles(long position, final MemorySegment source, long offset, int length) {
+		final long first = position;
+		final long last = position + length;
+		final IChunkDouble[] chunks = acquireChunks();
+		while (length > 0) {
+			final int chunkPosition = chunkPosition(position);
+			final int chunkLength = Math.min(length, getChunkCapacity() - chunkPosition);
+			chunks[chunkId(position)].writeDoubles(chunkPosition, source, offset, chunkLength);
+			position += chunkLength;
+			offset += (long) chunkLength * Double.BYTES;
+			length -= chunkLength;
+		}
+		rowsWritten(first, last);
+	}
+
+	/**
+	 * Reads consecutive values of this column into the remaining bytes of a buffer, in the native byte order, and
+	 * advances the position of the buffer.
+	 *
+	 * @param position The row position of the first value to read
+	 * @param destination The buffer receiving the values, whose remaining size is a multiple of 8 bytes
+	 */
+	public void readDoubles(final long position, final ByteBuffer destination) {
+		final int length = destination.remaining() / Double.BYTES;
+		readDoubles(position, MemorySegment.ofBuffer(destination), 0, length);
+		destination.position(destination.position() + length * Double.BYTES);
+	}
+
+	/**
+	 * Writes the values of the remaining bytes of a buffer, in the native byte order, into this column, and
+	 * advances the position of the buffer.
+	 *
+	 * @param position The row position of the first value to write
+	 * @param source The buffer holding the values, whose remaining size is a multiple of 8 bytes
+	 */
+	public void writeDoubles(final long position, final ByteBuffer source) {
+		final int length = source.remaining() / Double.BYTES;
+		writeDoubles(position, MemorySegment.ofBuffer(source), 0, length);
+		source.position(source.position() + length * Double.BYTES);
+	}
+
+	/**
+	 * Copies consecutive values of this column into another column, whose chunks may have another capacity.
+	 *
+	 * @param position The row position of the first value to copy
+	 * @param destination The column receiving the values, which must be large enough to store them
+	 * @param destinationPosition The row position in {@code destination} of the first value
+	 * @param length The number of values to copy
+	 */
+	public void copyTo(long position, final ColumnDouble destination, long destinationPosition, int length) {
+		final long first = destinationPosition;
+		final long last = destinationPosition + length;
+		final IChunkDouble[] chunks = readChunks();
+		final IChunkDouble[] destinationChunks = destination.acquireChunks();
+		while (length > 0) {
+			final int chunkPosition = chunkPosition(position);
+			final int destinationChunkPosition = destination.chunkPosition(destinationPosition);
+			final int chunkLength = Math.min(
+					length,
+					Math.min(
+							getChunkCapacity() - chunkPosition,
+							destination.getChunkCapacity() - destinationChunkPosition));
+			chunks[chunkId(position)].copyTo(
+					chunkPosition,
+					destinationChunks[destination.chunkId(destinationPosition)],
+					destinationChunkPosition,
+					chunkLength);
+			position += chunkLength;
+			destinationPosition += chunkLength;
+			length -= chunkLength;
+		}
+		destination.rowsWritten(first, last);
+	}
+
+	/**
+	 * Writes the given value in the given range of rows, which can span several chunks.
+	 *
+	 * @param from The first row of the range (inclusive)
+	 * @param to The last row of the range (exclusive)
+	 * @param value A value
+	 */
+	public void fill(long from, final long to, final double value) {
+		final long first = from;
+		final IChunkDouble[] chunks = acquireChunks();
+		while (from < to) {
+			final int chunkPosition = chunkPosition(from);
+			final int chunkLength = (int) Math.min(to - from, getChunkCapacity() - chunkPosition);
+			chunks[chunkId(from)].fill(chunkPosition, chunkPosition + chunkLength, value);
+			from += chunkLength;
+		}
+		rowsWritten(first, to);
 	}
 
 	/**
@@ -79,19 +336,158 @@ public class ColumnDouble {
 		double result = 0;
 
 		// Go through each chunk and aggregate their data
-		final IChunkDouble[] chunks = this.chunks;
-		final int chunkCapacity = getChunkCapacity();
+		final IChunkDouble[] chunks = readChunks();
 		for (int c = 0, numChunks = chunks.length; c < numChunks; ++c) {
-			final IChunkDouble chunk = chunks[c];
-			for (int r = 0; r < chunkCapacity; ++r) {
-				result += chunk.readDouble(r);
-			}
+			result += chunkSum(c, chunks[c]);
 		}
 
 		// Return the aggregated result
 		return result;
 	}
 
+	/**
+	 * Computes and returns the minimum of all the values stored in this column.
+	 *
+	 * @return The minimum of all the values stored in this column
+	 */
+	public double min() {
+		double result = Double.POSITIVE_INFINITY;
+		final IChunkDouble[] chunks = readChunks();
+		for (int c = 0, numChunks = chunks.length; c < numChunks; ++c) {
+			result = Math.min(result, chunkMin(c, chunks[c]));
+		}
+		return result;
+	}
+
+	/**
+	 * Computes and returns the maximum of all the values stored in this column.
+	 *
+	 * @return The maximum of all the values stored in this column
+	 */
+	public double max() {
+		double result = Double.NEGATIVE_INFINITY;
+		final IChunkDouble[] chunks = readChunks();
+		for (int c = 0, numChunks = chunks.length; c < numChunks; ++c) {
+			result = Math.max(result, chunkMax(c, chunks[c]));
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the values of this column that are within {@code [lower, upper]}.
+	 *
+	 * @param lower The lower bound of the matching values (inclusive)
+	 * @param upper The upper bound of the matching values (inclusive)
+	 * @return The number of matching values
+	 */
+	public long count(final double lower, final double upper) {
+		long result = 0;
+		final IChunkDouble[] chunks = readChunks();
+		for (int c = 0, numChunks = chunks.length; c < numChunks; ++c) {
+			result += chunkCount(c, chunks[c], lower, upper);
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates a predicate on all the values of this column. Each chunk is evaluated by a virtual thread of its
+	 * home NUMA node, which writes the bits of the chunk into a bitmap allocated on the same node. The chunks whose
+	 * zone map is entirely outside or inside of the range of the predicate are not read.
+	 *
+	 * @param predicate The predicate
+	 * @return The selected rows, which must be {@link SelectionBitmap#close() closed} once consumed
+	 */
+	public SelectionBitmap select(final PredicateDouble predicate) {
+		final IChunkDouble[] chunks = readChunks();
+		final int chunkCapacity = getChunkCapacity();
+		final SelectionBitmap selection = new SelectionBitmap(chunks.length, chunkCapacity);
+		try {
+			ParallelUtil.forEach(
+					chunks.length,
+					c -> chunks[c].getNumaNodeId(),
+					c -> {
+						final IChunkDouble chunk = chunks[c];
+						final MemorySegment words = selection.allocateChunk(c, chunk.getNumaNodeId());
+						final ZoneMap zoneMap = getZoneMap(c);
+						if (zoneMap != null && zoneMap.excludes(predicate.lower(), predicate.upper())) {
+							// The bitmap is allocated zeroed
+							return;
+						} else if (zoneMap != null && zoneMap.contains(predicate.lower(), predicate.upper())) {
+							selectAll(words, chunkCapacity);
+							selection.setCardinality(c, chunkCapacity);
+							return;
+						}
+						selection.setCardinality(
+								c,
+								chunk.select(0, chunkCapacity, predicate.lower(), predicate.upper(), words));
+					});
+		} catch (RuntimeException e) {
+			selection.close();
+			throw e;
+		}
+		return selection;
+	}
+
+	/**
+	 * Computes the sum of the values of the rows of a selection of this column. Like for the
+	 * {@link #select(PredicateDouble) selection}, each chunk is summed by a virtual thread of its home node. The
+	 * chunks without selected rows are skipped, and the sum of the chunks with all their rows selected is read from
+	 * their zone map when they have one.
+	 *
+	 * @param selection Rows selected in this column
+	 * @return The sum of the selected values
+	 */
+	public double sum(final SelectionBitmap selection) {
+		final IChunkDouble[] chunks = readChunks();
+		if (selection.getChunkCount() > chunks.length) {
+			throw new IllegalArgumentException(
+					"The selection has more chunks than the column: " + selection.getChunkCount() + " > "
+							+ chunks.length);
+		}
+		final int chunkCapacity = getChunkCapacity();
+		final double[] partials = new double[selection.getChunkCount()];
+		ParallelUtil.forEach(
+				partials.length,
+				c -> chunks[c].getNumaNodeId(),
+				c -> {
+					final int cardinality = selection.getCardinality(c);
+					final ZoneMap zoneMap = getZoneMap(c);
+					if (cardinality == chunkCapacity && zoneMap != null) {
+						partials[c] = zoneMap.sum();
+					} else if (cardinality > 0) {
+						partials[c] = chunks[c].sumSelected(0, chunkCapacity, selection.getChunkWords(c));
+					}
+				});
+		double result = 0;
+		for (double partial : partials) {
+			result += partial;
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the dot product of this column with another column having the same chunk capacity.
+	 *
+	 * @param other The other column
+	 * @return The sum of the products of the values of both columns, over the rows stored in both
+	 */
+	public double dot(final ColumnDouble other) {
+		if (other.chunkOrder != this.chunkOrder) {
+			throw new IllegalArgumentException(
+					"Columns have different chunk capacities: " + getChunkCapacity() + " and "
+							+ other.getChunkCapacity());
+		}
+
+		double result = 0;
+		final IChunkDouble[] chunks = readChunks();
+		final IChunkDouble[] otherChunks = other.readChunks();
+		final int chunkCapacity = getChunkCapacity();
+		for (int c = 0, numChunks = Math.min(chunks.length, otherChunks.length); c < numChunks; ++c) {
+			result += chunks[c].dot(otherChunks[c], 0, chunkCapacity);
+		}
+		return result;
+	}
+
 	/**
 	 * Read all the doubles in the column.
 	 *
@@ -99,7 +495,7 @@ public class ColumnDouble {
 	 */
 	public boolean readAll() {
 		// Go through each chunk and aggregate their data
-		final IChunkDouble[] chunks = this.chunks;
+		final IChunkDouble[] chunks = readChunks();
 		final int chunkCapacity = getChunkCapacity();
 		boolean a = false;
 		for (int c = 0, numChunks = chunks.length; c < numChunks; ++c) {
@@ -122,7 +518,7 @@ public class ColumnDouble {
 	 */
 	public boolean slowReadAll() {
 		// Go through each chunk and aggregate their data
-		final IChunkDouble[] chunks = this.chunks;
+		final IChunkDouble[] chunks = readChunks();
 		final int chunkCapacity = getChunkCapacity();
 		boolean a = false;
 		for (int c = 0, numChunks = chunks.length; c < numChunks; ++c) {
@@ -139,10 +535,179 @@ public class ColumnDouble {
 
 	}
 
+	/**
+	 * Returns whether the rows of this column can be null, see {@link NullableColumnDouble}.
+	 *
+	 * @return {@code false}
+	 */
 	protected boolean isNullAllowed() {
 		return false;
 	}
 
+	/**
+	 * Called by the bulk writes after writing a range of rows, so that subclasses can maintain metadata about the
+	 * written rows. Single-value writes are not reported: subclasses override {@link #writeDouble(int, double)}.
+	 * <p>
+	 * This implementation drops the zone maps of the written chunks.
+	 *
+	 * @param from The first row of the range (inclusive)
+	 * @param to The last row of the range (exclusive)
+	 */
+	protected void rowsWritten(final long from, final long to) {
+		if (from < to) {
+			invalidateZoneMaps(chunkId(from), chunkId(to - 1) + 1);
+		}
+	}
+
+	/**
+	 * Returns the zone map of a chunk.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @return The zone map of the chunk, or {@code null} if it has none
+	 */
+	public ZoneMap getZoneMap(final int chunkId) {
+		final ZoneMap[] zoneMaps = this.zoneMaps;
+		return zoneMaps != null && chunkId < zoneMaps.length ? zoneMaps[chunkId] : null;
+	}
+
+	/**
+	 * Computes the zone maps of the chunks that do not have one, each chunk on a virtual thread of its home node.
+	 * The zone map of a chunk remains valid until the chunk is written.
+	 */
+	public void computeZoneMaps() {
+		final IChunkDouble[] chunks = acquireChunks();
+		final ZoneMap[] zoneMaps = this.zoneMaps == null
+				? new ZoneMap[chunks.length]
+				: Arrays.copyOf(this.zoneMaps, chunks.length);
+		ParallelUtil.forEach(
+				chunks.length,
+				c -> chunks[c].getNumaNodeId(),
+				c -> {
+					if (zoneMaps[c] == null) {
+						zoneMaps[c] = computeZoneMap(c, chunks[c]);
+					}
+				});
+		this.zoneMaps = zoneMaps;
+	}
+
+	/**
+	 * Computes the zone map of a chunk by scanning its values.
+	 *
+	 * @param chunkId The ID of the chunk
+	 * @param chunk The chunk
+	 * @return The zone map of the chunk
+	 */
+	protected ZoneMap computeZoneMap(final int chunkId, final IChunkDouble chunk) {
+		return new ZoneMap(
+				scanMin(chunkId, chunk),
+				scanMax(chunkId, chunk),
+				getValidCount(chunkId),
+				scanSum(chunkId, chunk));
+	}
+
+	/**
+	 * Drops the zone maps of a range of chunks.
+	 *
+	 * @param fromChunk The ID of the first chunk (inclusive)
+	 * @param toChunk The ID of the last chunk (exclusive)
+	 */
+	protected void invalidateZoneMaps(final int fromChunk, final int toChunk) {
+		final ZoneMap[] zoneMaps = this.zoneMaps;
+		if (zoneMaps != null) {
+			for (int c = fromChunk, end = Math.min(toChunk, zoneMaps.length); c < end; ++c) {
+				zoneMaps[c] = null;
+			}
+		}
+	}
+
+	/**
+	 * Returns the sum of the values of a chunk, from its zone map if it has one.
+	 */
+	protected double chunkSum(final int chunkId, final IChunkDouble chunk) {
+		final ZoneMap zoneMap = getZoneMap(chunkId);
+		return zoneMap != null ? zoneMap.sum() : scanSum(chunkId, chunk);
+	}
+
+	/**
+	 * Returns the minimum of the values of a chunk, from its zone map if it has one.
+	 */
+	protected double chunkMin(final int chunkId, final IChunkDouble chunk) {
+		final ZoneMap zoneMap = getZoneMap(chunkId);
+		return zoneMap != null ? zoneMap.min() : scanMin(chunkId, chunk);
+	}
+
+	/**
+	 * Returns the maximum of the values of a chunk, from its zone map if it has one.
+	 */
+	protected double chunkMax(final int chunkId, final IChunkDouble chunk) {
+		final ZoneMap zoneMap = getZoneMap(chunkId);
+		return zoneMap != null ? zoneMap.max() : scanMax(chunkId, chunk);
+	}
+
+	/**
+	 * Counts the values of a chunk within {@code [lower, upper]}, without reading them if its zone map is entirely
+	 * outside or inside of the range.
+	 */
+	protected long chunkCount(final int chunkId, final IChunkDouble chunk, final double lower, final double upper) {
+		final ZoneMap zoneMap = getZoneMap(chunkId);
+		if (zoneMap != null && zoneMap.excludes(lower, upper)) {
+			return 0;
+		} else if (zoneMap != null && zoneMap.contains(lower, upper)) {
+			return zoneMap.count();
+		}
+		return scanCount(chunkId, chunk, lower, upper);
+	}
+
+	/**
+	 * Reads the values of a chunk to compute their sum. Subclasses override the scans of the chunks to leave some
+	 * rows out.
+	 */
+	protected double scanSum(final int chunkId, final IChunkDouble chunk) {
+		return chunk.sum(0, getChunkCapacity());
+	}
+
+	/**
+	 * Reads the values of a chunk to compute their minimum.
+	 */
+	protected double scanMin(final int chunkId, final IChunkDouble chunk) {
+		return chunk.min(0, getChunkCapacity());
+	}
+
+	/**
+	 * Reads the values of a chunk to compute their maximum.
+	 */
+	protected double scanMax(final int chunkId, final IChunkDouble chunk) {
+		return chunk.max(0, getChunkCapacity());
+	}
+
+	/**
+	 * Reads the values of a chunk to count the ones within {@code [lower, upper]}.
+	 */
+	protected long scanCount(final int chunkId, final IChunkDouble chunk, final double lower, final double upper) {
+		return chunk.count(0, getChunkCapacity(), lower, upper);
+	}
+
+	/**
+	 * Returns the number of rows of a chunk holding a value.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @return The capacity of the chunk, as the rows of this column cannot be null
+	 */
+	protected int getValidCount(final int chunkId) {
+		return getChunkCapacity();
+	}
+
+	/**
+	 * Selects all the rows of a chunk in its bitmap.
+	 */
+	protected static void selectAll(final MemorySegment words, final int chunkCapacity) {
+		if (chunkCapacity < Long.SIZE) {
+			words.set(JAVA_LONG, 0, (1L << chunkCapacity) - 1);
+		} else {
+			words.fill((byte) -1);
+		}
+	}
+
 	protected boolean dummyCheck(int r) {
 		return r < 0;
 	}
@@ -167,6 +732,26 @@ public class ColumnDouble {
 		return position & this.chunkMask;
 	}
 
+	/**
+	 * Returns the ID of the chunk that holds the value for the row at the given position.
+	 *
+	 * @param position A global row position in this column, which can exceed {@link Integer#MAX_VALUE}
+	 * @return The ID of the chunk holding this row's value
+	 */
+	protected int chunkId(final long position) {
+		return (int) (position >>> this.chunkOrder);
+	}
+
+	/**
+	 * Returns the position in the chunk corresponding to the given global position.
+	 *
+	 * @param position A global row position in this column, which can exceed {@link Integer#MAX_VALUE}
+	 * @return The position in this chunk of this row
+	 */
+	protected int chunkPosition(final long position) {
+		return (int) position & this.chunkMask;
+	}
+
 	/**
 	 * Makes sure the column has enough room to store the given number of rows.
 	 *
@@ -174,10 +759,27 @@ public class ColumnDouble {
 	 * @return The actual capacity of the column (after expansion)
 	 */
 	public int ensureCapacity(final int capacity) {
+		ensureCapacity((long) capacity);
+		return capacity;
+	}
+
+	/**
+	 * Makes sure the column has enough room to store the given number of rows, which can exceed
+	 * {@link Integer#MAX_VALUE}.
+	 *
+	 * @param capacity The target capacity (in number of rows)
+	 * @return The actual capacity of the column (after expansion)
+	 * @throws IllegalArgumentException if the column would need more than {@link Integer#MAX_VALUE} chunks
+	 */
+	public long ensureCapacity(final long capacity) {
 		if (this.capacity < capacity) {
-			final int targetChunkCount = 1 + chunkId(capacity - 1);
+			final long targetChunkCount = 1 + ((capacity - 1) >>> this.chunkOrder);
+			if (targetChunkCount > Integer.MAX_VALUE) {
+				throw new IllegalArgumentException(
+						"A column with chunks of " + getChunkCapacity() + " rows cannot hold " + capacity + " rows.");
+			}
 			if (getChunkCount() < targetChunkCount) {
-				setChunkCount(targetChunkCount);
+				setChunkCount((int) targetChunkCount);
 				recomputeCapacity();
 			}
 		}
@@ -187,12 +789,48 @@ public class ColumnDouble {
 	/**
 	 * Returns the current capacity of the column, which is the number of rows that can be stored in this column.
 	 *
-	 * @return The capacity of the column (in number of rows)
+	 * @return The capacity of the column (in number of rows), or {@link Integer#MAX_VALUE} if it is larger, see
+	 *         {@link #getLongCapacity()}
 	 */
 	public int getCapacity() {
+		return (int) Math.min(this.capacity, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * Returns the current capacity of the column, which can exceed {@link Integer#MAX_VALUE}.
+	 *
+	 * @return The capacity of the column (in number of rows)
+	 */
+	public long getLongCapacity() {
 		return this.capacity;
 	}
 
+	/**
+	 * Returns the number of bytes used by the values of this column, which is smaller than {@code 8 * capacity}
+	 * once the column is {@link #seal() sealed}.
+	 *
+	 * @return The size of the chunks of this column, in bytes
+	 */
+	public long getSizeInBytes() {
+		return getSizeInBytes(acquireChunks());
+	}
+
+	/**
+	 * Returns the number of bytes used by the values of the given chunks.
+	 *
+	 * @param chunks Chunks
+	 * @return The size of the chunks, in bytes
+	 */
+	protected static long getSizeInBytes(final IChunkDouble[] chunks) {
+		long bytes = 0;
+		for (IChunkDouble chunk : chunks) {
+			bytes += chunk instanceof final ACompressedChunkDouble compressed
+					? compressed.getEncodedSize()
+					: (long) chunk.capacity() * DirectChunkDouble.ELEMENT_SIZE;
+		}
+		return bytes;
+	}
+
 	/**
 	 * Sets the chunk count, either to increase or to reduce this column's capacity.
 	 * <p>
@@ -202,7 +840,7 @@ public class ColumnDouble {
 	 * @param chunkCount The target number of chunks
 	 */
 	protected void setChunkCount(final int chunkCount) {
-		final IChunkDouble[] previousChunks = this.chunks;
+		final IChunkDouble[] previousChunks = acquireChunks();
 		final int previousCount = previousChunks == null ? 0 : previousChunks.length;
 		if (previousCount != chunkCount) {
 			final IChunkDouble[] newChunks = new IChunkDouble[chunkCount];
@@ -210,13 +848,45 @@ public class ColumnDouble {
 				if (i < previousCount) {
 					newChunks[i] = previousChunks[i];
 				} else {
-					newChunks[i] = createChunk(getChunkCapacity());
+					newChunks[i] = createChunk(i, getChunkCapacity());
 				}
 			}
-			this.chunks = newChunks;
+			publishChunks(newChunks);
 		}
 	}
 
+	/**
+	 * Publishes a new chunk array with a release store, so that the threads loading it with
+	 * {@link #acquireChunks()} see the chunks it references fully created.
+	 *
+	 * @param chunks The new chunks
+	 */
+	protected void publishChunks(final IChunkDouble[] chunks) {
+		CHUNKS.setRelease(this, chunks);
+	}
+
+	/**
+	 * Loads the chunk array with acquire semantics: the chunks it references are seen fully initialized, even when
+	 * the array was published by another thread. On x86 this is a plain load.
+	 *
+	 * @return The current chunks
+	 */
+	protected IChunkDouble[] acquireChunks() {
+		return (IChunkDouble[]) CHUNKS.getAcquire(this);
+	}
+
+	/**
+	 * Returns the chunks the reads and the scans of the calling thread go through. The writes always go through
+	 * {@link #acquireChunks()}.
+	 * <p>
+	 * By default both are the same chunks, subclasses can return copies of the chunks closer to the calling thread.
+	 *
+	 * @return The chunks to read
+	 */
+	protected IChunkDouble[] readChunks() {
+		return acquireChunks();
+	}
+
 	/**
 	 * Returns the capacity of a chunk.
 	 *
@@ -232,17 +902,21 @@ public class ColumnDouble {
 	 * @return The number of chunks in this column
 	 */
 	protected int getChunkCount() {
-		final IChunkDouble[] chunks = this.chunks;
+		final IChunkDouble[] chunks = acquireChunks();
 		return chunks == null ? 0 : chunks.length;
 	}
 
 	/**
-	 * Creates a new chunk.
+	 * Creates the chunk with the given ID.
+	 * <p>
+	 * By default the chunk is created by the chunk factory of the column and does not depend on its ID. Subclasses
+	 * can override this method to create or place chunks differently, in which case they do not need a chunk factory.
 	 *
+	 * @param chunkId The ID of the chunk in this column
 	 * @param capacity The requested chunk's capacity
 	 * @return A newly created chunk
 	 */
-	protected IChunkDouble createChunk(final int capacity) {
+	protected IChunkDouble createChunk(final int chunkId, final int capacity) {
 		return chunkFactory.apply(capacity);
 	}
 
@@ -254,7 +928,97 @@ public class ColumnDouble {
 	 * @see #setChunkCount(int)
 	 */
 	protected void recomputeCapacity() {
-		this.capacity = getChunkCount() * getChunkCapacity();
+		this.capacity = (long) getChunkCount() * getChunkCapacity();
+	}
+
+	/**
+	 * Seals this column: each chunk is replaced by a compressed, read-only copy using the encoding that suits its
+	 * values best (see {@link ChunkEncoder#seal(IChunkDouble)}), and the replaced chunks are closed.
+	 * <p>
+	 * The published chunk array is never modified: the sealed chunks are published in a new array, and the replaced
+	 * chunks are only closed afterwards, so that the reads loading the chunks from then on never reach a closed chunk.
+	 * <p>
+	 * Writing into a sealed chunk throws an {@link UnsupportedOperationException}. Chunks added afterwards by
+	 * {@link #ensureCapacity(int)} are not sealed. The {@link #computeZoneMaps() zone maps} of the chunks are
+	 * computed once they are sealed.
+	 */
+	public void seal() {
+		final IChunkDouble[] chunks = acquireChunks();
+		final IChunkDouble[] sealedChunks = new IChunkDouble[chunks.length];
+		for (int c = 0, numChunks = chunks.length; c < numChunks; ++c) {
+			sealedChunks[c] = sealChunk(chunks[c]);
+		}
+		publishChunks(sealedChunks);
+		computeZoneMaps();
+		closeReplacedChunks(chunks, sealedChunks);
+	}
+
+	/**
+	 * Seals a chunk. The chunk is left open, even when it is replaced.
+	 *
+	 * @param chunk A chunk of this column
+	 * @return The sealed chunk
+	 */
+	protected IChunkDouble sealChunk(final IChunkDouble chunk) {
+		return ChunkEncoder.seal(chunk);
+	}
+
+	/**
+	 * Closes the chunks that were replaced in a new chunk array, once this array is published.
+	 *
+	 * @param previousChunks The chunks before the replacement
+	 * @param chunks The chunks after the replacement, indexed as the previous ones
+	 * @throws RuntimeException if a chunk cannot be closed, see {@link #closeChunks(IChunkDouble...)}
+	 */
+	protected static void closeReplacedChunks(final IChunkDouble[] previousChunks, final IChunkDouble[] chunks) {
+		final IChunkDouble[] replacedChunks = new IChunkDouble[previousChunks.length];
+		for (int c = 0; c < previousChunks.length; ++c) {
+			if (previousChunks[c] != chunks[c]) {
+				replacedChunks[c] = previousChunks[c];
+			}
+		}
+		closeChunks(replacedChunks);
+	}
+
+	/**
+	 * Closes the chunks of this column that are {@link AutoCloseable}, and empties the column.
+	 *
+	 * @throws RuntimeException if a chunk cannot be closed, see {@link #closeChunks(IChunkDouble...)}
+	 */
+	@Override
+	public void close() {
+		final IChunkDouble[] chunks = acquireChunks();
+		publishChunks(new IChunkDouble[0]);
+		this.zoneMaps = null;
+		recomputeCapacity();
+		closeChunks(chunks);
+	}
+
+	/**
+	 * Closes the given chunks that are {@link AutoCloseable}. All of them are closed, even if some fail.
+	 *
+	 * @param chunks The chunks
+	 * @throws RuntimeException if a chunk cannot be closed, with the exception of the first such chunk as cause and
+	 *         the ones of the others as suppressed exceptions
+	 */
+	protected static void closeChunks(final IChunkDouble... chunks) {
+		RuntimeException failure = null;
+		for (IChunkDouble chunk : chunks) {
+			if (chunk instanceof AutoCloseable closeable) {
+				try {
+					closeable.close();
+				} catch (Exception e) {
+					if (failure == null) {
+						failure = new RuntimeException("Cannot release a chunk", e);
+					} else {
+						failure.addSuppressed(e);
+					}
+				}
+			}
+		}
+		if (failure != null) {
+			throw failure;
+		}
 	}
 
 	/**
@@ -265,19 +1029,26 @@ public class ColumnDouble {
 			return true;
 		}
 
+		final IChunkDouble[] chunks = acquireChunks();
 		if (chunks == null) {
 			return true;
 		}
 
 		int[] chunkPerNodeDistribution = new int[IPlatform.CURRENT_PLATFORM.getNUMANodeCount()];
 
+		int placedChunks = 0;
 		for (IChunkDouble chunk : chunks) {
 			long address = chunk.getAddress();
+			if (address == 0) {
+				// Nothing to place, e.g. a constant chunk
+				continue;
+			}
+			++placedChunks;
 			int pointerNode = IPlatform.CURRENT_PLATFORM.getPointerNode(address);
 			++chunkPerNodeDistribution[pointerNode];
 		}
 
-		if (chunkPerNodeDistribution[node] == chunks.length) {
+		if (chunkPerNodeDistribution[node] == placedChunks) {
 			return true;
 		}
 
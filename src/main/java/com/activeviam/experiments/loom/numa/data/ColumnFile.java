@@ -0,0 +1,418 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import com.activeviam.experiments.loom.numa.util.UnsafeUtil;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.foreign.MemorySegment;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntUnaryOperator;
+import java.util.logging.Logger;
+import java.util.zip.CRC32C;
+
+/**
+ * The persistent format of a {@link ColumnDouble column}: one file per column, holding a header followed by the
+ * raw values of each chunk.
+ * <p>
+ * The header stores the chunk capacity, the number of chunks and a CRC32C checksum of each chunk, and is itself
+ * checksummed. Each chunk starts on a page boundary, so that it can be mapped on its own.
+ * <p>
+ * {@link #load(Path, IntUnaryOperator, boolean) Loading} a column maps each chunk of the file ({@code MAP_PRIVATE})
+ * and binds the mapping to the chosen NUMA node, instead of rebuilding the column. The memory policy does not apply
+ * to the page cache, which holds the pages of the file wherever they were read, so the chunks are then warmed up in
+ * parallel by virtual threads of the node of each chunk, which write every page: each write copies the page out of
+ * the page cache, into a private page allocated on the node of the chunk. The checksums are verified on these copies
+ * during the same pass, and the pages left on another node are finally migrated. A cold start is therefore a page-in
+ * and a copy rather than a full rebuild.
+ *
+ * @author ActiveViam
+ */
+public class ColumnFile {
+
+	/** The magic number of a column file ("NUMACOL1"). */
+	public static final long MAGIC = 0x4E554D41434F4C31L;
+
+	/** The version of the format. */
+	public static final int VERSION = 1;
+
+	/** The size of the fixed part of the header, before the chunk checksums. */
+	protected static final int FIXED_HEADER_SIZE = 32;
+
+	/** Offset of the header checksum, computed with this field set to 0. */
+	protected static final int HEADER_CHECKSUM_OFFSET = 28;
+
+	/** The byte order of the values, which are stored as they are in memory. */
+	protected static final ByteOrder VALUE_ORDER = ByteOrder.nativeOrder();
+
+	protected static final sun.misc.Unsafe UNSAFE = UnsafeUtil.getUnsafe();
+
+	protected static final Logger LOGGER = Logger.getLogger(ColumnFile.class.getName());
+
+	/**
+	 * The size of the slices in which the chunks are written, read and checksummed, a multiple of the page size. A
+	 * chunk can take up to 8GB, more than a {@link ByteBuffer} can address.
+	 */
+	protected static final long SLICE_SIZE = 1L << 30; // 1GB
+
+	/**
+	 * Writes a column to the given file, replacing it if it exists. Each chunk is written by a virtual thread of its
+	 * NUMA node, and the header is written last, so that an interrupted write leaves an invalid file.
+	 *
+	 * @param column The column to write
+	 * @param path The path of the file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void write(final ColumnDouble column, final Path path) throws IOException {
+		final IChunkDouble[] chunks = column.readChunks();
+		final long chunkSize = (long) column.getChunkCapacity() * DirectChunkDouble.ELEMENT_SIZE;
+		final long headerSize = headerSize(chunks.length);
+		final int[] checksums = new int[chunks.length];
+
+		try (FileChannel channel = FileChannel.open(
+				path,
+				StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			ParallelUtil.forEach(chunks.length, c -> chunks[c].getNumaNodeId(), c -> {
+				final CRC32C crc = new CRC32C();
+				final long position = headerSize + c * chunkStride(chunkSize);
+				for (long offset = 0; offset < chunkSize; offset += SLICE_SIZE) {
+					final ByteBuffer values = toByteBuffer(chunks[c], offset, Math.min(SLICE_SIZE, chunkSize - offset));
+					crc.update(values.duplicate());
+					try {
+						writeFully(channel, values, position + offset);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				checksums[c] = (int) crc.getValue();
+			});
+			// The chunk order of a column is only meaningful modulo 32, as a shift distance
+			final int chunkOrder = Integer.numberOfTrailingZeros(column.getChunkCapacity());
+			writeFully(channel, encodeHeader(chunkOrder, checksums, headerSize), 0);
+			channel.force(true);
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Loads a column from the given file, with all its chunks on the given NUMA node.
+	 *
+	 * @param path The path of the file
+	 * @param numaNodeId The NUMA node of the chunks, or a negative value for no binding
+	 * @return The loaded column
+	 * @throws IOException if the file cannot be read or is corrupted
+	 * @see #load(Path, IntUnaryOperator, boolean)
+	 */
+	public static ColumnDouble load(final Path path, final int numaNodeId) throws IOException {
+		return load(path, c -> numaNodeId, true);
+	}
+
+	/**
+	 * Loads a column from the given file.
+	 * <p>
+	 * On Linux, each chunk is a private mapping of the file, bound to its node: values written in the loaded column
+	 * are not carried through to the file, which must be {@link #write written} again to persist them. The other
+	 * platforms read the file into anonymous memory. The chunks added to the column afterwards are created with
+	 * {@link DirectChunkDouble#ofMmap(int)}.
+	 *
+	 * @param path The path of the file
+	 * @param nodeOfChunk Returns the NUMA node of a chunk given its ID, or a negative value for no binding
+	 * @param verify Whether to verify the checksums of the chunks while warming them up
+	 * @return The loaded column
+	 * @throws IOException if the file cannot be read or is corrupted
+	 */
+	public static ColumnDouble load(final Path path, final IntUnaryOperator nodeOfChunk, final boolean verify)
+			throws IOException {
+		final Header header;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			header = readHeader(channel, path);
+			if (channel.size() < header.headerSize + header.chunkCount * chunkStride(header.chunkSize())) {
+				throw new IOException("Truncated column file " + path + " (size: " + channel.size() + ")");
+			}
+
+			final IChunkDouble[] chunks = new IChunkDouble[header.chunkCount];
+			if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform) {
+				mapChunks(platform, path, header, nodeOfChunk, chunks);
+				warmUp(path, header, chunks, verify);
+				checkPlacement(platform, path, header, nodeOfChunk, chunks);
+			} else {
+				readChunks(channel, path, header, chunks);
+				warmUp(path, header, chunks, verify);
+			}
+
+			final ColumnDouble column = new ColumnDouble(1L << header.chunkOrder, DirectChunkDouble::ofMmap);
+			column.publishChunks(chunks);
+			column.recomputeCapacity();
+			return column;
+		} catch (UncheckedIOException e) {
+			throw e.getCause();
+		}
+	}
+
+	/**
+	 * Maps each chunk of the file and sets the memory policy of the mapping to the node of the chunk. The pages are
+	 * not read yet, and the policy only applies to the private copies of the pages, made when they are written.
+	 */
+	protected static void mapChunks(
+			final LinuxPlatform platform,
+			final Path path,
+			final Header header,
+			final IntUnaryOperator nodeOfChunk,
+			final IChunkDouble[] chunks) {
+		final long chunkSize = header.chunkSize();
+		final int fd = platform.openFile(path.toString());
+		try {
+			for (int c = 0; c < chunks.length; ++c) {
+				final int node = nodeOfChunk.applyAsInt(c);
+				final long address = platform.mmapFile(fd, header.headerSize + c * chunkStride(chunkSize), chunkSize);
+				if (node >= 0) {
+					platform.bindToNode(address, chunkSize, node);
+				}
+				final DirectChunkDouble.Destructor destructor = new DirectChunkDouble.Destructor(
+						address,
+						(Long addr) -> {
+							platform.munmap(addr, chunkSize);
+							return null;
+						}
+				);
+				chunks[c] = new DirectChunkDouble(
+						1 << header.chunkOrder,
+						node >= 0 ? node : platform.getCurrentNumaNode(),
+						address,
+						destructor);
+			}
+		} finally {
+			// The mappings do not need the file descriptor
+			platform.closeFile(fd);
+		}
+	}
+
+	/**
+	 * Reads each chunk of the file into anonymous memory, on platforms that cannot map files.
+	 */
+	protected static void readChunks(
+			final FileChannel channel,
+			final Path path,
+			final Header header,
+			final IChunkDouble[] chunks) throws IOException {
+		final long chunkSize = header.chunkSize();
+		for (int c = 0; c < chunks.length; ++c) {
+			final DirectChunkDouble chunk = DirectChunkDouble.ofMmap(1 << header.chunkOrder);
+			chunks[c] = chunk;
+			final long position = header.headerSize + c * chunkStride(chunkSize);
+			for (long offset = 0; offset < chunkSize; offset += SLICE_SIZE) {
+				final long sliceSize = Math.min(SLICE_SIZE, chunkSize - offset);
+				readFully(channel, toByteBuffer(chunk.getAddress() + offset, sliceSize), position + offset, path);
+			}
+		}
+	}
+
+	/**
+	 * Writes every page of every chunk on a virtual thread of the node of the chunk, and verifies the checksums of the
+	 * chunks if requested. For a private mapping, writing a page copies it out of the page cache into a page placed
+	 * by the memory policy of the mapping, on the node of the chunk.
+	 */
+	protected static void warmUp(
+			final Path path,
+			final Header header,
+			final IChunkDouble[] chunks,
+			final boolean verify) throws IOException {
+		final long chunkSize = header.chunkSize();
+		ParallelUtil.forEach(chunks.length, c -> chunks[c].getNumaNodeId(), c -> {
+			final long address = chunks[c].getAddress();
+			for (long page = address; page < address + chunkSize; page += LinuxPlatform.PAGE_SIZE) {
+				// Reading alone would map the page of the page cache, wherever it is
+				UNSAFE.putByte(page, UNSAFE.getByte(page));
+			}
+			if (verify) {
+				final CRC32C crc = new CRC32C();
+				for (long offset = 0; offset < chunkSize; offset += SLICE_SIZE) {
+					crc.update(toByteBuffer(address + offset, Math.min(SLICE_SIZE, chunkSize - offset)));
+				}
+				if ((int) crc.getValue() != header.checksums[c]) {
+					throw new UncheckedIOException(new IOException("Checksum mismatch of chunk " + c + " of " + path));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Checks that the pages of each chunk bound to a node are on that node, and migrates the pages that are not.
+	 * The kernel falls back to another node when the node of a chunk is out of memory, and {@code numa_tonode_memory()}
+	 * does not report failures. If some pages still cannot be moved, a warning is logged and the chunk records the
+	 * node holding most of its pages.
+	 */
+	protected static void checkPlacement(
+			final LinuxPlatform platform,
+			final Path path,
+			final Header header,
+			final IntUnaryOperator nodeOfChunk,
+			final IChunkDouble[] chunks) {
+		if (!platform.isNumaAvailable()) {
+			return;
+		}
+		for (int c = 0; c < chunks.length; ++c) {
+			final int node = nodeOfChunk.applyAsInt(c);
+			if (node < 0) {
+				continue;
+			}
+			final int misplacedPages = ((DirectChunkDouble) chunks[c]).placeOn(platform, node);
+			if (misplacedPages > 0) {
+				LOGGER.warning(
+						misplacedPages + " pages out of " + DirectChunkDouble.pageCount(header.chunkSize())
+								+ " of chunk " + c + " of " + path + " could not be placed on node " + node);
+			}
+		}
+	}
+
+	/**
+	 * Returns a buffer over a slice of the values of a chunk, of at most {@link #SLICE_SIZE} bytes: its memory if the
+	 * chunk stores its values raw, a decoded copy otherwise.
+	 */
+	protected static ByteBuffer toByteBuffer(final IChunkDouble chunk, final long offset, final long size) {
+		if (chunk instanceof final SegmentChunkDouble segmentChunk) {
+			return segmentChunk.getSegment().asSlice(offset, size).asByteBuffer().order(VALUE_ORDER);
+		}
+		if (chunk instanceof DirectChunkDouble) {
+			return toByteBuffer(chunk.getAddress() + offset, size);
+		}
+		final ByteBuffer buffer = ByteBuffer.allocateDirect((int) size).order(VALUE_ORDER);
+		chunk.readDoubles(
+				(int) (offset / DirectChunkDouble.ELEMENT_SIZE),
+				MemorySegment.ofBuffer(buffer),
+				0,
+				(int) (size / DirectChunkDouble.ELEMENT_SIZE));
+		return buffer;
+	}
+
+	/**
+	 * Returns a buffer over native memory, of at most {@link #SLICE_SIZE} bytes.
+	 */
+	protected static ByteBuffer toByteBuffer(final long address, final long size) {
+		return MemorySegment.ofAddress(address).reinterpret(size).asByteBuffer().order(VALUE_ORDER);
+	}
+
+	protected static ByteBuffer encodeHeader(final int chunkOrder, final int[] checksums, final long headerSize) {
+		final ByteBuffer header = ByteBuffer.allocate((int) headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		header.putLong(MAGIC)
+				.putInt(VERSION)
+				.putInt(VALUE_ORDER == ByteOrder.LITTLE_ENDIAN ? 1 : 0)
+				.putInt(chunkOrder)
+				.putInt(checksums.length)
+				.putInt((int) headerSize)
+				.putInt(0);
+		for (int checksum : checksums) {
+			header.putInt(checksum);
+		}
+		header.putInt(HEADER_CHECKSUM_OFFSET, checksum(header.duplicate().clear()));
+		return header.clear();
+	}
+
+	protected static Header readHeader(final FileChannel channel, final Path path) throws IOException {
+		final ByteBuffer fixed = ByteBuffer.allocate(FIXED_HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, fixed, 0, path);
+		if (fixed.getLong(0) != MAGIC) {
+			throw new IOException("Not a column file, or incompletely written: " + path);
+		}
+		if (fixed.getInt(8) != VERSION) {
+			throw new IOException("Unsupported version " + fixed.getInt(8) + " of column file " + path);
+		}
+		if ((fixed.getInt(12) == 1) != (VALUE_ORDER == ByteOrder.LITTLE_ENDIAN)) {
+			throw new IOException("Column file " + path + " was written with another byte order");
+		}
+		final int chunkOrder = fixed.getInt(16);
+		final int chunkCount = fixed.getInt(20);
+		final int headerSize = fixed.getInt(24);
+		if (chunkOrder < 0 || chunkOrder > 30 || chunkCount < 0 || headerSize != headerSize(chunkCount)) {
+			throw new IOException("Corrupted header of column file " + path);
+		}
+
+		final ByteBuffer header = ByteBuffer.allocate(headerSize).order(ByteOrder.LITTLE_ENDIAN);
+		readFully(channel, header, 0, path);
+		final int expectedChecksum = header.getInt(HEADER_CHECKSUM_OFFSET);
+		header.putInt(HEADER_CHECKSUM_OFFSET, 0);
+		if (checksum(header.duplicate().clear()) != expectedChecksum) {
+			throw new IOException("Checksum mismatch of the header of column file " + path);
+		}
+		final int[] checksums = new int[chunkCount];
+		header.position(FIXED_HEADER_SIZE).asIntBuffer().get(checksums);
+		return new Header(chunkOrder, chunkCount, headerSize, checksums);
+	}
+
+	/**
+	 * Returns the size of the header of a file with the given number of chunks, rounded up to a page so that the
+	 * chunks can be mapped.
+	 */
+	protected static int headerSize(final int chunkCount) {
+		return (int) pageAlign(FIXED_HEADER_SIZE + (long) chunkCount * Integer.BYTES);
+	}
+
+	/**
+	 * Returns the distance between two chunks in a file, rounded up to a page so that the chunks can be mapped.
+	 */
+	protected static long chunkStride(final long chunkSize) {
+		return pageAlign(chunkSize);
+	}
+
+	protected static long pageAlign(final long size) {
+		return (size + LinuxPlatform.PAGE_SIZE - 1) & -LinuxPlatform.PAGE_SIZE;
+	}
+
+	protected static int checksum(final ByteBuffer buffer) {
+		final CRC32C crc = new CRC32C();
+		crc.update(buffer);
+		return (int) crc.getValue();
+	}
+
+	protected static void writeFully(final FileChannel channel, final ByteBuffer buffer, long position)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	protected static void readFully(final FileChannel channel, final ByteBuffer buffer, long position, final Path path)
+			throws IOException {
+		while (buffer.hasRemaining()) {
+			final int read = channel.read(buffer, position);
+			if (read < 0) {
+				throw new IOException("Truncated column file " + path);
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * The header of a column file.
+	 *
+	 * @param chunkOrder The base-2 log of the chunk capacity
+	 * @param chunkCount The number of chunks
+	 * @param headerSize The size of the header, in bytes
+	 * @param checksums The CRC32C checksum of the values of each chunk
+	 */
+	protected record Header(int chunkOrder, int chunkCount, int headerSize, int[] checksums) {
+
+		/**
+		 * Returns the size of the values of a chunk, in bytes.
+		 *
+		 * @return The size of a chunk
+		 */
+		long chunkSize() {
+			return (long) DirectChunkDouble.ELEMENT_SIZE << chunkOrder;
+		}
+	}
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private ColumnFile() {
+	}
+}
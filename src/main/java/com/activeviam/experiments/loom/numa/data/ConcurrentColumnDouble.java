@@ -0,0 +1,277 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A {@link ColumnDouble column} that many threads can append to concurrently.
+ * <p>
+ * An append first reserves a range of rows by incrementing an atomic counter, then grows the column if needed and
+ * writes its values, and finally commits its range. Growing publishes a new chunk array with a compare-and-set, so
+ * concurrent appends never lose a chunk: the losers of the race close the chunks they created and retry. Reserving
+ * and growing never block, but committing does: ranges are committed in the order they were reserved, each append
+ * spinning, then yielding, until the previous ranges are committed. A slow or descheduled append therefore delays
+ * the commit of all the appends reserved after it, but the {@link #size() committed row count} is always a prefix of
+ * written rows.
+ * <p>
+ * An append that fails still commits its range, so that the next appends are not blocked forever, after writing 0 in
+ * its rows. If even this fails, for instance because the column could not grow, the rows of the range are committed
+ * unwritten, and reading them can fail.
+ * <p>
+ * Readers never wait: they load the committed row count with acquire semantics, after which all the rows below
+ * it are visible. The scans of this column only cover the committed rows.
+ *
+ * @author ActiveViam
+ */
+public class ConcurrentColumnDouble extends ColumnDouble {
+
+	/** The number of busy spins of an append waiting for the previous ranges to be committed, before yielding. */
+	public static final int COMMIT_SPINS = 1 << 8;
+
+	protected static final VarHandle RESERVED;
+	protected static final VarHandle COMMITTED;
+
+	static {
+		try {
+			final MethodHandles.Lookup lookup = MethodHandles.lookup();
+			RESERVED = lookup.findVarHandle(ConcurrentColumnDouble.class, "reserved", long.class);
+			COMMITTED = lookup.findVarHandle(ConcurrentColumnDouble.class, "committed", int.class);
+		} catch (ReflectiveOperationException e) {
+			throw new ExceptionInInitializerError(e);
+		}
+	}
+
+	/** The number of rows reserved by the appends, which may exceed the maximum capacity. */
+	protected volatile long reserved;
+
+	/** The number of rows written and committed. */
+	protected volatile int committed;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @param chunkFactory Creates the chunks
+	 */
+	public ConcurrentColumnDouble(final long chunkCapacity, final Function<Integer, IChunkDouble> chunkFactory) {
+		super(chunkCapacity, chunkFactory);
+	}
+
+	/**
+	 * Appends a value.
+	 *
+	 * @param value A value
+	 * @return The row position of the value
+	 */
+	public int append(final double value) {
+		final int position = reserve(1);
+		try {
+			ensureCapacity(position + 1);
+			writeDouble(position, value);
+		} catch (RuntimeException | Error e) {
+			clearFailedRange(position, position + 1, e);
+			throw e;
+		} finally {
+			commit(position, position + 1);
+		}
+		return position;
+	}
+
+	/**
+	 * Appends consecutive values of an array, stored in consecutive rows.
+	 *
+	 * @param values The array holding the values
+	 * @param offset The index in {@code values} of the first value
+	 * @param length The number of values to append
+	 * @return The row position of the first value
+	 */
+	public int append(final double[] values, final int offset, final int length) {
+		final int position = reserve(length);
+		try {
+			ensureCapacity(position + length);
+			writeDoubles(position, values, offset, length);
+		} catch (RuntimeException | Error e) {
+			clearFailedRange(position, position + length, e);
+			throw e;
+		} finally {
+			commit(position, position + length);
+		}
+		return position;
+	}
+
+	/**
+	 * Returns the number of committed rows. All the rows below it have been fully written, and are visible to the
+	 * calling thread.
+	 *
+	 * @return The committed row count
+	 */
+	public int size() {
+		return (int) COMMITTED.getAcquire(this);
+	}
+
+	/**
+	 * Reserves a range of rows.
+	 *
+	 * @param length The number of rows
+	 * @return The first row of the range
+	 * @throws IllegalStateException if the column would exceed {@link Integer#MAX_VALUE} rows
+	 */
+	protected int reserve(final int length) {
+		final long position = (long) RESERVED.getAndAdd(this, (long) length);
+		if (position + length > Integer.MAX_VALUE) {
+			throw new IllegalStateException("A column cannot hold more than " + Integer.MAX_VALUE + " rows.");
+		}
+		return (int) position;
+	}
+
+	/**
+	 * Writes 0 in the rows of a failed append, so that they hold a defined value once committed. If this fails too,
+	 * its exception is added to the one of the append, and the rows are left unwritten.
+	 *
+	 * @param from The first row of the range (inclusive)
+	 * @param to The last row of the range (exclusive)
+	 * @param failure The exception of the append
+	 */
+	protected void clearFailedRange(final int from, final int to, final Throwable failure) {
+		try {
+			ensureCapacity(to);
+			fill(from, to, 0d);
+		} catch (RuntimeException | Error e) {
+			failure.addSuppressed(e);
+		}
+	}
+
+	/**
+	 * Commits a range of rows once the previous ranges are committed, spinning then yielding until they are. The
+	 * range is committed even if the append failed, so that the next appends are not blocked forever.
+	 *
+	 * @param from The first row of the range (inclusive)
+	 * @param to The last row of the range (exclusive)
+	 */
+	protected void commit(final int from, final int to) {
+		for (int spins = 0; (int) COMMITTED.getAcquire(this) != from; ++spins) {
+			if (spins < COMMIT_SPINS) {
+				Thread.onSpinWait();
+			} else {
+				// Let the carrier thread run the append we are waiting for, if it is a virtual thread
+				Thread.yield();
+			}
+		}
+		COMMITTED.setRelease(this, to);
+	}
+
+	/**
+	 * Grows the column without locking. Only the appends grow the column, so it never shrinks.
+	 */
+	@Override
+	public int ensureCapacity(final int capacity) {
+		final int targetChunkCount = capacity <= 0 ? 0 : 1 + chunkId(capacity - 1);
+		if (getChunkCount() < targetChunkCount) {
+			setChunkCount(targetChunkCount);
+		}
+		return capacity;
+	}
+
+	/**
+	 * The appends are indexed by {@code int}, so the column cannot grow beyond {@link Integer#MAX_VALUE} rows.
+	 */
+	@Override
+	public long ensureCapacity(final long capacity) {
+		if (capacity > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("A concurrent column cannot hold " + capacity + " rows.");
+		}
+		return ensureCapacity((int) capacity);
+	}
+
+	@Override
+	public int getCapacity() {
+		return (int) Math.min(getLongCapacity(), Integer.MAX_VALUE);
+	}
+
+	@Override
+	public long getLongCapacity() {
+		return (long) getChunkCount() * getChunkCapacity();
+	}
+
+	/**
+	 * Publishes a new chunk array with a compare-and-set. If another thread published an array first, the chunks
+	 * created by this thread are closed, and this thread retries from the array of the other one.
+	 */
+	@Override
+	protected void setChunkCount(final int chunkCount) {
+		while (true) {
+			final IChunkDouble[] previousChunks = acquireChunks();
+			final int previousCount = previousChunks == null ? 0 : previousChunks.length;
+			if (previousCount >= chunkCount && previousChunks != null) {
+				return;
+			}
+			final IChunkDouble[] newChunks = new IChunkDouble[chunkCount];
+			if (previousCount > 0) {
+				System.arraycopy(previousChunks, 0, newChunks, 0, previousCount);
+			}
+			for (int c = previousCount; c < chunkCount; ++c) {
+				newChunks[c] = createChunk(c, getChunkCapacity());
+			}
+			if (CHUNKS.compareAndSet(this, previousChunks, newChunks)) {
+				return;
+			}
+			closeChunks(Arrays.copyOfRange(newChunks, previousCount, chunkCount));
+		}
+	}
+
+	@Override
+	protected void recomputeCapacity() {
+		// The capacity is computed from the chunk array, which is the only state shared by the appends
+	}
+
+	@Override
+	public double sum() {
+		// The committed rows are loaded first, so that the chunk array loaded next covers them
+		final int size = size();
+		final IChunkDouble[] chunks = acquireChunks();
+		final int chunkCapacity = getChunkCapacity();
+		double result = 0;
+		for (int c = 0, from = 0; from < size; ++c, from += chunkCapacity) {
+			result += chunks[c].sum(0, Math.min(chunkCapacity, size - from));
+		}
+		return result;
+	}
+
+	@Override
+	public double min() {
+		final int size = size();
+		final IChunkDouble[] chunks = acquireChunks();
+		final int chunkCapacity = getChunkCapacity();
+		double result = Double.POSITIVE_INFINITY;
+		for (int c = 0, from = 0; from < size; ++c, from += chunkCapacity) {
+			result = Math.min(result, chunks[c].min(0, Math.min(chunkCapacity, size - from)));
+		}
+		return result;
+	}
+
+	@Override
+	public double max() {
+		final int size = size();
+		final IChunkDouble[] chunks = acquireChunks();
+		final int chunkCapacity = getChunkCapacity();
+		double result = Double.NEGATIVE_INFINITY;
+		for (int c = 0, from = 0; from < size; ++c, from += chunkCapacity) {
+			result = Math.max(result, chunks[c].max(0, Math.min(chunkCapacity, size - from)));
+		}
+		return result;
+	}
+
+	@Override
+	public long count(final double lower, final double upper) {
+		final int size = size();
+		final IChunkDouble[] chunks = acquireChunks();
+		final int chunkCapacity = getChunkCapacity();
+		long result = 0;
+		for (int c = 0, from = 0; from < size; ++c, from += chunkCapacity) {
+			result += chunks[c].count(0, Math.min(chunkCapacity, size - from), lower, upper);
+		}
+		return result;
+	}
+}
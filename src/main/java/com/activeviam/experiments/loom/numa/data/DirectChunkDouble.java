@@ -1,29 +1,59 @@
 package com.activeviam.experiments.loom.numa.data;
 
+import com.activeviam.experiments.loom.numa.data.compressed.ACompressedChunkDouble;
 import com.activeviam.experiments.loom.numa.platform.IPlatform;
 import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import com.activeviam.experiments.loom.numa.util.ScanUtil;
 import com.activeviam.experiments.loom.numa.util.UnsafeUtil;
+import java.lang.foreign.MemorySegment;
 import java.lang.ref.Cleaner;
 import java.lang.ref.Cleaner.Cleanable;
+import java.util.Objects;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Function;
+import java.util.logging.Logger;
 
 public class DirectChunkDouble implements IChunkDouble, AutoCloseable {
 
 	public static final int ELEMENT_SIZE = Double.BYTES;
+
+	/**
+	 * Name of the system property that disables the bulk scans of {@link ScanUtil} and falls back to the scalar
+	 * scans of {@link IChunkDouble}, e.g. to measure the benefit of the former.
+	 */
+	public static final String SCALAR_SCANS_PROPERTY = "com.activeviam.experiments.loom.numa.data.scalarScans";
+
+	/** The number of doubles in a huge page. */
+	public static final int HUGE_PAGE_CAPACITY = (int) (LinuxPlatform.HUGE_PAGE_SIZE / ELEMENT_SIZE);
+
+	/** Whether the scans use the scalar fallback. */
+	protected static final boolean SCALAR_SCANS = Boolean.getBoolean(SCALAR_SCANS_PROPERTY);
 	protected final long address;
-	protected final int numaNodeId;
+	/** The NUMA node of this chunk, which changes when the chunk is {@link #migrateTo(int) migrated}. */
+	protected volatile int numaNodeId;
 	protected final int capacity;
+	protected final EPageMode pageMode;
 
 	protected static final Cleaner cleaner = Cleaner.create();
 	protected final Cleanable cleanable;
 
 	protected static final sun.misc.Unsafe UNSAFE = UnsafeUtil.getUnsafe();
 
+	protected static final Logger LOGGER = Logger.getLogger(DirectChunkDouble.class.getName());
+
+	/** The number of bytes prefaulted by each virtual thread in {@link #ofPrefaultedMmap(int, int)}. */
+	protected static final long PREFAULT_SLICE_SIZE = 1L << 21; // 2MB
+
 	protected DirectChunkDouble(int capacity, int numaNodeId, long address, Runnable destructor) {
+		this(capacity, numaNodeId, address, EPageMode.DEFAULT, destructor);
+	}
+
+	protected DirectChunkDouble(int capacity, int numaNodeId, long address, EPageMode pageMode, Runnable destructor) {
 		this.address = address;
 		this.capacity = capacity;
 		this.numaNodeId = numaNodeId;
+		this.pageMode = pageMode;
 		this.cleanable = cleaner.register(this, destructor);
 	}
 
@@ -48,12 +78,12 @@ public class DirectChunkDouble implements IChunkDouble, AutoCloseable {
 		}
 
 		final long size = (long) capacity * ELEMENT_SIZE;
-		final long address = platform.numaAllocOnNode((int) size, numaNodeId);
+		final long address = platform.numaAllocOnNode(size, numaNodeId);
 
 		Destructor destructor = new Destructor(
 				address,
 				(Long addr) -> {
-					platform.numaFree(addr, (int) size);
+					platform.numaFree(addr, size);
 					return null;
 				}
 		);
@@ -61,11 +91,234 @@ public class DirectChunkDouble implements IChunkDouble, AutoCloseable {
 		return new DirectChunkDouble(capacity, numaNodeId, address, destructor);
 	}
 
+	/**
+	 * Creates a chunk whose pages are all faulted in by the calling thread ({@code MAP_POPULATE}), instead of on
+	 * first write. With the default memory policy the pages are allocated on the node the calling thread runs on,
+	 * which must therefore be bound to the target node, as for {@link #ofMmap(int)}.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @return The new chunk
+	 */
+	public static DirectChunkDouble ofPopulatedMmap(int capacity) {
+		if (!(IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform)) {
+			return ofMmap(capacity);
+		}
+
+		int numaNodeId = IPlatform.CURRENT_PLATFORM.getCurrentNumaNode();
+		final long size = (long) capacity * ELEMENT_SIZE;
+		final long address = platform.mmapAnonPopulate(size);
+
+		Destructor destructor = new Destructor(
+				address,
+				(Long addr) -> {
+					platform.munmap(addr, size);
+					return null;
+				}
+		);
+		return new DirectChunkDouble(capacity, numaNodeId, address, destructor);
+	}
+
+	/**
+	 * Creates a chunk whose pages are faulted in, in parallel, by virtual threads of the given NUMA node, then
+	 * migrates the pages that the kernel placed on another node, for instance when the node was short of memory. If
+	 * some pages still cannot be moved, a warning is logged and the chunk records the node holding most of its pages.
+	 * <p>
+	 * The page faults are therefore paid when the chunk is created rather than while it is written, and the
+	 * placement of the chunk does not depend on the threads that write it. The memory is released if the chunk
+	 * cannot be prefaulted.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node on which to place the chunk, or a negative value to populate it from the
+	 *        current thread
+	 * @return The new chunk
+	 */
+	public static DirectChunkDouble ofPrefaultedMmap(int capacity, int numaNodeId) {
+		if (numaNodeId < 0 || !IPlatform.CURRENT_PLATFORM.isNumaAvailable()) {
+			return ofPopulatedMmap(capacity);
+		}
+
+		final long size = (long) capacity * ELEMENT_SIZE;
+		final long address = IPlatform.CURRENT_PLATFORM.mmapAnon(size);
+
+		Destructor destructor = new Destructor(
+				address,
+				(Long addr) -> {
+					IPlatform.CURRENT_PLATFORM.munmap(addr, size);
+					return null;
+				}
+		);
+		final DirectChunkDouble chunk = new DirectChunkDouble(capacity, numaNodeId, address, destructor);
+
+		try {
+			final int sliceCount = (int) ((size + PREFAULT_SLICE_SIZE - 1) / PREFAULT_SLICE_SIZE);
+			ParallelUtil.forEach(sliceCount, slice -> numaNodeId, slice -> {
+				final long sliceStart = address + slice * PREFAULT_SLICE_SIZE;
+				final long sliceEnd = Math.min(sliceStart + PREFAULT_SLICE_SIZE, address + size);
+				for (long page = sliceStart; page < sliceEnd; page += LinuxPlatform.PAGE_SIZE) {
+					// Writing (and not reading) is required to allocate a page rather than map the zero page
+					UNSAFE.putByte(page, (byte) 0);
+				}
+			});
+
+			if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform) {
+				final int misplacedPages = chunk.placeOn(platform, numaNodeId);
+				if (misplacedPages > 0) {
+					LOGGER.warning(
+							misplacedPages + " pages out of " + pageCount(size) + " could not be placed on node "
+									+ numaNodeId + ", the chunk is recorded on node " + chunk.numaNodeId);
+				}
+			}
+		} catch (RuntimeException | Error e) {
+			chunk.close();
+			throw e;
+		}
+		return chunk;
+	}
+
+	/**
+	 * Creates a chunk backed by huge pages, which greatly reduces the TLB misses of full chunk scans.
+	 * <p>
+	 * Explicit huge pages are used when enough of them are reserved, otherwise the kernel is advised to use
+	 * Transparent Huge Pages, and if they are disabled too the chunk falls back to the default pages. The obtained
+	 * mode is given by {@link #getPageMode()}. The kernel can still back an advised chunk with regular pages when no
+	 * huge page is free, which {@link #getHugePageBytes()} tells once the chunk is written. The memory is rounded up
+	 * to a multiple of the huge page size, so the capacity of the chunk should be a multiple of
+	 * {@link #HUGE_PAGE_CAPACITY}.
+	 * <p>
+	 * Like {@link #ofMmap(int)}, the memory is placed by first touch.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @return The new chunk
+	 */
+	public static DirectChunkDouble ofHugePages(int capacity) {
+		int numaNodeId = IPlatform.CURRENT_PLATFORM.getCurrentNumaNode();
+		final long size = alignToHugePage((long) capacity * ELEMENT_SIZE);
+
+		final long address;
+		final EPageMode pageMode;
+		if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform) {
+			final long hugeTlbAddress = platform.tryMmapAnonHugeTlb(size);
+			if (hugeTlbAddress != 0) {
+				address = hugeTlbAddress;
+				pageMode = EPageMode.HUGETLB;
+			} else {
+				address = platform.mmapAnonAligned(size);
+				pageMode = platform.adviseHugePages(address, size) ? EPageMode.TRANSPARENT : EPageMode.DEFAULT;
+			}
+		} else {
+			address = IPlatform.CURRENT_PLATFORM.mmapAnon(size);
+			pageMode = EPageMode.DEFAULT;
+		}
+
+		Destructor destructor = new Destructor(
+				address,
+				(Long addr) -> {
+					IPlatform.CURRENT_PLATFORM.munmap(addr, size);
+					return null;
+				}
+		);
+		return new DirectChunkDouble(capacity, numaNodeId, address, pageMode, destructor);
+	}
+
+	/**
+	 * Rounds the given size up to a multiple of the huge page size.
+	 *
+	 * @param size A size in bytes
+	 * @return The aligned size
+	 */
+	protected static long alignToHugePage(long size) {
+		return (size + LinuxPlatform.HUGE_PAGE_SIZE - 1) & -LinuxPlatform.HUGE_PAGE_SIZE;
+	}
+
 	@Override
 	public int capacity() {
 		return capacity;
 	}
 
+	/**
+	 * Returns the kind of pages backing this chunk.
+	 *
+	 * @return The page mode of this chunk
+	 */
+	public EPageMode getPageMode() {
+		return pageMode;
+	}
+
+	/**
+	 * Returns the number of bytes of this chunk that are backed by huge pages. For Transparent Huge Pages, they are
+	 * only allocated when the pages are first touched, and are counted in the mapping of the chunk, which the kernel
+	 * can merge with adjacent mappings of the same kind.
+	 *
+	 * @return The number of bytes backed by huge pages
+	 */
+	public long getHugePageBytes() {
+		final long size = alignToHugePage((long) capacity * ELEMENT_SIZE);
+		return switch (pageMode) {
+			case HUGETLB -> size;
+			case TRANSPARENT -> Math.min(
+					size,
+					((LinuxPlatform) IPlatform.CURRENT_PLATFORM).getAnonHugePagesBytes(address));
+			case DEFAULT -> 0;
+		};
+	}
+
+	/**
+	 * Moves the pages of this chunk that are not on the given NUMA node to that node. If some pages still cannot be
+	 * moved, the chunk records the node holding most of its pages, otherwise the given node.
+	 *
+	 * @param platform The platform moving the pages
+	 * @param node The target NUMA node
+	 * @return The number of pages of this chunk that are not on the node
+	 */
+	protected int placeOn(final LinuxPlatform platform, final int node) {
+		final long size = (long) capacity * ELEMENT_SIZE;
+		int[] pagesNodes = platform.getPagesNodes(address, size);
+		int misplacedPages = countMisplacedPages(pagesNodes, node);
+		if (misplacedPages > 0) {
+			platform.movePages(address, size, node);
+			pagesNodes = platform.getPagesNodes(address, size);
+			misplacedPages = countMisplacedPages(pagesNodes, node);
+		}
+		this.numaNodeId = misplacedPages == 0 ? node : mostCommonNode(pagesNodes, node);
+		return misplacedPages;
+	}
+
+	/**
+	 * Returns the number of pages of the given size.
+	 */
+	protected static int pageCount(final long size) {
+		return (int) ((size + LinuxPlatform.PAGE_SIZE - 1) / LinuxPlatform.PAGE_SIZE);
+	}
+
+	/**
+	 * Returns the number of the given pages that are not on the given node.
+	 */
+	protected static int countMisplacedPages(final int[] pagesNodes, final int node) {
+		int misplacedPages = 0;
+		for (int pageNode : pagesNodes) {
+			if (pageNode != node) {
+				++misplacedPages;
+			}
+		}
+		return misplacedPages;
+	}
+
+	/**
+	 * Returns the node holding most of the given pages, or the given default node if none of them is faulted.
+	 */
+	protected static int mostCommonNode(final int[] pagesNodes, final int defaultNode) {
+		final int[] pageCounts = new int[IPlatform.CURRENT_PLATFORM.getNUMANodeCount()];
+		int mostCommonNode = defaultNode;
+		int maxPageCount = 0;
+		for (int pageNode : pagesNodes) {
+			if (pageNode >= 0 && pageNode < pageCounts.length && ++pageCounts[pageNode] > maxPageCount) {
+				maxPageCount = pageCounts[pageNode];
+				mostCommonNode = pageNode;
+			}
+		}
+		return mostCommonNode;
+	}
+
 	@Override
 	public long getAddress() {
 		return address;
@@ -76,6 +329,25 @@ public class DirectChunkDouble implements IChunkDouble, AutoCloseable {
 		return numaNodeId;
 	}
 
+	/**
+	 * Moves the pages of this chunk to the given NUMA node, and records it as the node of this chunk. The memory
+	 * policy of the chunk is changed too, so that its pages stay on that node if they are faulted again.
+	 * <p>
+	 * The chunk can be read and written during the migration. A chunk acquired from a {@link ChunkPool} is released
+	 * to the free list of its new node.
+	 *
+	 * @param node The target NUMA node
+	 * @return The number of bytes actually moved
+	 */
+	public long migrateTo(int node) {
+		if (!(IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform)) {
+			return 0;
+		}
+		final long movedBytes = platform.movePages(address, (long) capacity * ELEMENT_SIZE, node);
+		this.numaNodeId = node;
+		return movedBytes;
+	}
+
 	@Override
 	public double readDouble(int position) {
 		assert position >= 0 && position < capacity;
@@ -89,11 +361,164 @@ public class DirectChunkDouble implements IChunkDouble, AutoCloseable {
 	}
 
 	@Override
-	public void close() throws Exception {
+	public void readDoubles(int position, double[] destination, int offset, int length) {
+		assert position >= 0 && position + length <= capacity;
+		Objects.checkFromIndexSize(offset, length, destination.length);
+		UNSAFE.copyMemory(
+				null,
+				address + ((long) position * ELEMENT_SIZE),
+				destination,
+				sun.misc.Unsafe.ARRAY_DOUBLE_BASE_OFFSET + ((long) offset * ELEMENT_SIZE),
+				(long) length * ELEMENT_SIZE);
+	}
+
+	@Override
+	public void writeDoubles(int position, double[] source, int offset, int length) {
+		assert position >= 0 && position + length <= capacity;
+		Objects.checkFromIndexSize(offset, length, source.length);
+		UNSAFE.copyMemory(
+				source,
+				sun.misc.Unsafe.ARRAY_DOUBLE_BASE_OFFSET + ((long) offset * ELEMENT_SIZE),
+				null,
+				address + ((long) position * ELEMENT_SIZE),
+				(long) length * ELEMENT_SIZE);
+	}
+
+	@Override
+	public void readDoubles(int position, MemorySegment destination, long offset, int length) {
+		MemorySegment.copy(
+				asSegment(),
+				(long) position * ELEMENT_SIZE,
+				destination,
+				offset,
+				(long) length * ELEMENT_SIZE);
+	}
+
+	@Override
+	public void writeDoubles(int position, MemorySegment source, long offset, int length) {
+		MemorySegment.copy(
+				source,
+				offset,
+				asSegment(),
+				(long) position * ELEMENT_SIZE,
+				(long) length * ELEMENT_SIZE);
+	}
+
+	@Override
+	public void copyTo(int position, IChunkDouble destination, int destinationPosition, int length) {
+		if (!(destination instanceof DirectChunkDouble)) {
+			destination.writeDoubles(destinationPosition, asSegment(), (long) position * ELEMENT_SIZE, length);
+			return;
+		}
+		assert position >= 0 && position + length <= capacity;
+		assert destinationPosition >= 0 && destinationPosition + length <= destination.capacity();
+		UNSAFE.copyMemory(
+				address + ((long) position * ELEMENT_SIZE),
+				destination.getAddress() + ((long) destinationPosition * ELEMENT_SIZE),
+				(long) length * ELEMENT_SIZE);
+	}
+
+	@Override
+	public void fill(int from, int to, double value) {
+		assert from >= 0 && from <= to && to <= capacity;
+		if (Double.doubleToRawLongBits(value) == 0) {
+			UNSAFE.setMemory(address + ((long) from * ELEMENT_SIZE), (long) (to - from) * ELEMENT_SIZE, (byte) 0);
+			return;
+		}
+		for (long a = address + ((long) from * ELEMENT_SIZE), end = address + ((long) to * ELEMENT_SIZE);
+				a < end;
+				a += ELEMENT_SIZE) {
+			UNSAFE.putDouble(a, value);
+		}
+	}
+
+	/**
+	 * Returns a memory segment over the values of this chunk, for the bulk transfers with other segments.
+	 *
+	 * @return A segment of {@code capacity * 8} bytes starting at the address of this chunk
+	 */
+	protected MemorySegment asSegment() {
+		return MemorySegment.ofAddress(address).reinterpret((long) capacity * ELEMENT_SIZE);
+	}
+
+	@Override
+	public double sum(int from, int to) {
+		if (SCALAR_SCANS) {
+			return IChunkDouble.super.sum(from, to);
+		}
+		assert from >= 0 && from <= to && to <= capacity;
+		return ScanUtil.sum(address + ((long) from * ELEMENT_SIZE), to - from);
+	}
+
+	@Override
+	public double min(int from, int to) {
+		if (SCALAR_SCANS) {
+			return IChunkDouble.super.min(from, to);
+		}
+		assert from >= 0 && from <= to && to <= capacity;
+		return ScanUtil.min(address + ((long) from * ELEMENT_SIZE), to - from);
+	}
+
+	@Override
+	public double max(int from, int to) {
+		if (SCALAR_SCANS) {
+			return IChunkDouble.super.max(from, to);
+		}
+		assert from >= 0 && from <= to && to <= capacity;
+		return ScanUtil.max(address + ((long) from * ELEMENT_SIZE), to - from);
+	}
+
+	@Override
+	public int count(int from, int to, double lower, double upper) {
+		if (SCALAR_SCANS) {
+			return IChunkDouble.super.count(from, to, lower, upper);
+		}
+		assert from >= 0 && from <= to && to <= capacity;
+		return ScanUtil.count(address + ((long) from * ELEMENT_SIZE), to - from, lower, upper);
+	}
+
+	@Override
+	public int select(int from, int to, double lower, double upper, MemorySegment words) {
+		if (SCALAR_SCANS) {
+			return IChunkDouble.super.select(from, to, lower, upper, words);
+		}
+		assert from >= 0 && from <= to && to <= capacity && (from & (Long.SIZE - 1)) == 0;
+		return ScanUtil.select(address + ((long) from * ELEMENT_SIZE), to - from, lower, upper, words, from >>> 6);
+	}
+
+	@Override
+	public double sumSelected(int from, int to, MemorySegment words) {
+		if (SCALAR_SCANS) {
+			return IChunkDouble.super.sumSelected(from, to, words);
+		}
+		assert from >= 0 && from <= to && to <= capacity && (from & (Long.SIZE - 1)) == 0;
+		return ScanUtil.sumSelected(address + ((long) from * ELEMENT_SIZE), to - from, words, from >>> 6);
+	}
+
+	@Override
+	public double dot(IChunkDouble other, int from, int to) {
+		if (!SCALAR_SCANS && other instanceof ACompressedChunkDouble) {
+			// The dot product is symmetric, and a compressed chunk decodes itself in blocks
+			return other.dot(this, from, to);
+		}
+		if (SCALAR_SCANS || !(other instanceof DirectChunkDouble)) {
+			return IChunkDouble.super.dot(other, from, to);
+		}
+		assert from >= 0 && from <= to && to <= capacity && to <= other.capacity();
+		final long offset = (long) from * ELEMENT_SIZE;
+		return ScanUtil.dot(address + offset, other.getAddress() + offset, to - from);
+	}
+
+	@Override
+	public void close() {
 		cleanable.clean();
 	}
 
-	private static class Destructor implements Runnable {
+	/**
+	 * Releases the memory of a chunk, at most once, whether the chunk is {@link #close() closed} or cleaned after
+	 * being garbage collected.
+	 */
+	protected static class Destructor implements Runnable {
 		private final AtomicLong address;
 		private final Function<Long, Void> oneshotCallback;
 
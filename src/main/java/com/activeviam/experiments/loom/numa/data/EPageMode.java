@@ -0,0 +1,21 @@
+package com.activeviam.experiments.loom.numa.data;
+
+/**
+ * The kind of pages backing the memory of a {@link DirectChunkDouble}.
+ *
+ * @author ActiveViam
+ */
+public enum EPageMode {
+
+	/** Explicit huge pages, taken from the pool reserved in {@code /proc/sys/vm/nr_hugepages}. */
+	HUGETLB,
+
+	/**
+	 * Regular pages that the kernel was advised to back with Transparent Huge Pages, which are enabled. The kernel
+	 * uses regular pages when no huge page is free.
+	 */
+	TRANSPARENT,
+
+	/** The default pages of the system. */
+	DEFAULT,
+}
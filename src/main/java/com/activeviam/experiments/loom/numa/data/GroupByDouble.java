@@ -0,0 +1,275 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import java.lang.foreign.MemorySegment;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes {@code SUM, COUNT, MIN, MAX ... GROUP BY key} over a column of measures and a column of keys.
+ * <p>
+ * The aggregation runs in three phases. First, the chunks of the measure column owned by each NUMA node are split
+ * among as many tasks as the node has processors, at most one per chunk, each task aggregating its chunks into its
+ * own {@link AggregationTable} allocated in the memory of the node, on a virtual thread of the node: the chunks, the
+ * keys (when the key column is placed like the measure column) and the hash tables are all local, and the tasks do
+ * not share any table. Then the tables of the tasks of each node are merged on that node. Finally, the tables of the
+ * nodes are merged by the calling thread, which only touches one entry per group and per node.
+ * <p>
+ * The chunks are decoded in blocks of {@value #BLOCK_SIZE} values with
+ * {@link IChunkDouble#readDoubles(int, double[], int, int)}, so sealed chunks are supported too.
+ *
+ * @author ActiveViam
+ */
+public class GroupByDouble {
+
+	/** The number of rows read at once from the chunks. */
+	public static final int BLOCK_SIZE = 1024;
+
+	/**
+	 * The number of processors of each NUMA node that this process can run on, read once from the topology of the
+	 * machine, whatever the node of the thread running the query.
+	 */
+	protected static final int[] NODE_PROCESSOR_COUNTS = countNodeProcessors();
+
+	/**
+	 * Aggregates all the rows of the measure column by key.
+	 *
+	 * @param keys The column of the keys
+	 * @param measures The column of the aggregated values, with the same chunk capacity as {@code keys}
+	 * @return The aggregates of each key
+	 */
+	public static Result groupBy(final ColumnDouble keys, final ColumnDouble measures) {
+		return groupBy(keys, measures, null);
+	}
+
+	/**
+	 * Aggregates the rows of the measure column selected by a predicate, by key.
+	 *
+	 * @param keys The column of the keys
+	 * @param measures The column of the aggregated values, with the same chunk capacity as {@code keys}
+	 * @param selection The rows to aggregate, as selected in one of the columns, or {@code null} to aggregate all
+	 *        the rows
+	 * @return The aggregates of each key
+	 */
+	public static Result groupBy(
+			final ColumnDouble keys,
+			final ColumnDouble measures,
+			final SelectionBitmap selection) {
+		if (keys.getChunkCapacity() != measures.getChunkCapacity()) {
+			throw new IllegalArgumentException(
+					"Columns have different chunk capacities: " + keys.getChunkCapacity() + " and "
+							+ measures.getChunkCapacity());
+		}
+		final IChunkDouble[] keyChunks = keys.readChunks();
+		final IChunkDouble[] measureChunks = measures.readChunks();
+		final int chunkCount = Math.min(
+				Math.min(keyChunks.length, measureChunks.length),
+				selection == null ? Integer.MAX_VALUE : selection.getChunkCount());
+		final int chunkCapacity = measures.getChunkCapacity();
+
+		// The chunks to aggregate, grouped by node, -1 standing for the chunks without a node
+		final Map<Integer, List<Integer>> chunksOfNode = new TreeMap<>();
+		for (int c = 0; c < chunkCount; ++c) {
+			if (selection == null || selection.getCardinality(c) != 0) {
+				chunksOfNode.computeIfAbsent(measureChunks[c].getNumaNodeId(), node -> new ArrayList<>()).add(c);
+			}
+		}
+		final int[] nodes = chunksOfNode.keySet().stream().mapToInt(Integer::intValue).toArray();
+
+		// The tasks of node n are the ones from firstTasks[n] (inclusive) to firstTasks[n + 1] (exclusive)
+		final int[] firstTasks = new int[nodes.length + 1];
+		for (int n = 0; n < nodes.length; ++n) {
+			firstTasks[n + 1] = firstTasks[n]
+					+ Math.min(chunksOfNode.get(nodes[n]).size(), getProcessorCount(nodes[n]));
+		}
+		final int[] nodeIndexOfTask = new int[firstTasks[nodes.length]];
+		for (int n = 0; n < nodes.length; ++n) {
+			Arrays.fill(nodeIndexOfTask, firstTasks[n], firstTasks[n + 1], n);
+		}
+
+		final AggregationTable[] partials = new AggregationTable[nodeIndexOfTask.length];
+		try {
+			ParallelUtil.forEach(partials.length, t -> nodes[nodeIndexOfTask[t]], t -> {
+				final int n = nodeIndexOfTask[t];
+				final AggregationTable table =
+						new AggregationTable(AggregationTable.DEFAULT_INITIAL_CAPACITY, nodes[n]);
+				partials[t] = table;
+				final double[] keyBlock = new double[BLOCK_SIZE];
+				final double[] measureBlock = new double[BLOCK_SIZE];
+				// The chunks of the node are dealt round-robin to its tasks
+				final List<Integer> chunks = chunksOfNode.get(nodes[n]);
+				final int taskCount = firstTasks[n + 1] - firstTasks[n];
+				for (int i = t - firstTasks[n]; i < chunks.size(); i += taskCount) {
+					final int c = chunks.get(i);
+					aggregateChunk(
+							keyChunks[c],
+							measureChunks[c],
+							selection == null ? null : selection.getChunkWords(c),
+							chunkCapacity,
+							table,
+							keyBlock,
+							measureBlock);
+				}
+			});
+
+			// Merges the tables of the tasks of each node into the table of its first task, on the node
+			ParallelUtil.forEach(nodes.length, n -> nodes[n], n -> {
+				for (int t = firstTasks[n] + 1; t < firstTasks[n + 1]; ++t) {
+					partials[firstTasks[n]].merge(partials[t]);
+				}
+			});
+
+			final AggregationTable merged = new AggregationTable(AggregationTable.DEFAULT_INITIAL_CAPACITY, -1);
+			try {
+				for (int n = 0; n < nodes.length; ++n) {
+					merged.merge(partials[firstTasks[n]]);
+				}
+				return Result.of(merged);
+			} finally {
+				merged.close();
+			}
+		} finally {
+			for (AggregationTable partial : partials) {
+				if (partial != null) {
+					partial.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Returns the number of processors of a NUMA node that this process can run on, or of the machine for the chunks
+	 * without a node and when NUMA is not available.
+	 */
+	protected static int getProcessorCount(final int node) {
+		if (node >= 0 && node < NODE_PROCESSOR_COUNTS.length) {
+			return NODE_PROCESSOR_COUNTS[node];
+		}
+		return IPlatform.CURRENT_PLATFORM.getProcessorCount();
+	}
+
+	/**
+	 * Counts the processors of each NUMA node that this process can run on, at least one per node, or returns no
+	 * count when NUMA is not available.
+	 */
+	protected static int[] countNodeProcessors() {
+		if (!(IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform) || !platform.isNumaAvailable()) {
+			return new int[0];
+		}
+		final int[] counts = new int[platform.getNUMANodeCount()];
+		for (int node = 0; node < counts.length; ++node) {
+			counts[node] = Math.max(platform.getNumaNodeCpus(node).length, 1);
+		}
+		return counts;
+	}
+
+	/**
+	 * Aggregates the rows of a chunk into a table.
+	 *
+	 * @param words The selection bitmap of the chunk, or {@code null} to aggregate all its rows
+	 */
+	protected static void aggregateChunk(
+			final IChunkDouble keyChunk,
+			final IChunkDouble measureChunk,
+			final MemorySegment words,
+			final int chunkCapacity,
+			final AggregationTable table,
+			final double[] keyBlock,
+			final double[] measureBlock) {
+		for (int r = 0; r < chunkCapacity; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, chunkCapacity - r);
+			keyChunk.readDoubles(r, keyBlock, 0, length);
+			measureChunk.readDoubles(r, measureBlock, 0, length);
+			if (words == null) {
+				for (int i = 0; i < length; ++i) {
+					table.aggregate(keyBlock[i], measureBlock[i]);
+				}
+				continue;
+			}
+			for (int i = 0; i < length; i += Long.SIZE) {
+				long word = words.getAtIndex(JAVA_LONG, (r + i) >>> 6);
+				if (length - i < Long.SIZE) {
+					word &= (1L << (length - i)) - 1;
+				}
+				for (; word != 0; word &= word - 1) {
+					final int row = i + Long.numberOfTrailingZeros(word);
+					table.aggregate(keyBlock[row], measureBlock[row]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The aggregates of each group, sorted by key.
+	 *
+	 * @param keys The keys of the groups, in ascending order
+	 * @param counts The number of rows of each group
+	 * @param sums The sum of the values of each group
+	 * @param mins The minimum of the values of each group
+	 * @param maxs The maximum of the values of each group
+	 */
+	public record Result(double[] keys, long[] counts, double[] sums, double[] mins, double[] maxs) {
+
+		/**
+		 * Copies the content of an aggregation table, sorted by key.
+		 *
+		 * @param table The table
+		 * @return The aggregates of the table
+		 */
+		public static Result of(final AggregationTable table) {
+			final double[] keys = new double[table.size()];
+			for (int slot = 0, k = 0; slot < table.capacity(); ++slot) {
+				if (table.getCount(slot) != 0) {
+					keys[k++] = table.getKey(slot);
+				}
+			}
+			Arrays.sort(keys);
+			final Result result = new Result(
+					keys,
+					new long[keys.length],
+					new double[keys.length],
+					new double[keys.length],
+					new double[keys.length]);
+			for (int k = 0; k < keys.length; ++k) {
+				final int slot = table.find(keys[k]);
+				result.counts[k] = table.getCount(slot);
+				result.sums[k] = table.getSum(slot);
+				result.mins[k] = table.getMin(slot);
+				result.maxs[k] = table.getMax(slot);
+			}
+			return result;
+		}
+
+		/**
+		 * Returns the number of groups.
+		 *
+		 * @return The number of groups
+		 */
+		public int size() {
+			return this.keys.length;
+		}
+
+		/**
+		 * Returns the index of the group of the given key.
+		 *
+		 * @param key A key
+		 * @return The index of the group, or a negative value if there is no such group
+		 */
+		public int indexOf(final double key) {
+			return Arrays.binarySearch(this.keys, key == 0 ? 0.0 : key);
+		}
+	}
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private GroupByDouble() {
+	}
+}
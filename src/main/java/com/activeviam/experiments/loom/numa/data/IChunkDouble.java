@@ -1,10 +1,18 @@
 package com.activeviam.experiments.loom.numa.data;
 
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE_UNALIGNED;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.MemorySegment;
+
 /**
  * A fixed-size chunk of {@code double} values.
  */
 public interface IChunkDouble {
 
+	/** The number of values of the blocks used by the default bulk transfers. */
+	int TRANSFER_BLOCK_SIZE = 1024;
+
 	/**
 	 * Returns the capacity of this chunk (i.e. the number of values it can store).
 	 *
@@ -37,4 +45,263 @@ public interface IChunkDouble {
 	 */
 	void writeDouble(int position, double value);
 
+	/**
+	 * Reads consecutive values of this chunk into an array.
+	 * <p>
+	 * This default implementation is a scalar loop over {@link #readDouble(int)}. Implementations with direct
+	 * access to their memory should override it with a memory copy.
+	 *
+	 * @param position The position of the first value to read
+	 * @param destination The array receiving the values
+	 * @param offset The index in {@code destination} of the first value
+	 * @param length The number of values to read
+	 */
+	default void readDoubles(int position, double[] destination, int offset, int length) {
+		for (int i = 0; i < length; ++i) {
+			destination[offset + i] = readDouble(position + i);
+		}
+	}
+
+	/**
+	 * Writes consecutive values of an array into this chunk.
+	 *
+	 * @param position The position of the first value to write
+	 * @param source The array holding the values
+	 * @param offset The index in {@code source} of the first value
+	 * @param length The number of values to write
+	 * @see #readDoubles(int, double[], int, int)
+	 */
+	default void writeDoubles(int position, double[] source, int offset, int length) {
+		for (int i = 0; i < length; ++i) {
+			writeDouble(position + i, source[offset + i]);
+		}
+	}
+
+	/**
+	 * Reads consecutive values of this chunk into a memory segment, in the native byte order.
+	 * <p>
+	 * This default implementation goes through blocks of values read with
+	 * {@link #readDoubles(int, double[], int, int)}.
+	 *
+	 * @param position The position of the first value to read
+	 * @param destination The segment receiving the values
+	 * @param offset The offset in {@code destination} of the first value, in bytes
+	 * @param length The number of values to read
+	 */
+	default void readDoubles(int position, MemorySegment destination, long offset, int length) {
+		final double[] block = new double[Math.min(length, TRANSFER_BLOCK_SIZE)];
+		for (int i = 0; i < length; i += block.length) {
+			final int blockLength = Math.min(block.length, length - i);
+			readDoubles(position + i, block, 0, blockLength);
+			MemorySegment.copy(
+					block,
+					0,
+					destination,
+					JAVA_DOUBLE_UNALIGNED,
+					offset + (long) i * Double.BYTES,
+					blockLength);
+		}
+	}
+
+	/**
+	 * Writes consecutive values of a memory segment, in the native byte order, into this chunk.
+	 *
+	 * @param position The position of the first value to write
+	 * @param source The segment holding the values
+	 * @param offset The offset in {@code source} of the first value, in bytes
+	 * @param length The number of values to write
+	 * @see #readDoubles(int, MemorySegment, long, int)
+	 */
+	default void writeDoubles(int position, MemorySegment source, long offset, int length) {
+		final double[] block = new double[Math.min(length, TRANSFER_BLOCK_SIZE)];
+		for (int i = 0; i < length; i += block.length) {
+			final int blockLength = Math.min(block.length, length - i);
+			MemorySegment.copy(
+					source,
+					JAVA_DOUBLE_UNALIGNED,
+					offset + (long) i * Double.BYTES,
+					block,
+					0,
+					blockLength);
+			writeDoubles(position + i, block, 0, blockLength);
+		}
+	}
+
+	/**
+	 * Copies consecutive values of this chunk into another chunk.
+	 * <p>
+	 * This default implementation goes through blocks of values read with
+	 * {@link #readDoubles(int, double[], int, int)} and written with
+	 * {@link #writeDoubles(int, double[], int, int)}.
+	 *
+	 * @param position The position of the first value to copy
+	 * @param destination The chunk receiving the values
+	 * @param destinationPosition The position in {@code destination} of the first value
+	 * @param length The number of values to copy
+	 */
+	default void copyTo(int position, IChunkDouble destination, int destinationPosition, int length) {
+		final double[] block = new double[Math.min(length, TRANSFER_BLOCK_SIZE)];
+		for (int i = 0; i < length; i += block.length) {
+			final int blockLength = Math.min(block.length, length - i);
+			readDoubles(position + i, block, 0, blockLength);
+			destination.writeDoubles(destinationPosition + i, block, 0, blockLength);
+		}
+	}
+
+	/**
+	 * Writes the given value in the given range of this chunk.
+	 *
+	 * @param from The first position of the range (inclusive)
+	 * @param to The last position of the range (exclusive)
+	 * @param value A value
+	 * @see #readDoubles(int, double[], int, int)
+	 */
+	default void fill(int from, int to, double value) {
+		for (int r = from; r < to; ++r) {
+			writeDouble(r, value);
+		}
+	}
+
+	/**
+	 * Computes the sum of the values stored in the given range of this chunk.
+	 * <p>
+	 * This default implementation is a scalar loop over {@link #readDouble(int)}. Implementations with direct
+	 * access to their memory should override it with a bulk scan.
+	 *
+	 * @param from The first position of the range (inclusive)
+	 * @param to The last position of the range (exclusive)
+	 * @return The sum of the values in the range
+	 */
+	default double sum(int from, int to) {
+		double result = 0;
+		for (int r = from; r < to; ++r) {
+			result += readDouble(r);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the minimum of the values stored in the given range of this chunk.
+	 *
+	 * @param from The first position of the range (inclusive)
+	 * @param to The last position of the range (exclusive)
+	 * @return The minimum of the values in the range, or {@link Double#POSITIVE_INFINITY} if it is empty
+	 * @see #sum(int, int)
+	 */
+	default double min(int from, int to) {
+		double result = Double.POSITIVE_INFINITY;
+		for (int r = from; r < to; ++r) {
+			result = Math.min(result, readDouble(r));
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the maximum of the values stored in the given range of this chunk.
+	 *
+	 * @param from The first position of the range (inclusive)
+	 * @param to The last position of the range (exclusive)
+	 * @return The maximum of the values in the range, or {@link Double#NEGATIVE_INFINITY} if it is empty
+	 * @see #sum(int, int)
+	 */
+	default double max(int from, int to) {
+		double result = Double.NEGATIVE_INFINITY;
+		for (int r = from; r < to; ++r) {
+			result = Math.max(result, readDouble(r));
+		}
+		return result;
+	}
+
+	/**
+	 * Counts the values of the given range of this chunk that are within {@code [lower, upper]}.
+	 *
+	 * @param from The first position of the range (inclusive)
+	 * @param to The last position of the range (exclusive)
+	 * @param lower The lower bound of the matching values (inclusive)
+	 * @param upper The upper bound of the matching values (inclusive)
+	 * @return The number of matching values
+	 * @see #sum(int, int)
+	 */
+	default int count(int from, int to, double lower, double upper) {
+		int result = 0;
+		for (int r = from; r < to; ++r) {
+			final double value = readDouble(r);
+			if (value >= lower && value <= upper) {
+				++result;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates the predicate {@code lower <= value <= upper} on the values of the given range of this chunk, and
+	 * writes the result in a selection bitmap: bit {@code p % 64} of word {@code p / 64} is set if the value at
+	 * position {@code p} matches. The words covering the range are overwritten, so {@code from} must be a multiple
+	 * of 64.
+	 *
+	 * @param from The first position of the range (inclusive), a multiple of 64
+	 * @param to The last position of the range (exclusive)
+	 * @param lower The lower bound of the matching values (inclusive)
+	 * @param upper The upper bound of the matching values (inclusive)
+	 * @param words The selection bitmap of this chunk
+	 * @return The number of matching values
+	 * @see #sum(int, int)
+	 */
+	default int select(int from, int to, double lower, double upper, MemorySegment words) {
+		int result = 0;
+		for (int r = from; r < to; r += Long.SIZE) {
+			long word = 0;
+			for (int b = 0, length = Math.min(Long.SIZE, to - r); b < length; ++b) {
+				final double value = readDouble(r + b);
+				if (value >= lower && value <= upper) {
+					word |= 1L << b;
+				}
+			}
+			words.setAtIndex(JAVA_LONG, r >>> 6, word);
+			result += Long.bitCount(word);
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the sum of the values of the given range of this chunk that are selected by a bitmap, as written by
+	 * {@link #select(int, int, double, double, MemorySegment)}.
+	 *
+	 * @param from The first position of the range (inclusive), a multiple of 64
+	 * @param to The last position of the range (exclusive)
+	 * @param words The selection bitmap of this chunk
+	 * @return The sum of the selected values
+	 * @see #sum(int, int)
+	 */
+	default double sumSelected(int from, int to, MemorySegment words) {
+		double result = 0;
+		for (int r = from; r < to; r += Long.SIZE) {
+			long word = words.getAtIndex(JAVA_LONG, r >>> 6);
+			if (to - r < Long.SIZE) {
+				word &= (1L << (to - r)) - 1;
+			}
+			for (; word != 0; word &= word - 1) {
+				result += readDouble(r + Long.numberOfTrailingZeros(word));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the dot product of the given range of this chunk with the same range of another chunk.
+	 *
+	 * @param other The other chunk
+	 * @param from The first position of the range (inclusive)
+	 * @param to The last position of the range (exclusive)
+	 * @return The sum of the products of the values of both chunks
+	 * @see #sum(int, int)
+	 */
+	default double dot(IChunkDouble other, int from, int to) {
+		double result = 0;
+		for (int r = from; r < to; ++r) {
+			result += readDouble(r) * other.readDouble(r);
+		}
+		return result;
+	}
+
 }
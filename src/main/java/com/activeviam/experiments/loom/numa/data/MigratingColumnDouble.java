@@ -0,0 +1,210 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Function;
+
+/**
+ * A {@link ColumnDouble column} recording, for each chunk, how much it is read from each NUMA node, so that a
+ * {@link ChunkRebalancer} can migrate the chunk to the node that reads it most.
+ * <p>
+ * The accesses are counted in rows: a full scan of the column adds the chunk capacity to the counter of each chunk
+ * for the node of the reading thread, and one random read out of {@link #READ_SAMPLING_PERIOD} adds
+ * {@link #READ_SAMPLING_PERIOD} to the counter of its chunk. The counters are {@link #decayAccesses() halved} after
+ * each rebalancing, so that they follow the shifts of the workload.
+ *
+ * @author ActiveViam
+ */
+public class MigratingColumnDouble extends ColumnDouble {
+
+	/** One random read out of this number is recorded. */
+	public static final int READ_SAMPLING_PERIOD = 1 << 12;
+
+	/** The number of NUMA nodes. */
+	protected final int nodeCount;
+
+	/** The rebalancer this column is registered to, or {@code null}. */
+	protected final ChunkRebalancer rebalancer;
+
+	/** The number of rows read from each node, indexed by {@code chunkId * nodeCount + node}. */
+	protected volatile AtomicLongArray accesses;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @param chunkFactory Creates the chunks, which must be {@link DirectChunkDouble direct chunks} to be migrated
+	 * @param rebalancer The rebalancer migrating the chunks of this column, or {@code null} to only record the
+	 *        accesses
+	 */
+	public MigratingColumnDouble(
+			final long chunkCapacity,
+			final Function<Integer, IChunkDouble> chunkFactory,
+			final ChunkRebalancer rebalancer) {
+		super(chunkCapacity, chunkFactory);
+		this.nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		this.accesses = new AtomicLongArray(getChunkCount() * this.nodeCount);
+		this.rebalancer = rebalancer;
+		if (rebalancer != null) {
+			rebalancer.register(this);
+		}
+	}
+
+	@Override
+	public double readDouble(final int position) {
+		if (ThreadLocalRandom.current().nextInt(READ_SAMPLING_PERIOD) == 0) {
+			recordAccess(chunkId(position), IPlatform.CURRENT_PLATFORM.getCurrentNumaNode(), READ_SAMPLING_PERIOD);
+		}
+		return super.readDouble(position);
+	}
+
+	@Override
+	public double readDouble(final long position) {
+		if (ThreadLocalRandom.current().nextInt(READ_SAMPLING_PERIOD) == 0) {
+			recordAccess(chunkId(position), IPlatform.CURRENT_PLATFORM.getCurrentNumaNode(), READ_SAMPLING_PERIOD);
+		}
+		return super.readDouble(position);
+	}
+
+	@Override
+	public double sum() {
+		recordScan();
+		return super.sum();
+	}
+
+	@Override
+	public double min() {
+		recordScan();
+		return super.min();
+	}
+
+	@Override
+	public double max() {
+		recordScan();
+		return super.max();
+	}
+
+	@Override
+	public long count(final double lower, final double upper) {
+		recordScan();
+		return super.count(lower, upper);
+	}
+
+	@Override
+	public double dot(final ColumnDouble other) {
+		recordScan();
+		return super.dot(other);
+	}
+
+	/**
+	 * Returns the number of rows of the given chunk read from the given node since the counters were last halved.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @param node A NUMA node
+	 * @return The recorded number of rows
+	 */
+	public long getAccesses(final int chunkId, final int node) {
+		final AtomicLongArray accesses = this.accesses;
+		final int index = chunkId * this.nodeCount + node;
+		return index < accesses.length() ? accesses.get(index) : 0;
+	}
+
+	/**
+	 * Returns the node that reads the given chunk most, if it accounts for at least the given share of the accesses
+	 * to the chunk.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @param minAccesses The minimum number of recorded rows of the chunk to elect a node
+	 * @param minShare The minimum share of the accesses of the elected node, between 0 and 1
+	 * @return The node, or -1 if no node dominates the accesses of the chunk
+	 */
+	public int getPreferredNode(final int chunkId, final long minAccesses, final double minShare) {
+		long total = 0;
+		long best = 0;
+		int bestNode = -1;
+		for (int node = 0; node < this.nodeCount; ++node) {
+			final long nodeAccesses = getAccesses(chunkId, node);
+			total += nodeAccesses;
+			if (nodeAccesses > best) {
+				best = nodeAccesses;
+				bestNode = node;
+			}
+		}
+		return (total >= minAccesses && best >= minShare * total) ? bestNode : -1;
+	}
+
+	/**
+	 * Halves all the access counters, so that the old accesses weigh less than the recent ones.
+	 */
+	public void decayAccesses() {
+		final AtomicLongArray accesses = this.accesses;
+		for (int i = 0; i < accesses.length(); ++i) {
+			accesses.getAndUpdate(i, value -> value >> 1);
+		}
+	}
+
+	/**
+	 * Migrates the given chunk to the given node, if it can be migrated.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @param node The target NUMA node
+	 * @return The number of bytes actually moved
+	 */
+	protected synchronized long migrateChunk(final int chunkId, final int node) {
+		final IChunkDouble[] chunks = acquireChunks();
+		if (chunkId < chunks.length && chunks[chunkId] instanceof final DirectChunkDouble chunk) {
+			return chunk.migrateTo(node);
+		}
+		return 0;
+	}
+
+	/**
+	 * Records a full scan of the column from the node of the current thread.
+	 */
+	protected void recordScan() {
+		final int node = IPlatform.CURRENT_PLATFORM.getCurrentNumaNode();
+		final int chunkCapacity = getChunkCapacity();
+		for (int c = 0, numChunks = getChunkCount(); c < numChunks; ++c) {
+			recordAccess(c, node, chunkCapacity);
+		}
+	}
+
+	protected void recordAccess(final int chunkId, final int node, final long rows) {
+		final AtomicLongArray accesses = this.accesses;
+		final int index = chunkId * this.nodeCount + node;
+		if (node >= 0 && index < accesses.length()) {
+			accesses.addAndGet(index, rows);
+		}
+	}
+
+	/**
+	 * Grows the access counters along with the chunks. The counters of the previous chunks are copied, so accesses
+	 * recorded concurrently with the growth may be lost, which only makes the statistics a bit less precise.
+	 */
+	@Override
+	protected void setChunkCount(final int chunkCount) {
+		super.setChunkCount(chunkCount);
+		// Called by the super constructor, before the fields of this class are initialized
+		if (this.accesses == null || this.nodeCount == 0) {
+			return;
+		}
+		final AtomicLongArray previous = this.accesses;
+		final AtomicLongArray accesses = new AtomicLongArray(chunkCount * this.nodeCount);
+		for (int i = 0, length = Math.min(previous.length(), accesses.length()); i < length; ++i) {
+			accesses.set(i, previous.get(i));
+		}
+		this.accesses = accesses;
+	}
+
+	/**
+	 * Unregisters this column from its rebalancer, then closes it.
+	 */
+	@Override
+	public synchronized void close() {
+		if (this.rebalancer != null) {
+			this.rebalancer.unregister(this);
+		}
+		super.close();
+	}
+}
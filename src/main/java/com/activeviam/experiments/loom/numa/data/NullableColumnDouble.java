@@ -0,0 +1,348 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import com.activeviam.experiments.loom.numa.util.PlatformUtil;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+import java.util.function.Function;
+
+/**
+ * A {@link ColumnDouble column} whose rows can be null.
+ * <p>
+ * Each chunk has a validity bitmap, allocated off-heap on the NUMA node of the chunk: bit {@code p % 64} of word
+ * {@code p / 64} is set if the row at position {@code p} of the chunk holds a value, with the same layout as a
+ * {@link SelectionBitmap}. The rows are null until they are written, and {@link #writeNull(int) writing a null}
+ * also resets the stored value to 0, so that the sums and dot products need no masking at all: they read whole
+ * chunks with the plain kernels. This requires chunks whose memory is zeroed when they are created, as mapped memory
+ * and the chunks of a {@link ChunkPool} zeroing reused memory are.
+ * <p>
+ * The number of valid rows of each chunk is maintained on write. The minimums, maximums and counts use it to read
+ * the chunks without nulls with the plain kernels, and all the scans use it to skip the chunks with only nulls. The
+ * minimums, maximums and counts of the other chunks are processed one word of the bitmap at a time: full words go
+ * through the range kernels, empty words are skipped, and only the remaining words are iterated bit by bit. The
+ * {@link ZoneMap zone maps} of the chunks only cover their valid rows.
+ * <p>
+ * Like the base column, this column supports a single writer.
+ *
+ * @author ActiveViam
+ */
+public class NullableColumnDouble extends ColumnDouble {
+
+	/** The arena owning the memory of the validity bitmaps. */
+	protected Arena arena;
+
+	/** The validity bitmap of each chunk. */
+	protected MemorySegment[] validity;
+
+	/** The number of valid rows of each chunk. */
+	protected int[] validCounts;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @param chunkFactory Creates the chunks, whose memory must be zeroed
+	 */
+	public NullableColumnDouble(final long chunkCapacity, final Function<Integer, IChunkDouble> chunkFactory) {
+		super(chunkCapacity, chunkFactory);
+		this.arena = Arena.ofShared();
+		this.validity = new MemorySegment[0];
+		this.validCounts = new int[0];
+		setChunkCount(getChunkCount());
+	}
+
+	@Override
+	protected boolean isNullAllowed() {
+		return true;
+	}
+
+	@Override
+	public void writeDouble(final int position, final double value) {
+		super.writeDouble(position, value);
+		setValid(chunkId(position), chunkPosition(position), true);
+	}
+
+	@Override
+	public void writeDouble(final long position, final double value) {
+		super.writeDouble(position, value);
+		setValid(chunkId(position), chunkPosition(position), true);
+	}
+
+	/**
+	 * Makes the row at the given position null.
+	 *
+	 * @param position A row position in this column
+	 */
+	public void writeNull(final int position) {
+		writeNull((long) position);
+	}
+
+	/**
+	 * Makes the row at the given position, which can exceed {@link Integer#MAX_VALUE}, null.
+	 *
+	 * @param position A row position in this column
+	 */
+	public void writeNull(final long position) {
+		super.writeDouble(position, 0);
+		setValid(chunkId(position), chunkPosition(position), false);
+	}
+
+	/**
+	 * Returns whether the row at the given position is null. The value read at that position is then 0.
+	 *
+	 * @param position A row position in this column
+	 * @return {@code true} if the row holds no value
+	 */
+	public boolean isNull(final long position) {
+		final int chunkPosition = chunkPosition(position);
+		final long word = this.validity[chunkId(position)].getAtIndex(JAVA_LONG, chunkPosition >>> 6);
+		return (word & (1L << chunkPosition)) == 0;
+	}
+
+	/**
+	 * Returns the number of rows of this column holding a value.
+	 *
+	 * @return The number of non-null rows
+	 */
+	public long countValid() {
+		long result = 0;
+		for (int validCount : this.validCounts) {
+			result += validCount;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the validity bitmap of a chunk.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @return The validity bitmap of the chunk
+	 */
+	public MemorySegment getValidity(final int chunkId) {
+		return this.validity[chunkId];
+	}
+
+	/**
+	 * Returns the number of rows of a chunk holding a value.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @return The number of non-null rows of the chunk
+	 */
+	@Override
+	public int getValidCount(final int chunkId) {
+		return this.validCounts[chunkId];
+	}
+
+	@Override
+	protected void rowsWritten(final long from, final long to) {
+		super.rowsWritten(from, to);
+		for (long position = from; position < to;) {
+			final int chunkId = chunkId(position);
+			final int chunkPosition = chunkPosition(position);
+			final int chunkLength = (int) Math.min(to - position, getChunkCapacity() - chunkPosition);
+			setValid(chunkId, chunkPosition, chunkPosition + chunkLength);
+			position += chunkLength;
+		}
+	}
+
+	/**
+	 * Copies the values and the validity of consecutive rows into another column. The null rows are copied as
+	 * nulls if the other column is nullable, as zeros otherwise.
+	 */
+	@Override
+	public void copyTo(
+			final long position,
+			final ColumnDouble destination,
+			final long destinationPosition,
+			final int length) {
+		super.copyTo(position, destination, destinationPosition, length);
+		if (destination instanceof final NullableColumnDouble nullableDestination) {
+			for (int i = 0; i < length; ++i) {
+				if (isNull(position + i)) {
+					nullableDestination.writeNull(destinationPosition + i);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sums the whole chunk, whose null rows store 0, unless it only holds nulls.
+	 */
+	@Override
+	protected double scanSum(final int chunkId, final IChunkDouble chunk) {
+		return this.validCounts[chunkId] == 0 ? 0 : chunk.sum(0, getChunkCapacity());
+	}
+
+	@Override
+	protected double scanMin(final int chunkId, final IChunkDouble chunk) {
+		final int chunkCapacity = getChunkCapacity();
+		final int validCount = this.validCounts[chunkId];
+		if (validCount == chunkCapacity) {
+			return chunk.min(0, chunkCapacity);
+		}
+		double result = Double.POSITIVE_INFINITY;
+		for (int r = 0; r < chunkCapacity && validCount > 0; r += Long.SIZE) {
+			final int length = Math.min(Long.SIZE, chunkCapacity - r);
+			long word = this.validity[chunkId].getAtIndex(JAVA_LONG, r >>> 6);
+			if (word == fullWord(length)) {
+				result = Math.min(result, chunk.min(r, r + length));
+				continue;
+			}
+			for (; word != 0; word &= word - 1) {
+				result = Math.min(result, chunk.readDouble(r + Long.numberOfTrailingZeros(word)));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	protected double scanMax(final int chunkId, final IChunkDouble chunk) {
+		final int chunkCapacity = getChunkCapacity();
+		final int validCount = this.validCounts[chunkId];
+		if (validCount == chunkCapacity) {
+			return chunk.max(0, chunkCapacity);
+		}
+		double result = Double.NEGATIVE_INFINITY;
+		for (int r = 0; r < chunkCapacity && validCount > 0; r += Long.SIZE) {
+			final int length = Math.min(Long.SIZE, chunkCapacity - r);
+			long word = this.validity[chunkId].getAtIndex(JAVA_LONG, r >>> 6);
+			if (word == fullWord(length)) {
+				result = Math.max(result, chunk.max(r, r + length));
+				continue;
+			}
+			for (; word != 0; word &= word - 1) {
+				result = Math.max(result, chunk.readDouble(r + Long.numberOfTrailingZeros(word)));
+			}
+		}
+		return result;
+	}
+
+	@Override
+	protected long scanCount(final int chunkId, final IChunkDouble chunk, final double lower, final double upper) {
+		final int chunkCapacity = getChunkCapacity();
+		final int validCount = this.validCounts[chunkId];
+		if (validCount == chunkCapacity) {
+			return chunk.count(0, chunkCapacity, lower, upper);
+		}
+		long result = 0;
+		for (int r = 0; r < chunkCapacity && validCount > 0; r += Long.SIZE) {
+			final int length = Math.min(Long.SIZE, chunkCapacity - r);
+			long word = this.validity[chunkId].getAtIndex(JAVA_LONG, r >>> 6);
+			if (word == fullWord(length)) {
+				result += chunk.count(r, r + length, lower, upper);
+				continue;
+			}
+			for (; word != 0; word &= word - 1) {
+				final double value = chunk.readDouble(r + Long.numberOfTrailingZeros(word));
+				if (value >= lower && value <= upper) {
+					++result;
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Evaluates a predicate on the values of this column. The null rows are never selected: the bits of each chunk
+	 * are intersected with its validity bitmap, on the node of the chunk.
+	 */
+	@Override
+	public SelectionBitmap select(final PredicateDouble predicate) {
+		final SelectionBitmap selection = super.select(predicate);
+		final IChunkDouble[] chunks = acquireChunks();
+		final int chunkCapacity = getChunkCapacity();
+		ParallelUtil.forEach(
+				selection.getChunkCount(),
+				c -> chunks[c].getNumaNodeId(),
+				c -> {
+					if (this.validCounts[c] == chunkCapacity) {
+						return;
+					}
+					final MemorySegment words = selection.getChunkWords(c);
+					final MemorySegment validWords = this.validity[c];
+					int cardinality = 0;
+					for (long w = 0, wordCount = words.byteSize() / Long.BYTES; w < wordCount; ++w) {
+						final long word = words.getAtIndex(JAVA_LONG, w) & validWords.getAtIndex(JAVA_LONG, w);
+						words.setAtIndex(JAVA_LONG, w, word);
+						cardinality += Long.bitCount(word);
+					}
+					selection.setCardinality(c, cardinality);
+				});
+		return selection;
+	}
+
+	/**
+	 * Grows the validity bitmaps along with the chunks. The bitmap of a new chunk is allocated on the node of the
+	 * chunk, with all its rows null.
+	 */
+	@Override
+	protected void setChunkCount(final int chunkCount) {
+		super.setChunkCount(chunkCount);
+		// Called by the super constructor, before the bitmaps are initialized
+		if (this.validity == null) {
+			return;
+		}
+		final IChunkDouble[] chunks = acquireChunks();
+		final int previousCount = this.validity.length;
+		final MemorySegment[] validity = Arrays.copyOf(this.validity, chunkCount);
+		final int[] validCounts = Arrays.copyOf(this.validCounts, chunkCount);
+		final long size = (long) Math.max(1, getChunkCapacity() >>> 6) * Long.BYTES;
+		for (int c = previousCount; c < chunkCount; ++c) {
+			validity[c] = PlatformUtil.allocateOnNode(this.arena, size, chunks[c].getNumaNodeId());
+		}
+		this.validity = validity;
+		this.validCounts = validCounts;
+	}
+
+	/**
+	 * Sets or clears the validity bit of a row, and updates the valid count of its chunk.
+	 */
+	protected void setValid(final int chunkId, final int chunkPosition, final boolean valid) {
+		final MemorySegment words = this.validity[chunkId];
+		final long word = words.getAtIndex(JAVA_LONG, chunkPosition >>> 6);
+		final long bit = 1L << chunkPosition;
+		if (valid != ((word & bit) != 0)) {
+			words.setAtIndex(JAVA_LONG, chunkPosition >>> 6, word ^ bit);
+			this.validCounts[chunkId] += valid ? 1 : -1;
+		}
+	}
+
+	/**
+	 * Sets the validity bits of a range of rows of a chunk, one word at a time.
+	 */
+	protected void setValid(final int chunkId, final int from, final int to) {
+		final MemorySegment words = this.validity[chunkId];
+		int added = 0;
+		for (int r = from; r < to;) {
+			final int bit = r & (Long.SIZE - 1);
+			final int length = Math.min(Long.SIZE - bit, to - r);
+			final long mask = fullWord(length) << bit;
+			final long word = words.getAtIndex(JAVA_LONG, r >>> 6);
+			words.setAtIndex(JAVA_LONG, r >>> 6, word | mask);
+			added += Long.bitCount(mask & ~word);
+			r += length;
+		}
+		this.validCounts[chunkId] += added;
+	}
+
+	/**
+	 * Returns the word with the given number of low bits set.
+	 */
+	protected static long fullWord(final int length) {
+		return length == Long.SIZE ? -1L : (1L << length) - 1;
+	}
+
+	/**
+	 * Closes the chunks, then frees the validity bitmaps.
+	 */
+	@Override
+	public void close() {
+		super.close();
+		this.validity = new MemorySegment[0];
+		this.validCounts = new int[0];
+		this.arena.close();
+	}
+}
@@ -0,0 +1,170 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import java.util.function.BiFunction;
+
+/**
+ * A {@link ColumnDouble column} whose chunks are striped across the NUMA nodes: chunk {@code i} is allocated on
+ * node {@code i mod N}.
+ * <p>
+ * The aggregations fan out: each chunk is scanned by a virtual thread of its home node (as given by
+ * {@link IChunkDouble#getNumaNodeId()}), and the partial results are merged by the calling thread. A large column
+ * is therefore read by all the memory controllers of the machine instead of a single one.
+ *
+ * @author ActiveViam
+ */
+public class PartitionedColumnDouble extends ColumnDouble {
+
+	/** The number of NUMA nodes the chunks are striped across. */
+	protected final int nodeCount;
+
+	/** Creates a chunk, given its capacity and its NUMA node. */
+	protected final BiFunction<Integer, Integer, IChunkDouble> nodeChunkFactory;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @param nodeChunkFactory Creates a chunk, given its capacity and the NUMA node to allocate it on
+	 */
+	public PartitionedColumnDouble(
+			final long chunkCapacity,
+			final BiFunction<Integer, Integer, IChunkDouble> nodeChunkFactory) {
+		super(chunkCapacity);
+		this.nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		this.nodeChunkFactory = nodeChunkFactory;
+	}
+
+	/**
+	 * Creates a partitioned column whose chunks are allocated with {@link DirectChunkDouble#ofNumaAlloc(int, int)}.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @return The new column
+	 */
+	public static PartitionedColumnDouble ofNumaAlloc(final long chunkCapacity) {
+		return new PartitionedColumnDouble(chunkCapacity, DirectChunkDouble::ofNumaAlloc);
+	}
+
+	/**
+	 * Returns the NUMA node of the chunk with the given ID.
+	 *
+	 * @param chunkId The ID of a chunk
+	 * @return The NUMA node on which the chunk is allocated
+	 */
+	public int getChunkNode(final int chunkId) {
+		return chunkId % this.nodeCount;
+	}
+
+	@Override
+	protected IChunkDouble createChunk(final int chunkId, final int capacity) {
+		return this.nodeChunkFactory.apply(capacity, getChunkNode(chunkId));
+	}
+
+	@Override
+	public double sum() {
+		double result = 0;
+		for (double partial : scanChunks(this::chunkSum)) {
+			result += partial;
+		}
+		return result;
+	}
+
+	@Override
+	public double min() {
+		double result = Double.POSITIVE_INFINITY;
+		for (double partial : scanChunks(this::chunkMin)) {
+			result = Math.min(result, partial);
+		}
+		return result;
+	}
+
+	@Override
+	public double max() {
+		double result = Double.NEGATIVE_INFINITY;
+		for (double partial : scanChunks(this::chunkMax)) {
+			result = Math.max(result, partial);
+		}
+		return result;
+	}
+
+	@Override
+	public long count(final double lower, final double upper) {
+		long result = 0;
+		for (double partial : scanChunks((c, chunk) -> chunkCount(c, chunk, lower, upper))) {
+			result += (long) partial;
+		}
+		return result;
+	}
+
+	/**
+	 * Seals the chunks in parallel, each one on a virtual thread of its home NUMA node, then computes their zone
+	 * maps. As for {@link ColumnDouble#seal()}, the replaced chunks are closed once the sealed ones are published.
+	 */
+	@Override
+	public void seal() {
+		final IChunkDouble[] chunks = acquireChunks();
+		final IChunkDouble[] sealedChunks = new IChunkDouble[chunks.length];
+		ParallelUtil.forEach(
+				chunks.length,
+				c -> chunks[c].getNumaNodeId(),
+				c -> sealedChunks[c] = sealChunk(chunks[c]));
+		publishChunks(sealedChunks);
+		computeZoneMaps();
+		closeReplacedChunks(chunks, sealedChunks);
+	}
+
+	/**
+	 * Scans each chunk on a virtual thread of its home NUMA node.
+	 *
+	 * @param chunkScan The scan to apply to each chunk
+	 * @return The result of the scan of each chunk, indexed by chunk ID
+	 */
+	protected double[] scanChunks(final ChunkScan chunkScan) {
+		final IChunkDouble[] chunks = readChunks();
+		final double[] partials = new double[chunks.length];
+		ParallelUtil.forEach(
+				chunks.length,
+				c -> chunks[c].getNumaNodeId(),
+				c -> partials[c] = chunkScan.scan(c, chunks[c]));
+		return partials;
+	}
+
+	/**
+	 * Verifies that each chunk is allocated on the NUMA node it was assigned to.
+	 *
+	 * @return {@code true}
+	 * @throws IllegalStateException if a chunk is not on its node
+	 */
+	public boolean verifyNodeAffinity() {
+		final IChunkDouble[] chunks = acquireChunks();
+		for (int c = 0; c < chunks.length; ++c) {
+			final int pointerNode = chunks[c].getAddress() == 0
+					? getChunkNode(c)
+					: IPlatform.CURRENT_PLATFORM.getPointerNode(chunks[c].getAddress());
+			if (pointerNode != getChunkNode(c) || chunks[c].getNumaNodeId() != getChunkNode(c)) {
+				throw new IllegalStateException(
+						"Wrong placement of chunk " + c + " (expected node: " + getChunkNode(c)
+								+ ", recorded node: " + chunks[c].getNumaNodeId()
+								+ ", actual node: " + pointerNode + ")");
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * A scan of a chunk, which can answer from the {@link ZoneMap zone map} of the chunk.
+	 */
+	@FunctionalInterface
+	protected interface ChunkScan {
+
+		/**
+		 * Scans a chunk.
+		 *
+		 * @param chunkId The ID of the chunk
+		 * @param chunk The chunk
+		 * @return The result of the scan
+		 */
+		double scan(int chunkId, IChunkDouble chunk);
+	}
+}
@@ -0,0 +1,87 @@
+package com.activeviam.experiments.loom.numa.data;
+
+/**
+ * A predicate on {@code double} values, selecting the values within {@code [lower, upper]}.
+ * <p>
+ * Equality, comparisons and ranges are all expressed as an inclusive range, so that the scans evaluate every
+ * predicate with the same branch-free kernel. Exclusive bounds are turned into inclusive ones with
+ * {@link Math#nextUp(double)} and {@link Math#nextDown(double)}. {@code NaN} never matches.
+ *
+ * @param lower The lower bound of the matching values (inclusive)
+ * @param upper The upper bound of the matching values (inclusive)
+ *
+ * @author ActiveViam
+ */
+public record PredicateDouble(double lower, double upper) {
+
+	/**
+	 * Returns the predicate selecting the values equal to the given one.
+	 *
+	 * @param value A value
+	 * @return The predicate {@code x == value}
+	 */
+	public static PredicateDouble equalTo(final double value) {
+		return new PredicateDouble(value, value);
+	}
+
+	/**
+	 * Returns the predicate selecting the values within {@code [lower, upper]}.
+	 *
+	 * @param lower The lower bound (inclusive)
+	 * @param upper The upper bound (inclusive)
+	 * @return The predicate {@code lower <= x <= upper}
+	 */
+	public static PredicateDouble between(final double lower, final double upper) {
+		return new PredicateDouble(lower, upper);
+	}
+
+	/**
+	 * Returns the predicate selecting the values lower than the given one.
+	 *
+	 * @param value A value
+	 * @return The predicate {@code x < value}
+	 */
+	public static PredicateDouble lessThan(final double value) {
+		return new PredicateDouble(Double.NEGATIVE_INFINITY, Math.nextDown(value));
+	}
+
+	/**
+	 * Returns the predicate selecting the values lower than or equal to the given one.
+	 *
+	 * @param value A value
+	 * @return The predicate {@code x <= value}
+	 */
+	public static PredicateDouble lessThanOrEqualTo(final double value) {
+		return new PredicateDouble(Double.NEGATIVE_INFINITY, value);
+	}
+
+	/**
+	 * Returns the predicate selecting the values greater than the given one.
+	 *
+	 * @param value A value
+	 * @return The predicate {@code x > value}
+	 */
+	public static PredicateDouble greaterThan(final double value) {
+		return new PredicateDouble(Math.nextUp(value), Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Returns the predicate selecting the values greater than or equal to the given one.
+	 *
+	 * @param value A value
+	 * @return The predicate {@code x >= value}
+	 */
+	public static PredicateDouble greaterThanOrEqualTo(final double value) {
+		return new PredicateDouble(value, Double.POSITIVE_INFINITY);
+	}
+
+	/**
+	 * Evaluates this predicate on a value.
+	 *
+	 * @param value A value
+	 * @return {@code true} if the value matches
+	 */
+	public boolean test(final double value) {
+		return value >= this.lower && value <= this.upper;
+	}
+}
@@ -0,0 +1,272 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.thread.virtual.NumaVirtualThreadRunner;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+import java.util.function.LongToDoubleFunction;
+
+/**
+ * A {@link ColumnDouble column} keeping a full copy of its chunks on each NUMA node, for the small, read-mostly
+ * columns that every query reads from every node.
+ * <p>
+ * The reads and the scans of a virtual thread of the NUMA pools go through the replica of its node, read from its
+ * carrier thread, so they are always local. The other threads are not bound to a node and read the primary replica.
+ * The scans resolve the replica once, but {@link #readDouble(long)} resolves it at each call: row by row scans
+ * should read through a {@link #reader()} instead.
+ * <p>
+ * The writes go to the replica of node 0, the primary one, and are written through to the other replicas before
+ * returning: once a write returns, all the replicas hold the written values, and a thread that starts reading
+ * afterwards sees them whatever its node. A read running concurrently with a write may see the previous value on
+ * one node and the new one on another. Like the base column, this column supports a single writer. Large bulk
+ * writes are propagated in parallel, each replica being written by a virtual thread of its own node.
+ * <p>
+ * The replicas multiply the memory used by the column by the number of nodes: {@link #getSizeInBytes()} reports
+ * the memory of all the replicas, and {@link #getReplicaSizeInBytes()} the memory of one of them.
+ *
+ * @author ActiveViam
+ */
+public class ReplicatedColumnDouble extends ColumnDouble {
+
+	/** The minimum number of rows of a bulk write for its propagation to run on the nodes of the replicas. */
+	public static final int PARALLEL_PROPAGATION_THRESHOLD = 1 << 16;
+
+	/** Creates a chunk, given its capacity and its NUMA node. */
+	protected final BiFunction<Integer, Integer, IChunkDouble> nodeChunkFactory;
+
+	/** The chunks of each replica, indexed by NUMA node. The primary replica is the chunk array of the column. */
+	protected volatile IChunkDouble[][] replicas;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @param nodeChunkFactory Creates a chunk, given its capacity and the NUMA node to allocate it on
+	 */
+	public ReplicatedColumnDouble(
+			final long chunkCapacity,
+			final BiFunction<Integer, Integer, IChunkDouble> nodeChunkFactory) {
+		super(chunkCapacity);
+		this.nodeChunkFactory = nodeChunkFactory;
+		final IChunkDouble[][] replicas = new IChunkDouble[IPlatform.CURRENT_PLATFORM.getNUMANodeCount()][];
+		Arrays.fill(replicas, new IChunkDouble[0]);
+		replicas[0] = acquireChunks();
+		this.replicas = replicas;
+	}
+
+	/**
+	 * Creates a replicated column whose chunks are allocated with {@link DirectChunkDouble#ofNumaAlloc(int, int)}.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @return The new column
+	 */
+	public static ReplicatedColumnDouble ofNumaAlloc(final long chunkCapacity) {
+		return new ReplicatedColumnDouble(chunkCapacity, DirectChunkDouble::ofNumaAlloc);
+	}
+
+	/**
+	 * Returns the number of copies of the chunks.
+	 *
+	 * @return The number of NUMA nodes
+	 */
+	public int getReplicaCount() {
+		return this.replicas.length;
+	}
+
+	/**
+	 * Returns the number of bytes used by the values of one replica.
+	 *
+	 * @return The size of the chunks of one replica, in bytes
+	 */
+	public long getReplicaSizeInBytes() {
+		return getSizeInBytes(acquireChunks());
+	}
+
+	/**
+	 * Returns the number of bytes used by the values of all the replicas.
+	 */
+	@Override
+	public long getSizeInBytes() {
+		long bytes = 0;
+		for (IChunkDouble[] replica : this.replicas) {
+			bytes += getSizeInBytes(replica);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Returns the replica of the node of the calling thread if it is a virtual thread of a NUMA pool, the primary
+	 * replica otherwise.
+	 */
+	@Override
+	protected IChunkDouble[] readChunks() {
+		final IChunkDouble[][] replicas = this.replicas;
+		final int node = NumaVirtualThreadRunner.getCurrentCarrierNode();
+		return node > 0 && node < replicas.length ? replicas[node] : replicas[0];
+	}
+
+	/**
+	 * Returns a reader of the rows of the replica read by the calling thread, resolved once, for the row by row
+	 * scans. The reader must only be used by the calling thread, and only sees the chunks that exist when it is
+	 * created.
+	 *
+	 * @return A reader returning the value of a row, given its position
+	 */
+	public LongToDoubleFunction reader() {
+		final IChunkDouble[] chunks = readChunks();
+		return position -> chunks[chunkId(position)].readDouble(chunkPosition(position));
+	}
+
+	@Override
+	public void writeDouble(final int position, final double value) {
+		super.writeDouble(position, value);
+		final IChunkDouble[][] replicas = this.replicas;
+		final int chunkId = chunkId(position);
+		final int chunkPosition = chunkPosition(position);
+		for (int n = 1; n < replicas.length; ++n) {
+			replicas[n][chunkId].writeDouble(chunkPosition, value);
+		}
+	}
+
+	@Override
+	public void writeDouble(final long position, final double value) {
+		super.writeDouble(position, value);
+		final IChunkDouble[][] replicas = this.replicas;
+		final int chunkId = chunkId(position);
+		final int chunkPosition = chunkPosition(position);
+		for (int n = 1; n < replicas.length; ++n) {
+			replicas[n][chunkId].writeDouble(chunkPosition, value);
+		}
+	}
+
+	/**
+	 * Copies the rows written into the primary replica to the other replicas.
+	 */
+	@Override
+	protected void rowsWritten(final long from, final long to) {
+		super.rowsWritten(from, to);
+		final IChunkDouble[][] replicas = this.replicas;
+		if (to - from < PARALLEL_PROPAGATION_THRESHOLD) {
+			for (int n = 1; n < replicas.length; ++n) {
+				propagate(replicas[0], replicas[n], from, to);
+			}
+		} else {
+			ParallelUtil.forEach(
+					replicas.length - 1,
+					i -> i + 1,
+					i -> propagate(replicas[0], replicas[i + 1], from, to));
+		}
+	}
+
+	/**
+	 * Copies a range of rows from the primary replica to another replica, chunk by chunk.
+	 */
+	protected void propagate(final IChunkDouble[] primary, final IChunkDouble[] replica, long from, final long to) {
+		while (from < to) {
+			final int chunkId = chunkId(from);
+			final int chunkPosition = chunkPosition(from);
+			final int chunkLength = (int) Math.min(to - from, getChunkCapacity() - chunkPosition);
+			primary[chunkId].copyTo(chunkPosition, replica[chunkId], chunkPosition, chunkLength);
+			from += chunkLength;
+		}
+	}
+
+	/**
+	 * Creates a chunk of the primary replica, on node 0.
+	 */
+	@Override
+	protected IChunkDouble createChunk(final int chunkId, final int capacity) {
+		return this.nodeChunkFactory.apply(capacity, 0);
+	}
+
+	/**
+	 * Grows the other replicas along with the primary one. The new chunks of a replica are allocated on its node.
+	 */
+	@Override
+	protected void setChunkCount(final int chunkCount) {
+		super.setChunkCount(chunkCount);
+		final IChunkDouble[][] previousReplicas = this.replicas;
+		// Called by the super constructor, before the replicas are initialized
+		if (previousReplicas == null) {
+			return;
+		}
+		final IChunkDouble[][] replicas = new IChunkDouble[previousReplicas.length][];
+		replicas[0] = acquireChunks();
+		for (int n = 1; n < replicas.length; ++n) {
+			final IChunkDouble[] previousChunks = previousReplicas[n];
+			replicas[n] = Arrays.copyOf(previousChunks, chunkCount);
+			for (int c = previousChunks.length; c < chunkCount; ++c) {
+				replicas[n][c] = this.nodeChunkFactory.apply(getChunkCapacity(), n);
+			}
+		}
+		this.replicas = replicas;
+	}
+
+	/**
+	 * Seals the chunks of each replica on a virtual thread of its node, then computes the zone maps. The sealed
+	 * replicas are published in new arrays, and the replaced chunks are only closed afterwards.
+	 */
+	@Override
+	public void seal() {
+		final IChunkDouble[][] replicas = this.replicas;
+		final IChunkDouble[][] sealedReplicas = new IChunkDouble[replicas.length][];
+		ParallelUtil.forEach(replicas.length, n -> n, n -> {
+			final IChunkDouble[] chunks = replicas[n];
+			final IChunkDouble[] sealedChunks = new IChunkDouble[chunks.length];
+			for (int c = 0; c < chunks.length; ++c) {
+				sealedChunks[c] = sealChunk(chunks[c]);
+			}
+			sealedReplicas[n] = sealedChunks;
+		});
+		publishChunks(sealedReplicas[0]);
+		this.replicas = sealedReplicas;
+		computeZoneMaps();
+		closeReplacedChunks(
+				Arrays.stream(replicas).flatMap(Arrays::stream).toArray(IChunkDouble[]::new),
+				Arrays.stream(sealedReplicas).flatMap(Arrays::stream).toArray(IChunkDouble[]::new));
+	}
+
+	/**
+	 * Closes the chunks of all the replicas.
+	 */
+	@Override
+	public void close() {
+		final IChunkDouble[][] replicas = this.replicas;
+		final IChunkDouble[][] emptyReplicas = new IChunkDouble[replicas.length][];
+		Arrays.fill(emptyReplicas, new IChunkDouble[0]);
+		try {
+			super.close();
+		} finally {
+			emptyReplicas[0] = acquireChunks();
+			this.replicas = emptyReplicas;
+			closeChunks(Arrays.stream(replicas, 1, replicas.length)
+					.flatMap(Arrays::stream)
+					.toArray(IChunkDouble[]::new));
+		}
+	}
+
+	/**
+	 * Verifies that the chunks of each replica are allocated on the node of the replica.
+	 *
+	 * @return {@code true}
+	 * @throws IllegalStateException if a chunk is not on its node
+	 */
+	public boolean verifyNodeAffinity() {
+		final IChunkDouble[][] replicas = this.replicas;
+		for (int n = 0; n < replicas.length; ++n) {
+			for (int c = 0; c < replicas[n].length; ++c) {
+				final IChunkDouble chunk = replicas[n][c];
+				final int pointerNode = chunk.getAddress() == 0
+						? n
+						: IPlatform.CURRENT_PLATFORM.getPointerNode(chunk.getAddress());
+				if (pointerNode != n || chunk.getNumaNodeId() != n) {
+					throw new IllegalStateException(
+							"Wrong placement of chunk " + c + " of replica " + n + " (recorded node: "
+									+ chunk.getNumaNodeId() + ", actual node: " + pointerNode + ")");
+				}
+			}
+		}
+		return true;
+	}
+}
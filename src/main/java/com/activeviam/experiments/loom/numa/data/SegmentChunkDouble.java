@@ -0,0 +1,200 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+
+import com.activeviam.experiments.loom.numa.data.compressed.ACompressedChunkDouble;
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import com.activeviam.experiments.loom.numa.util.ScanUtil;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * A chunk backed by a {@link MemorySegment} of the Foreign Function and Memory API, instead of a raw address read
+ * with {@link sun.misc.Unsafe} as {@link DirectChunkDouble}.
+ * <p>
+ * The lifetime of the memory is the one of the {@link Arena} the segment was allocated in: the chunks of a
+ * {@link SegmentColumnDouble} share the arena of their column, and are all freed when the column is closed. Any
+ * access after that fails with an {@link IllegalStateException} instead of crashing the JVM.
+ * <p>
+ * Every access is bounds-checked, but the scans are counted loops over a segment held in a local variable, for
+ * which the JIT hoists the checks out of the loop.
+ *
+ * @author ActiveViam
+ */
+public class SegmentChunkDouble implements IChunkDouble {
+
+	/** The alignment of the segments, so that chunks start on a page boundary as the mmapped ones. */
+	public static final long SEGMENT_ALIGNMENT = LinuxPlatform.PAGE_SIZE;
+
+	/** The memory of this chunk. */
+	protected final MemorySegment segment;
+
+	protected final int numaNodeId;
+
+	protected final int capacity;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param segment The memory of the chunk, whose size is a multiple of {@link DirectChunkDouble#ELEMENT_SIZE}
+	 * @param numaNodeId The NUMA node of the memory
+	 */
+	public SegmentChunkDouble(final MemorySegment segment, final int numaNodeId) {
+		this.segment = segment;
+		this.numaNodeId = numaNodeId;
+		this.capacity = (int) (segment.byteSize() / DirectChunkDouble.ELEMENT_SIZE);
+	}
+
+	/**
+	 * Allocates a chunk in the given arena. The memory is zeroed by the calling thread, so with the default memory
+	 * policy it is placed on the node of that thread.
+	 *
+	 * @param arena The arena owning the memory of the chunk
+	 * @param capacity The capacity of the chunk
+	 * @return The new chunk
+	 */
+	public static SegmentChunkDouble ofArena(final Arena arena, final int capacity) {
+		final long size = (long) capacity * DirectChunkDouble.ELEMENT_SIZE;
+		return new SegmentChunkDouble(
+				arena.allocate(size, SEGMENT_ALIGNMENT),
+				IPlatform.CURRENT_PLATFORM.getCurrentNumaNode());
+	}
+
+	/**
+	 * Allocates a chunk on the given NUMA node with {@code numa_alloc_onnode()}. The memory is freed with
+	 * {@code numa_free()} when the arena is closed.
+	 * <p>
+	 * When libnuma is not available, or if the node is negative, this falls back to {@link #ofArena(Arena, int)}.
+	 *
+	 * @param arena The arena owning the memory of the chunk
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node of the chunk
+	 * @return The new chunk
+	 */
+	public static SegmentChunkDouble ofNumaAlloc(final Arena arena, final int capacity, final int numaNodeId) {
+		if (numaNodeId < 0
+				|| !(IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform)
+				|| !platform.isNumaAvailable()) {
+			return ofArena(arena, capacity);
+		}
+
+		final long size = (long) capacity * DirectChunkDouble.ELEMENT_SIZE;
+		final long address = platform.numaAllocOnNode(size, numaNodeId);
+		final MemorySegment segment = MemorySegment.ofAddress(address)
+				.reinterpret(size, arena, s -> platform.numaFree(s.address(), size));
+		return new SegmentChunkDouble(segment, numaNodeId);
+	}
+
+	/**
+	 * Returns the memory segment of this chunk.
+	 *
+	 * @return The memory of this chunk
+	 */
+	public MemorySegment getSegment() {
+		return segment;
+	}
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+	@Override
+	public long getAddress() {
+		return segment.address();
+	}
+
+	@Override
+	public int getNumaNodeId() {
+		return numaNodeId;
+	}
+
+	@Override
+	public double readDouble(int position) {
+		return segment.getAtIndex(JAVA_DOUBLE, position);
+	}
+
+	@Override
+	public void writeDouble(int position, double value) {
+		segment.setAtIndex(JAVA_DOUBLE, position, value);
+	}
+
+	@Override
+	public void readDoubles(int position, double[] destination, int offset, int length) {
+		MemorySegment.copy(segment, JAVA_DOUBLE, (long) position * Double.BYTES, destination, offset, length);
+	}
+
+	@Override
+	public void writeDoubles(int position, double[] source, int offset, int length) {
+		MemorySegment.copy(source, offset, segment, JAVA_DOUBLE, (long) position * Double.BYTES, length);
+	}
+
+	@Override
+	public void readDoubles(int position, MemorySegment destination, long offset, int length) {
+		MemorySegment.copy(segment, (long) position * Double.BYTES, destination, offset, (long) length * Double.BYTES);
+	}
+
+	@Override
+	public void writeDoubles(int position, MemorySegment source, long offset, int length) {
+		MemorySegment.copy(source, offset, segment, (long) position * Double.BYTES, (long) length * Double.BYTES);
+	}
+
+	@Override
+	public void copyTo(int position, IChunkDouble destination, int destinationPosition, int length) {
+		destination.writeDoubles(destinationPosition, segment, (long) position * Double.BYTES, length);
+	}
+
+	@Override
+	public void fill(int from, int to, double value) {
+		final MemorySegment range = segment.asSlice((long) from * Double.BYTES, (long) (to - from) * Double.BYTES);
+		if (Double.doubleToRawLongBits(value) == 0) {
+			range.fill((byte) 0);
+			return;
+		}
+		for (long i = 0, length = to - from; i < length; ++i) {
+			range.setAtIndex(JAVA_DOUBLE, i, value);
+		}
+	}
+
+	@Override
+	public double sum(int from, int to) {
+		return ScanUtil.sum(segment, from, to - from);
+	}
+
+	@Override
+	public double min(int from, int to) {
+		return ScanUtil.min(segment, from, to - from);
+	}
+
+	@Override
+	public double max(int from, int to) {
+		return ScanUtil.max(segment, from, to - from);
+	}
+
+	@Override
+	public int count(int from, int to, double lower, double upper) {
+		return ScanUtil.count(segment, from, to - from, lower, upper);
+	}
+
+	@Override
+	public int select(int from, int to, double lower, double upper, MemorySegment words) {
+		return ScanUtil.select(segment, from, to - from, lower, upper, words, from >>> 6);
+	}
+
+	@Override
+	public double sumSelected(int from, int to, MemorySegment words) {
+		return ScanUtil.sumSelected(segment, from, to - from, words, from >>> 6);
+	}
+
+	@Override
+	public double dot(IChunkDouble other, int from, int to) {
+		if (other instanceof ACompressedChunkDouble) {
+			return other.dot(this, from, to);
+		}
+		if (!(other instanceof final SegmentChunkDouble otherChunk)) {
+			return IChunkDouble.super.dot(other, from, to);
+		}
+		return ScanUtil.dot(segment, otherChunk.segment, from, to - from);
+	}
+}
@@ -0,0 +1,48 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import java.lang.foreign.Arena;
+
+/**
+ * A {@link ColumnDouble column} of {@link SegmentChunkDouble segment chunks}, all allocated in a shared
+ * {@link Arena} owned by the column.
+ * <p>
+ * The memory of the column is therefore freed deterministically, all at once, when the column is
+ * {@link #close() closed}, rather than chunk by chunk when the garbage collector gets to them.
+ *
+ * @author ActiveViam
+ */
+public class SegmentColumnDouble extends ColumnDouble {
+
+	/** The arena owning the memory of the chunks. */
+	protected final Arena arena;
+
+	/** The NUMA node on which the chunks are allocated, or a negative value for the node of the writer. */
+	protected final int numaNodeId;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param chunkCapacity The target capacity of a chunk
+	 * @param numaNodeId The NUMA node on which the chunks are allocated with {@code numa_alloc_onnode()}, or a
+	 *        negative value to allocate them in the arena from the current thread
+	 */
+	public SegmentColumnDouble(final long chunkCapacity, final int numaNodeId) {
+		super(chunkCapacity);
+		this.arena = Arena.ofShared();
+		this.numaNodeId = numaNodeId;
+	}
+
+	@Override
+	protected IChunkDouble createChunk(final int chunkId, final int capacity) {
+		return SegmentChunkDouble.ofNumaAlloc(this.arena, capacity, this.numaNodeId);
+	}
+
+	/**
+	 * Empties the column and frees the memory of all its chunks.
+	 */
+	@Override
+	public void close() {
+		super.close();
+		this.arena.close();
+	}
+}
@@ -0,0 +1,176 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import com.activeviam.experiments.loom.numa.util.PlatformUtil;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+
+/**
+ * The rows of a {@link ColumnDouble column} selected by a {@link PredicateDouble predicate}, as one bit per row.
+ * <p>
+ * The bitmap is split like the column: each chunk of the column has its own bitmap, allocated off-heap on the NUMA
+ * node of the chunk by the thread evaluating the predicate on that chunk. The aggregations consuming the selection
+ * then read the values and the bits of a chunk from the same node. All the bitmaps are freed when this selection is
+ * {@link #close() closed}.
+ *
+ * @author ActiveViam
+ */
+public class SelectionBitmap implements AutoCloseable {
+
+	/** The arena owning the memory of the bitmaps. */
+	protected final Arena arena = Arena.ofShared();
+
+	/** Chunk order (the base-2 log of the chunk capacity) of the column. */
+	protected final int chunkOrder;
+
+	/** The bitmap of each chunk. */
+	protected final MemorySegment[] words;
+
+	/** The NUMA node of the bitmap of each chunk. */
+	protected final int[] numaNodeIds;
+
+	/** The number of selected rows of each chunk. */
+	protected final int[] cardinalities;
+
+	/**
+	 * Constructor. The bitmaps of the chunks are allocated later, by {@link #allocateChunk(int, int)}.
+	 *
+	 * @param chunkCount The number of chunks of the column
+	 * @param chunkCapacity The capacity of a chunk of the column, a power of 2
+	 */
+	public SelectionBitmap(final int chunkCount, final int chunkCapacity) {
+		this.chunkOrder = Integer.numberOfTrailingZeros(chunkCapacity);
+		this.words = new MemorySegment[chunkCount];
+		this.numaNodeIds = new int[chunkCount];
+		this.cardinalities = new int[chunkCount];
+	}
+
+	/**
+	 * Allocates the bitmap of a chunk on the given NUMA node with {@code numa_alloc_onnode()}. When libnuma is not
+	 * available, or if the node is negative, the bitmap is allocated in the arena and placed on first touch, so it
+	 * should be called from the thread that will write the bitmap.
+	 *
+	 * @param chunkId The ID of the chunk
+	 * @param numaNodeId The NUMA node of the chunk
+	 * @return The bitmap of the chunk
+	 */
+	public MemorySegment allocateChunk(final int chunkId, final int numaNodeId) {
+		final MemorySegment segment =
+				PlatformUtil.allocateOnNode(this.arena, (long) wordCount() * Long.BYTES, numaNodeId);
+		this.words[chunkId] = segment;
+		this.numaNodeIds[chunkId] = numaNodeId;
+		return segment;
+	}
+
+	/**
+	 * Records the number of rows of a chunk selected by the predicate.
+	 *
+	 * @param chunkId The ID of the chunk
+	 * @param cardinality The number of selected rows of the chunk
+	 */
+	protected void setCardinality(final int chunkId, final int cardinality) {
+		this.cardinalities[chunkId] = cardinality;
+	}
+
+	/**
+	 * Returns whether the row at the given position is selected.
+	 *
+	 * @param position A row position in the column
+	 * @return {@code true} if the row is selected
+	 */
+	public boolean isSelected(final int position) {
+		final MemorySegment words = this.words[position >>> this.chunkOrder];
+		final int chunkPosition = position & ((1 << this.chunkOrder) - 1);
+		return (words.getAtIndex(JAVA_LONG, chunkPosition >>> 6) & (1L << chunkPosition)) != 0;
+	}
+
+	/**
+	 * Returns whether the row at the given position, which can exceed {@link Integer#MAX_VALUE}, is selected.
+	 *
+	 * @param position A row position in the column
+	 * @return {@code true} if the row is selected
+	 */
+	public boolean isSelected(final long position) {
+		final MemorySegment words = this.words[(int) (position >>> this.chunkOrder)];
+		final int chunkPosition = (int) position & ((1 << this.chunkOrder) - 1);
+		return (words.getAtIndex(JAVA_LONG, chunkPosition >>> 6) & (1L << chunkPosition)) != 0;
+	}
+
+	/**
+	 * Returns the total number of selected rows.
+	 *
+	 * @return The number of selected rows
+	 */
+	public long getCardinality() {
+		long result = 0;
+		for (int cardinality : this.cardinalities) {
+			result += cardinality;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the number of selected rows of a chunk.
+	 *
+	 * @param chunkId The ID of the chunk
+	 * @return The number of selected rows of the chunk
+	 */
+	public int getCardinality(final int chunkId) {
+		return this.cardinalities[chunkId];
+	}
+
+	/**
+	 * Returns the bitmap of a chunk: bit {@code p % 64} of word {@code p / 64} is set if the row at position
+	 * {@code p} in the chunk is selected.
+	 *
+	 * @param chunkId The ID of the chunk
+	 * @return The bitmap of the chunk
+	 */
+	public MemorySegment getChunkWords(final int chunkId) {
+		return this.words[chunkId];
+	}
+
+	/**
+	 * Returns the NUMA node of the bitmap of a chunk.
+	 *
+	 * @param chunkId The ID of the chunk
+	 * @return The NUMA node of the bitmap
+	 */
+	public int getNumaNodeId(final int chunkId) {
+		return this.numaNodeIds[chunkId];
+	}
+
+	/**
+	 * Returns the number of chunks covered by this selection.
+	 *
+	 * @return The number of chunks
+	 */
+	public int getChunkCount() {
+		return this.words.length;
+	}
+
+	/**
+	 * Returns the number of bytes of the bitmaps.
+	 *
+	 * @return The size of the bitmaps, in bytes
+	 */
+	public long getSizeInBytes() {
+		return (long) this.words.length * wordCount() * Long.BYTES;
+	}
+
+	/**
+	 * Returns the number of words of the bitmap of a chunk.
+	 */
+	protected int wordCount() {
+		return ((1 << this.chunkOrder) + Long.SIZE - 1) >>> 6;
+	}
+
+	/**
+	 * Frees the bitmaps. The selection must not be used afterwards.
+	 */
+	@Override
+	public void close() {
+		this.arena.close();
+	}
+}
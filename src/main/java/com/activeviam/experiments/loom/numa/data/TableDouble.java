@@ -0,0 +1,337 @@
+package com.activeviam.experiments.loom.numa.data;
+
+import com.activeviam.experiments.loom.numa.data.compressed.ChunkEncoder;
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import java.util.Arrays;
+import java.util.function.BiFunction;
+
+/**
+ * A table of {@code double} columns, split by row range into row groups.
+ * <p>
+ * A row group holds one {@link IChunkDouble chunk} per column, all allocated on the same NUMA node: row group
+ * {@code g} is placed on node {@code g mod N}, as the chunks of a {@link PartitionedColumnDouble}. The multi-column
+ * scans process each row group on a virtual thread of its home node, which reads all the requested columns of
+ * the row group in a single task. Contrary to an array of {@link ColumnDouble columns} read by one thread each, no
+ * column is ever read from a remote node.
+ *
+ * @author ActiveViam
+ */
+public class TableDouble implements AutoCloseable {
+
+	/** The number of columns. */
+	protected final int columnCount;
+
+	/** Row group order (the base-2 log of the row group capacity). */
+	protected final int rowGroupOrder;
+
+	/** Mask to extract positions within row groups. */
+	protected final int rowGroupMask;
+
+	/** The number of NUMA nodes the row groups are striped across. */
+	protected final int nodeCount;
+
+	/** Creates a chunk, given its capacity and its NUMA node. */
+	protected final BiFunction<Integer, Integer, IChunkDouble> nodeChunkFactory;
+
+	/**
+	 * The row groups. Growing or sealing the table publishes a new array, and the chunk arrays of the published row
+	 * groups are never modified.
+	 */
+	protected volatile RowGroup[] rowGroups = new RowGroup[0];
+
+	/**
+	 * Constructor.
+	 *
+	 * @param columnCount The number of columns
+	 * @param rowGroupCapacity The target number of rows of a row group, at most
+	 *        {@link ColumnDouble#MAX_CHUNK_CAPACITY}
+	 * @param nodeChunkFactory Creates a chunk, given its capacity and the NUMA node to allocate it on
+	 */
+	public TableDouble(
+			final int columnCount,
+			final long rowGroupCapacity,
+			final BiFunction<Integer, Integer, IChunkDouble> nodeChunkFactory) {
+		if (columnCount <= 0) {
+			throw new IllegalArgumentException("A table needs at least one column, was " + columnCount);
+		}
+		if (rowGroupCapacity < 1 || rowGroupCapacity > ColumnDouble.MAX_CHUNK_CAPACITY) {
+			throw new IllegalArgumentException(
+					"The capacity of a row group must be within [1, " + ColumnDouble.MAX_CHUNK_CAPACITY + "], was "
+							+ rowGroupCapacity);
+		}
+		this.columnCount = columnCount;
+		// Compute the row group order (i.e. the smallest integer k such as 2^k >= rowGroupCapacity)
+		this.rowGroupOrder = 64 - Long.numberOfLeadingZeros(rowGroupCapacity - 1);
+		this.rowGroupMask = (1 << rowGroupOrder) - 1;
+		this.nodeCount = IPlatform.CURRENT_PLATFORM.getNUMANodeCount();
+		this.nodeChunkFactory = nodeChunkFactory;
+	}
+
+	/**
+	 * Creates a table whose chunks are allocated with {@link DirectChunkDouble#ofNumaAlloc(int, int)}.
+	 *
+	 * @param columnCount The number of columns
+	 * @param rowGroupCapacity The target number of rows of a row group
+	 * @return The new table
+	 */
+	public static TableDouble ofNumaAlloc(final int columnCount, final long rowGroupCapacity) {
+		return new TableDouble(columnCount, rowGroupCapacity, DirectChunkDouble::ofNumaAlloc);
+	}
+
+	/**
+	 * Reads the value stored at the given position of a column.
+	 *
+	 * @param position A row position in this table
+	 * @param column A column index
+	 * @return The value stored at this position
+	 */
+	public double readDouble(final int position, final int column) {
+		return this.rowGroups[position >> this.rowGroupOrder].chunks[column].readDouble(position & this.rowGroupMask);
+	}
+
+	/**
+	 * Writes the given value at the specified position of a column.
+	 *
+	 * @param position A row position in this table
+	 * @param column A column index
+	 * @param value A value
+	 */
+	public void writeDouble(final int position, final int column, final double value) {
+		this.rowGroups[position >> this.rowGroupOrder].chunks[column]
+				.writeDouble(position & this.rowGroupMask, value);
+	}
+
+	/**
+	 * Makes sure the table has enough room to store the given number of rows. The chunks of the new row groups are
+	 * requested from the chunk factory with the node of their row group.
+	 *
+	 * @param capacity The target capacity (in number of rows)
+	 * @return The actual capacity of the table (after expansion)
+	 */
+	public int ensureCapacity(final int capacity) {
+		final int targetCount = capacity <= 0 ? 0 : 1 + ((capacity - 1) >> this.rowGroupOrder);
+		final RowGroup[] previousGroups = this.rowGroups;
+		if (previousGroups.length < targetCount) {
+			final RowGroup[] newGroups = new RowGroup[targetCount];
+			System.arraycopy(previousGroups, 0, newGroups, 0, previousGroups.length);
+			for (int g = previousGroups.length; g < targetCount; ++g) {
+				newGroups[g] = createRowGroup(g);
+			}
+			this.rowGroups = newGroups;
+		}
+		return getCapacity();
+	}
+
+	/**
+	 * Returns the number of rows that can be stored in this table.
+	 *
+	 * @return The capacity of the table (in number of rows)
+	 */
+	public int getCapacity() {
+		return this.rowGroups.length << this.rowGroupOrder;
+	}
+
+	/**
+	 * Returns the number of columns of this table.
+	 *
+	 * @return The number of columns
+	 */
+	public int getColumnCount() {
+		return this.columnCount;
+	}
+
+	/**
+	 * Returns the number of row groups of this table.
+	 *
+	 * @return The number of row groups
+	 */
+	public int getRowGroupCount() {
+		return this.rowGroups.length;
+	}
+
+	/**
+	 * Returns the NUMA node of the row group with the given ID.
+	 *
+	 * @param rowGroupId The ID of a row group
+	 * @return The NUMA node on which all the chunks of the row group are allocated
+	 */
+	public int getRowGroupNode(final int rowGroupId) {
+		return rowGroupId % this.nodeCount;
+	}
+
+	/**
+	 * Computes the sums of the given columns, reading each row group once on its home node.
+	 *
+	 * @param columns The indices of the columns to sum
+	 * @return The sum of each requested column
+	 */
+	public double[] sum(final int... columns) {
+		final RowGroup[] rowGroups = this.rowGroups;
+		final double[][] partials = new double[rowGroups.length][];
+		ParallelUtil.forEach(rowGroups.length, g -> rowGroups[g].numaNodeId, g -> {
+			final IChunkDouble[] chunks = rowGroups[g].chunks;
+			final double[] groupSums = new double[columns.length];
+			for (int i = 0; i < columns.length; ++i) {
+				final IChunkDouble chunk = chunks[columns[i]];
+				groupSums[i] = chunk.sum(0, chunk.capacity());
+			}
+			partials[g] = groupSums;
+		});
+
+		final double[] result = new double[columns.length];
+		for (double[] groupSums : partials) {
+			for (int i = 0; i < columns.length; ++i) {
+				result[i] += groupSums[i];
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the dot product of two columns of this table. Both columns of a row group are on the same node, so
+	 * they are read together by a thread of that node.
+	 *
+	 * @param column1 The index of the first column
+	 * @param column2 The index of the second column
+	 * @return The sum of the products of the values of both columns
+	 */
+	public double dot(final int column1, final int column2) {
+		double result = 0;
+		for (double partial : scanRowGroups(chunks -> chunks[column1].dot(chunks[column2], 0, chunks[0].capacity()))) {
+			result += partial;
+		}
+		return result;
+	}
+
+	/**
+	 * Applies a scan to each row group, on a virtual thread of its home node.
+	 *
+	 * @param rowGroupScan The scan, given the chunks of a row group indexed by column
+	 * @return The result of the scan of each row group, indexed by row group ID
+	 */
+	public double[] scanRowGroups(final RowGroupScan rowGroupScan) {
+		final RowGroup[] rowGroups = this.rowGroups;
+		final double[] partials = new double[rowGroups.length];
+		ParallelUtil.forEach(
+				rowGroups.length,
+				g -> rowGroups[g].numaNodeId,
+				g -> partials[g] = rowGroupScan.scan(rowGroups[g].chunks));
+		return partials;
+	}
+
+	/**
+	 * Seals all the chunks of this table (see {@link ColumnDouble#seal()}), each row group on its home node. The
+	 * sealed row groups are published in a new array, and the replaced chunks are only closed afterwards.
+	 */
+	public void seal() {
+		final RowGroup[] rowGroups = this.rowGroups;
+		final RowGroup[] sealedGroups = new RowGroup[rowGroups.length];
+		ParallelUtil.forEach(rowGroups.length, g -> rowGroups[g].numaNodeId, g -> {
+			final IChunkDouble[] chunks = rowGroups[g].chunks;
+			final IChunkDouble[] sealedChunks = new IChunkDouble[chunks.length];
+			for (int c = 0; c < chunks.length; ++c) {
+				sealedChunks[c] = ChunkEncoder.seal(chunks[c]);
+			}
+			sealedGroups[g] = new RowGroup(rowGroups[g].numaNodeId, sealedChunks);
+		});
+		this.rowGroups = sealedGroups;
+		ColumnDouble.closeReplacedChunks(allChunks(rowGroups), allChunks(sealedGroups));
+	}
+
+	/**
+	 * Returns the chunks of all the given row groups, row group by row group.
+	 */
+	protected static IChunkDouble[] allChunks(final RowGroup[] rowGroups) {
+		return Arrays.stream(rowGroups).flatMap(rowGroup -> Arrays.stream(rowGroup.chunks)).toArray(IChunkDouble[]::new);
+	}
+
+	/**
+	 * Verifies that all the chunks of each row group are allocated on the node of the row group.
+	 *
+	 * @return {@code true}
+	 * @throws IllegalStateException if a chunk is not on its node
+	 */
+	public boolean verifyNodeAffinity() {
+		final RowGroup[] rowGroups = this.rowGroups;
+		for (int g = 0; g < rowGroups.length; ++g) {
+			for (int c = 0; c < this.columnCount; ++c) {
+				final long address = rowGroups[g].chunks[c].getAddress();
+				if (address != 0 && IPlatform.CURRENT_PLATFORM.getPointerNode(address) != getRowGroupNode(g)) {
+					throw new IllegalStateException(
+							"Wrong placement of column " + c + " of row group " + g + " (expected node: "
+									+ getRowGroupNode(g) + ", actual node: "
+									+ IPlatform.CURRENT_PLATFORM.getPointerNode(address) + ")");
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Closes the chunks of this table that are {@link AutoCloseable}, and empties the table.
+	 */
+	@Override
+	public void close() {
+		final RowGroup[] rowGroups = this.rowGroups;
+		this.rowGroups = new RowGroup[0];
+		for (RowGroup rowGroup : rowGroups) {
+			for (IChunkDouble chunk : rowGroup.chunks) {
+				closeChunk(chunk);
+			}
+		}
+	}
+
+	/**
+	 * Creates the row group with the given ID, with one chunk per column on the node of the row group.
+	 *
+	 * @param rowGroupId The ID of the row group
+	 * @return The new row group
+	 */
+	protected RowGroup createRowGroup(final int rowGroupId) {
+		final int node = getRowGroupNode(rowGroupId);
+		final IChunkDouble[] chunks = new IChunkDouble[this.columnCount];
+		for (int c = 0; c < this.columnCount; ++c) {
+			chunks[c] = this.nodeChunkFactory.apply(1 << this.rowGroupOrder, node);
+		}
+		return new RowGroup(node, chunks);
+	}
+
+	protected static void closeChunk(final IChunkDouble chunk) {
+		if (chunk instanceof AutoCloseable closeable) {
+			try {
+				closeable.close();
+			} catch (Exception e) {
+				throw new RuntimeException("Cannot release a chunk", e);
+			}
+		}
+	}
+
+	/**
+	 * A scan of the chunks of a row group.
+	 */
+	@FunctionalInterface
+	public interface RowGroupScan {
+
+		/**
+		 * Scans a row group.
+		 *
+		 * @param chunks The chunks of the row group, indexed by column
+		 * @return The result of the scan
+		 */
+		double scan(IChunkDouble[] chunks);
+	}
+
+	/**
+	 * The chunks of all the columns for a range of rows, allocated on the same NUMA node.
+	 */
+	protected static class RowGroup {
+		protected final int numaNodeId;
+		protected final IChunkDouble[] chunks;
+
+		protected RowGroup(int numaNodeId, IChunkDouble[] chunks) {
+			this.numaNodeId = numaNodeId;
+			this.chunks = chunks;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package com.activeviam.experiments.loom.numa.data;
+
+/**
+ * The statistics of the values of a chunk of a {@link ColumnDouble column}, which its scans consult to skip the
+ * chunk, or to answer from the statistics alone instead of reading the values.
+ * <p>
+ * The statistics only cover the rows holding a value: the null rows of a {@link NullableColumnDouble} are left
+ * out. If the chunk contains {@code NaN}, the minimum, the maximum and the sum are {@code NaN} too, and the chunk
+ * is neither {@link #excludes(double, double) excluded} nor {@link #contains(double, double) contained} by any
+ * range.
+ *
+ * @param min The minimum of the values, or {@link Double#POSITIVE_INFINITY} if there is none
+ * @param max The maximum of the values, or {@link Double#NEGATIVE_INFINITY} if there is none
+ * @param count The number of values
+ * @param sum The sum of the values
+ *
+ * @author ActiveViam
+ */
+public record ZoneMap(double min, double max, int count, double sum) {
+
+	/**
+	 * Returns whether no value of the chunk is within {@code [lower, upper]}.
+	 *
+	 * @param lower The lower bound of the range (inclusive)
+	 * @param upper The upper bound of the range (inclusive)
+	 * @return {@code true} if the chunk can be skipped
+	 */
+	public boolean excludes(final double lower, final double upper) {
+		return this.count == 0 || this.max < lower || this.min > upper;
+	}
+
+	/**
+	 * Returns whether all the values of the chunk are within {@code [lower, upper]}.
+	 *
+	 * @param lower The lower bound of the range (inclusive)
+	 * @param upper The upper bound of the range (inclusive)
+	 * @return {@code true} if all the {@link #count() values} of the chunk match the range
+	 */
+	public boolean contains(final double lower, final double upper) {
+		// A NaN sum also rules out the chunks with NaN values, whose minimum and maximum are NaN
+		return !Double.isNaN(this.sum) && lower <= this.min && this.max <= upper;
+	}
+}
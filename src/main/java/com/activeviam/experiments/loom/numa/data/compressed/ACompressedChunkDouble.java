@@ -0,0 +1,242 @@
+package com.activeviam.experiments.loom.numa.data.compressed;
+
+import com.activeviam.experiments.loom.numa.data.IChunkDouble;
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import com.activeviam.experiments.loom.numa.util.ScanUtil;
+import com.activeviam.experiments.loom.numa.util.UnsafeUtil;
+import java.lang.foreign.MemorySegment;
+import java.lang.ref.Cleaner;
+import java.lang.ref.Cleaner.Cleanable;
+
+/**
+ * Base class of the read-only chunks storing their values in an encoded form, created by
+ * {@link ChunkEncoder#seal(IChunkDouble)}.
+ * <p>
+ * The encoded payload is allocated off-heap on the NUMA node of the chunk, like the memory of a
+ * {@link com.activeviam.experiments.loom.numa.data.DirectChunkDouble}. The scans decode the payload in streaming
+ * blocks of {@value #BLOCK_SIZE} values that stay in the L1 cache, and run the {@link ScanUtil} kernels on them:
+ * far fewer bytes are read from memory per row, which is what matters for bandwidth-bound (and even more for
+ * remote) scans. Subclasses override the scans that can be answered without decoding every row.
+ * <p>
+ * {@link #writeDouble(int, double) Writes} are not supported.
+ *
+ * @author ActiveViam
+ */
+public abstract class ACompressedChunkDouble implements IChunkDouble, AutoCloseable {
+
+	/** The number of values decoded at once by the scans. */
+	public static final int BLOCK_SIZE = 1024;
+
+	protected static final sun.misc.Unsafe UNSAFE = UnsafeUtil.getUnsafe();
+
+	protected static final Cleaner cleaner = Cleaner.create();
+
+	protected final int capacity;
+
+	protected final int numaNodeId;
+
+	/** The address of the encoded payload, or 0 if the chunk does not need one. */
+	protected final long address;
+
+	/** The size of the encoded payload, in bytes. */
+	protected final long size;
+
+	protected final Cleanable cleanable;
+
+	/**
+	 * Constructor, allocating the payload of the chunk.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node on which to allocate the payload
+	 * @param size The size of the payload, in bytes
+	 */
+	protected ACompressedChunkDouble(final int capacity, final int numaNodeId, final long size) {
+		this.capacity = capacity;
+		this.numaNodeId = numaNodeId;
+		this.size = size;
+		if (size == 0) {
+			this.address = 0;
+			this.cleanable = null;
+		} else {
+			final boolean numaAlloc = numaNodeId >= 0 && IPlatform.CURRENT_PLATFORM.isNumaAvailable()
+					&& IPlatform.CURRENT_PLATFORM instanceof LinuxPlatform;
+			this.address = numaAlloc
+					? ((LinuxPlatform) IPlatform.CURRENT_PLATFORM).numaAllocOnNode(size, numaNodeId)
+					: IPlatform.CURRENT_PLATFORM.mmapAnon(size);
+			this.cleanable = cleaner.register(this, destructor(this.address, size, numaAlloc));
+		}
+	}
+
+	/**
+	 * Returns the encoding of this chunk.
+	 *
+	 * @return The encoding of this chunk
+	 */
+	public abstract EChunkEncoding getEncoding();
+
+	/**
+	 * Returns the number of bytes used by the encoded values, to compare with the {@code capacity * 8} bytes of an
+	 * uncompressed chunk.
+	 *
+	 * @return The size of the encoded payload, in bytes
+	 */
+	public long getEncodedSize() {
+		return size;
+	}
+
+	/**
+	 * Decodes consecutive values of this chunk.
+	 *
+	 * @param position The position of the first value to decode
+	 * @param destination The array receiving the values
+	 * @param offset The index in {@code destination} of the first value
+	 * @param length The number of values to decode
+	 */
+	@Override
+	public abstract void readDoubles(int position, double[] destination, int offset, int length);
+
+	@Override
+	public int capacity() {
+		return capacity;
+	}
+
+	@Override
+	public long getAddress() {
+		return address;
+	}
+
+	@Override
+	public int getNumaNodeId() {
+		return numaNodeId;
+	}
+
+	@Override
+	public void writeDouble(int position, double value) {
+		throw new UnsupportedOperationException("Cannot write into a sealed " + getEncoding() + " chunk.");
+	}
+
+	@Override
+	public double sum(int from, int to) {
+		final double[] block = new double[BLOCK_SIZE];
+		final MemorySegment blockSegment = MemorySegment.ofArray(block);
+		double result = 0;
+		for (int r = from; r < to; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, to - r);
+			readDoubles(r, block, 0, length);
+			result += ScanUtil.sum(blockSegment, 0, length);
+		}
+		return result;
+	}
+
+	@Override
+	public double min(int from, int to) {
+		final double[] block = new double[BLOCK_SIZE];
+		final MemorySegment blockSegment = MemorySegment.ofArray(block);
+		double result = Double.POSITIVE_INFINITY;
+		for (int r = from; r < to; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, to - r);
+			readDoubles(r, block, 0, length);
+			result = Math.min(result, ScanUtil.min(blockSegment, 0, length));
+		}
+		return result;
+	}
+
+	@Override
+	public double max(int from, int to) {
+		final double[] block = new double[BLOCK_SIZE];
+		final MemorySegment blockSegment = MemorySegment.ofArray(block);
+		double result = Double.NEGATIVE_INFINITY;
+		for (int r = from; r < to; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, to - r);
+			readDoubles(r, block, 0, length);
+			result = Math.max(result, ScanUtil.max(blockSegment, 0, length));
+		}
+		return result;
+	}
+
+	@Override
+	public int count(int from, int to, double lower, double upper) {
+		final double[] block = new double[BLOCK_SIZE];
+		final MemorySegment blockSegment = MemorySegment.ofArray(block);
+		int result = 0;
+		for (int r = from; r < to; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, to - r);
+			readDoubles(r, block, 0, length);
+			result += ScanUtil.count(blockSegment, 0, length, lower, upper);
+		}
+		return result;
+	}
+
+	@Override
+	public int select(int from, int to, double lower, double upper, MemorySegment words) {
+		final double[] block = new double[BLOCK_SIZE];
+		final MemorySegment blockSegment = MemorySegment.ofArray(block);
+		int result = 0;
+		for (int r = from; r < to; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, to - r);
+			readDoubles(r, block, 0, length);
+			result += ScanUtil.select(blockSegment, 0, length, lower, upper, words, r >>> 6);
+		}
+		return result;
+	}
+
+	@Override
+	public double sumSelected(int from, int to, MemorySegment words) {
+		final double[] block = new double[BLOCK_SIZE];
+		final MemorySegment blockSegment = MemorySegment.ofArray(block);
+		double result = 0;
+		for (int r = from; r < to; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, to - r);
+			readDoubles(r, block, 0, length);
+			result += ScanUtil.sumSelected(blockSegment, 0, length, words, r >>> 6);
+		}
+		return result;
+	}
+
+	@Override
+	public double dot(IChunkDouble other, int from, int to) {
+		final double[] block = new double[BLOCK_SIZE];
+		final double[] otherBlock = new double[BLOCK_SIZE];
+		final MemorySegment blockSegment = MemorySegment.ofArray(block);
+		final MemorySegment otherBlockSegment = MemorySegment.ofArray(otherBlock);
+		double result = 0;
+		for (int r = from; r < to; r += BLOCK_SIZE) {
+			final int length = Math.min(BLOCK_SIZE, to - r);
+			readDoubles(r, block, 0, length);
+			if (other instanceof final ACompressedChunkDouble compressed) {
+				compressed.readDoubles(r, otherBlock, 0, length);
+			} else {
+				for (int i = 0; i < length; ++i) {
+					otherBlock[i] = other.readDouble(r + i);
+				}
+			}
+			result += ScanUtil.dot(blockSegment, otherBlockSegment, 0, length);
+		}
+		return result;
+	}
+
+	/**
+	 * Frees the payload of this chunk right away instead of waiting for the chunk to be garbage collected.
+	 */
+	@Override
+	public void close() {
+		if (cleanable != null) {
+			cleanable.clean();
+		}
+	}
+
+	/**
+	 * Returns the action freeing a payload. It must not reference the chunk, otherwise the chunk would never be
+	 * phantom reachable.
+	 */
+	protected static Runnable destructor(final long address, final long size, final boolean numaAlloc) {
+		return () -> {
+			if (numaAlloc) {
+				((LinuxPlatform) IPlatform.CURRENT_PLATFORM).numaFree(address, size);
+			} else {
+				IPlatform.CURRENT_PLATFORM.munmap(address, size);
+			}
+		};
+	}
+}
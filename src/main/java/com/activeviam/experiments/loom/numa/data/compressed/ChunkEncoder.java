@@ -0,0 +1,121 @@
+package com.activeviam.experiments.loom.numa.data.compressed;
+
+import com.activeviam.experiments.loom.numa.data.DirectChunkDouble;
+import com.activeviam.experiments.loom.numa.data.IChunkDouble;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Seals chunks, i.e. replaces them by the smallest of their {@link ACompressedChunkDouble compressed} versions.
+ * <p>
+ * The values are compared by their raw bits, so that the encodings are lossless, including for NaNs and signed
+ * zeros.
+ *
+ * @author ActiveViam
+ */
+public class ChunkEncoder {
+
+	/** The size of a run of a {@link RunLengthChunkDouble}, in bytes. */
+	protected static final int RUN_SIZE = Double.BYTES + Integer.BYTES;
+
+	/**
+	 * Returns a read-only copy of the given chunk using the encoding with the smallest payload, allocated on the
+	 * same NUMA node. The chunk itself is returned if no encoding is smaller than the uncompressed values, or if it
+	 * is already sealed.
+	 * <p>
+	 * The given chunk is left untouched: it is up to the caller to release it once it is replaced.
+	 *
+	 * @param chunk The chunk to seal
+	 * @return The sealed chunk
+	 */
+	public static IChunkDouble seal(final IChunkDouble chunk) {
+		if (chunk instanceof ACompressedChunkDouble) {
+			return chunk;
+		}
+
+		final int capacity = chunk.capacity();
+		final int numaNodeId = chunk.getNumaNodeId();
+		final long rawSize = (long) capacity * DirectChunkDouble.ELEMENT_SIZE;
+
+		// Gather the runs and the distinct values in a single pass, giving up on an encoding as soon as it cannot
+		// be smaller than the raw values
+		final int maxRunCount = (int) (rawSize / RUN_SIZE);
+		double[] runValues = new double[16];
+		int[] runEnds = new int[16];
+		int runCount = 0;
+
+		final Map<Long, Integer> codesByValue = new HashMap<>();
+		double[] dictionary = new double[16];
+		int[] codes = new int[capacity];
+
+		long previousBits = 0;
+		for (int r = 0; r < capacity; ++r) {
+			final double value = chunk.readDouble(r);
+			final long bits = Double.doubleToRawLongBits(value);
+
+			if (runEnds != null && (r == 0 || bits != previousBits)) {
+				if (runCount == maxRunCount) {
+					runValues = null;
+					runEnds = null;
+				} else {
+					if (runCount == runEnds.length) {
+						runValues = Arrays.copyOf(runValues, runCount * 2);
+						runEnds = Arrays.copyOf(runEnds, runCount * 2);
+					}
+					if (runCount > 0) {
+						runEnds[runCount - 1] = r;
+					}
+					runValues[runCount++] = value;
+				}
+			}
+			previousBits = bits;
+
+			if (codes != null) {
+				Integer code = codesByValue.get(bits);
+				if (code == null) {
+					if (codesByValue.size() == DictionaryChunkDouble.MAX_DICTIONARY_SIZE) {
+						codes = null;
+						continue;
+					}
+					code = codesByValue.size();
+					codesByValue.put(bits, code);
+					if (code == dictionary.length) {
+						dictionary = Arrays.copyOf(dictionary, code * 2);
+					}
+					dictionary[code] = value;
+				}
+				codes[r] = code;
+			}
+		}
+
+		if (runEnds != null && runCount == 1) {
+			return new ConstantChunkDouble(capacity, numaNodeId, runValues[0]);
+		}
+
+		final long runLengthSize = runEnds != null ? (long) runCount * RUN_SIZE : Long.MAX_VALUE;
+		final long dictionarySize = codes != null
+				? DictionaryChunkDouble.getEncodedSize(capacity, codesByValue.size())
+				: Long.MAX_VALUE;
+		final XorChunkDouble.Encoded xorEncoded = XorChunkDouble.encode(chunk);
+		final long xorSize = xorEncoded.getEncodedSize();
+
+		final long bestSize = Math.min(Math.min(runLengthSize, dictionarySize), xorSize);
+		if (bestSize >= rawSize) {
+			return chunk;
+		} else if (bestSize == runLengthSize) {
+			runEnds[runCount - 1] = capacity;
+			return new RunLengthChunkDouble(capacity, numaNodeId, runValues, runEnds, runCount);
+		} else if (bestSize == dictionarySize) {
+			return new DictionaryChunkDouble(capacity, numaNodeId, dictionary, codesByValue.size(), codes);
+		} else {
+			return new XorChunkDouble(capacity, numaNodeId, xorEncoded);
+		}
+	}
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private ChunkEncoder() {
+	}
+}
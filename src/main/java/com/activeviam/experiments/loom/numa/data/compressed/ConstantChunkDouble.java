@@ -0,0 +1,86 @@
+package com.activeviam.experiments.loom.numa.data.compressed;
+
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.MemorySegment;
+import java.util.Arrays;
+
+/**
+ * A sealed chunk whose values are all the same. It has no payload, and all its scans are answered in constant time.
+ *
+ * @author ActiveViam
+ */
+public class ConstantChunkDouble extends ACompressedChunkDouble {
+
+	/** The value of every row. */
+	protected final double value;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node of the chunk
+	 * @param value The value of every row
+	 */
+	public ConstantChunkDouble(final int capacity, final int numaNodeId, final double value) {
+		super(capacity, numaNodeId, 0);
+		this.value = value;
+	}
+
+	@Override
+	public EChunkEncoding getEncoding() {
+		return EChunkEncoding.CONSTANT;
+	}
+
+	@Override
+	public double readDouble(int position) {
+		assert position >= 0 && position < capacity;
+		return value;
+	}
+
+	@Override
+	public void readDoubles(int position, double[] destination, int offset, int length) {
+		assert position >= 0 && position + length <= capacity;
+		Arrays.fill(destination, offset, offset + length, value);
+	}
+
+	@Override
+	public double sum(int from, int to) {
+		return from < to ? value * (to - from) : 0;
+	}
+
+	@Override
+	public double min(int from, int to) {
+		return from < to ? value : Double.POSITIVE_INFINITY;
+	}
+
+	@Override
+	public double max(int from, int to) {
+		return from < to ? value : Double.NEGATIVE_INFINITY;
+	}
+
+	@Override
+	public int count(int from, int to, double lower, double upper) {
+		return (value >= lower && value <= upper) ? to - from : 0;
+	}
+
+	@Override
+	public int select(int from, int to, double lower, double upper, MemorySegment words) {
+		final boolean selected = value >= lower && value <= upper;
+		for (int r = from; r < to; r += Long.SIZE) {
+			final long word = to - r >= Long.SIZE ? -1L : (1L << (to - r)) - 1;
+			words.setAtIndex(JAVA_LONG, r >>> 6, selected ? word : 0);
+		}
+		return selected ? to - from : 0;
+	}
+
+	@Override
+	public double sumSelected(int from, int to, MemorySegment words) {
+		long selected = 0;
+		for (int r = from; r < to; r += Long.SIZE) {
+			final long word = words.getAtIndex(JAVA_LONG, r >>> 6);
+			selected += Long.bitCount(to - r >= Long.SIZE ? word : word & ((1L << (to - r)) - 1));
+		}
+		return value * selected;
+	}
+}
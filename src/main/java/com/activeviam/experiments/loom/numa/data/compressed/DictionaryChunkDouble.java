@@ -0,0 +1,176 @@
+package com.activeviam.experiments.loom.numa.data.compressed;
+
+/**
+ * A sealed chunk storing its distinct values once, in a dictionary, and the code of the value of each row.
+ * <p>
+ * The payload holds the dictionary ({@code 8 * dictionarySize} bytes), followed by the codes, bit-packed in
+ * 64-bit words. The number of bits per code is a power of two (at most {@value #MAX_BITS_PER_CODE}) so that a code
+ * never spans two words: a chunk with 5 distinct values uses 4 bits per row instead of 64.
+ *
+ * @author ActiveViam
+ */
+public class DictionaryChunkDouble extends ACompressedChunkDouble {
+
+	/** The maximum number of bits of a code. */
+	public static final int MAX_BITS_PER_CODE = 16;
+
+	/** The maximum number of distinct values of a dictionary chunk. */
+	public static final int MAX_DICTIONARY_SIZE = 1 << MAX_BITS_PER_CODE;
+
+	/** The number of values in the dictionary. */
+	protected final int dictionarySize;
+
+	/** The number of bits of a code. */
+	protected final int bitsPerCode;
+
+	/** The base-2 log of the number of codes per word. */
+	protected final int codesPerWordShift;
+
+	/** The address of the codes, stored after the dictionary. */
+	protected final long codesAddress;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node of the chunk
+	 * @param dictionary The distinct values of the chunk
+	 * @param dictionarySize The number of meaningful elements of {@code dictionary}, at most
+	 *        {@link #MAX_DICTIONARY_SIZE}
+	 * @param codes The index in the dictionary of the value of each row
+	 */
+	public DictionaryChunkDouble(
+			final int capacity,
+			final int numaNodeId,
+			final double[] dictionary,
+			final int dictionarySize,
+			final int[] codes) {
+		super(capacity, numaNodeId, getEncodedSize(capacity, dictionarySize));
+		this.dictionarySize = dictionarySize;
+		this.bitsPerCode = getBitsPerCode(dictionarySize);
+		this.codesPerWordShift = Integer.numberOfTrailingZeros(Long.SIZE / bitsPerCode);
+		this.codesAddress = address + (long) dictionarySize * Double.BYTES;
+
+		for (int i = 0; i < dictionarySize; ++i) {
+			UNSAFE.putDouble(address + (long) i * Double.BYTES, dictionary[i]);
+		}
+		final int codesPerWord = 1 << codesPerWordShift;
+		for (int first = 0; first < capacity; first += codesPerWord) {
+			long word = 0;
+			for (int i = 0, n = Math.min(codesPerWord, capacity - first); i < n; ++i) {
+				word |= (long) codes[first + i] << (i * bitsPerCode);
+			}
+			UNSAFE.putLong(codesAddress + (long) (first >>> codesPerWordShift) * Long.BYTES, word);
+		}
+	}
+
+	/**
+	 * Returns the number of bits of the codes of a dictionary of the given size.
+	 *
+	 * @param dictionarySize The number of distinct values
+	 * @return The smallest power of two large enough to store the codes
+	 */
+	public static int getBitsPerCode(final int dictionarySize) {
+		final int requiredBits = Math.max(1, 32 - Integer.numberOfLeadingZeros(dictionarySize - 1));
+		return 1 << (32 - Integer.numberOfLeadingZeros(requiredBits - 1));
+	}
+
+	/**
+	 * Returns the size of the payload of a dictionary chunk.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param dictionarySize The number of distinct values
+	 * @return The size of the payload, in bytes
+	 */
+	public static long getEncodedSize(final int capacity, final int dictionarySize) {
+		final int codesPerWord = Long.SIZE / getBitsPerCode(dictionarySize);
+		final long wordCount = (capacity + codesPerWord - 1) / codesPerWord;
+		return (long) dictionarySize * Double.BYTES + wordCount * Long.BYTES;
+	}
+
+	@Override
+	public EChunkEncoding getEncoding() {
+		return EChunkEncoding.DICTIONARY;
+	}
+
+	/**
+	 * Returns the number of distinct values of this chunk.
+	 *
+	 * @return The size of the dictionary
+	 */
+	public int getDictionarySize() {
+		return dictionarySize;
+	}
+
+	@Override
+	public double readDouble(int position) {
+		assert position >= 0 && position < capacity;
+		return dictionaryValue(code(position));
+	}
+
+	@Override
+	public void readDoubles(int position, double[] destination, int offset, int length) {
+		assert position >= 0 && position + length <= capacity;
+		// Decode word by word rather than code by code
+		final int codesPerWord = 1 << codesPerWordShift;
+		final long codeMask = (1L << bitsPerCode) - 1;
+		for (int i = 0; i < length; ) {
+			final int first = position + i;
+			final int firstInWord = first & (codesPerWord - 1);
+			long word = UNSAFE.getLong(codesAddress + (long) (first >>> codesPerWordShift) * Long.BYTES)
+					>>> (firstInWord * bitsPerCode);
+			for (int end = i + Math.min(codesPerWord - firstInWord, length - i); i < end; ++i) {
+				destination[offset + i] = dictionaryValue((int) (word & codeMask));
+				word >>>= bitsPerCode;
+			}
+		}
+	}
+
+	/**
+	 * Counts the matching values by evaluating the range once per dictionary value, then counting the rows whose
+	 * code matches, without decoding their values.
+	 */
+	@Override
+	public int count(int from, int to, double lower, double upper) {
+		final boolean[] matchingCodes = new boolean[dictionarySize];
+		boolean anyMatch = false;
+		for (int code = 0; code < dictionarySize; ++code) {
+			final double value = dictionaryValue(code);
+			matchingCodes[code] = value >= lower && value <= upper;
+			anyMatch |= matchingCodes[code];
+		}
+		if (!anyMatch) {
+			return 0;
+		}
+
+		final int codesPerWord = 1 << codesPerWordShift;
+		final long codeMask = (1L << bitsPerCode) - 1;
+		int result = 0;
+		for (int r = from; r < to; ) {
+			final int firstInWord = r & (codesPerWord - 1);
+			long word = UNSAFE.getLong(codesAddress + (long) (r >>> codesPerWordShift) * Long.BYTES)
+					>>> (firstInWord * bitsPerCode);
+			for (int end = r + Math.min(codesPerWord - firstInWord, to - r); r < end; ++r) {
+				result += matchingCodes[(int) (word & codeMask)] ? 1 : 0;
+				word >>>= bitsPerCode;
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the code of the value of the given row.
+	 *
+	 * @param position A position in this chunk
+	 * @return The index of the value of the row in the dictionary
+	 */
+	protected int code(final int position) {
+		final long word = UNSAFE.getLong(codesAddress + (long) (position >>> codesPerWordShift) * Long.BYTES);
+		final int shift = (position & ((1 << codesPerWordShift) - 1)) * bitsPerCode;
+		return (int) ((word >>> shift) & ((1L << bitsPerCode) - 1));
+	}
+
+	protected double dictionaryValue(final int code) {
+		return UNSAFE.getDouble(address + (long) code * Double.BYTES);
+	}
+}
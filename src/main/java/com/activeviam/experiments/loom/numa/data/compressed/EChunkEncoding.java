@@ -0,0 +1,17 @@
+package com.activeviam.experiments.loom.numa.data.compressed;
+
+/**
+ * The encodings of the {@link ACompressedChunkDouble compressed chunks}.
+ *
+ * @author ActiveViam
+ */
+public enum EChunkEncoding {
+	/** All the values of the chunk are the same, only this value is stored. */
+	CONSTANT,
+	/** Each run of identical values is stored once, with the position where the run ends. */
+	RUN_LENGTH,
+	/** The distinct values are stored once, and each row stores the bit-packed code of its value. */
+	DICTIONARY,
+	/** Each value is XORed with the previous one and only the meaningful bits of the result are stored. */
+	XOR,
+}
@@ -0,0 +1,151 @@
+package com.activeviam.experiments.loom.numa.data.compressed;
+
+import java.util.Arrays;
+
+/**
+ * A sealed chunk storing each run of identical values once.
+ * <p>
+ * The payload holds the value of each run ({@code 8 * runCount} bytes), followed by the position where each run
+ * ends ({@code 4 * runCount} bytes). A random read is a binary search over the run ends, and the scans work run by
+ * run, without expanding them.
+ *
+ * @author ActiveViam
+ */
+public class RunLengthChunkDouble extends ACompressedChunkDouble {
+
+	/** The number of runs. */
+	protected final int runCount;
+
+	/** The address of the run ends, stored after the run values. */
+	protected final long runEndsAddress;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node of the chunk
+	 * @param runValues The value of each run
+	 * @param runEnds The position (exclusive) where each run ends, in increasing order, the last being
+	 *        {@code capacity}
+	 * @param runCount The number of runs, i.e. the number of meaningful elements in {@code runValues} and
+	 *        {@code runEnds}
+	 */
+	public RunLengthChunkDouble(
+			final int capacity,
+			final int numaNodeId,
+			final double[] runValues,
+			final int[] runEnds,
+			final int runCount) {
+		super(capacity, numaNodeId, (long) runCount * (Double.BYTES + Integer.BYTES));
+		this.runCount = runCount;
+		this.runEndsAddress = address + (long) runCount * Double.BYTES;
+		for (int i = 0; i < runCount; ++i) {
+			UNSAFE.putDouble(address + (long) i * Double.BYTES, runValues[i]);
+			UNSAFE.putInt(runEndsAddress + (long) i * Integer.BYTES, runEnds[i]);
+		}
+	}
+
+	@Override
+	public EChunkEncoding getEncoding() {
+		return EChunkEncoding.RUN_LENGTH;
+	}
+
+	/**
+	 * Returns the number of runs of this chunk.
+	 *
+	 * @return The number of runs
+	 */
+	public int getRunCount() {
+		return runCount;
+	}
+
+	@Override
+	public double readDouble(int position) {
+		assert position >= 0 && position < capacity;
+		return runValue(findRun(position));
+	}
+
+	@Override
+	public void readDoubles(int position, double[] destination, int offset, int length) {
+		assert position >= 0 && position + length <= capacity;
+		final int end = position + length;
+		for (int run = findRun(position), r = position; r < end; ++run) {
+			final int runEnd = Math.min(runEnd(run), end);
+			Arrays.fill(destination, offset + r - position, offset + runEnd - position, runValue(run));
+			r = runEnd;
+		}
+	}
+
+	@Override
+	public double sum(int from, int to) {
+		double result = 0;
+		for (int run = findRun(from), r = from; r < to; ++run) {
+			final int runEnd = Math.min(runEnd(run), to);
+			result += runValue(run) * (runEnd - r);
+			r = runEnd;
+		}
+		return result;
+	}
+
+	@Override
+	public double min(int from, int to) {
+		double result = Double.POSITIVE_INFINITY;
+		for (int run = findRun(from), r = from; r < to; ++run) {
+			result = Math.min(result, runValue(run));
+			r = runEnd(run);
+		}
+		return result;
+	}
+
+	@Override
+	public double max(int from, int to) {
+		double result = Double.NEGATIVE_INFINITY;
+		for (int run = findRun(from), r = from; r < to; ++run) {
+			result = Math.max(result, runValue(run));
+			r = runEnd(run);
+		}
+		return result;
+	}
+
+	@Override
+	public int count(int from, int to, double lower, double upper) {
+		int result = 0;
+		for (int run = findRun(from), r = from; r < to; ++run) {
+			final int runEnd = Math.min(runEnd(run), to);
+			final double value = runValue(run);
+			if (value >= lower && value <= upper) {
+				result += runEnd - r;
+			}
+			r = runEnd;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the run containing the given position.
+	 *
+	 * @param position A position in this chunk
+	 * @return The index of the first run ending after the position
+	 */
+	protected int findRun(final int position) {
+		int low = 0;
+		int high = runCount - 1;
+		while (low < high) {
+			final int middle = (low + high) >>> 1;
+			if (runEnd(middle) > position) {
+				high = middle;
+			} else {
+				low = middle + 1;
+			}
+		}
+		return low;
+	}
+
+	protected double runValue(final int run) {
+		return UNSAFE.getDouble(address + (long) run * Double.BYTES);
+	}
+
+	protected int runEnd(final int run) {
+		return UNSAFE.getInt(runEndsAddress + (long) run * Integer.BYTES);
+	}
+}
@@ -0,0 +1,252 @@
+package com.activeviam.experiments.loom.numa.data.compressed;
+
+import com.activeviam.experiments.loom.numa.data.IChunkDouble;
+import java.util.Arrays;
+
+/**
+ * A sealed chunk storing each value XORed with the previous one, as in the Gorilla time series database.
+ * <p>
+ * Consecutive values of a time series usually share their sign, their exponent and the first bits of their
+ * mantissa, so the XOR of two consecutive values has many leading and trailing zeros. Each value is encoded as:
+ * <ul>
+ * <li>{@code 0} if it is equal to the previous value;</li>
+ * <li>{@code 10} followed by the meaningful bits of the XOR, if they fit in the window of the previous XOR;</li>
+ * <li>{@code 11}, the number of leading zeros (6 bits), the number of meaningful bits minus one (6 bits) and the
+ * meaningful bits otherwise.</li>
+ * </ul>
+ * The values are encoded in independent blocks of {@value #BLOCK_SIZE} values, the first value of each block being
+ * stored in full. The payload holds the bit offset of each block followed by the bit stream, so a scan can start at
+ * any block, but a random {@link #readDouble(int) read} decodes its block up to the requested position.
+ *
+ * @author ActiveViam
+ */
+public class XorChunkDouble extends ACompressedChunkDouble {
+
+	/** The number of bits of the fields of the XOR encoding. */
+	protected static final int LEADING_ZEROS_BITS = 6, LENGTH_BITS = 6;
+
+	/** The number of blocks. */
+	protected final int blockCount;
+
+	/** The address of the bit stream, stored after the block offsets. */
+	protected final long streamAddress;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param capacity The capacity of the chunk
+	 * @param numaNodeId The NUMA node of the chunk
+	 * @param encoded The values of the chunk, encoded by {@link #encode(IChunkDouble)}
+	 */
+	public XorChunkDouble(final int capacity, final int numaNodeId, final Encoded encoded) {
+		super(capacity, numaNodeId, encoded.getEncodedSize());
+		this.blockCount = encoded.blockOffsets().length;
+		this.streamAddress = address + (long) blockCount * Long.BYTES;
+		UNSAFE.copyMemory(
+				encoded.blockOffsets(),
+				sun.misc.Unsafe.ARRAY_LONG_BASE_OFFSET,
+				null,
+				address,
+				(long) blockCount * Long.BYTES);
+		UNSAFE.copyMemory(
+				encoded.words(),
+				sun.misc.Unsafe.ARRAY_LONG_BASE_OFFSET,
+				null,
+				streamAddress,
+				(long) encoded.wordCount() * Long.BYTES);
+	}
+
+	/**
+	 * XOR-encodes the values of a chunk on the heap, so that the size of the encoding can be known before
+	 * allocating the payload.
+	 *
+	 * @param source The chunk to encode
+	 * @return The encoded values
+	 */
+	public static Encoded encode(final IChunkDouble source) {
+		final int capacity = source.capacity();
+		final int blockCount = (capacity + BLOCK_SIZE - 1) / BLOCK_SIZE;
+		final long[] blockOffsets = new long[blockCount];
+		long[] words = new long[Math.max(16, capacity / 16)];
+		long position = 0;
+
+		for (int block = 0; block < blockCount; ++block) {
+			blockOffsets[block] = position;
+			final int start = block * BLOCK_SIZE;
+			final int end = Math.min(start + BLOCK_SIZE, capacity);
+
+			long previous = Double.doubleToRawLongBits(source.readDouble(start));
+			words = ensureCapacity(words, position + Long.SIZE);
+			position = writeBits(words, position, previous, Long.SIZE);
+
+			int previousLeading = -1;
+			int previousTrailing = 0;
+			for (int r = start + 1; r < end; ++r) {
+				final long bits = Double.doubleToRawLongBits(source.readDouble(r));
+				final long xor = bits ^ previous;
+				previous = bits;
+
+				words = ensureCapacity(words, position + 2 + LEADING_ZEROS_BITS + LENGTH_BITS + Long.SIZE);
+				if (xor == 0) {
+					position = writeBits(words, position, 0, 1);
+					continue;
+				}
+				final int leading = Long.numberOfLeadingZeros(xor);
+				final int trailing = Long.numberOfTrailingZeros(xor);
+				if (previousLeading >= 0 && leading >= previousLeading && trailing >= previousTrailing) {
+					position = writeBits(words, position, 0b10, 2);
+					position = writeBits(
+							words,
+							position,
+							xor >>> previousTrailing,
+							Long.SIZE - previousLeading - previousTrailing);
+				} else {
+					final int length = Long.SIZE - leading - trailing;
+					position = writeBits(words, position, 0b11, 2);
+					position = writeBits(words, position, leading, LEADING_ZEROS_BITS);
+					position = writeBits(words, position, length - 1, LENGTH_BITS);
+					position = writeBits(words, position, xor >>> trailing, length);
+					previousLeading = leading;
+					previousTrailing = trailing;
+				}
+			}
+		}
+
+		// One more word, so that the decoder can read two control bits after the last value
+		return new Encoded(words, (int) ((position + Long.SIZE - 1) >>> 6) + 1, blockOffsets);
+	}
+
+	/**
+	 * The values of a chunk, XOR-encoded on the heap.
+	 *
+	 * @param words The bit stream
+	 * @param wordCount The number of meaningful words of the bit stream
+	 * @param blockOffsets The bit offset of each block in the bit stream
+	 */
+	public record Encoded(long[] words, int wordCount, long[] blockOffsets) {
+
+		/**
+		 * Returns the size of the payload of a chunk with this encoding.
+		 *
+		 * @return The size of the payload, in bytes
+		 */
+		public long getEncodedSize() {
+			return ((long) blockOffsets.length + wordCount) * Long.BYTES;
+		}
+	}
+
+	@Override
+	public EChunkEncoding getEncoding() {
+		return EChunkEncoding.XOR;
+	}
+
+	@Override
+	public double readDouble(int position) {
+		assert position >= 0 && position < capacity;
+		final double[] value = new double[1];
+		decodeBlock(position / BLOCK_SIZE, position % BLOCK_SIZE, 1, value, 0);
+		return value[0];
+	}
+
+	@Override
+	public void readDoubles(int position, double[] destination, int offset, int length) {
+		assert position >= 0 && position + length <= capacity;
+		final int end = position + length;
+		for (int r = position; r < end; ) {
+			final int block = r / BLOCK_SIZE;
+			final int skip = r - block * BLOCK_SIZE;
+			final int count = Math.min(BLOCK_SIZE - skip, end - r);
+			decodeBlock(block, skip, count, destination, offset + r - position);
+			r += count;
+		}
+	}
+
+	/**
+	 * Decodes values of a block.
+	 *
+	 * @param block The index of the block
+	 * @param skip The number of values of the block to decode but not to output
+	 * @param count The number of values to output
+	 * @param destination The array receiving the values
+	 * @param offset The index in {@code destination} of the first value
+	 */
+	protected void decodeBlock(
+			final int block,
+			final int skip,
+			final int count,
+			final double[] destination,
+			final int offset) {
+		long position = UNSAFE.getLong(address + (long) block * Long.BYTES);
+		long previous = readBits(streamAddress, position, Long.SIZE);
+		position += Long.SIZE;
+
+		if (skip == 0) {
+			destination[offset] = Double.longBitsToDouble(previous);
+		}
+
+		int leading = 0;
+		int trailing = 0;
+		for (int i = 1, end = skip + count; i < end; ++i) {
+			// Read both control bits at once, the second one being meaningless when the first one is 0
+			final long control = readBits(streamAddress, position, 2);
+			if (control < 0b10) {
+				++position;
+			} else {
+				position += 2;
+				if (control == 0b11) {
+					leading = (int) readBits(streamAddress, position, LEADING_ZEROS_BITS);
+					final int meaningfulBits =
+							(int) readBits(streamAddress, position + LEADING_ZEROS_BITS, LENGTH_BITS) + 1;
+					position += LEADING_ZEROS_BITS + LENGTH_BITS;
+					trailing = Long.SIZE - leading - meaningfulBits;
+				}
+				final int length = Long.SIZE - leading - trailing;
+				previous ^= readBits(streamAddress, position, length) << trailing;
+				position += length;
+			}
+			if (i >= skip) {
+				destination[offset + i - skip] = Double.longBitsToDouble(previous);
+			}
+		}
+	}
+
+	/**
+	 * Writes the {@code n} lowest bits of the value in a bit stream, most significant bit first.
+	 *
+	 * @return The position following the written bits
+	 */
+	protected static long writeBits(final long[] words, final long position, final long value, final int n) {
+		final int word = (int) (position >>> 6);
+		final int free = Long.SIZE - (int) (position & (Long.SIZE - 1));
+		final long bits = n == Long.SIZE ? value : value & ((1L << n) - 1);
+		if (n <= free) {
+			words[word] |= bits << (free - n);
+		} else {
+			words[word] |= bits >>> (n - free);
+			words[word + 1] |= bits << (Long.SIZE - (n - free));
+		}
+		return position + n;
+	}
+
+	/**
+	 * Reads {@code n} bits (between 1 and 64) of an off-heap bit stream written by
+	 * {@link #writeBits(long[], long, long, int)}.
+	 */
+	protected static long readBits(final long streamAddress, final long position, final int n) {
+		final long wordAddress = streamAddress + (position >>> 6) * Long.BYTES;
+		final int bit = (int) (position & (Long.SIZE - 1));
+		final long high = (UNSAFE.getLong(wordAddress) << bit) >>> (Long.SIZE - n);
+		if (bit + n <= Long.SIZE) {
+			return high;
+		}
+		return high | (UNSAFE.getLong(wordAddress + Long.BYTES) >>> (2 * Long.SIZE - bit - n));
+	}
+
+	protected static long[] ensureCapacity(final long[] words, final long bitCount) {
+		final int requiredWords = (int) ((bitCount + Long.SIZE - 1) >>> 6) + 1;
+		if (requiredWords <= words.length) {
+			return words;
+		}
+		return Arrays.copyOf(words, Math.max(requiredWords, words.length + (words.length >> 1)));
+	}
+}
@@ -93,6 +93,15 @@ interface CLibrary extends Library {
 	int MADV_DONTDUMP = 16;
 	int MADV_DODUMP = 17; /* Clear the MADV_NODUMP flag */
 
+	///////////////////////////////////////////////
+	// From /usr/include/asm-generic/fcntl.h
+	///////////////////////////////////////////////
+
+	int O_RDONLY = 00000000;
+	int O_WRONLY = 00000001;
+	int O_RDWR = 00000002;
+	int O_CLOEXEC = 02000000; /* set close_on_exec */
+
 	/**
 	 * Mmap() creates a new mapping in the virtual address space of the calling process. The starting address for
 	 * the new mapping is specified in addr. The length argument specifies the length of the mapping.
@@ -229,4 +238,56 @@ interface CLibrary extends Library {
 	 */
 	// int munmap(void *addr, size_t length);
 	int munmap(long addr, long length);
+
+	/**
+	 * The madvise() system call is used to give advice or directions to the kernel about the address range
+	 * beginning at address addr and with size length bytes. In most cases, the goal of such advice is to improve
+	 * system or application performance.
+	 * <p>
+	 * The address addr must be page-aligned. The advice is one of the MADV_* values, for instance:
+	 * <ul>
+	 * <li>MADV_DONTNEED Do not expect access in the near future. Subsequent accesses of pages in the range will
+	 * succeed, but will result in repopulating the memory contents from zero-fill-on-demand pages for anonymous
+	 * private mappings.
+	 * <li>MADV_HUGEPAGE (since Linux 2.6.38) Enable Transparent Huge Pages (THP) for pages in the range. The
+	 * kernel will regularly scan the areas marked as huge page candidates to replace them with huge pages. The
+	 * kernel will also allocate huge pages directly when the region is naturally aligned to the huge page size.
+	 * This feature is primarily aimed at applications that use large mappings of data and access large regions of
+	 * that memory at a time. EINVAL is returned if the kernel was not configured with
+	 * CONFIG_TRANSPARENT_HUGEPAGE.
+	 * </ul>
+	 *
+	 * @param addr The page-aligned start of the range.
+	 * @param length The length of the range.
+	 * @param advice The MADV_* advice.
+	 * @return 0 on success, -1 on failure.
+	 */
+	// int madvise(void *addr, size_t length, int advice);
+	int madvise(long addr, long length, int advice);
+
+	/**
+	 * The open() system call opens the file specified by pathname. The return value of open() is a file
+	 * descriptor, a small, nonnegative integer that is used in subsequent system calls (such as mmap(2)) to refer to
+	 * the open file.
+	 * <p>
+	 * The argument flags must include one of the following access modes: O_RDONLY, O_WRONLY, or O_RDWR. These
+	 * request opening the file read-only, write-only, or read/write, respectively. O_CLOEXEC enables the
+	 * close-on-exec flag for the new file descriptor.
+	 *
+	 * @param pathname The path of the file.
+	 * @param flags The O_* flags.
+	 * @return The new file descriptor, or -1 in case of failure.
+	 */
+	// int open(const char *pathname, int flags);
+	int open(String pathname, int flags);
+
+	/**
+	 * The close() system call closes a file descriptor, so that it no longer refers to any file and may be reused.
+	 * Closing the file descriptor of a mapped file does not unmap the region.
+	 *
+	 * @param fd The file descriptor.
+	 * @return 0 on success, -1 on failure.
+	 */
+	// int close(int fd);
+	int close(int fd);
 }
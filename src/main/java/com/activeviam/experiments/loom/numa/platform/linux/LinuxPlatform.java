@@ -4,7 +4,13 @@ import com.activeviam.experiments.loom.numa.platform.IPlatform;
 import com.sun.jna.Library;
 import com.sun.jna.Native;
 import com.sun.jna.Platform;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.stream.IntStream;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -18,6 +24,24 @@ public class LinuxPlatform implements IPlatform {
 	/** The minimum version of the linux kernel known to work properly. */
 	protected static final String MINIMUM_KNOWN_WORKING_VERSION = "2.6.32";
 
+	/** The size of the default pages. */
+	public static final long PAGE_SIZE = 1L << 12; // 4kB
+
+	/** The size of the huge pages requested by {@link #tryMmapAnonHugeTlb(long)}. */
+	public static final long HUGE_PAGE_SIZE = 1L << 21; // 2MB
+
+	/** The number of words of a CPU affinity mask, as many as in the {@code cpu_set_t} of glibc (1024 CPUs). */
+	protected static final int CPU_MASK_WORDS = 1024 / Long.SIZE;
+
+	/** The system-wide mode of the Transparent Huge Pages, the current one being in brackets. */
+	protected static final Path TRANSPARENT_HUGE_PAGES_MODE = Path.of("/sys/kernel/mm/transparent_hugepage/enabled");
+
+	/** The status of the process, whose {@link #CPUS_ALLOWED_LIST} is the affinity of its main thread. */
+	protected static final Path PROCESS_STATUS = Path.of("/proc/self/status");
+
+	/** The prefix of the line of {@link #PROCESS_STATUS} listing the CPUs on which the process may run. */
+	protected static final String CPUS_ALLOWED_LIST = "Cpus_allowed_list:";
+
 	/**
 	 * The JNA {@link Library library} to expose the {@code libc} methods.
 	 */
@@ -235,8 +259,261 @@ public class LinuxPlatform implements IPlatform {
 		return status[0];
 	}
 
+	/**
+	 * Returns the NUMA node of each {@link #PAGE_SIZE page} of the given memory range. A page that has not been
+	 * faulted yet has a negative status ({@code -ENOENT}).
+	 *
+	 * @param ptr The page-aligned start of the range.
+	 * @param size The size of the range in bytes.
+	 * @return The node (or negative error status) of each page of the range
+	 */
+	public int[] getPagesNodes(long ptr, long size) {
+		final int pageCount = (int) ((size + PAGE_SIZE - 1) / PAGE_SIZE);
+		final int[] status = new int[pageCount];
+		if (!numaAvailable) {
+			return status;
+		}
+
+		final long[] pages = new long[pageCount];
+		for (int p = 0; p < pageCount; ++p) {
+			pages[p] = ptr + p * PAGE_SIZE;
+		}
+		try {
+			if (numaLib.numa_move_pages(0, pageCount, pages, null, status, 0) == -1) {
+				Errno.throwLastError("numa_move_pages", 0, pageCount, ptr, null, "status", 0);
+			}
+		} catch (UnsatisfiedLinkError e) {
+			throw new RuntimeException(
+					"numa_move_pages was not found. The linux kernel "
+							+ "might not be up to date. It requires a kernel version of "
+							+ "2.6.18 and the numaif.h header, in libnuma-devel package.",
+					e);
+		}
+		return status;
+	}
+
+	/**
+	 * Moves the pages of the given memory range that are not on the given NUMA node to this node
+	 * ({@code move_pages()} with a target node list), and sets the memory policy of the range so that the pages
+	 * faulted later are allocated on this node too. The pages that have not been faulted yet are left as they are.
+	 *
+	 * @param ptr The page-aligned start of the range.
+	 * @param size The size of the range in bytes.
+	 * @param node The target NUMA node.
+	 * @return The number of bytes actually moved.
+	 */
+	public long movePages(long ptr, long size, int node) {
+		if (!numaAvailable) {
+			return 0;
+		}
+
+		final int[] pagesNodes = getPagesNodes(ptr, size);
+		int pageCount = 0;
+		final long[] pages = new long[pagesNodes.length];
+		for (int p = 0; p < pagesNodes.length; ++p) {
+			if (pagesNodes[p] >= 0 && pagesNodes[p] != node) {
+				pages[pageCount++] = ptr + p * PAGE_SIZE;
+			}
+		}
+		bindToNode(ptr, size, node);
+		if (pageCount == 0) {
+			return 0;
+		}
+
+		final int[] nodes = new int[pageCount];
+		Arrays.fill(nodes, node);
+		final int[] status = new int[pageCount];
+		if (numaLib.numa_move_pages(0, pageCount, pages, nodes, status, NumaLibrary.MPOL_MF_MOVE) == -1) {
+			Errno.throwLastError("numa_move_pages", 0, pageCount, ptr, node, "status", NumaLibrary.MPOL_MF_MOVE);
+		}
+		long movedPages = 0;
+		for (int p = 0; p < pageCount; ++p) {
+			if (status[p] == node) {
+				++movedPages;
+			}
+		}
+		return movedPages * PAGE_SIZE;
+	}
+
 	@Override
 	public long mmapAnon(long size) {
+		return mmapAnon(size, 0);
+	}
+
+	/**
+	 * MMAP an anonymous memory section and populates (prefaults) its page tables ({@code MAP_POPULATE}). The
+	 * pages are faulted by the calling thread, so with the default memory policy they are allocated on the NUMA
+	 * node the calling thread runs on.
+	 *
+	 * @param size The size of the anonymous mapping in bytes.
+	 * @return The allocated pointer.
+	 */
+	public long mmapAnonPopulate(long size) {
+		return mmapAnon(size, CLibrary.MAP_POPULATE);
+	}
+
+	/**
+	 * MMAP an anonymous memory section backed by explicit huge pages of {@value #HUGE_PAGE_SIZE} bytes
+	 * ({@code MAP_HUGETLB}). Such pages must have been reserved beforehand, for instance through
+	 * {@code /proc/sys/vm/nr_hugepages}.
+	 *
+	 * @param size The size of the anonymous mapping in bytes, a multiple of {@link #HUGE_PAGE_SIZE}.
+	 * @return The allocated pointer, or 0 if not enough huge pages are available.
+	 */
+	public long tryMmapAnonHugeTlb(long size) {
+		if (stdcLib == null) {
+			throw new RuntimeException(
+					"C Library could not be loaded on your system. Calls to mmap are not available.");
+		}
+		if (size < 0 || size % HUGE_PAGE_SIZE != 0) {
+			throw new IllegalArgumentException("Size must be a positive multiple of the huge page size, was " + size);
+		}
+		final int flags = CLibrary.MAP_PRIVATE | CLibrary.MAP_ANONYMOUS | CLibrary.MAP_HUGETLB | CLibrary.MAP_HUGE_2MB;
+		final long ptr = stdcLib.mmap(0, size, CLibrary.PROT_READ | CLibrary.PROT_WRITE, flags, -1, 0);
+		if (ptr == CLibrary.MAP_FAILED) {
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Could not map " + size + " bytes of huge pages, errno=" + Native.getLastError());
+			}
+			return 0;
+		}
+		return ptr;
+	}
+
+	/**
+	 * MMAP an anonymous memory section whose start is aligned on {@link #HUGE_PAGE_SIZE}, so that it can be fully
+	 * backed by Transparent Huge Pages, which an unaligned region could only be partially. The kernel is not advised
+	 * to use them: see {@link #adviseHugePages(long, long)}.
+	 *
+	 * @param size The size of the anonymous mapping in bytes, a multiple of {@link #HUGE_PAGE_SIZE}.
+	 * @return The allocated pointer.
+	 */
+	public long mmapAnonAligned(long size) {
+		if (size < 0 || size % HUGE_PAGE_SIZE != 0) {
+			throw new IllegalArgumentException("Size must be a positive multiple of the huge page size, was " + size);
+		}
+		// Over-allocate, then unmap the unaligned head and tail
+		final long ptr = mmapAnon(size + HUGE_PAGE_SIZE, 0);
+		final long alignedPtr = (ptr + HUGE_PAGE_SIZE - 1) & -HUGE_PAGE_SIZE;
+		if (alignedPtr > ptr) {
+			munmap(ptr, alignedPtr - ptr);
+		}
+		final long end = ptr + size + HUGE_PAGE_SIZE;
+		if (end > alignedPtr + size) {
+			munmap(alignedPtr + size, end - (alignedPtr + size));
+		}
+		return alignedPtr;
+	}
+
+	/**
+	 * Advises the kernel to back the given range with Transparent Huge Pages ({@code MADV_HUGEPAGE}).
+	 * <p>
+	 * The kernel accepts the advice even when THP are disabled, so it is only considered to be followed if the
+	 * {@link #getTransparentHugePagesMode() THP mode} is {@code always} or {@code madvise}. Even then, the kernel
+	 * falls back to regular pages when no huge page is available: {@link #getAnonHugePagesBytes(long)} tells how
+	 * much of the range was actually backed by huge pages once it is touched.
+	 *
+	 * @param ptr The page-aligned start of the range.
+	 * @param size The size of the range in bytes.
+	 * @return {@code true} if the advice was accepted, {@code false} if THP are not supported or are disabled.
+	 */
+	public boolean adviseHugePages(long ptr, long size) {
+		final String mode = getTransparentHugePagesMode();
+		return madvise(ptr, size, CLibrary.MADV_HUGEPAGE) && ("always".equals(mode) || "madvise".equals(mode));
+	}
+
+	/**
+	 * Returns the system-wide mode of the Transparent Huge Pages, read from
+	 * {@code /sys/kernel/mm/transparent_hugepage/enabled}.
+	 *
+	 * @return {@code always}, {@code madvise} or {@code never}, the latter if THP are not supported
+	 */
+	public String getTransparentHugePagesMode() {
+		try {
+			final String modes = Files.readString(TRANSPARENT_HUGE_PAGES_MODE);
+			final int start = modes.indexOf('[');
+			final int end = modes.indexOf(']', start);
+			return start < 0 || end < 0 ? "never" : modes.substring(start + 1, end);
+		} catch (IOException e) {
+			return "never";
+		}
+	}
+
+	/**
+	 * Returns the number of bytes backed by Transparent Huge Pages in the mapping containing the given address, as
+	 * reported by the {@code AnonHugePages} field of {@code /proc/self/smaps}. The kernel merges adjacent mappings
+	 * with the same attributes, so the mapping can be larger than the range that was mapped at this address.
+	 *
+	 * @param ptr An address.
+	 * @return The number of bytes backed by THP, 0 if the address is not mapped.
+	 */
+	public long getAnonHugePagesBytes(long ptr) {
+		boolean inMapping = false;
+		try (BufferedReader reader = Files.newBufferedReader(Path.of("/proc/self/smaps"))) {
+			for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+				final int dash = line.indexOf('-');
+				final int space = line.indexOf(' ');
+				if (dash > 0 && space > dash && Character.digit(line.charAt(0), 16) >= 0
+						&& !Character.isUpperCase(line.charAt(0))) {
+					// The first line of a mapping, "start-end perms offset dev inode path", and not a field
+					final long start = Long.parseUnsignedLong(line, 0, dash, 16);
+					final long end = Long.parseUnsignedLong(line, dash + 1, space, 16);
+					inMapping = Long.compareUnsigned(ptr, start) >= 0 && Long.compareUnsigned(ptr, end) < 0;
+				} else if (inMapping && line.startsWith("AnonHugePages:")) {
+					return Long.parseLong(line.substring("AnonHugePages:".length(), line.length() - 3).trim()) << 10;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine("Cannot read the huge pages of " + ptr + " in /proc/self/smaps: " + e);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * Tells the kernel that the given range is not needed anymore ({@code MADV_DONTNEED}): its physical pages are
+	 * released but the mapping is kept, and the next accesses see zero-filled pages. For memory allocated with
+	 * {@link #numaAllocOnNode}, these new pages are allocated on the same node again.
+	 *
+	 * @param ptr The page-aligned start of the range.
+	 * @param size The size of the range in bytes.
+	 * @return {@code true} if the advice was accepted.
+	 */
+	public boolean adviseDontNeed(long ptr, long size) {
+		return madvise(ptr, size, CLibrary.MADV_DONTNEED);
+	}
+
+	/**
+	 * Gives an advice about a memory range to the kernel.
+	 *
+	 * @param ptr The page-aligned start of the range.
+	 * @param size The size of the range in bytes.
+	 * @param advice The MADV_* advice, see {@link CLibrary#madvise}.
+	 * @return {@code true} if the advice was accepted.
+	 */
+	protected boolean madvise(long ptr, long size, int advice) {
+		if (stdcLib == null) {
+			throw new RuntimeException(
+					"C Library could not be loaded on your system. Calls to madvise are not available.");
+		}
+		if (stdcLib.madvise(ptr, size, advice) != 0) {
+			if (LOGGER.isLoggable(Level.FINE)) {
+				LOGGER.fine(
+						"madvise(" + ptr + ", " + size + ", " + advice + ") failed, errno=" + Native.getLastError());
+			}
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * MMAP an anonymous memory section (ie not backed by a file).
+	 *
+	 * @param size The size of the anonymous mapping in bytes.
+	 * @param extraFlags Flags added to {@code MAP_PRIVATE | MAP_ANONYMOUS}.
+	 * @return The allocated pointer.
+	 */
+	protected long mmapAnon(long size, int extraFlags) {
 		if (stdcLib == null) {
 			throw new RuntimeException(
 					"C Library could not be loaded on your system. Calls to mmap are not available.");
@@ -245,11 +522,12 @@ public class LinuxPlatform implements IPlatform {
 			throw new IllegalArgumentException("Cannot allocate a negative size, was " + size);
 		}
 		// All Linux distro should support MAP_ANONYMOUS, so no need to create a mapping in /dev/zero.
+		final int flags = CLibrary.MAP_PRIVATE | CLibrary.MAP_ANONYMOUS | extraFlags;
 		final long ptr = stdcLib.mmap(
 				0,
 				size,
 				CLibrary.PROT_READ | CLibrary.PROT_WRITE,
-				CLibrary.MAP_PRIVATE | CLibrary.MAP_ANONYMOUS,
+				flags,
 				-1,
 				0);
 		if (ptr == CLibrary.MAP_FAILED) {
@@ -266,7 +544,7 @@ public class LinuxPlatform implements IPlatform {
 						0,
 						size,
 						CLibrary.PROT_READ | CLibrary.PROT_WRITE,
-						CLibrary.MAP_PRIVATE | CLibrary.MAP_ANONYMOUS,
+						flags,
 						-1,
 						0);
 			}
@@ -294,6 +572,75 @@ public class LinuxPlatform implements IPlatform {
 		}
 	}
 
+	/**
+	 * Opens a file for reading, to {@link #mmapFile map} it.
+	 *
+	 * @param path The path of the file.
+	 * @return The file descriptor, to be closed with {@link #closeFile(int)}.
+	 */
+	public int openFile(String path) {
+		if (stdcLib == null) {
+			throw new RuntimeException(
+					"C Library could not be loaded on your system. Calls to open are not available.");
+		}
+		final int fd = stdcLib.open(path, CLibrary.O_RDONLY | CLibrary.O_CLOEXEC);
+		if (fd < 0) {
+			Errno.throwLastError("open", path, CLibrary.O_RDONLY | CLibrary.O_CLOEXEC);
+		}
+		return fd;
+	}
+
+	/**
+	 * Closes a file descriptor opened by {@link #openFile(String)}. The mappings of the file are kept.
+	 *
+	 * @param fd The file descriptor.
+	 */
+	public void closeFile(int fd) {
+		if (stdcLib.close(fd) != 0) {
+			Errno.throwLastError("close", fd);
+		}
+	}
+
+	/**
+	 * MMAP a section of a file as a private, copy-on-write mapping: the pages are read from the file when they are
+	 * first accessed, and the values written in the mapping are not carried through to the file.
+	 *
+	 * @param fd The file descriptor, opened by {@link #openFile(String)}.
+	 * @param offset The offset of the section in the file, a multiple of {@link #PAGE_SIZE}.
+	 * @param size The size of the section in bytes.
+	 * @return The mapped pointer, to be released with {@link #munmap(long, long)}.
+	 */
+	public long mmapFile(int fd, long offset, long size) {
+		if (stdcLib == null) {
+			throw new RuntimeException(
+					"C Library could not be loaded on your system. Calls to mmap are not available.");
+		}
+		if (offset % PAGE_SIZE != 0) {
+			throw new IllegalArgumentException("Offset must be a multiple of the page size, was " + offset);
+		}
+		final int prot = CLibrary.PROT_READ | CLibrary.PROT_WRITE;
+		final long ptr = stdcLib.mmap(0, size, prot, CLibrary.MAP_PRIVATE, fd, offset);
+		if (ptr == CLibrary.MAP_FAILED) {
+			Errno.throwLastError("mmap", 0, size, prot, CLibrary.MAP_PRIVATE, fd, offset);
+		}
+		return ptr;
+	}
+
+	/**
+	 * Sets the memory policy of the given range so that its pages are allocated on the given node when they are
+	 * faulted. Pages that are already present are not moved.
+	 *
+	 * @param ptr The page-aligned start of the range.
+	 * @param size The size of the range in bytes.
+	 * @param node The NUMA node.
+	 */
+	public void bindToNode(long ptr, long size, int node) {
+		if (!numaAvailable) {
+			return;
+		}
+		numaLib.numa_tonode_memory(ptr, size, node);
+	}
+
 	@Override
 	public void setNumaNode(int node) {
 		if (!numaAvailable) {
@@ -304,6 +651,140 @@ public class LinuxPlatform implements IPlatform {
 		}
 	}
 
+	/**
+	 * Returns the kernel ID of the calling thread, which identifies it in {@link #setThreadAffinity(int, int...)}.
+	 *
+	 * @return The ID of the calling thread
+	 */
+	public int getCurrentThreadId() {
+		return pthreadLib.gettid();
+	}
+
+	/**
+	 * Restricts a thread to run on the given CPUs with {@code sched_setaffinity()}. Unlike
+	 * {@link #setNumaNode(int)}, this can pin a thread to a single CPU, and apply to another thread than the calling
+	 * one.
+	 *
+	 * @param threadId The ID of the thread, as returned by {@link #getCurrentThreadId()}, or 0 for the calling thread
+	 * @param cpus The CPUs on which the thread may run
+	 */
+	public void setThreadAffinity(int threadId, int... cpus) {
+		final long[] mask = new long[CPU_MASK_WORDS];
+		for (int cpu : cpus) {
+			mask[cpu >>> 6] |= 1L << cpu;
+		}
+		if (pthreadLib.sched_setaffinity(threadId, (long) mask.length * Long.BYTES, mask) != 0) {
+			Errno.throwLastError("sched_setaffinity", threadId, Arrays.toString(cpus));
+		}
+	}
+
+	/**
+	 * Returns the CPUs on which a thread may run, with {@code sched_getaffinity()}.
+	 *
+	 * @param threadId The ID of the thread, as returned by {@link #getCurrentThreadId()}, or 0 for the calling thread
+	 * @return The CPUs of the affinity mask of the thread, in ascending order
+	 */
+	public int[] getThreadAffinity(int threadId) {
+		final long[] mask = new long[CPU_MASK_WORDS];
+		if (pthreadLib.sched_getaffinity(threadId, (long) mask.length * Long.BYTES, mask) < 0) {
+			Errno.throwLastError("sched_getaffinity", threadId);
+		}
+		return IntStream.range(0, mask.length * Long.SIZE)
+				.filter(cpu -> (mask[cpu >>> 6] & (1L << cpu)) != 0)
+				.toArray();
+	}
+
+	/**
+	 * Returns the CPUs of a NUMA node on which the process may run, one per physical core first, then their
+	 * hyperthread siblings: the first CPUs of the result are all on distinct cores. The result does not depend on the
+	 * affinity of the calling thread, which may be bound to another node. The CPUs of the node are read from
+	 * {@code /sys/devices/system/node/node<N>/cpulist}, and the ones of the process from the {@code Cpus_allowed_list}
+	 * of {@code /proc/self/status}, the affinity of the main thread, as set by {@code taskset} or {@code numactl}. The
+	 * siblings are read from {@code /sys/devices/system/cpu/cpu<N>/topology/thread_siblings_list}; without it, each
+	 * CPU is considered a core of its own.
+	 *
+	 * @param node The NUMA node
+	 * @return The CPUs of the node
+	 */
+	public int[] getNumaNodeCpus(int node) {
+		final int[] processCpus = getProcessCpus();
+		final int[] cpus = Arrays.stream(getNodeCpuList(node, processCpus))
+				.filter(cpu -> Arrays.binarySearch(processCpus, cpu) >= 0)
+				.toArray();
+		final int[] siblingRanks = new int[cpus.length];
+		for (int i = 0; i < cpus.length; ++i) {
+			final int cpu = cpus[i];
+			siblingRanks[i] = (int) Arrays.stream(getThreadSiblings(cpu)).filter(sibling -> sibling < cpu).count();
+		}
+		return IntStream.range(0, cpus.length)
+				.boxed()
+				.sorted(Comparator.<Integer>comparingInt(i -> siblingRanks[i]).thenComparingInt(i -> cpus[i]))
+				.mapToInt(i -> cpus[i])
+				.toArray();
+	}
+
+	/**
+	 * Returns the CPUs on which the process may run, in ascending order, or the ones of the calling thread if they
+	 * cannot be read.
+	 */
+	protected int[] getProcessCpus() {
+		try (BufferedReader reader = Files.newBufferedReader(PROCESS_STATUS)) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith(CPUS_ALLOWED_LIST)) {
+					final int[] cpus = parseCpuList(line.substring(CPUS_ALLOWED_LIST.length()).trim());
+					Arrays.sort(cpus);
+					return cpus;
+				}
+			}
+		} catch (IOException | RuntimeException e) {
+			// Fall back to the affinity of the calling thread
+		}
+		return getThreadAffinity(0);
+	}
+
+	/**
+	 * Returns all the CPUs of a NUMA node, or the given CPUs that are on the node if the CPUs of the node cannot be
+	 * read.
+	 */
+	protected int[] getNodeCpuList(int node, int[] knownCpus) {
+		final Path path = Path.of("/sys/devices/system/node/node" + node + "/cpulist");
+		try {
+			final String list = Files.readString(path).trim();
+			return list.isEmpty() ? new int[0] : parseCpuList(list);
+		} catch (IOException | RuntimeException e) {
+			return Arrays.stream(knownCpus).filter(cpu -> getNumaNode(cpu) == node).toArray();
+		}
+	}
+
+	/**
+	 * Returns the hyperthread siblings of a CPU, including itself.
+	 */
+	protected static int[] getThreadSiblings(int cpu) {
+		final Path path = Path.of("/sys/devices/system/cpu/cpu" + cpu + "/topology/thread_siblings_list");
+		try {
+			return parseCpuList(Files.readString(path).trim());
+		} catch (IOException | RuntimeException e) {
+			return new int[] {cpu};
+		}
+	}
+
+	/**
+	 * Parses a list of CPUs in the format of the kernel, such as {@code 0-3,8,10-11}.
+	 */
+	protected static int[] parseCpuList(String list) {
+		return Arrays.stream(list.split(","))
+				.flatMapToInt(range -> {
+					final int dash = range.indexOf('-');
+					return dash < 0
+							? IntStream.of(Integer.parseInt(range))
+							: IntStream.rangeClosed(
+									Integer.parseInt(range.substring(0, dash)),
+									Integer.parseInt(range.substring(dash + 1)));
+				})
+				.toArray();
+	}
+
 	@Override
 	public int getProcessorCount() {
 		return Runtime.getRuntime().availableProcessors();
@@ -318,7 +799,30 @@ public class LinuxPlatform implements IPlatform {
 		return res;
 	}
 
-	public long numaAllocOnNode(int size, int node) {
+	/**
+	 * Returns the distance between two NUMA nodes, as reported by {@code numactl --hardware}. A node has distance
+	 * 10 to itself.
+	 *
+	 * @param node1 the first node id
+	 * @param node2 the second node id
+	 * @return the distance between the two nodes, or 0 if it cannot be determined
+	 */
+	public int getNumaDistance(int node1, int node2) {
+		if (!numaAvailable) {
+			return node1 == node2 ? 10 : 0;
+		}
+
+		return numaLib.numa_distance(node1, node2);
+	}
+
+	/**
+	 * Allocates memory on the given NUMA node with {@code numa_alloc_onnode()}. The size is not limited to 2GB.
+	 *
+	 * @param size The size of the memory, in bytes
+	 * @param node The NUMA node
+	 * @return The address of the memory, to free with {@link #numaFree(long, long)}
+	 */
+	public long numaAllocOnNode(long size, int node) {
 		if (!numaAvailable) {
 			throw new RuntimeException("cannot perform numalib call");
 		}
@@ -334,7 +838,13 @@ public class LinuxPlatform implements IPlatform {
 		return ptr;
 	}
 
-	public void numaFree(long addr, int size) {
+	/**
+	 * Frees memory allocated by {@link #numaAllocOnNode(long, int)}.
+	 *
+	 * @param addr The address of the memory
+	 * @param size The size of the memory, in bytes
+	 */
+	public void numaFree(long addr, long size) {
 		if (!numaAvailable) {
 			throw new RuntimeException("cannot perform numalib call");
 		}
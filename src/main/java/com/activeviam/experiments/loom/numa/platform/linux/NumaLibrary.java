@@ -115,6 +115,11 @@ interface NumaLibrary extends Library {
 	 */
 	int MPOL_F_NUMA_BALANCING = (1 << 13); /* Optimize with NUMA balancing if possible */
 
+	/**
+	 * Moves the pages of {@link #numa_move_pages} that are only mapped by the calling process.
+	 */
+	int MPOL_MF_MOVE = (1 << 1);
+
 	/**
 	 * Before any other calls in this library can be used numa_available() must be called. If it returns -1, all
 	 * other functions in this library are undefined.
@@ -141,6 +146,17 @@ interface NumaLibrary extends Library {
 	 */
 	int numa_node_of_cpu(int cpu);
 
+	/**
+	 * Reports the distance in the machine topology between two nodes. The factors are a multiple of 10. It returns
+	 * 0 when the distance cannot be determined. A node has distance 10 to itself. Reporting the distance requires a
+	 * Linux kernel version of 2.6.10 or newer.
+	 *
+	 * @param node1 the first node id
+	 * @param node2 the second node id
+	 * @return the distance between the two nodes, or 0 if unknown
+	 */
+	int numa_distance(int node1, int node2);
+
 	/**
 	 * Moves the specified pages of the process pid to the memory nodes specified by nodes. The result of the move
 	 * is reflected in status. The flags indicate constraints on the pages to be moved.
@@ -215,4 +231,15 @@ interface NumaLibrary extends Library {
 	 * @return 0 if success, -1 if failed
 	 */
 	int numa_run_on_node(int node);
+
+	/**
+	 * Puts memory on a specific node. The constraint described for {@link #numa_alloc_onnode} applies here too:
+	 * the memory policy of the range is set (with {@code mbind()}), which only places the pages faulted
+	 * afterwards. Pages that are already present are not moved.
+	 *
+	 * @param start The page-aligned start of the range
+	 * @param size The size of the range in bytes
+	 * @param node The NUMA node index
+	 */
+	void numa_tonode_memory(long start, long size, int node);
 }
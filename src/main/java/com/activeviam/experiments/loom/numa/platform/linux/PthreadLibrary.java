@@ -22,4 +22,34 @@ interface PthreadLibrary extends Library {
 	 */
 	int sched_getcpu();
 
+	/**
+	 * Sets the CPU affinity mask of a thread, which is the set of CPUs on which it is eligible to run. If the thread
+	 * is not running on one of these CPUs, it is migrated to one of them.
+	 *
+	 * @param pid The ID of the thread, as returned by {@link #gettid()}, or 0 for the calling thread
+	 * @param cpusetsize The size of the mask, in bytes
+	 * @param mask The mask: bit {@code c % 64} of word {@code c / 64} is set if the CPU {@code c} is in the set
+	 * @return On success, sched_setaffinity() returns 0. On error, -1 is returned and errno is set to indicate the
+	 * error.
+	 */
+	int sched_setaffinity(int pid, long cpusetsize, long[] mask);
+
+	/**
+	 * Gets the CPU affinity mask of a thread.
+	 *
+	 * @param pid The ID of the thread, as returned by {@link #gettid()}, or 0 for the calling thread
+	 * @param cpusetsize The size of the mask, in bytes
+	 * @param mask The mask to fill, with the same layout as for {@link #sched_setaffinity(int, long, long[])}
+	 * @return On success, sched_getaffinity() returns the number of bytes written to the mask. On error, -1 is
+	 * returned and errno is set to indicate the error.
+	 */
+	int sched_getaffinity(int pid, long cpusetsize, long[] mask);
+
+	/**
+	 * Returns the kernel ID of the calling thread, which identifies it in the scheduling calls.
+	 *
+	 * @return The thread ID of the caller. This call is always successful.
+	 */
+	int gettid();
+
 }
@@ -0,0 +1,175 @@
+package com.activeviam.experiments.loom.numa.thread.virtual;
+
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The placement of the carrier threads of the pool of a NUMA node on the CPUs of the node.
+ * <p>
+ * By default, the carriers are bound to the whole node, and the kernel moves them freely among its CPUs. When
+ * pinned, each carrier is bound to a single CPU of the node with {@code sched_setaffinity()}: the carriers are spread
+ * over distinct physical cores first, then over the hyperthread siblings of the cores, and only share a CPU when
+ * there are more carriers than CPUs. The pool adds and retires carriers over time: a new carrier is pinned to the
+ * least loaded CPU, and when a carrier retires, carriers of the most loaded CPUs are moved until the loads of the
+ * CPUs differ by one at most.
+ *
+ * @author ActiveViam
+ */
+class CarrierAffinity {
+
+	/** The platform setting the affinities. */
+	protected final LinuxPlatform platform;
+
+	/** The CPUs of the node, one per physical core first, then their hyperthread siblings. */
+	protected final int[] cpus;
+
+	/** The carriers pinned to each CPU, by index in {@link #cpus}. */
+	protected final List<List<NumaCarrierThread>> carriersOfCpu;
+
+	/** The kernel thread ID of each live carrier. */
+	protected final Map<NumaCarrierThread, Integer> threadIds = new HashMap<>();
+
+	/** The index in {@link #cpus} of the CPU of each pinned carrier. */
+	protected final Map<NumaCarrierThread, Integer> cpuOfCarrier = new HashMap<>();
+
+	/** Whether the carriers are pinned to a CPU each, or bound to the whole node. */
+	protected boolean pinned;
+
+	/**
+	 * Constructor.
+	 *
+	 * @param platform The platform setting the affinities
+	 * @param numaNode The NUMA node of the carriers
+	 * @param pinned Whether the carriers are pinned to a CPU each
+	 */
+	CarrierAffinity(final LinuxPlatform platform, final int numaNode, final boolean pinned) {
+		this.platform = platform;
+		this.cpus = platform.getNumaNodeCpus(numaNode);
+		this.carriersOfCpu = new ArrayList<>(this.cpus.length);
+		for (int i = 0; i < this.cpus.length; ++i) {
+			this.carriersOfCpu.add(new ArrayList<>());
+		}
+		this.pinned = pinned && this.cpus.length > 0;
+	}
+
+	/**
+	 * Registers a carrier that just started, and pins it to a CPU if the carriers are pinned. Must be called by the
+	 * carrier, once bound to its node.
+	 *
+	 * @param carrier The calling carrier
+	 */
+	synchronized void register(final NumaCarrierThread carrier) {
+		this.threadIds.put(carrier, this.platform.getCurrentThreadId());
+		if (this.pinned) {
+			pin(carrier, leastLoadedCpu());
+		}
+	}
+
+	/**
+	 * Unregisters a carrier that is terminating, and rebalances the other carriers over the CPUs. Must be called by
+	 * the carrier.
+	 *
+	 * @param carrier The calling carrier
+	 */
+	synchronized void unregister(final NumaCarrierThread carrier) {
+		this.threadIds.remove(carrier);
+		final Integer cpu = this.cpuOfCarrier.remove(carrier);
+		if (cpu != null) {
+			this.carriersOfCpu.get(cpu).remove(carrier);
+			rebalance();
+		}
+	}
+
+	/**
+	 * Pins all the live carriers to a CPU each, or binds them back to the whole node.
+	 *
+	 * @param pinned Whether the carriers are pinned
+	 */
+	synchronized void setPinned(final boolean pinned) {
+		if (pinned == this.pinned || this.cpus.length == 0) {
+			return;
+		}
+		this.pinned = pinned;
+		if (pinned) {
+			for (NumaCarrierThread carrier : this.threadIds.keySet()) {
+				pin(carrier, leastLoadedCpu());
+			}
+		} else {
+			for (NumaCarrierThread carrier : this.cpuOfCarrier.keySet()) {
+				this.platform.setThreadAffinity(this.threadIds.get(carrier), this.cpus);
+			}
+			this.cpuOfCarrier.clear();
+			this.carriersOfCpu.forEach(List::clear);
+		}
+	}
+
+	/**
+	 * Returns whether the carriers are pinned to a CPU each.
+	 *
+	 * @return {@code true} if the carriers are pinned, {@code false} if they are bound to the whole node
+	 */
+	synchronized boolean isPinned() {
+		return this.pinned;
+	}
+
+	/**
+	 * Returns the number of carriers pinned to each CPU of the node.
+	 *
+	 * @return The CPUs of the node, mapped to their number of carriers
+	 */
+	synchronized Map<Integer, Integer> getCpuLoads() {
+		final Map<Integer, Integer> loads = new HashMap<>();
+		for (int i = 0; i < this.cpus.length; ++i) {
+			loads.put(this.cpus[i], this.carriersOfCpu.get(i).size());
+		}
+		return loads;
+	}
+
+	/**
+	 * Pins a carrier to a CPU, moving it from its previous CPU if any.
+	 */
+	protected void pin(final NumaCarrierThread carrier, final int cpu) {
+		this.platform.setThreadAffinity(this.threadIds.get(carrier), this.cpus[cpu]);
+		final Integer previousCpu = this.cpuOfCarrier.put(carrier, cpu);
+		if (previousCpu != null) {
+			this.carriersOfCpu.get(previousCpu).remove(carrier);
+		}
+		this.carriersOfCpu.get(cpu).add(carrier);
+	}
+
+	/**
+	 * Moves carriers from the most loaded CPUs to the least loaded ones, until their loads differ by one at most.
+	 */
+	protected void rebalance() {
+		while (true) {
+			final int leastLoaded = leastLoadedCpu();
+			int mostLoaded = 0;
+			for (int i = 1; i < this.cpus.length; ++i) {
+				if (this.carriersOfCpu.get(i).size() > this.carriersOfCpu.get(mostLoaded).size()) {
+					mostLoaded = i;
+				}
+			}
+			final List<NumaCarrierThread> carriers = this.carriersOfCpu.get(mostLoaded);
+			if (carriers.size() - this.carriersOfCpu.get(leastLoaded).size() <= 1) {
+				return;
+			}
+			pin(carriers.get(carriers.size() - 1), leastLoaded);
+		}
+	}
+
+	/**
+	 * Returns the first CPU with the fewest carriers, which favors the distinct physical cores.
+	 */
+	protected int leastLoadedCpu() {
+		int leastLoaded = 0;
+		for (int i = 1; i < this.cpus.length; ++i) {
+			if (this.carriersOfCpu.get(i).size() < this.carriersOfCpu.get(leastLoaded).size()) {
+				leastLoaded = i;
+			}
+		}
+		return leastLoaded;
+	}
+}
@@ -0,0 +1,23 @@
+package com.activeviam.experiments.loom.numa.thread.virtual;
+
+/**
+ * The latency of the start of the carrier threads of a NUMA pool: the time between the creation of a carrier by its
+ * pool and the moment it is bound to its node (and pinned to its CPU), ready to run its first virtual thread.
+ *
+ * @param count The number of carriers started
+ * @param totalNanos The sum of the start latencies, in ns
+ * @param maxNanos The largest start latency, in ns
+ *
+ * @author ActiveViam
+ */
+public record CarrierStartStatistics(long count, long totalNanos, long maxNanos) {
+
+	/**
+	 * Returns the mean start latency.
+	 *
+	 * @return The mean latency, in ns, or 0 if no carrier was started
+	 */
+	public long meanNanos() {
+		return this.count == 0 ? 0 : this.totalNanos / this.count;
+	}
+}
@@ -1,22 +1,55 @@
 package com.activeviam.experiments.loom.numa.thread.virtual;
 
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
 import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.logging.Logger;
 import jdk.internal.misc.CarrierThread;
 
 /**
- * This class extends {@link CarrierThread} with ability to move itself to the specified NUMA node.
+ * This class extends {@link CarrierThread} with ability to move itself to the specified NUMA node, and optionally
+ * to a single CPU of this node chosen by the {@link CarrierAffinity} of its pool.
  */
 class NumaCarrierThread extends CarrierThread {
 
 	private static final Logger LOGGER = Logger.getLogger(NumaCarrierThread.class.getName());
 	protected final int numaNode;
-	protected static final int MAX_ITERATIONS = 5;
+
+	/** The maximum number of yields while waiting for the kernel to move the thread to its node. */
+	protected static final int MAX_YIELDS = 100;
+
+	/** The maximum time to wait for the carriers of a pool to start, in ms. */
+	protected static final long PRESTART_TIMEOUT_MS = 10_000;
+
+	/** The number of carriers started on each node. */
+	protected static final AtomicLongArray START_COUNTS =
+			new AtomicLongArray(IPlatform.CURRENT_PLATFORM.getNUMANodeCount());
+
+	/** The sum of the start latencies of the carriers of each node, in ns. */
+	protected static final AtomicLongArray START_NANOS =
+			new AtomicLongArray(IPlatform.CURRENT_PLATFORM.getNUMANodeCount());
+
+	/** The largest start latency of the carriers of each node, in ns. */
+	protected static final AtomicLongArray MAX_START_NANOS =
+			new AtomicLongArray(IPlatform.CURRENT_PLATFORM.getNUMANodeCount());
+
+	/** The time of the creation of this carrier by its pool, in ns. */
+	protected final long creationTimeNs = System.nanoTime();
+
+	/** The placement of the carriers of the pool on the CPUs of the node, or {@code null} to bind to the node only. */
+	protected final CarrierAffinity affinity;
 
 	public NumaCarrierThread(ForkJoinPool pool, int numaNode) {
+		this(pool, numaNode, null);
+	}
+
+	public NumaCarrierThread(ForkJoinPool pool, int numaNode, CarrierAffinity affinity) {
 		super(pool);
 		this.numaNode = numaNode;
+		this.affinity = affinity;
 	}
 
 	public int getNumaNode() {
@@ -27,6 +60,18 @@ class NumaCarrierThread extends CarrierThread {
 	protected void onStart() {
 		super.onStart();
 		moveToNumaNode(numaNode);
+		if (this.affinity != null) {
+			this.affinity.register(this);
+		}
+		recordStart(System.nanoTime() - this.creationTimeNs);
+	}
+
+	@Override
+	protected void onTermination(Throwable exception) {
+		if (this.affinity != null) {
+			this.affinity.unregister(this);
+		}
+		super.onTermination(exception);
 	}
 
 	protected void moveToNumaNode(int node) {
@@ -36,17 +81,62 @@ class NumaCarrierThread extends CarrierThread {
 			return;
 		}
 
-		for (int i = 0; i < MAX_ITERATIONS; ++i) {
-			LOGGER.fine("Thread " + this + ": Waiting for rescheduling on the appropriate NUMA node, iteration #" + i);
-			try {
-				Thread.sleep(1 << i);
-			} catch (InterruptedException ignored) {
-			}
+		// Changing the CPU affinity of the calling thread migrates it before returning, so it is already on its node
+		// unless the kernel lags: yielding lets the scheduler move it, without sleeping
+		for (int i = 0; i < MAX_YIELDS; ++i) {
 			if (IPlatform.CURRENT_PLATFORM.getCurrentNumaNode() == node) {
 				return;
 			}
+			LOGGER.fine("Thread " + this + ": Waiting for rescheduling on the appropriate NUMA node, yield #" + i);
+			Thread.yield();
 		}
 
 		LOGGER.warning("Thread " + this + ": Failed to move to the chosen NUMA node");
 	}
+
+	/**
+	 * Records the start latency of this carrier in the statistics of its node.
+	 */
+	protected void recordStart(long latencyNs) {
+		START_COUNTS.incrementAndGet(this.numaNode);
+		START_NANOS.addAndGet(this.numaNode, latencyNs);
+		MAX_START_NANOS.accumulateAndGet(this.numaNode, latencyNs, Math::max);
+	}
+
+	/**
+	 * Returns the start latencies of the carriers of a node.
+	 */
+	static CarrierStartStatistics getStartStatistics(int numaNode) {
+		return new CarrierStartStatistics(
+				START_COUNTS.get(numaNode),
+				START_NANOS.get(numaNode),
+				MAX_START_NANOS.get(numaNode));
+	}
+
+	/**
+	 * Starts the carriers of a pool up to its parallelism, by occupying each one with a task waiting for all the
+	 * others to start, and waits for them.
+	 *
+	 * @return {@code true} if all the carriers started before the timeout
+	 */
+	static boolean prestart(ForkJoinPool pool) {
+		final int parallelism = pool.getParallelism();
+		final CountDownLatch started = new CountDownLatch(parallelism);
+		for (int i = 0; i < parallelism; ++i) {
+			pool.execute(() -> {
+				started.countDown();
+				try {
+					started.await(PRESTART_TIMEOUT_MS, MILLISECONDS);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+			});
+		}
+		try {
+			return started.await(PRESTART_TIMEOUT_MS, MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return false;
+		}
+	}
 }
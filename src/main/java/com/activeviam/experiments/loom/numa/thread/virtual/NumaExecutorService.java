@@ -0,0 +1,234 @@
+package com.activeviam.experiments.loom.numa.thread.virtual;
+
+import com.activeviam.experiments.loom.numa.data.IChunkDouble;
+import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * An {@link ExecutorService} running each task in a new virtual thread of the {@link NumaVirtualThreadRunner NUMA
+ * pool} of the node holding the data of the task, so that the computation is sent to the data instead of the
+ * opposite.
+ * <p>
+ * The node of a task is given explicitly, or derived from the chunk it reads ({@link IChunkDouble#getNumaNodeId()})
+ * or from a native address ({@link IPlatform#getPointerNode(long)}). The tasks without a node, and all the tasks
+ * when NUMA is not available, run on the default virtual thread scheduler. The tasks submitted through the plain
+ * {@link ExecutorService} methods stay on the node of the calling thread if it is a virtual thread of a NUMA pool.
+ * <p>
+ * Shutting down this executor shuts down the executors of all the nodes.
+ *
+ * @author ActiveViam
+ */
+public class NumaExecutorService extends AbstractExecutorService {
+
+	/** The executor of each NUMA node, starting one virtual thread of the pool of the node per task. */
+	protected final ExecutorService[] nodeExecutors;
+
+	/** The executor of the tasks without a node, starting one virtual thread of the default scheduler per task. */
+	protected final ExecutorService defaultExecutor;
+
+	/**
+	 * Constructor.
+	 */
+	public NumaExecutorService() {
+		this.nodeExecutors = new ExecutorService[NumaVirtualThreadRunner.getNumaPoolCount()];
+		for (int node = 0; node < this.nodeExecutors.length; ++node) {
+			this.nodeExecutors[node] =
+					Executors.newThreadPerTaskExecutor(NumaVirtualThreadRunner.getDefaultThreadFactory(node));
+		}
+		this.defaultExecutor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().factory());
+	}
+
+	/**
+	 * Returns the NUMA node holding the values of a chunk.
+	 *
+	 * @param chunk A chunk
+	 * @return The node of the chunk, or -1 if it is unknown
+	 */
+	public static int getNode(final IChunkDouble chunk) {
+		final int node = chunk.getNumaNodeId();
+		return node >= 0 ? node : getNode(chunk.getAddress());
+	}
+
+	/**
+	 * Returns the NUMA node holding the page of a native address.
+	 *
+	 * @param address A native address
+	 * @return The node of the address, or -1 if it is unknown, for instance if its page was never touched
+	 */
+	public static int getNode(final long address) {
+		if (address == 0) {
+			return -1;
+		} else if (IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform) {
+			// A page that was never touched has a negative status (-ENOENT) instead of a node
+			final int status = platform.getPagesNodes(address & -LinuxPlatform.PAGE_SIZE, 1)[0];
+			return status < 0 ? -1 : status;
+		}
+		return IPlatform.CURRENT_PLATFORM.getPointerNode(address);
+	}
+
+	/**
+	 * Runs a task on a virtual thread of the given node.
+	 *
+	 * @param task The task
+	 * @param node The NUMA node, or -1 for the default scheduler
+	 */
+	public void execute(final Runnable task, final int node) {
+		getExecutor(node).execute(task);
+	}
+
+	/**
+	 * Runs a task on the node of the calling thread if it is a virtual thread of a NUMA pool, on the default
+	 * scheduler otherwise.
+	 */
+	@Override
+	public void execute(final Runnable task) {
+		execute(task, NumaVirtualThreadRunner.getCurrentCarrierNode());
+	}
+
+	/**
+	 * Submits a task to a virtual thread of the given node.
+	 *
+	 * @param task The task
+	 * @param node The NUMA node, or -1 for the default scheduler
+	 * @return The future of the result of the task
+	 */
+	public <T> Future<T> submit(final Callable<T> task, final int node) {
+		return getExecutor(node).submit(task);
+	}
+
+	/**
+	 * Submits a task to a virtual thread of the given node.
+	 *
+	 * @param task The task
+	 * @param node The NUMA node, or -1 for the default scheduler
+	 * @return The future of the completion of the task
+	 */
+	public Future<?> submit(final Runnable task, final int node) {
+		return getExecutor(node).submit(task);
+	}
+
+	/**
+	 * Submits a task to a virtual thread of the node holding the given chunk.
+	 *
+	 * @param task The task, reading the chunk
+	 * @param chunk The chunk
+	 * @return The future of the result of the task
+	 */
+	public <T> Future<T> submit(final Callable<T> task, final IChunkDouble chunk) {
+		return submit(task, getNode(chunk));
+	}
+
+	/**
+	 * Submits a task to a virtual thread of the node holding the given native address.
+	 *
+	 * @param task The task, reading the memory at this address
+	 * @param address The native address
+	 * @return The future of the result of the task
+	 */
+	public <T> Future<T> submit(final Callable<T> task, final long address) {
+		return submit(task, getNode(address));
+	}
+
+	/**
+	 * Runs tasks on virtual threads of their nodes, and waits for all of them to complete.
+	 *
+	 * @param tasks The tasks
+	 * @param nodeOfTask Returns the NUMA node of a task, given its index, or -1 for the default scheduler
+	 * @return The futures of the results of the tasks, all done, in the order of the tasks
+	 * @throws InterruptedException if interrupted while waiting, in which case the unfinished tasks are cancelled
+	 */
+	public <T> List<Future<T>> invokeAll(final List<? extends Callable<T>> tasks, final IntUnaryOperator nodeOfTask)
+			throws InterruptedException {
+		final List<Future<T>> futures = new ArrayList<>(tasks.size());
+		try {
+			for (int i = 0; i < tasks.size(); ++i) {
+				futures.add(submit(tasks.get(i), nodeOfTask.applyAsInt(i)));
+			}
+			for (Future<T> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException | CancellationException e) {
+					// Reported by the future
+				}
+			}
+			return futures;
+		} catch (InterruptedException | RuntimeException e) {
+			for (Future<T> future : futures) {
+				future.cancel(true);
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the executor of a node.
+	 *
+	 * @param node The NUMA node, or -1 for the default scheduler
+	 * @return The executor of the node
+	 * @throws IllegalArgumentException if there is no such node
+	 */
+	protected ExecutorService getExecutor(final int node) {
+		if (node < 0 || this.nodeExecutors.length == 0) {
+			return this.defaultExecutor;
+		} else if (node >= this.nodeExecutors.length) {
+			throw new IllegalArgumentException(
+					"Bad NUMA node id, must be in range [0, " + (this.nodeExecutors.length - 1) + "]");
+		}
+		return this.nodeExecutors[node];
+	}
+
+	@Override
+	public void shutdown() {
+		for (ExecutorService executor : this.nodeExecutors) {
+			executor.shutdown();
+		}
+		this.defaultExecutor.shutdown();
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		final List<Runnable> pendingTasks = new ArrayList<>();
+		for (ExecutorService executor : this.nodeExecutors) {
+			pendingTasks.addAll(executor.shutdownNow());
+		}
+		pendingTasks.addAll(this.defaultExecutor.shutdownNow());
+		return pendingTasks;
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return this.defaultExecutor.isShutdown();
+	}
+
+	@Override
+	public boolean isTerminated() {
+		for (ExecutorService executor : this.nodeExecutors) {
+			if (!executor.isTerminated()) {
+				return false;
+			}
+		}
+		return this.defaultExecutor.isTerminated();
+	}
+
+	@Override
+	public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+		final long deadline = System.nanoTime() + unit.toNanos(timeout);
+		for (ExecutorService executor : this.nodeExecutors) {
+			if (!executor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS)) {
+				return false;
+			}
+		}
+		return this.defaultExecutor.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+	}
+}
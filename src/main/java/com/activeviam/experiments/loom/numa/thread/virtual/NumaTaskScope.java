@@ -0,0 +1,166 @@
+package com.activeviam.experiments.loom.numa.thread.virtual;
+
+import com.activeviam.experiments.loom.numa.util.ParallelUtil;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.StructuredTaskScope;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BinaryOperator;
+import java.util.function.IntFunction;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * A {@link StructuredTaskScope} forking each subtask on a virtual thread of the {@link NumaVirtualThreadRunner NUMA
+ * pool} of a given node, and failing fast: the first subtask to fail shuts the scope down, which cancels all the
+ * other subtasks, and its exception is rethrown by {@link #throwIfFailed()}.
+ * <p>
+ * The subtasks are cancelled by interrupting their threads, so long scans should check
+ * {@link Thread#isInterrupted()} from time to time to stop early. The subtasks forked without a node run on the node
+ * of the forking thread if it is a virtual thread of a NUMA pool, on the default scheduler otherwise.
+ * <p>
+ * {@link #reduce} runs a hierarchical reduction on top of this scope: the tasks of each node are forked and reduced
+ * on their node, then the partial results of the nodes are combined by the calling thread.
+ *
+ * @param <T> The type of the results of the subtasks
+ *
+ * @author ActiveViam
+ */
+public class NumaTaskScope<T> extends StructuredTaskScope<T> {
+
+	/** The node of the subtask being forked by the current thread, or {@code null} for the node of the thread. */
+	protected static final ThreadLocal<Integer> FORK_NODE = new ThreadLocal<>();
+
+	/** Creates the threads of the subtasks on the node of the subtask being forked. */
+	protected static final ThreadFactory ROUTING_FACTORY = task -> {
+		final Integer node = FORK_NODE.get();
+		return ParallelUtil.threadFactory(node == null ? NumaVirtualThreadRunner.getCurrentCarrierNode() : node)
+				.newThread(task);
+	};
+
+	/** The exception of the first subtask that failed. */
+	protected final AtomicReference<Throwable> firstException = new AtomicReference<>();
+
+	/**
+	 * Constructor.
+	 */
+	public NumaTaskScope() {
+		this(null);
+	}
+
+	/**
+	 * Constructor.
+	 *
+	 * @param name The name of the scope, for monitoring, or {@code null}
+	 */
+	public NumaTaskScope(final String name) {
+		super(name, ROUTING_FACTORY);
+	}
+
+	/**
+	 * Forks a subtask on a virtual thread of the given node.
+	 *
+	 * @param node The NUMA node, or -1 for the default scheduler
+	 * @param task The subtask
+	 * @return The subtask, whose result is available once the scope is joined
+	 * @throws IllegalArgumentException if there is no such node
+	 */
+	public <U extends T> Subtask<U> fork(final int node, final Callable<? extends U> task) {
+		final Integer previousNode = FORK_NODE.get();
+		FORK_NODE.set(node);
+		try {
+			return fork(task);
+		} finally {
+			FORK_NODE.set(previousNode);
+		}
+	}
+
+	/**
+	 * Shuts the scope down when a subtask fails, which cancels the other subtasks.
+	 */
+	@Override
+	protected void handleComplete(final Subtask<? extends T> subtask) {
+		if (subtask.state() == Subtask.State.FAILED && this.firstException.compareAndSet(null, subtask.exception())) {
+			shutdown();
+		}
+	}
+
+	@Override
+	public NumaTaskScope<T> join() throws InterruptedException {
+		super.join();
+		return this;
+	}
+
+	/**
+	 * Throws the exception of the first subtask that failed, if any. Must be called by the owner of the scope, after
+	 * {@link #join()}.
+	 *
+	 * @throws ExecutionException if a subtask failed, with its exception as cause
+	 */
+	public void throwIfFailed() throws ExecutionException {
+		ensureOwnerAndJoined();
+		final Throwable exception = this.firstException.get();
+		if (exception != null) {
+			throw new ExecutionException(exception);
+		}
+	}
+
+	/**
+	 * Runs tasks on virtual threads of their nodes, and reduces their results hierarchically: the results of the
+	 * tasks of each node are combined on that node, in the order of the tasks, then the results of the nodes are
+	 * combined in the order of the nodes. If a task fails, all the others are cancelled.
+	 *
+	 * @param taskCount The number of tasks
+	 * @param nodeOfTask Returns the NUMA node of a task, given its index, or -1 for the default scheduler
+	 * @param task Computes the result of a task, given its index
+	 * @param identity The result of an empty reduction
+	 * @param combiner Combines two results, an associative function
+	 * @return The combination of the results of all the tasks
+	 * @throws ExecutionException if a task failed, with its exception as cause
+	 * @throws InterruptedException if interrupted while waiting, in which case the tasks are cancelled
+	 */
+	public static <R> R reduce(
+			final int taskCount,
+			final IntUnaryOperator nodeOfTask,
+			final IntFunction<? extends R> task,
+			final R identity,
+			final BinaryOperator<R> combiner) throws ExecutionException, InterruptedException {
+		final TreeMap<Integer, List<Integer>> tasksOfNode = new TreeMap<>();
+		for (int i = 0; i < taskCount; ++i) {
+			tasksOfNode.computeIfAbsent(nodeOfTask.applyAsInt(i), node -> new ArrayList<>()).add(i);
+		}
+
+		try (NumaTaskScope<R> scope = new NumaTaskScope<>("reduce")) {
+			final List<Subtask<R>> nodeResults = new ArrayList<>(tasksOfNode.size());
+			tasksOfNode.forEach((node, tasks) -> nodeResults.add(scope.fork(node, () -> {
+				try (NumaTaskScope<R> nodeScope = new NumaTaskScope<>("reduce-node" + node)) {
+					final List<Subtask<R>> taskResults = new ArrayList<>(tasks.size());
+					for (int i : tasks) {
+						taskResults.add(nodeScope.fork(node, () -> task.apply(i)));
+					}
+					nodeScope.join().throwIfFailed();
+					return combine(taskResults, identity, combiner);
+				}
+			})));
+			scope.join().throwIfFailed();
+			return combine(nodeResults, identity, combiner);
+		} catch (ExecutionException e) {
+			// Unwrap the exception of a task from the one of its node
+			throw e.getCause() instanceof final ExecutionException taskException ? taskException : e;
+		}
+	}
+
+	/**
+	 * Combines the results of successful subtasks, in order.
+	 */
+	protected static <R> R combine(final List<Subtask<R>> subtasks, final R identity, final BinaryOperator<R> combiner) {
+		R result = identity;
+		for (Subtask<R> subtask : subtasks) {
+			result = combiner.apply(result, subtask.get());
+		}
+		return result;
+	}
+}
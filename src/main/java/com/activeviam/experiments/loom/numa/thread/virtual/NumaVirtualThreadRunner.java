@@ -3,14 +3,16 @@ package com.activeviam.experiments.loom.numa.thread.virtual;
 import static java.util.concurrent.TimeUnit.SECONDS;
 
 import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
 import com.activeviam.experiments.loom.numa.util.PlatformUtil;
 import java.lang.Thread.UncaughtExceptionHandler;
+import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.invoke.VarHandle;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Method;
 import java.security.PrivilegedAction;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Objects;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
@@ -28,12 +30,50 @@ public class NumaVirtualThreadRunner {
 
 	public static final String PROPERTY_PREFIX = "com.activeviam.experiments.loom.numa.thread.virtual";
 
+	protected static final CarrierAffinity[] carrierAffinities;
 	protected static final ForkJoinPool[] numaNodePools;
 	protected static final AtomicReferenceArray<ThreadFactory> threadFactories;
 
+	/** Handle on the package-private {@code Thread.currentCarrierThread()}, or {@code null} if it is not accessible. */
+	protected static final MethodHandle CURRENT_CARRIER_THREAD;
+
 	static {
+		carrierAffinities = prepareCarrierAffinities();
 		numaNodePools = prepareNumaNodePools();
 		threadFactories = (numaNodePools == null) ? null : new AtomicReferenceArray<>(numaNodePools.length);
+
+		MethodHandle currentCarrierThread;
+		try {
+			currentCarrierThread = MethodHandles.privateLookupIn(Thread.class, MethodHandles.lookup())
+					.findStatic(Thread.class, "currentCarrierThread", MethodType.methodType(Thread.class));
+		} catch (ReflectiveOperationException | RuntimeException e) {
+			// java.lang is not opened to this module
+			currentCarrierThread = null;
+		}
+		CURRENT_CARRIER_THREAD = currentCarrierThread;
+
+		if (numaNodePools != null && Boolean.getBoolean(PROPERTY_PREFIX + ".prestart")) {
+			// The carriers call back this class, so they can only start once it is initialized
+			Thread.ofPlatform().daemon().name("NumaCarrierPrestart").start(NumaVirtualThreadRunner::prestartCarriers);
+		}
+	}
+
+	/**
+	 * Creates the placement of the carriers of each node on its CPUs, pinned if the {@code cpuPinning} property is
+	 * {@code true}. Only available on Linux.
+	 */
+	private static CarrierAffinity[] prepareCarrierAffinities() {
+		if (!IPlatform.CURRENT_PLATFORM.isNumaAvailable()
+				|| !(IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform)) {
+			return null;
+		}
+
+		final boolean pinned = Boolean.getBoolean(PROPERTY_PREFIX + ".cpuPinning");
+		final CarrierAffinity[] affinities = new CarrierAffinity[platform.getNUMANodeCount()];
+		for (int node = 0; node < affinities.length; ++node) {
+			affinities[node] = new CarrierAffinity(platform, node, pinned);
+		}
+		return affinities;
 	}
 
 	private static ForkJoinPool[] prepareNumaNodePools() {
@@ -56,7 +96,10 @@ public class NumaVirtualThreadRunner {
 	@SuppressWarnings("removal")
 	private static ForkJoinPool createNumaAwareScheduler(final int numaNode, final int processorCount) {
 		ForkJoinWorkerThreadFactory factory = pool -> {
-			PrivilegedAction<ForkJoinWorkerThread> pa = () -> new NumaCarrierThread(pool, numaNode);
+			PrivilegedAction<ForkJoinWorkerThread> pa = () -> new NumaCarrierThread(
+					pool,
+					numaNode,
+					carrierAffinities == null ? null : carrierAffinities[numaNode]);
 			return java.security.AccessController.doPrivileged(pa);
 		};
 		PrivilegedAction<ForkJoinPool> pa = () -> {
@@ -64,6 +107,7 @@ public class NumaVirtualThreadRunner {
 			String parallelismValue = System.getProperty(PROPERTY_PREFIX + ".parallelism");
 			String maxPoolSizeValue = System.getProperty(PROPERTY_PREFIX + ".maxPoolSize");
 			String minRunnableValue = System.getProperty(PROPERTY_PREFIX + ".minRunnable");
+			long keepAliveSeconds = Long.getLong(PROPERTY_PREFIX + ".keepAliveSeconds", 30);
 			if (parallelismValue != null) {
 				parallelism = Integer.parseInt(parallelismValue);
 			} else {
@@ -83,7 +127,7 @@ public class NumaVirtualThreadRunner {
 			UncaughtExceptionHandler handler = (t, e) -> { };
 			boolean asyncMode = true; // FIFO
 			return new ForkJoinPool(parallelism, factory, handler, asyncMode,
-					0, maxPoolSize, minRunnable, pool -> true, 30, SECONDS);
+					0, maxPoolSize, minRunnable, pool -> true, keepAliveSeconds, SECONDS);
 		};
 		return java.security.AccessController.doPrivileged(pa);
 	}
@@ -99,32 +143,71 @@ public class NumaVirtualThreadRunner {
 			}
 		}
 
-		// Some reflection black magic to violate package privacy
+		/**
+		 * The types of the scheduler taken by the constructor of {@code VirtualThread}, from the JDK 19 to 25 one to
+		 * the narrower ones it may take in other JDKs. The pools of this class are all of them.
+		 */
+		private static final Class<?>[] SCHEDULER_TYPES = {Executor.class, ExecutorService.class, ForkJoinPool.class};
+
+		// Some method handle black magic to violate package privacy, resolved once so that the creation of a thread
+		// is a plain call, without the access checks and the boxing of the reflection
 		private static final Class<?> VIRTUAL_THREAD_CLASS;
-		private static final Constructor<?> VIRTUAL_THREAD_CONSTRUCTOR;
-		private static final Method VIRTUAL_THREAD_UEH_SETTER;
+
+		/** {@code (Executor scheduler, String name, int characteristics, Runnable task) -> Thread} */
+		private static final MethodHandle VIRTUAL_THREAD_CONSTRUCTOR;
+
+		/** {@code (Thread thread, UncaughtExceptionHandler ueh) -> void} */
+		private static final MethodHandle VIRTUAL_THREAD_UEH_SETTER;
 
 		static {
 			try {
 				VIRTUAL_THREAD_CLASS = Class.forName("java.lang.VirtualThread");
-
-				Constructor<?> constructor = VIRTUAL_THREAD_CLASS.getDeclaredConstructor(
-						Executor.class, String.class, int.class, Runnable.class
-				);
-				constructor.setAccessible(true);
-				VIRTUAL_THREAD_CONSTRUCTOR = constructor;
-
-				Method uehSetter = Thread.class.getDeclaredMethod(
-						"uncaughtExceptionHandler", UncaughtExceptionHandler.class
-				);
-				uehSetter.setAccessible(true);
-				VIRTUAL_THREAD_UEH_SETTER = uehSetter;
-
+				MethodHandles.Lookup lookup =
+						MethodHandles.privateLookupIn(VIRTUAL_THREAD_CLASS, MethodHandles.lookup());
+				VIRTUAL_THREAD_CONSTRUCTOR = findVirtualThreadConstructor(lookup);
+				VIRTUAL_THREAD_UEH_SETTER = findUncaughtExceptionHandlerSetter(lookup);
 			} catch (Exception e) {
 				throw new InternalError(e);
 			}
 		}
 
+		/**
+		 * Probes the constructor of {@code VirtualThread} taking a scheduler of one of the {@link #SCHEDULER_TYPES},
+		 * a name, characteristics and a task, and adapts it to take an {@link Executor} and return a {@link Thread}.
+		 */
+		private static MethodHandle findVirtualThreadConstructor(MethodHandles.Lookup lookup)
+				throws NoSuchMethodException, IllegalAccessException {
+			for (Class<?> schedulerType : SCHEDULER_TYPES) {
+				try {
+					return lookup.findConstructor(
+									VIRTUAL_THREAD_CLASS,
+									MethodType.methodType(
+											void.class, schedulerType, String.class, int.class, Runnable.class))
+							.asType(MethodType.methodType(
+									Thread.class, Executor.class, String.class, int.class, Runnable.class));
+				} catch (NoSuchMethodException e) {
+					// Not the constructor of this JDK
+				}
+			}
+			throw new NoSuchMethodException(
+					"No constructor of " + VIRTUAL_THREAD_CLASS + " takes a scheduler, a name, characteristics and"
+							+ " a task, in " + Runtime.version());
+		}
+
+		/**
+		 * Probes the package-private setter of the uncaught exception handler of {@link Thread}, which skips the
+		 * access checks of the public one, and falls back to the public one if it is missing.
+		 */
+		private static MethodHandle findUncaughtExceptionHandlerSetter(MethodHandles.Lookup lookup)
+				throws NoSuchMethodException, IllegalAccessException {
+			final MethodType setterType = MethodType.methodType(void.class, UncaughtExceptionHandler.class);
+			try {
+				return lookup.findVirtual(Thread.class, "uncaughtExceptionHandler", setterType);
+			} catch (NoSuchMethodException e) {
+				return lookup.findVirtual(Thread.class, "setUncaughtExceptionHandler", setterType);
+			}
+		}
+
 		private final String name;
 		private final int characteristics;
 		private final UncaughtExceptionHandler ueh;
@@ -184,23 +267,111 @@ public class NumaVirtualThreadRunner {
 		protected Thread newVirtualThread(
 				ExecutorService executor, String threadName, int characteristics, Runnable task) {
 			try {
-				Thread t = (Thread) VIRTUAL_THREAD_CONSTRUCTOR.newInstance(executor, threadName, characteristics, task);
-				Objects.requireNonNull(t);
-				return t;
-			} catch (Exception e) {
+				return (Thread) VIRTUAL_THREAD_CONSTRUCTOR.invokeExact(
+						(Executor) executor, threadName, characteristics, task);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
 				throw new RuntimeException(e);
 			}
 		}
 
 		protected void setUncaughtExceptionHandler(Thread t, UncaughtExceptionHandler ueh) {
 			try {
-				VIRTUAL_THREAD_UEH_SETTER.invoke(t, ueh);
-			} catch (Exception e) {
+				VIRTUAL_THREAD_UEH_SETTER.invokeExact(t, ueh);
+			} catch (RuntimeException | Error e) {
+				throw e;
+			} catch (Throwable e) {
 				throw new RuntimeException(e);
 			}
 		}
 	}
 
+	/**
+	 * Returns the NUMA node of the pool whose carrier thread runs the current thread, without any system call: the
+	 * node is read from the carrier thread itself.
+	 *
+	 * @return The NUMA node of the carrier thread, or -1 if the current thread is not a virtual thread run by one of
+	 *         the NUMA pools
+	 */
+	public static int getCurrentCarrierNode() {
+		if (CURRENT_CARRIER_THREAD == null) {
+			return -1;
+		}
+		try {
+			final Thread carrier = (Thread) CURRENT_CARRIER_THREAD.invokeExact();
+			return carrier instanceof final NumaCarrierThread numaCarrier ? numaCarrier.getNumaNode() : -1;
+		} catch (Throwable e) {
+			throw new IllegalStateException("Cannot get the carrier thread", e);
+		}
+	}
+
+	/**
+	 * Pins each carrier thread of the NUMA pools to a distinct CPU of its node, favoring the distinct physical cores
+	 * over the hyperthread siblings, or binds them back to their whole node. This applies to the live carriers and
+	 * to the ones created afterwards. The initial mode is given by the {@code cpuPinning} property.
+	 *
+	 * @param pinned Whether the carriers are pinned to a CPU each
+	 * @throws UnsupportedOperationException if the platform cannot pin threads
+	 */
+	public static void setCpuPinning(boolean pinned) {
+		if (carrierAffinities == null) {
+			throw new UnsupportedOperationException("The carrier threads cannot be pinned on this platform");
+		}
+		for (CarrierAffinity affinity : carrierAffinities) {
+			affinity.setPinned(pinned);
+		}
+	}
+
+	/**
+	 * Returns whether the carrier threads of the NUMA pools are pinned to a CPU each.
+	 *
+	 * @return {@code true} if the carriers are pinned, {@code false} if they are bound to their whole node
+	 */
+	public static boolean isCpuPinning() {
+		return carrierAffinities != null && carrierAffinities.length > 0 && carrierAffinities[0].isPinned();
+	}
+
+	/**
+	 * Returns the number of carrier threads pinned to each CPU of a node.
+	 *
+	 * @param numaNode The NUMA node
+	 * @return The CPUs of the node, mapped to their number of pinned carriers, all 0 if the carriers are not pinned
+	 */
+	public static Map<Integer, Integer> getCarrierCpuLoads(int numaNode) {
+		verifyNumaNodeId(numaNode);
+
+		return carrierAffinities == null ? Map.of() : carrierAffinities[numaNode].getCpuLoads();
+	}
+
+	/**
+	 * Starts the carrier threads of all the NUMA pools up to their parallelism, each one bound to its node (and
+	 * pinned to its CPU), so that the first virtual threads do not wait for them. This is done at startup when the
+	 * {@code prestart} property is {@code true}. Idle carriers still retire after the {@code keepAliveSeconds}
+	 * property (30s by default), and are started again on demand.
+	 *
+	 * @return {@code true} if all the carriers started in time
+	 */
+	public static boolean prestartCarriers() {
+		boolean started = true;
+		for (int node = 0; node < getNumaPoolCount(); ++node) {
+			started &= NumaCarrierThread.prestart(numaNodePools[node]);
+		}
+		return started;
+	}
+
+	/**
+	 * Returns the start latencies of the carrier threads of a node since the start of the JVM.
+	 *
+	 * @param numaNode The NUMA node
+	 * @return The start statistics of the carriers of the node
+	 */
+	public static CarrierStartStatistics getCarrierStartStatistics(int numaNode) {
+		verifyNumaNodeId(numaNode);
+
+		return NumaCarrierThread.getStartStatistics(numaNode);
+	}
+
 	public static int getNumaPoolCount() {
 		return numaNodePools == null ? 0 : numaNodePools.length;
 	}
@@ -0,0 +1,81 @@
+package com.activeviam.experiments.loom.numa.util;
+
+import com.activeviam.experiments.loom.numa.thread.virtual.NumaVirtualThreadRunner;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.IntConsumer;
+import java.util.function.IntUnaryOperator;
+
+/**
+ * Helper functions to run tasks on virtual threads of given NUMA nodes.
+ *
+ * @author ActiveViam
+ */
+public class ParallelUtil {
+
+	/**
+	 * Runs {@code taskCount} tasks, each one in a virtual thread scheduled on the NUMA node given by
+	 * {@code nodeOfTask}, and waits for all of them to complete.
+	 * <p>
+	 * When NUMA is not available, or when a task's node is negative, the task runs on the default virtual thread
+	 * scheduler.
+	 *
+	 * @param taskCount The number of tasks
+	 * @param nodeOfTask Returns the NUMA node of a task, given its index
+	 * @param task The task, given its index
+	 * @throws RuntimeException if one of the tasks failed
+	 */
+	public static void forEach(final int taskCount, final IntUnaryOperator nodeOfTask, final IntConsumer task) {
+		final CountDownLatch latch = new CountDownLatch(taskCount);
+		final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+		for (int i = 0; i < taskCount; ++i) {
+			final int taskId = i;
+			threadFactory(nodeOfTask.applyAsInt(taskId)).newThread(() -> {
+				try {
+					task.accept(taskId);
+				} catch (Throwable t) {
+					failure.compareAndSet(null, t);
+				} finally {
+					latch.countDown();
+				}
+			}).start();
+		}
+
+		try {
+			latch.await();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		final Throwable t = failure.get();
+		if (t instanceof RuntimeException e) {
+			throw e;
+		} else if (t instanceof Error e) {
+			throw e;
+		} else if (t != null) {
+			throw new RuntimeException(t);
+		}
+	}
+
+	/**
+	 * Returns the virtual thread factory of the given NUMA node, or the default virtual thread factory if NUMA
+	 * is not available or if the node is negative.
+	 *
+	 * @param node The NUMA node
+	 * @return The thread factory
+	 */
+	public static ThreadFactory threadFactory(final int node) {
+		return (node < 0 || NumaVirtualThreadRunner.getNumaPoolCount() == 0)
+				? Thread.ofVirtual().factory()
+				: NumaVirtualThreadRunner.getDefaultThreadFactory(node);
+	}
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private ParallelUtil() {
+	}
+}
@@ -1,6 +1,9 @@
 package com.activeviam.experiments.loom.numa.util;
 
 import com.activeviam.experiments.loom.numa.platform.IPlatform;
+import com.activeviam.experiments.loom.numa.platform.linux.LinuxPlatform;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
 import java.util.HashMap;
 
 public class PlatformUtil {
@@ -31,4 +34,25 @@ public class PlatformUtil {
 
 		return result;
 	}
+
+	/**
+	 * Allocates zeroed memory on the given NUMA node with {@code numa_alloc_onnode()}, freed with
+	 * {@code numa_free()} when the arena is closed. When libnuma is not available, or if the node is negative, the
+	 * memory is allocated in the arena and placed on first touch.
+	 *
+	 * @param arena The arena owning the memory
+	 * @param size The size of the memory, in bytes
+	 * @param node The NUMA node of the memory
+	 * @return The memory
+	 */
+	public static MemorySegment allocateOnNode(final Arena arena, final long size, final int node) {
+		if (node >= 0
+				&& IPlatform.CURRENT_PLATFORM instanceof final LinuxPlatform platform
+				&& platform.isNumaAvailable()) {
+			// numa_alloc_onnode() returns pages from mmap(), which are zeroed
+			return MemorySegment.ofAddress(platform.numaAllocOnNode(size, node))
+					.reinterpret(size, arena, s -> platform.numaFree(s.address(), size));
+		}
+		return arena.allocate(size, Long.BYTES);
+	}
 }
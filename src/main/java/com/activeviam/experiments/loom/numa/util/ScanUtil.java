@@ -0,0 +1,428 @@
+package com.activeviam.experiments.loom.numa.util;
+
+import static java.lang.foreign.ValueLayout.JAVA_DOUBLE;
+import static java.lang.foreign.ValueLayout.JAVA_LONG;
+
+import java.lang.foreign.MemorySegment;
+
+/**
+ * Bulk scan kernels over contiguous off-heap arrays of {@code double}.
+ * <p>
+ * The loops are unrolled by {@value #UNROLL} and keep one accumulator per lane. This breaks the dependency chain
+ * between consecutive additions (which the JIT is not allowed to reorder for floating point values), so that
+ * several loads and additions are in flight at the same time and a local-node scan can reach the memory bandwidth.
+ * As a consequence, the sums may differ from a sequential sum in the last bits.
+ * <p>
+ * Each kernel exists for a raw address (read with {@link sun.misc.Unsafe}) and for a {@link MemorySegment}. The
+ * bounds checks of the latter are hoisted out of the loops by the JIT, so both versions have the same throughput.
+ * <p>
+ * The selection kernels work on bitmaps of {@code long} words, bit {@code i % 64} of word {@code i / 64} standing
+ * for the {@code i}-th value.
+ *
+ * @author ActiveViam
+ */
+public class ScanUtil {
+
+	/** The number of values processed per iteration of the unrolled loops. */
+	public static final int UNROLL = 4;
+
+	/** The size of a {@code double} in bytes. */
+	protected static final int ELEMENT_SIZE = Double.BYTES;
+
+	private static final sun.misc.Unsafe UNSAFE = UnsafeUtil.getUnsafe();
+
+	/**
+	 * Computes the sum of {@code count} doubles.
+	 *
+	 * @param address The address of the first value
+	 * @param count The number of values
+	 * @return The sum of the values
+	 */
+	public static double sum(long address, int count) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long p = address + ((long) i * ELEMENT_SIZE);
+			s0 += UNSAFE.getDouble(p);
+			s1 += UNSAFE.getDouble(p + ELEMENT_SIZE);
+			s2 += UNSAFE.getDouble(p + 2 * ELEMENT_SIZE);
+			s3 += UNSAFE.getDouble(p + 3 * ELEMENT_SIZE);
+		}
+		for (; i < count; ++i) {
+			s0 += UNSAFE.getDouble(address + ((long) i * ELEMENT_SIZE));
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 * Computes the minimum of {@code count} doubles. Like {@link Math#min(double, double)}, the result is NaN if
+	 * one of the values is NaN.
+	 *
+	 * @param address The address of the first value
+	 * @param count The number of values
+	 * @return The minimum of the values, or {@link Double#POSITIVE_INFINITY} if {@code count} is 0
+	 */
+	public static double min(long address, int count) {
+		double m0 = Double.POSITIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long p = address + ((long) i * ELEMENT_SIZE);
+			m0 = Math.min(m0, UNSAFE.getDouble(p));
+			m1 = Math.min(m1, UNSAFE.getDouble(p + ELEMENT_SIZE));
+			m2 = Math.min(m2, UNSAFE.getDouble(p + 2 * ELEMENT_SIZE));
+			m3 = Math.min(m3, UNSAFE.getDouble(p + 3 * ELEMENT_SIZE));
+		}
+		for (; i < count; ++i) {
+			m0 = Math.min(m0, UNSAFE.getDouble(address + ((long) i * ELEMENT_SIZE)));
+		}
+		return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+	}
+
+	/**
+	 * Computes the maximum of {@code count} doubles. Like {@link Math#max(double, double)}, the result is NaN if
+	 * one of the values is NaN.
+	 *
+	 * @param address The address of the first value
+	 * @param count The number of values
+	 * @return The maximum of the values, or {@link Double#NEGATIVE_INFINITY} if {@code count} is 0
+	 */
+	public static double max(long address, int count) {
+		double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long p = address + ((long) i * ELEMENT_SIZE);
+			m0 = Math.max(m0, UNSAFE.getDouble(p));
+			m1 = Math.max(m1, UNSAFE.getDouble(p + ELEMENT_SIZE));
+			m2 = Math.max(m2, UNSAFE.getDouble(p + 2 * ELEMENT_SIZE));
+			m3 = Math.max(m3, UNSAFE.getDouble(p + 3 * ELEMENT_SIZE));
+		}
+		for (; i < count; ++i) {
+			m0 = Math.max(m0, UNSAFE.getDouble(address + ((long) i * ELEMENT_SIZE)));
+		}
+		return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+	}
+
+	/**
+	 * Counts the doubles within {@code [lower, upper]}. The comparisons are branch-free so that the loop does not
+	 * suffer from branch mispredictions on unsorted data.
+	 *
+	 * @param address The address of the first value
+	 * @param count The number of values
+	 * @param lower The lower bound (inclusive)
+	 * @param upper The upper bound (inclusive)
+	 * @return The number of values in the range
+	 */
+	public static int count(long address, int count, double lower, double upper) {
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long p = address + ((long) i * ELEMENT_SIZE);
+			c0 += inRange(UNSAFE.getDouble(p), lower, upper);
+			c1 += inRange(UNSAFE.getDouble(p + ELEMENT_SIZE), lower, upper);
+			c2 += inRange(UNSAFE.getDouble(p + 2 * ELEMENT_SIZE), lower, upper);
+			c3 += inRange(UNSAFE.getDouble(p + 3 * ELEMENT_SIZE), lower, upper);
+		}
+		for (; i < count; ++i) {
+			c0 += inRange(UNSAFE.getDouble(address + ((long) i * ELEMENT_SIZE)), lower, upper);
+		}
+		return (c0 + c1) + (c2 + c3);
+	}
+
+	/**
+	 * Computes the dot product of two off-heap arrays of {@code count} doubles.
+	 *
+	 * @param address1 The address of the first value of the first array
+	 * @param address2 The address of the first value of the second array
+	 * @param count The number of values
+	 * @return The sum of the products of the values
+	 */
+	public static double dot(long address1, long address2, int count) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long offset = (long) i * ELEMENT_SIZE;
+			final long p = address1 + offset;
+			final long q = address2 + offset;
+			s0 += UNSAFE.getDouble(p) * UNSAFE.getDouble(q);
+			s1 += UNSAFE.getDouble(p + ELEMENT_SIZE) * UNSAFE.getDouble(q + ELEMENT_SIZE);
+			s2 += UNSAFE.getDouble(p + 2 * ELEMENT_SIZE) * UNSAFE.getDouble(q + 2 * ELEMENT_SIZE);
+			s3 += UNSAFE.getDouble(p + 3 * ELEMENT_SIZE) * UNSAFE.getDouble(q + 3 * ELEMENT_SIZE);
+		}
+		for (; i < count; ++i) {
+			final long offset = (long) i * ELEMENT_SIZE;
+			s0 += UNSAFE.getDouble(address1 + offset) * UNSAFE.getDouble(address2 + offset);
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 * Evaluates the predicate {@code lower <= value <= upper} on {@code count} doubles and writes the result in a
+	 * bitmap, one word per 64 values. The bits are computed branch-free, like in {@link #count(long, int, double,
+	 * double)}, and the words are written whole: the bits past {@code count} in the last word are cleared.
+	 *
+	 * @param address The address of the first value
+	 * @param count The number of values
+	 * @param lower The lower bound (inclusive)
+	 * @param upper The upper bound (inclusive)
+	 * @param words The bitmap
+	 * @param firstWord The index in {@code words} of the word of the first value
+	 * @return The number of selected values
+	 */
+	public static int select(long address, int count, double lower, double upper, MemorySegment words, long firstWord) {
+		int selected = 0;
+		for (int i = 0; i < count; i += Long.SIZE) {
+			final int length = Math.min(Long.SIZE, count - i);
+			final long p = address + ((long) i * ELEMENT_SIZE);
+			long word = 0;
+			for (int b = 0; b < length; ++b) {
+				word |= (long) inRange(UNSAFE.getDouble(p + ((long) b * ELEMENT_SIZE)), lower, upper) << b;
+			}
+			words.setAtIndex(JAVA_LONG, firstWord + (i >>> 6), word);
+			selected += Long.bitCount(word);
+		}
+		return selected;
+	}
+
+	/**
+	 * Computes the sum of the doubles selected by a bitmap, among {@code count} doubles. Full words are summed with
+	 * {@link #sum(long, int)}, empty words are skipped and the other ones are iterated bit by bit.
+	 *
+	 * @param address The address of the first value
+	 * @param count The number of values
+	 * @param words The bitmap
+	 * @param firstWord The index in {@code words} of the word of the first value
+	 * @return The sum of the selected values
+	 */
+	public static double sumSelected(long address, int count, MemorySegment words, long firstWord) {
+		double result = 0;
+		for (int i = 0; i < count; i += Long.SIZE) {
+			long word = words.getAtIndex(JAVA_LONG, firstWord + (i >>> 6));
+			if (count - i < Long.SIZE) {
+				word &= (1L << (count - i)) - 1;
+			}
+			final long p = address + ((long) i * ELEMENT_SIZE);
+			if (word == -1L) {
+				result += sum(p, Long.SIZE);
+				continue;
+			}
+			for (; word != 0; word &= word - 1) {
+				result += UNSAFE.getDouble(p + ((long) Long.numberOfTrailingZeros(word) * ELEMENT_SIZE));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Computes the sum of {@code count} doubles of a memory segment.
+	 *
+	 * @param segment The memory segment
+	 * @param from The index of the first value
+	 * @param count The number of values
+	 * @return The sum of the values
+	 */
+	public static double sum(MemorySegment segment, long from, int count) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long index = from + i;
+			s0 += segment.getAtIndex(JAVA_DOUBLE, index);
+			s1 += segment.getAtIndex(JAVA_DOUBLE, index + 1);
+			s2 += segment.getAtIndex(JAVA_DOUBLE, index + 2);
+			s3 += segment.getAtIndex(JAVA_DOUBLE, index + 3);
+		}
+		for (; i < count; ++i) {
+			s0 += segment.getAtIndex(JAVA_DOUBLE, from + i);
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 * Computes the minimum of {@code count} doubles of a memory segment.
+	 *
+	 * @param segment The memory segment
+	 * @param from The index of the first value
+	 * @param count The number of values
+	 * @return The minimum of the values, or {@link Double#POSITIVE_INFINITY} if {@code count} is 0
+	 * @see #min(long, int)
+	 */
+	public static double min(MemorySegment segment, long from, int count) {
+		double m0 = Double.POSITIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long index = from + i;
+			m0 = Math.min(m0, segment.getAtIndex(JAVA_DOUBLE, index));
+			m1 = Math.min(m1, segment.getAtIndex(JAVA_DOUBLE, index + 1));
+			m2 = Math.min(m2, segment.getAtIndex(JAVA_DOUBLE, index + 2));
+			m3 = Math.min(m3, segment.getAtIndex(JAVA_DOUBLE, index + 3));
+		}
+		for (; i < count; ++i) {
+			m0 = Math.min(m0, segment.getAtIndex(JAVA_DOUBLE, from + i));
+		}
+		return Math.min(Math.min(m0, m1), Math.min(m2, m3));
+	}
+
+	/**
+	 * Computes the maximum of {@code count} doubles of a memory segment.
+	 *
+	 * @param segment The memory segment
+	 * @param from The index of the first value
+	 * @param count The number of values
+	 * @return The maximum of the values, or {@link Double#NEGATIVE_INFINITY} if {@code count} is 0
+	 * @see #max(long, int)
+	 */
+	public static double max(MemorySegment segment, long from, int count) {
+		double m0 = Double.NEGATIVE_INFINITY, m1 = m0, m2 = m0, m3 = m0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long index = from + i;
+			m0 = Math.max(m0, segment.getAtIndex(JAVA_DOUBLE, index));
+			m1 = Math.max(m1, segment.getAtIndex(JAVA_DOUBLE, index + 1));
+			m2 = Math.max(m2, segment.getAtIndex(JAVA_DOUBLE, index + 2));
+			m3 = Math.max(m3, segment.getAtIndex(JAVA_DOUBLE, index + 3));
+		}
+		for (; i < count; ++i) {
+			m0 = Math.max(m0, segment.getAtIndex(JAVA_DOUBLE, from + i));
+		}
+		return Math.max(Math.max(m0, m1), Math.max(m2, m3));
+	}
+
+	/**
+	 * Counts the doubles of a memory segment within {@code [lower, upper]}.
+	 *
+	 * @param segment The memory segment
+	 * @param from The index of the first value
+	 * @param count The number of values
+	 * @param lower The lower bound (inclusive)
+	 * @param upper The upper bound (inclusive)
+	 * @return The number of values in the range
+	 */
+	public static int count(MemorySegment segment, long from, int count, double lower, double upper) {
+		int c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long index = from + i;
+			c0 += inRange(segment.getAtIndex(JAVA_DOUBLE, index), lower, upper);
+			c1 += inRange(segment.getAtIndex(JAVA_DOUBLE, index + 1), lower, upper);
+			c2 += inRange(segment.getAtIndex(JAVA_DOUBLE, index + 2), lower, upper);
+			c3 += inRange(segment.getAtIndex(JAVA_DOUBLE, index + 3), lower, upper);
+		}
+		for (; i < count; ++i) {
+			c0 += inRange(segment.getAtIndex(JAVA_DOUBLE, from + i), lower, upper);
+		}
+		return (c0 + c1) + (c2 + c3);
+	}
+
+	/**
+	 * Computes the dot product of {@code count} doubles of two memory segments, starting at the same index.
+	 *
+	 * @param segment1 The first memory segment
+	 * @param segment2 The second memory segment
+	 * @param from The index of the first value
+	 * @param count The number of values
+	 * @return The sum of the products of the values
+	 */
+	public static double dot(MemorySegment segment1, MemorySegment segment2, long from, int count) {
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		final int unrolled = count & -UNROLL;
+		int i = 0;
+		for (; i < unrolled; i += UNROLL) {
+			final long index = from + i;
+			s0 += segment1.getAtIndex(JAVA_DOUBLE, index) * segment2.getAtIndex(JAVA_DOUBLE, index);
+			s1 += segment1.getAtIndex(JAVA_DOUBLE, index + 1) * segment2.getAtIndex(JAVA_DOUBLE, index + 1);
+			s2 += segment1.getAtIndex(JAVA_DOUBLE, index + 2) * segment2.getAtIndex(JAVA_DOUBLE, index + 2);
+			s3 += segment1.getAtIndex(JAVA_DOUBLE, index + 3) * segment2.getAtIndex(JAVA_DOUBLE, index + 3);
+		}
+		for (; i < count; ++i) {
+			s0 += segment1.getAtIndex(JAVA_DOUBLE, from + i) * segment2.getAtIndex(JAVA_DOUBLE, from + i);
+		}
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/**
+	 * Evaluates the predicate {@code lower <= value <= upper} on {@code count} doubles of a memory segment and
+	 * writes the result in a bitmap.
+	 *
+	 * @param segment The memory segment
+	 * @param from The index of the first value
+	 * @param count The number of values
+	 * @param lower The lower bound (inclusive)
+	 * @param upper The upper bound (inclusive)
+	 * @param words The bitmap
+	 * @param firstWord The index in {@code words} of the word of the first value
+	 * @return The number of selected values
+	 * @see #select(long, int, double, double, MemorySegment, long)
+	 */
+	public static int select(
+			MemorySegment segment,
+			long from,
+			int count,
+			double lower,
+			double upper,
+			MemorySegment words,
+			long firstWord) {
+		int selected = 0;
+		for (int i = 0; i < count; i += Long.SIZE) {
+			final int length = Math.min(Long.SIZE, count - i);
+			final long index = from + i;
+			long word = 0;
+			for (int b = 0; b < length; ++b) {
+				word |= (long) inRange(segment.getAtIndex(JAVA_DOUBLE, index + b), lower, upper) << b;
+			}
+			words.setAtIndex(JAVA_LONG, firstWord + (i >>> 6), word);
+			selected += Long.bitCount(word);
+		}
+		return selected;
+	}
+
+	/**
+	 * Computes the sum of the doubles of a memory segment selected by a bitmap, among {@code count} doubles.
+	 *
+	 * @param segment The memory segment
+	 * @param from The index of the first value
+	 * @param count The number of values
+	 * @param words The bitmap
+	 * @param firstWord The index in {@code words} of the word of the first value
+	 * @return The sum of the selected values
+	 * @see #sumSelected(long, int, MemorySegment, long)
+	 */
+	public static double sumSelected(MemorySegment segment, long from, int count, MemorySegment words, long firstWord) {
+		double result = 0;
+		for (int i = 0; i < count; i += Long.SIZE) {
+			long word = words.getAtIndex(JAVA_LONG, firstWord + (i >>> 6));
+			if (count - i < Long.SIZE) {
+				word &= (1L << (count - i)) - 1;
+			}
+			final long index = from + i;
+			if (word == -1L) {
+				result += sum(segment, index, Long.SIZE);
+				continue;
+			}
+			for (; word != 0; word &= word - 1) {
+				result += segment.getAtIndex(JAVA_DOUBLE, index + Long.numberOfTrailingZeros(word));
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Returns 1 if the value is within {@code [lower, upper]}, 0 otherwise.
+	 */
+	protected static int inRange(double value, double lower, double upper) {
+		return (value >= lower & value <= upper) ? 1 : 0;
+	}
+
+	/**
+	 * Private constructor to avoid instantiation.
+	 */
+	private ScanUtil() {
+	}
+}